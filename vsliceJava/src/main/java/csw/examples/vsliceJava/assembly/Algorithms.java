@@ -4,6 +4,10 @@ import akka.japi.Pair;
 import csw.util.config.DoubleItem;
 import csw.examples.vsliceJava.assembly.AssemblyContext.*;
 
+import java.util.function.IntConsumer;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+
 import static javacsw.util.config.JItems.jvalue;
 
 /**
@@ -28,7 +32,17 @@ public class Algorithms {
    * @return true if valid else false
    */
   public static boolean verifyZenithAngle(DoubleItem zenithAngle) {
-    return jvalue(zenithAngle) < 90.0 && jvalue(zenithAngle) >= 0.0;
+    return verifyZenithAngle(jvalue(zenithAngle));
+  }
+
+  /**
+   * Arbitrary check of the zenith angle to be within bounds
+   *
+   * @param zenithAngle zenith angle in degrees
+   * @return true if valid else false
+   */
+  public static boolean verifyZenithAngle(double zenithAngle) {
+    return zenithAngle < 90.0 && zenithAngle >= 0.0;
   }
 
   /**
@@ -38,7 +52,17 @@ public class Algorithms {
    * @return true if valid else false
    */
   public static boolean verifyFocusError(TromboneCalculationConfig calculationConfig, DoubleItem focusError) {
-    return jvalue(focusError) >= calculationConfig.lowerFocusLimit && jvalue(focusError) <= calculationConfig.upperFocusLimit;
+    return verifyFocusError(calculationConfig, jvalue(focusError));
+  }
+
+  /**
+   * Checking the input focus error against fake limits of +/- 20
+   *
+   * @param focusError focus error in micrometers
+   * @return true if valid else false
+   */
+  public static boolean verifyFocusError(TromboneCalculationConfig calculationConfig, double focusError) {
+    return focusError >= calculationConfig.lowerFocusLimit && focusError <= calculationConfig.upperFocusLimit;
   }
 
   public static double zenithAngleToRangeDistance(double elevation, double zenithAngle) {
@@ -93,4 +117,128 @@ public class Algorithms {
     return pinnedEncValue;
   }
 
+  // --- Batch versions ---
+  // These apply the functions above to arrays of samples, for example when processing recorded data. The results are
+  // written to arrays given by the caller, so nothing is allocated per sample. Inputs with at least parallelThreshold
+  // samples are processed in parallel on the common fork-join pool.
+
+  /**
+   * Batches with at least this many samples are processed in parallel
+   */
+  public static final int parallelThreshold = 8192;
+
+  /**
+   * Batch version of focusZenithAngleToRangeDistance
+   *
+   * @param elevation      the elevation used for all samples
+   * @param focusErrors    focus error of each sample
+   * @param zenithAngles   zenith angle of each sample
+   * @param rangeDistances receives the total range distance of each sample
+   * @return rangeDistances
+   */
+  public static double[] focusZenithAngleToRangeDistance(TromboneCalculationConfig calculationConfig, double elevation,
+                                                         double[] focusErrors, double[] zenithAngles, double[] rangeDistances) {
+    checkLengths(focusErrors.length, zenithAngles.length, rangeDistances.length);
+    forEachSample(rangeDistances.length, i ->
+      rangeDistances[i] = focusZenithAngleToRangeDistance(calculationConfig, elevation, focusErrors[i], zenithAngles[i]));
+    return rangeDistances;
+  }
+
+  /**
+   * Batch version of rangeDistanceToElevation
+   *
+   * @param rangeDistances range distance of each sample
+   * @param zenithAngles   zenith angle of each sample
+   * @param elevations     receives the elevation of each sample
+   * @return elevations
+   */
+  public static double[] rangeDistanceToElevation(double[] rangeDistances, double[] zenithAngles, double[] elevations) {
+    checkLengths(rangeDistances.length, zenithAngles.length, elevations.length);
+    forEachSample(elevations.length, i -> elevations[i] = rangeDistanceToElevation(rangeDistances[i], zenithAngles[i]));
+    return elevations;
+  }
+
+  /**
+   * Batch version of focusZenithAngleToElevationAndRangeDistance, which returns the results in two arrays
+   * rather than as a Pair for each sample
+   *
+   * @param elevation      the elevation used for all samples
+   * @param focusErrors    focus error of each sample
+   * @param zenithAngles   zenith angle of each sample
+   * @param rangeDistances receives the total range distance of each sample
+   * @param elevations     receives the new elevation of each sample
+   */
+  public static void focusZenithAngleToElevationAndRangeDistance(TromboneCalculationConfig calculationConfig, double elevation,
+                                                                 double[] focusErrors, double[] zenithAngles,
+                                                                 double[] rangeDistances, double[] elevations) {
+    checkLengths(focusErrors.length, zenithAngles.length, rangeDistances.length);
+    checkLengths(focusErrors.length, zenithAngles.length, elevations.length);
+    forEachSample(rangeDistances.length, i -> {
+      double totalRangeDistance = focusZenithAngleToRangeDistance(calculationConfig, elevation, focusErrors[i], zenithAngles[i]);
+      rangeDistances[i] = totalRangeDistance;
+      elevations[i] = rangeDistanceToElevation(totalRangeDistance, zenithAngles[i]);
+    });
+  }
+
+  /**
+   * Batch version of stagePositionToEncoder
+   *
+   * @param stagePositions stage position of each sample
+   * @param encoderValues  receives the encoder value of each sample
+   * @return encoderValues
+   */
+  public static int[] stagePositionToEncoder(TromboneControlConfig controlConfig, double[] stagePositions, int[] encoderValues) {
+    checkLengths(stagePositions.length, stagePositions.length, encoderValues.length);
+    forEachSample(encoderValues.length, i -> encoderValues[i] = stagePositionToEncoder(controlConfig, stagePositions[i]));
+    return encoderValues;
+  }
+
+  /**
+   * Does the whole calculation done by the FollowActor, from focus error and zenith angle to encoder value,
+   * for each sample without any intermediate arrays
+   *
+   * @param elevation     the elevation used for all samples
+   * @param focusErrors   focus error of each sample
+   * @param zenithAngles  zenith angle of each sample
+   * @param encoderValues receives the encoder value of each sample
+   * @return encoderValues
+   */
+  public static int[] focusZenithAngleToEncoder(TromboneCalculationConfig calculationConfig, TromboneControlConfig controlConfig,
+                                                double elevation, double[] focusErrors, double[] zenithAngles, int[] encoderValues) {
+    checkLengths(focusErrors.length, zenithAngles.length, encoderValues.length);
+    forEachSample(encoderValues.length, i -> {
+      double totalRangeDistance = focusZenithAngleToRangeDistance(calculationConfig, elevation, focusErrors[i], zenithAngles[i]);
+      encoderValues[i] = stagePositionToEncoder(controlConfig, rangeDistanceToStagePosition(totalRangeDistance));
+    });
+    return encoderValues;
+  }
+
+  /**
+   * Stream version of focusZenithAngleToRangeDistance, for use in stream pipelines.
+   * The stream is sequential, call parallel() on it for large inputs.
+   *
+   * @param elevation    the elevation used for all samples
+   * @param focusErrors  focus error of each sample
+   * @param zenithAngles zenith angle of each sample
+   * @return a stream of the total range distance of each sample
+   */
+  public static DoubleStream focusZenithAngleToRangeDistanceStream(TromboneCalculationConfig calculationConfig, double elevation,
+                                                                   double[] focusErrors, double[] zenithAngles) {
+    checkLengths(focusErrors.length, zenithAngles.length, zenithAngles.length);
+    return IntStream.range(0, focusErrors.length).mapToDouble(i ->
+      focusZenithAngleToRangeDistance(calculationConfig, elevation, focusErrors[i], zenithAngles[i]));
+  }
+
+  private static void checkLengths(int inLength1, int inLength2, int outLength) {
+    if (inLength1 != inLength2 || inLength1 != outLength)
+      throw new IllegalArgumentException("Batch arrays must have the same length: " + inLength1 + ", " + inLength2 + ", " + outLength);
+  }
+
+  private static void forEachSample(int n, IntConsumer f) {
+    if (n >= parallelThreshold) {
+      IntStream.range(0, n).parallel().forEach(f);
+    } else {
+      for (int i = 0; i < n; i++) f.accept(i);
+    }
+  }
 }
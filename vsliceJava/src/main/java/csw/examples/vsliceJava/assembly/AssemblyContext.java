@@ -8,6 +8,12 @@ import csw.util.config.BooleanKey;
 import csw.util.config.DoubleKey;
 import csw.util.config.StringKey;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import static csw.services.pkg.Component.AssemblyInfo;
 import static csw.util.config.Configurations.ConfigKey;
 import static csw.util.config.Configurations.SetupConfig;
@@ -158,6 +164,10 @@ public class AssemblyContext {
   public final String tromboneStateStatusEventPrefix;
   public final String axisStateEventPrefix;
   public final String axisStatsEventPrefix;
+  public final String followLatencyEventPrefix;
+  public final String followPredictionEventPrefix;
+  // The telemetry aggregates are published with this prefix followed by the window length, for instance aggregate60s
+  public final String aggregateEventPrefix;
 
   // ---
 
@@ -217,6 +227,9 @@ public class AssemblyContext {
     tromboneStateStatusEventPrefix = componentPrefix + ".state";
     axisStateEventPrefix = componentPrefix + ".axis1State";
     axisStatsEventPrefix = componentPrefix + ".axis1Stats";
+    followLatencyEventPrefix = componentPrefix + ".followLatency";
+    followPredictionEventPrefix = componentPrefix + ".followPrediction";
+    aggregateEventPrefix = componentPrefix + ".aggregate";
   }
 
 
@@ -224,6 +237,9 @@ public class AssemblyContext {
 
   /**
    * Configuration class
+   * <p>
+   * The encoder values are given to the constructor, the other settings have defaults that leave the optional
+   * features off and can be set with a Builder.
    */
   public static class TromboneControlConfig {
     public final double positionScale;
@@ -231,9 +247,46 @@ public class AssemblyContext {
     public final double stageZero;
     public final int minEncoderLimit;
     public final int maxEncoderLimit;
+    // Setpoint filter in TromboneControl: setpoints within encoderDeadband counts of the last one sent are not sent again
+    // unless minResendIntervalMS has passed (see SetpointFilter). With both 0, every setpoint is sent.
+    public final int encoderDeadband;
+    public final int minResendIntervalMS;
+    // While following, the follow loop latency percentiles are published this often, 0 to not publish them
+    public final int latencyPublishPeriodMS;
+    // If true, the follow command uses one FusedFollowActor rather than separate subscriber, follow and control actors
+    public final boolean fusedFollow;
+    // If not empty, the zenith angle and focus error events received while following are appended to this file
+    // (see FollowEventRecorder)
+    public final String followRecordFile;
+    // The in-flight window of each class of events published by the TrombonePublisher (see PublishWindow), by class name.
+    // Classes not given here use TrombonePublisher.defaultPublishWindows.
+    public final Map<String, PublishWindow.Settings> publishWindows;
+    // If not 0, the state and axis events are only published when they change or, if unchanged, once every
+    // publishHeartbeatMS (see LastValueCache). 0 publishes every update.
+    public final int publishHeartbeatMS;
+    // The DiagPublisher publishes the axis state at most diagOperationsRateHz in operations state and
+    // diagDiagnosticRateHz in diagnostic state, both limited to diagMaxRateHz, and any axis state or limit change at
+    // once. A rate of 0 publishes only the changes. In diagnostic state the axis stats are requested every diagStatsPeriodMS.
+    public final double diagOperationsRateHz;
+    public final double diagDiagnosticRateHz;
+    public final double diagMaxRateHz;
+    public final int diagStatsPeriodMS;
+    // The TrombonePublisher publishes the count, min, max, mean and last value of the engr values of every follow update
+    // and of the position of every HCD axis update over windows of each of these lengths in seconds (see
+    // TelemetryAggregator). Empty for no aggregates.
+    public final List<Integer> telemetryAggregatePeriodsS;
+    // If false, the TrombonePublisher does not publish the raw engr and axis state events, the aggregates still are.
+    // Otherwise, if rawTelemetryMaxRateHz is not 0, it publishes at most that many of each per second, and any axis
+    // state or limit change at once.
+    public final boolean publishRawTelemetry;
+    public final double rawTelemetryMaxRateHz;
+    // If not empty, the follow loop inputs and outputs and command states are recorded at full rate to this
+    // memory-mapped ring file of flightRecorderSizeMB megabytes (see FlightRecorder, the HCD records the axis updates)
+    public final String flightRecorderFile;
+    public final int flightRecorderSizeMB;
 
     /**
-     * Configuration class
+     * Configuration class, with the setpoint filter and latency publishing off and separate follow actors
      *
      * @param positionScale   value used to scale
      * @param stageZero       zero point in stage conversion
@@ -241,27 +294,233 @@ public class AssemblyContext {
      * @param minEncoderLimit minimum
      */
     public TromboneControlConfig(double positionScale, int minStageEncoder, double stageZero, int minEncoderLimit, int maxEncoderLimit) {
-      this.positionScale = positionScale;
-      this.minStageEncoder = minStageEncoder;
-      this.stageZero = stageZero;
-      this.minEncoderLimit = minEncoderLimit;
-      this.maxEncoderLimit = maxEncoderLimit;
+      this(new Builder(positionScale, minStageEncoder, stageZero, minEncoderLimit, maxEncoderLimit));
+    }
+
+    private TromboneControlConfig(Builder b) {
+      this.positionScale = b.positionScale;
+      this.minStageEncoder = b.minStageEncoder;
+      this.stageZero = b.stageZero;
+      this.minEncoderLimit = b.minEncoderLimit;
+      this.maxEncoderLimit = b.maxEncoderLimit;
+      this.encoderDeadband = b.encoderDeadband;
+      this.minResendIntervalMS = b.minResendIntervalMS;
+      this.latencyPublishPeriodMS = b.latencyPublishPeriodMS;
+      this.fusedFollow = b.fusedFollow;
+      this.followRecordFile = b.followRecordFile;
+      this.publishWindows = Collections.unmodifiableMap(new HashMap<>(b.publishWindows));
+      this.publishHeartbeatMS = b.publishHeartbeatMS;
+      this.diagOperationsRateHz = b.diagOperationsRateHz;
+      this.diagDiagnosticRateHz = b.diagDiagnosticRateHz;
+      this.diagMaxRateHz = b.diagMaxRateHz;
+      this.diagStatsPeriodMS = b.diagStatsPeriodMS;
+      this.telemetryAggregatePeriodsS = Collections.unmodifiableList(new ArrayList<>(b.telemetryAggregatePeriodsS));
+      this.publishRawTelemetry = b.publishRawTelemetry;
+      this.rawTelemetryMaxRateHz = b.rawTelemetryMaxRateHz;
+      this.flightRecorderFile = b.flightRecorderFile;
+      this.flightRecorderSizeMB = b.flightRecorderSizeMB;
     }
 
     /**
      * Init from the given config
      */
     public TromboneControlConfig(Config config) {
+      this(fromConfig(config));
+    }
+
+    private static Builder fromConfig(Config config) {
       // Main prefix for keys used below
       String prefix = "csw.examples.trombone.assembly";
 
-      this.positionScale = config.getDouble(prefix + ".control-config.positionScale");
-      this.stageZero = config.getDouble(prefix + ".control-config.stageZero");
-      this.minStageEncoder = config.getInt(prefix + ".control-config.minStageEncoder");
-      this.minEncoderLimit = config.getInt(prefix + ".control-config.minEncoderLimit");
-      this.maxEncoderLimit = config.getInt(prefix + ".control-config.maxEncoderLimit");
+      Builder b = new Builder(
+        config.getDouble(prefix + ".control-config.positionScale"),
+        config.getInt(prefix + ".control-config.minStageEncoder"),
+        config.getDouble(prefix + ".control-config.stageZero"),
+        config.getInt(prefix + ".control-config.minEncoderLimit"),
+        config.getInt(prefix + ".control-config.maxEncoderLimit"));
+      if (config.hasPath(prefix + ".control-config.encoderDeadband"))
+        b.encoderDeadband(config.getInt(prefix + ".control-config.encoderDeadband"));
+      if (config.hasPath(prefix + ".control-config.minResendIntervalMS"))
+        b.minResendIntervalMS(config.getInt(prefix + ".control-config.minResendIntervalMS"));
+      if (config.hasPath(prefix + ".control-config.latencyPublishPeriodMS"))
+        b.latencyPublishPeriodMS(config.getInt(prefix + ".control-config.latencyPublishPeriodMS"));
+      if (config.hasPath(prefix + ".control-config.fusedFollow"))
+        b.fusedFollow(config.getBoolean(prefix + ".control-config.fusedFollow"));
+      if (config.hasPath(prefix + ".control-config.followRecordFile"))
+        b.followRecordFile(config.getString(prefix + ".control-config.followRecordFile"));
+
+      if (config.hasPath(prefix + ".control-config.publishWindows")) {
+        Map<String, PublishWindow.Settings> windows = new HashMap<>();
+        Config windowsConfig = config.getConfig(prefix + ".control-config.publishWindows");
+        for (String name : windowsConfig.root().keySet()) {
+          Config w = windowsConfig.getConfig(name);
+          windows.put(name, new PublishWindow.Settings(
+            w.hasPath("maxInFlight") ? w.getInt("maxInFlight") : 1,
+            w.hasPath("maxQueued") ? w.getInt("maxQueued") : 1,
+            w.hasPath("policy") ? PublishWindow.Policy.valueOf(w.getString("policy")) : PublishWindow.Policy.block,
+            w.hasPath("maxBlocked") ? w.getInt("maxBlocked") : PublishWindow.Settings.defaultMaxBlocked));
+        }
+        b.publishWindows(windows);
+      }
+      if (config.hasPath(prefix + ".control-config.publishHeartbeatMS"))
+        b.publishHeartbeatMS(config.getInt(prefix + ".control-config.publishHeartbeatMS"));
+      if (config.hasPath(prefix + ".control-config.diagOperationsRateHz"))
+        b.diagOperationsRateHz(config.getDouble(prefix + ".control-config.diagOperationsRateHz"));
+      if (config.hasPath(prefix + ".control-config.diagDiagnosticRateHz"))
+        b.diagDiagnosticRateHz(config.getDouble(prefix + ".control-config.diagDiagnosticRateHz"));
+      if (config.hasPath(prefix + ".control-config.diagMaxRateHz"))
+        b.diagMaxRateHz(config.getDouble(prefix + ".control-config.diagMaxRateHz"));
+      if (config.hasPath(prefix + ".control-config.diagStatsPeriodMS"))
+        b.diagStatsPeriodMS(config.getInt(prefix + ".control-config.diagStatsPeriodMS"));
+      if (config.hasPath(prefix + ".control-config.telemetryAggregatePeriodsS"))
+        b.telemetryAggregatePeriodsS(config.getIntList(prefix + ".control-config.telemetryAggregatePeriodsS"));
+      if (config.hasPath(prefix + ".control-config.publishRawTelemetry"))
+        b.publishRawTelemetry(config.getBoolean(prefix + ".control-config.publishRawTelemetry"));
+      if (config.hasPath(prefix + ".control-config.rawTelemetryMaxRateHz"))
+        b.rawTelemetryMaxRateHz(config.getDouble(prefix + ".control-config.rawTelemetryMaxRateHz"));
+      if (config.hasPath(prefix + ".control-config.flightRecorderFile"))
+        b.flightRecorderFile(config.getString(prefix + ".control-config.flightRecorderFile"));
+      if (config.hasPath(prefix + ".control-config.flightRecorderSizeMB"))
+        b.flightRecorderSizeMB(config.getInt(prefix + ".control-config.flightRecorderSizeMB"));
+      return b;
     }
 
+    // The DiagPublisher defaults: about the rates of the old every 5th and every other update at the HCD's
+    // 100 ms step, and the stats once a second
+    public static final double defaultDiagOperationsRateHz = 2.0;
+    public static final double defaultDiagDiagnosticRateHz = 5.0;
+    public static final double defaultDiagMaxRateHz = 20.0;
+    public static final int defaultDiagStatsPeriodMS = 1000;
+
+    // About an hour of follow and axis records at 100 Hz
+    public static final int defaultFlightRecorderSizeMB = 16;
+
+    /**
+     * Builds a TromboneControlConfig. Settings that are not set keep the defaults of the five argument constructor.
+     * See the TromboneControlConfig fields for the meaning of each setting.
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    public static class Builder {
+      private final double positionScale;
+      private final int minStageEncoder;
+      private final double stageZero;
+      private final int minEncoderLimit;
+      private final int maxEncoderLimit;
+      private int encoderDeadband = 0;
+      private int minResendIntervalMS = 0;
+      private int latencyPublishPeriodMS = 0;
+      private boolean fusedFollow = false;
+      private String followRecordFile = "";
+      private Map<String, PublishWindow.Settings> publishWindows = Collections.emptyMap();
+      private int publishHeartbeatMS = 0;
+      private double diagOperationsRateHz = defaultDiagOperationsRateHz;
+      private double diagDiagnosticRateHz = defaultDiagDiagnosticRateHz;
+      private double diagMaxRateHz = defaultDiagMaxRateHz;
+      private int diagStatsPeriodMS = defaultDiagStatsPeriodMS;
+      private List<Integer> telemetryAggregatePeriodsS = Collections.emptyList();
+      private boolean publishRawTelemetry = true;
+      private double rawTelemetryMaxRateHz = 0.0;
+      private String flightRecorderFile = "";
+      private int flightRecorderSizeMB = defaultFlightRecorderSizeMB;
+
+      /**
+       * @param positionScale   value used to scale
+       * @param stageZero       zero point in stage conversion
+       * @param minStageEncoder minimum
+       * @param minEncoderLimit minimum
+       */
+      public Builder(double positionScale, int minStageEncoder, double stageZero, int minEncoderLimit, int maxEncoderLimit) {
+        this.positionScale = positionScale;
+        this.minStageEncoder = minStageEncoder;
+        this.stageZero = stageZero;
+        this.minEncoderLimit = minEncoderLimit;
+        this.maxEncoderLimit = maxEncoderLimit;
+      }
+
+      public Builder encoderDeadband(int encoderDeadband) {
+        this.encoderDeadband = encoderDeadband;
+        return this;
+      }
+
+      public Builder minResendIntervalMS(int minResendIntervalMS) {
+        this.minResendIntervalMS = minResendIntervalMS;
+        return this;
+      }
+
+      public Builder latencyPublishPeriodMS(int latencyPublishPeriodMS) {
+        this.latencyPublishPeriodMS = latencyPublishPeriodMS;
+        return this;
+      }
+
+      public Builder fusedFollow(boolean fusedFollow) {
+        this.fusedFollow = fusedFollow;
+        return this;
+      }
+
+      public Builder followRecordFile(String followRecordFile) {
+        this.followRecordFile = followRecordFile;
+        return this;
+      }
+
+      public Builder publishWindows(Map<String, PublishWindow.Settings> publishWindows) {
+        this.publishWindows = publishWindows;
+        return this;
+      }
+
+      public Builder publishHeartbeatMS(int publishHeartbeatMS) {
+        this.publishHeartbeatMS = publishHeartbeatMS;
+        return this;
+      }
+
+      public Builder diagOperationsRateHz(double diagOperationsRateHz) {
+        this.diagOperationsRateHz = diagOperationsRateHz;
+        return this;
+      }
+
+      public Builder diagDiagnosticRateHz(double diagDiagnosticRateHz) {
+        this.diagDiagnosticRateHz = diagDiagnosticRateHz;
+        return this;
+      }
+
+      public Builder diagMaxRateHz(double diagMaxRateHz) {
+        this.diagMaxRateHz = diagMaxRateHz;
+        return this;
+      }
+
+      public Builder diagStatsPeriodMS(int diagStatsPeriodMS) {
+        this.diagStatsPeriodMS = diagStatsPeriodMS;
+        return this;
+      }
+
+      public Builder telemetryAggregatePeriodsS(List<Integer> telemetryAggregatePeriodsS) {
+        this.telemetryAggregatePeriodsS = telemetryAggregatePeriodsS;
+        return this;
+      }
+
+      public Builder publishRawTelemetry(boolean publishRawTelemetry) {
+        this.publishRawTelemetry = publishRawTelemetry;
+        return this;
+      }
+
+      public Builder rawTelemetryMaxRateHz(double rawTelemetryMaxRateHz) {
+        this.rawTelemetryMaxRateHz = rawTelemetryMaxRateHz;
+        return this;
+      }
+
+      public Builder flightRecorderFile(String flightRecorderFile) {
+        this.flightRecorderFile = flightRecorderFile;
+        return this;
+      }
+
+      public Builder flightRecorderSizeMB(int flightRecorderSizeMB) {
+        this.flightRecorderSizeMB = flightRecorderSizeMB;
+        return this;
+      }
+
+      public TromboneControlConfig build() {
+        return new TromboneControlConfig(this);
+      }
+    }
   }
 
   /**
@@ -274,9 +533,21 @@ public class AssemblyContext {
     public final double upperFocusLimit;
     public final double lowerFocusLimit;
     public final double zenithFactor;
+    // Predictive follow (see FollowPredictor): the zenith angle and focus error are extrapolated this far ahead,
+    // 0 to follow the last values
+    public final int predictionLeadTimeMS;
+    // The number of recent samples fitted and the polynomial order of the fit (1 or 2)
+    public final int predictionWindow;
+    public final int predictionOrder;
+    // Closed loop follow (see ClosedLoopFollowActor): the loop rate, 0 for the event driven follow loop, and the gains
+    // of the FollowController, applied to the stage position error in encoder counts
+    public final double closedLoopRateHz;
+    public final double closedLoopKp;
+    public final double closedLoopKi;
+    public final double closedLoopKd;
 
     /**
-     * Configuration class
+     * Configuration class, without prediction
      *
      * @param defaultInitialElevation a default initial eleveation (possibly remove once workign)
      * @param focusErrorGain          gain value for focus error
@@ -285,11 +556,58 @@ public class AssemblyContext {
      * @param zenithFactor            an algorithm value for scaling zenith angle term
      */
     public TromboneCalculationConfig(double defaultInitialElevation, double focusErrorGain, double upperFocusLimit, double lowerFocusLimit, double zenithFactor) {
+      this(defaultInitialElevation, focusErrorGain, upperFocusLimit, lowerFocusLimit, zenithFactor, 0, 8, 2);
+    }
+
+    /**
+     * Configuration class, with the event driven follow loop
+     *
+     * @param defaultInitialElevation a default initial eleveation (possibly remove once workign)
+     * @param focusErrorGain          gain value for focus error
+     * @param upperFocusLimit         check for maximum focus error
+     * @param lowerFocusLimit         check for minimum focus error
+     * @param zenithFactor            an algorithm value for scaling zenith angle term
+     * @param predictionLeadTimeMS    how far ahead to predict the zenith angle and focus error, 0 for no prediction
+     * @param predictionWindow        the number of samples used for the prediction
+     * @param predictionOrder         the polynomial order used for the prediction
+     */
+    public TromboneCalculationConfig(double defaultInitialElevation, double focusErrorGain, double upperFocusLimit, double lowerFocusLimit,
+                                     double zenithFactor, int predictionLeadTimeMS, int predictionWindow, int predictionOrder) {
+      this(defaultInitialElevation, focusErrorGain, upperFocusLimit, lowerFocusLimit, zenithFactor, predictionLeadTimeMS, predictionWindow,
+        predictionOrder, 0.0, 1.0, 0.0, 0.0);
+    }
+
+    /**
+     * Configuration class
+     *
+     * @param defaultInitialElevation a default initial eleveation (possibly remove once workign)
+     * @param focusErrorGain          gain value for focus error
+     * @param upperFocusLimit         check for maximum focus error
+     * @param lowerFocusLimit         check for minimum focus error
+     * @param zenithFactor            an algorithm value for scaling zenith angle term
+     * @param predictionLeadTimeMS    how far ahead to predict the zenith angle and focus error, 0 for no prediction
+     * @param predictionWindow        the number of samples used for the prediction
+     * @param predictionOrder         the polynomial order used for the prediction
+     * @param closedLoopRateHz        the rate of the closed loop follow controller, 0 for the event driven follow loop
+     * @param closedLoopKp            proportional gain of the closed loop follow controller
+     * @param closedLoopKi            integral gain of the closed loop follow controller, per second
+     * @param closedLoopKd            derivative gain of the closed loop follow controller, in seconds
+     */
+    public TromboneCalculationConfig(double defaultInitialElevation, double focusErrorGain, double upperFocusLimit, double lowerFocusLimit,
+                                     double zenithFactor, int predictionLeadTimeMS, int predictionWindow, int predictionOrder,
+                                     double closedLoopRateHz, double closedLoopKp, double closedLoopKi, double closedLoopKd) {
       this.defaultInitialElevation = defaultInitialElevation;
       this.focusErrorGain = focusErrorGain;
       this.upperFocusLimit = upperFocusLimit;
       this.lowerFocusLimit = lowerFocusLimit;
       this.zenithFactor = zenithFactor;
+      this.predictionLeadTimeMS = predictionLeadTimeMS;
+      this.predictionWindow = predictionWindow;
+      this.predictionOrder = predictionOrder;
+      this.closedLoopRateHz = closedLoopRateHz;
+      this.closedLoopKp = closedLoopKp;
+      this.closedLoopKi = closedLoopKi;
+      this.closedLoopKd = closedLoopKd;
     }
 
     /**
@@ -304,6 +622,20 @@ public class AssemblyContext {
       this.upperFocusLimit = config.getDouble(prefix + ".calculation-config.upperFocusLimit");
       this.lowerFocusLimit = config.getDouble(prefix + ".calculation-config.lowerFocusLimit");
       this.zenithFactor = config.getDouble(prefix + ".calculation-config.zenithFactor");
+      this.predictionLeadTimeMS = config.hasPath(prefix + ".calculation-config.predictionLeadTimeMS")
+        ? config.getInt(prefix + ".calculation-config.predictionLeadTimeMS") : 0;
+      this.predictionWindow = config.hasPath(prefix + ".calculation-config.predictionWindow")
+        ? config.getInt(prefix + ".calculation-config.predictionWindow") : 8;
+      this.predictionOrder = config.hasPath(prefix + ".calculation-config.predictionOrder")
+        ? config.getInt(prefix + ".calculation-config.predictionOrder") : 2;
+      this.closedLoopRateHz = config.hasPath(prefix + ".calculation-config.closedLoopRateHz")
+        ? config.getDouble(prefix + ".calculation-config.closedLoopRateHz") : 0.0;
+      this.closedLoopKp = config.hasPath(prefix + ".calculation-config.closedLoopKp")
+        ? config.getDouble(prefix + ".calculation-config.closedLoopKp") : 1.0;
+      this.closedLoopKi = config.hasPath(prefix + ".calculation-config.closedLoopKi")
+        ? config.getDouble(prefix + ".calculation-config.closedLoopKi") : 0.0;
+      this.closedLoopKd = config.hasPath(prefix + ".calculation-config.closedLoopKd")
+        ? config.getDouble(prefix + ".calculation-config.closedLoopKd") : 0.0;
     }
   }
 }
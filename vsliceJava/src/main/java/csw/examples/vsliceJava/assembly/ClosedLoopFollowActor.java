@@ -0,0 +1,282 @@
+package csw.examples.vsliceJava.assembly;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.Cancellable;
+import akka.actor.Props;
+import akka.event.Logging;
+import akka.event.LoggingAdapter;
+import akka.japi.Creator;
+import akka.japi.pf.ReceiveBuilder;
+import csw.examples.vsliceJava.hcd.TromboneHCD;
+import csw.examples.vsliceJava.shared.ExecutorClock;
+import csw.examples.vsliceJava.shared.FlightRecorder;
+import csw.examples.vsliceJava.shared.SimulationClock;
+import csw.util.config.BooleanItem;
+import csw.util.config.DoubleItem;
+import javacsw.services.ccs.JHcdController;
+import javacsw.services.events.IEventService;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+import static csw.examples.vsliceJava.assembly.Algorithms.*;
+import static csw.examples.vsliceJava.assembly.AssemblyContext.TromboneCalculationConfig;
+import static csw.examples.vsliceJava.assembly.AssemblyContext.TromboneControlConfig;
+import static csw.examples.vsliceJava.assembly.FollowInputSlot.FollowInputStats;
+import static csw.examples.vsliceJava.assembly.FollowPredictor.PredictionStats;
+import static csw.examples.vsliceJava.assembly.TromboneControl.GetSetpointStats;
+import static csw.examples.vsliceJava.assembly.TromboneControl.SetpointStats;
+import static csw.examples.vsliceJava.assembly.TrombonePublisher.AOESWUpdate;
+import static csw.examples.vsliceJava.assembly.TrombonePublisher.EngrUpdate;
+import static csw.services.ccs.HcdController.Submit;
+import static csw.services.events.EventService.EventMonitor;
+import static csw.util.config.Events.SystemEvent;
+import static csw.util.config.StateVariable.CurrentState;
+import static javacsw.util.config.JItems.jitem;
+import static javacsw.util.config.JItems.jvalue;
+
+/**
+ * ClosedLoopFollowActor follows the zenith angle and focus error with a fixed rate closed loop, for the closed loop
+ * follow mode (see closedLoopRateHz in the calculation-config). It takes the place of the TromboneEventSubscriber,
+ * FollowActor and TromboneControl.
+ * <p>
+ * The zenith angle and focus error events only update the latest values. At each tick of the loop, the stage position
+ * for the latest values is calculated as in the FollowActor, and a FollowController compares it with the latest axis
+ * position from the HCD CurrentState and gives the position that is submitted to the HCD. So the HCD gets a command
+ * every period, however the events arrive. Until the HCD reports the axis position, the calculated position is submitted.
+ * <p>
+ * The ticks come from a clock with its own scheduler thread (see ExecutorClock), so they are not delayed by other timers
+ * in the actor system. The AOESW and engineering updates are sent to the TrombonePublisher after the submit, only on
+ * the ticks that follow new values.
+ * <p>
+ * As in the FollowActor, the elevation stays at its initial value.
+ */
+@SuppressWarnings("OptionalUsedAsFieldOrParameterType")
+class ClosedLoopFollowActor extends AbstractActor {
+
+  private LoggingAdapter log = Logging.getLogger(getContext().system(), this);
+
+  private final AssemblyContext ac;
+  private final TromboneCalculationConfig calculationConfig;
+  private final TromboneControlConfig controlConfig;
+  private final Optional<ActorRef> eventPublisher;
+  private final Optional<FollowLatency> latency;
+  // The assembly's recorder, or one that drops everything
+  private final FlightRecorder flightRecorder;
+  private final EventMonitor subscribeMonitor;
+  private final FollowController controller;
+
+  // The clock is closed in postStop if it was created here
+  private final SimulationClock clock;
+  private final boolean ownClock;
+  private final Cancellable tickTimer;
+
+  // May be updated if the HCD goes down or up
+  private Optional<ActorRef> tromboneHCD;
+
+  // The latest inputs
+  private boolean nssInUse;
+  private final double cElevation;
+  private double cFocusError = 0.0;
+  private double cZenithAngle = 0.0;
+  private boolean hasInput = false;
+  private boolean inputChanged = false;
+  private long inputNanos;
+
+  // The latest axis position from the HCD
+  private boolean hasAxisPosition = false;
+  private int axisPosition;
+
+  private long lastTickNanos;
+  private long submitCount = 0;
+
+  /**
+   * Constructor
+   *
+   * @param ac               the trombone AssemblyContext contains important shared values and useful function
+   * @param initialElevation the elevation used in the calculations
+   * @param nssInUseIn       set to true if the NFIRAOS Source Simulator is in use, then the zenith angle is always 0.0
+   * @param tromboneHCDIn    the actor reference to the trombone HCD as an optional value
+   * @param eventPublisher   the actor reference to the TrombonePublisher as an optional value
+   * @param eventService     EventService for subscriptions
+   * @param latency          if present, the time from the latest sample to the submit is recorded here
+   * @param clockIn          the clock for the loop ticks, if empty an ExecutorClock is used
+   * @param flightRecorder   if present, the inputs, calculated elevations and encoder commands are recorded here
+   */
+  private ClosedLoopFollowActor(AssemblyContext ac, DoubleItem initialElevation, BooleanItem nssInUseIn, Optional<ActorRef> tromboneHCDIn,
+                                Optional<ActorRef> eventPublisher, IEventService eventService, Optional<FollowLatency> latency,
+                                Optional<SimulationClock> clockIn, Optional<FlightRecorder> flightRecorder) {
+    this.ac = ac;
+    this.calculationConfig = ac.calculationConfig;
+    this.controlConfig = ac.controlConfig;
+    this.tromboneHCD = tromboneHCDIn;
+    this.eventPublisher = eventPublisher;
+    this.latency = latency;
+    this.flightRecorder = flightRecorder.orElse(FlightRecorder.disabled());
+
+    cElevation = jvalue(initialElevation);
+    nssInUse = jvalue(nssInUseIn);
+    controller = new FollowController(calculationConfig, controlConfig);
+
+    // Always subscribe to focus error, but only subscribe to ZA if nss is not in use
+    subscribeMonitor = nssInUse
+      ? eventService.subscribe(self(), false, ac.feConfigKey.prefix())
+      : eventService.subscribe(self(), false, ac.feConfigKey.prefix(), ac.zaConfigKey.prefix());
+
+    // The axis position comes from the HCD CurrentState
+    tromboneHCD.ifPresent(actorRef -> actorRef.tell(JHcdController.Subscribe, self()));
+
+    ownClock = !clockIn.isPresent();
+    clock = clockIn.orElseGet(() -> new ExecutorClock("closedLoopFollow"));
+    long periodNanos = Math.round(1e9 / calculationConfig.closedLoopRateHz);
+    lastTickNanos = clock.nanoTime();
+    tickTimer = clock.schedule(Duration.ofNanos(periodNanos), Duration.ofNanos(periodNanos), self(), ControlTick.instance);
+
+    receive(ReceiveBuilder.
+      match(SystemEvent.class, event -> {
+        latency.ifPresent(l ->
+          l.eventToSubscriberHistogram.recordNanos(Duration.between(event.info().eventTime().time(), Instant.now()).toNanos()));
+        if (event.info().source().equals(ac.zaConfigKey)) {
+          DoubleItem za = jitem(event, ac.zenithAngleKey);
+          if (za.units() != ac.zenithAngleUnits)
+            log.error("Ignoring event data received with improper units: zenithAngle: " + za.units());
+          else updateInput(jvalue(za), cFocusError);
+        } else if (event.info().source().equals(ac.feConfigKey)) {
+          DoubleItem fe = jitem(event, ac.focusErrorKey);
+          if (fe.units() != ac.focusErrorUnits)
+            log.error("Ignoring event data received with improper units: focusError: " + fe.units());
+          else updateInput(cZenithAngle, jvalue(fe));
+        } else log.info("ClosedLoopFollowActor received an unknown SystemEvent: " + event.info().source());
+      }).
+      match(CurrentState.class, cs -> {
+        if (cs.configKey().equals(TromboneHCD.axisStateCK) && cs.exists(TromboneHCD.positionKey)) {
+          axisPosition = jvalue(jitem(cs, TromboneHCD.positionKey));
+          hasAxisPosition = true;
+        }
+      }).
+      match(ControlTick.class, t -> tick()).
+      match(FollowActor.SetZenithAngle.class, t -> updateInput(jvalue(t.zenithAngle), cFocusError)).
+      match(FollowCommand.UpdateZAandFE.class, t -> updateInput(jvalue(t.zenithAngle), jvalue(t.focusError))).
+      match(FollowCommand.UpdateNssInUse.class, t -> {
+        boolean newNssInUse = jvalue(t.nssInUse);
+        if (newNssInUse != nssInUse) {
+          if (newNssInUse) subscribeMonitor.unsubscribeFrom(ac.zaConfigKey.prefix());
+          else subscribeMonitor.subscribeTo(ac.zaConfigKey.prefix());
+          nssInUse = newNssInUse;
+          cZenithAngle = 0.0;
+        }
+      }).
+      match(GetSetpointStats.class, t ->
+        // Every tick is submitted, nothing is suppressed
+        sender().tell(new SetpointStats(submitCount, 0), self())).
+      match(FollowActor.GetPredictionStats.class, t ->
+        sender().tell(new PredictionStats(0, 0.0, 0.0, 0.0, 0.0), self())).
+      match(FollowActor.GetFollowInputStats.class, t ->
+        // There is no input slot in this mode
+        sender().tell(new FollowInputStats(0, 0, 0, 0, 0, 0), self())).
+      match(TromboneAssembly.UpdateTromboneHCD.class, t -> {
+        // The position of a new HCD is not known until it reports it
+        tromboneHCD.ifPresent(actorRef -> actorRef.tell(JHcdController.Unsubscribe, self()));
+        tromboneHCD = t.tromboneHCD;
+        tromboneHCD.ifPresent(actorRef -> actorRef.tell(JHcdController.Subscribe, self()));
+        hasAxisPosition = false;
+        controller.reset();
+      }).
+      matchAny(t -> log.warning("Unexpected message received in ClosedLoopFollowActor: " + t)).
+      build());
+  }
+
+  // Keeps the new values for the next tick
+  private void updateInput(double zenithAngle, double focusError) {
+    if (!verifyZenithAngle(zenithAngle) || !verifyFocusError(calculationConfig, focusError)) {
+      log.error("Ignoring out of range event data: zenithAngle: " + zenithAngle + ", focusError: " + focusError);
+      return;
+    }
+    flightRecorder.recordFollowInput(zenithAngle, focusError);
+    cZenithAngle = zenithAngle;
+    cFocusError = focusError;
+    inputNanos = System.nanoTime();
+    hasInput = true;
+    inputChanged = true;
+  }
+
+  // One step of the loop: calculates the stage position for the latest values and submits the controller output
+  private void tick() {
+    long now = clock.nanoTime();
+    double dtSeconds = (now - lastTickNanos) / 1e9;
+    lastTickNanos = now;
+    if (!hasInput) return;
+
+    double totalRangeDistance = focusZenithAngleToRangeDistance(calculationConfig, cElevation, cFocusError, cZenithAngle);
+    double newTrombonePosition = rangeDistanceToStagePosition(totalRangeDistance);
+    int target = stagePositionToEncoder(controlConfig, newTrombonePosition);
+    int encoderPosition = hasAxisPosition ? controller.update(target, axisPosition, dtSeconds) : target;
+
+    // Final check before sending off to hardware
+    assert (encoderPosition > controlConfig.minEncoderLimit && encoderPosition < controlConfig.maxEncoderLimit);
+
+    flightRecorder.recordEncoderCommand(encoderPosition);
+    tromboneHCD.ifPresent(actorRef -> actorRef.tell(new Submit(TromboneHCD.positionSC(encoderPosition)), self()));
+    submitCount++;
+
+    if (inputChanged) {
+      inputChanged = false;
+      latency.ifPresent(l -> l.subscriberToSubmitHistogram.recordNanos(System.nanoTime() - inputNanos));
+      double newElevation = rangeDistanceToElevation(totalRangeDistance, cZenithAngle);
+      flightRecorder.recordElevationRange(newElevation, totalRangeDistance);
+      eventPublisher.ifPresent(actorRef -> {
+        // The sodiumLayer event is not published when the NSS is in use, as in the FollowActor
+        if (!nssInUse) actorRef.tell(new AOESWUpdate(newElevation, totalRangeDistance), self());
+        actorRef.tell(new EngrUpdate(cFocusError, newTrombonePosition, cZenithAngle), self());
+      });
+    }
+  }
+
+  @Override
+  public void postStop() throws Exception {
+    tickTimer.cancel();
+    if (ownClock) ((ExecutorClock) clock).close();
+    tromboneHCD.ifPresent(actorRef -> actorRef.tell(JHcdController.Unsubscribe, self()));
+    subscribeMonitor.stop();
+    super.postStop();
+  }
+
+  // --- static defs ---
+
+  public static Props props(AssemblyContext ac, DoubleItem initialElevation, BooleanItem nssInUseIn, Optional<ActorRef> tromboneHCDIn,
+                            Optional<ActorRef> eventPublisher, IEventService eventService, Optional<FollowLatency> latency) {
+    return props(ac, initialElevation, nssInUseIn, tromboneHCDIn, eventPublisher, eventService, latency, Optional.empty());
+  }
+
+  // Props with the clock for the loop ticks, for instance a VirtualClock in tests
+  public static Props props(AssemblyContext ac, DoubleItem initialElevation, BooleanItem nssInUseIn, Optional<ActorRef> tromboneHCDIn,
+                            Optional<ActorRef> eventPublisher, IEventService eventService, Optional<FollowLatency> latency,
+                            Optional<SimulationClock> clock) {
+    return props(ac, initialElevation, nssInUseIn, tromboneHCDIn, eventPublisher, eventService, latency, clock, Optional.empty());
+  }
+
+  // Props with the clock for the loop ticks and the assembly's flight recorder
+  public static Props props(AssemblyContext ac, DoubleItem initialElevation, BooleanItem nssInUseIn, Optional<ActorRef> tromboneHCDIn,
+                            Optional<ActorRef> eventPublisher, IEventService eventService, Optional<FollowLatency> latency,
+                            Optional<SimulationClock> clock, Optional<FlightRecorder> flightRecorder) {
+    return Props.create(new Creator<ClosedLoopFollowActor>() {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      public ClosedLoopFollowActor create() throws Exception {
+        return new ClosedLoopFollowActor(ac, initialElevation, nssInUseIn, tromboneHCDIn, eventPublisher, eventService, latency, clock,
+          flightRecorder);
+      }
+    });
+  }
+
+  // Sent by the clock every period
+  private static class ControlTick {
+    static final ControlTick instance = new ControlTick();
+
+    private ControlTick() {
+    }
+  }
+}
@@ -1,5 +1,6 @@
 package csw.examples.vsliceJava.assembly;
 
+import akka.actor.AbstractActor;
 import akka.actor.ActorRef;
 import akka.actor.Cancellable;
 import akka.actor.Props;
@@ -8,8 +9,9 @@ import akka.event.LoggingAdapter;
 import akka.japi.Creator;
 import akka.japi.pf.ReceiveBuilder;
 import csw.examples.vsliceJava.hcd.TromboneHCD;
+import csw.examples.vsliceJava.shared.RealTimeClock;
+import csw.examples.vsliceJava.shared.SimulationClock;
 import csw.services.loc.LocationService;
-import csw.services.ts.AbstractTimeServiceScheduler;
 import csw.util.config.StateVariable.CurrentState;
 import javacsw.services.ccs.JHcdController;
 import javacsw.services.pkg.ILocationSubscriberClient;
@@ -17,6 +19,9 @@ import javacsw.util.config.JPublisherActor;
 import scala.PartialFunction;
 import scala.runtime.BoxedUnit;
 
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 
@@ -24,7 +29,6 @@ import static csw.examples.vsliceJava.assembly.TrombonePublisher.AxisStateUpdate
 import static csw.examples.vsliceJava.assembly.TrombonePublisher.AxisStatsUpdate;
 import static csw.examples.vsliceJava.hcd.TromboneHCD.TromboneEngineering.GetAxisStats;
 import static csw.examples.vsliceJava.hcd.TromboneHCD.*;
-import static csw.services.ts.TimeService.localTimeNow;
 import static javacsw.util.config.JItems.jitem;
 import static csw.services.loc.LocationService.Location;
 
@@ -32,12 +36,16 @@ import static csw.services.loc.LocationService.Location;
  * DiagPublisher provides diagnostic telemetry in the form of two events. DiagPublisher operaties in the 'OperationsState' or 'DiagnosticState'.
  *
  * DiagPublisher listens in on axis state updates from the HCD and publishes them as a StatusEvent through the assembly's event publisher.
- * In OperationsState, it publishes every 5'th axis state update (set with val operationsSkipCount.
- * In DiagnosticState, it publishes every other axis update (more frequent in diagnostic state).
+ * The axis state is sampled by time rather than by count, so the telemetry rate does not depend on how fast the HCD updates:
+ * in OperationsState, it publishes at most diagOperationsRateHz axis state updates per second, and in DiagnosticState at most
+ * diagDiagnosticRateHz (more frequent in diagnostic state), both set in the control-config and limited to diagMaxRateHz.
+ * An update whose axis state or limit flags differ from the last one published is always published at once.
+ * If the control-config has telemetryAggregatePeriodsS, DiagPublisher also subscribes the event publisher to every raw
+ * axis update of the HCD (see TromboneHCD.RawAxisUpdates), so that the aggregates are not computed from the samples.
  *
  * context.become is used to implement a state machine with two states operationsReceive and diagnosticReceive
  *
- * In DiagnosticState, it also publishes an axis statistics event every second. Every one second (diagnosticAxisStatsPeriod), it
+ * In DiagnosticState, it also publishes an axis statistics event every second. Every diagStatsPeriodMS (one second by default), it
  * sends the GetAxisStats message to the HCD. When the data arrives, it is sent to the event publisher.
  *
  * This actor demonstrates a few techniques. First, it has no variables. Each state in the actor is represented by its own
@@ -46,17 +54,24 @@ import static csw.services.loc.LocationService.Location;
  *
  * This shows how to filter events from the CurrentState stream from the HCD.
  *
- * This shows how to use the TimeService to send periodic messages and how to periodically call another actor and process its
- * response.
+ * This shows how to use a SimulationClock to send periodic messages and how to periodically call another actor and process its
+ * response. The clock is real time unless a VirtualClock is given, for instance in tests.
  */
 @SuppressWarnings({"OptionalUsedAsFieldOrParameterType", "unused"})
-public class DiagPublisher extends AbstractTimeServiceScheduler implements ILocationSubscriberClient {
+public class DiagPublisher extends AbstractActor implements ILocationSubscriberClient {
 
   LoggingAdapter log = Logging.getLogger(getContext().system(), this);
 
 //  private final ActorRef currentStateReceiver;
   private final Optional<ActorRef> eventPublisher;
   private final String hcdName;
+  private final SimulationClock clock;
+  // The shortest time between sampled axis state events in each state, Long.MAX_VALUE to publish only changes
+  private final long operationsPeriodNanos;
+  private final long diagnosticPeriodNanos;
+  private final int statsPeriodMS;
+  // If the publisher aggregates the axis position, it is subscribed to every axis update of the HCD
+  private final boolean rawUpdatesToPublisher;
 
   /**
    * Constructor
@@ -64,40 +79,52 @@ public class DiagPublisher extends AbstractTimeServiceScheduler implements ILoca
    * @param assemblyContext      the assembly context provides overall assembly information and convenience functions
    * @param tromboneHCDIn        initial actorRef of the tromboneHCD as a [[scala.Option]]
    * @param eventPublisher     initial actorRef of an instance of the TrombonePublisher as [[scala.Option]]
+   * @param clock              the clock used for sampling and the axis stats timer, if empty real time is used
    */
-  private DiagPublisher(AssemblyContext assemblyContext, Optional<ActorRef> tromboneHCDIn, Optional<ActorRef> eventPublisher) {
+  private DiagPublisher(AssemblyContext assemblyContext, Optional<ActorRef> tromboneHCDIn, Optional<ActorRef> eventPublisher,
+                        Optional<SimulationClock> clock) {
 //    this.currentStateReceiver = currentStateReceiver;
     this.eventPublisher = eventPublisher;
+    this.clock = clock.orElseGet(() -> new RealTimeClock(context().system()));
+
+    AssemblyContext.TromboneControlConfig controlConfig = assemblyContext.controlConfig;
+    this.operationsPeriodNanos = samplePeriodNanos(controlConfig.diagOperationsRateHz, controlConfig.diagMaxRateHz);
+    this.diagnosticPeriodNanos = samplePeriodNanos(controlConfig.diagDiagnosticRateHz, controlConfig.diagMaxRateHz);
+    this.statsPeriodMS = controlConfig.diagStatsPeriodMS;
+    this.rawUpdatesToPublisher = !controlConfig.telemetryAggregatePeriodsS.isEmpty();
 
     subscribeToLocationUpdates();
 
-    tromboneHCDIn.ifPresent(actorRef -> actorRef.tell(JPublisherActor.Subscribe, self()));
+    tromboneHCDIn.ifPresent(actorRef -> {
+      actorRef.tell(JPublisherActor.Subscribe, self());
+      subscribeRawUpdates(actorRef);
+    });
     // It would be nice if this message was in a more general location than HcdController or
 
     // This works because we only have one HCD
     this.hcdName = assemblyContext.info.getConnections().get(0).name();
 
-    // Start in operations mode - 0 is initial stateMessageCounter value
-    receive(operationsReceive(/*currentStateReceiver,*/ 0, tromboneHCDIn));
+    // Start in operations mode - nothing published yet
+    receive(operationsReceive(/*currentStateReceiver,*/ Optional.empty(), tromboneHCDIn));
   }
 
   /**
    * The receive method in operations state.
    * <p>
-   * In operations state every 5th AxisUpdate message from the HCD is published as a status event. It sends an AxisStateUpdate message
-   * to the event publisher
+   * In operations state AxisUpdate messages from the HCD are sampled at diagOperationsRateHz and published as a status event.
+   * It sends an AxisStateUpdate message to the event publisher
    *
-   * @param stateMessageCounter the number of messages received by the diag publisher
+   * @param lastPublished       the time and transition items of the last axis state published, if any
    * @param tromboneHCD         the trombone HCD ActorRef as an Option
    * @return Receive partial function
    */
-  private PartialFunction<Object, BoxedUnit> operationsReceive(int stateMessageCounter, Optional<ActorRef> tromboneHCD) {
+  private PartialFunction<Object, BoxedUnit> operationsReceive(Optional<PublishedState> lastPublished, Optional<ActorRef> tromboneHCD) {
     //noinspection CodeBlock2Expr
     return ReceiveBuilder.
       match(CurrentState.class, cs -> {
         if (cs.configKey().equals(TromboneHCD.axisStateCK)) {
-          if (stateMessageCounter % operationsSkipCount == 0) publishStateUpdate(cs);
-          context().become(operationsReceive(stateMessageCounter + 1, tromboneHCD));
+          Optional<PublishedState> published = sampleStateUpdate(cs, lastPublished, operationsPeriodNanos);
+          if (published != lastPublished) context().become(operationsReceive(published, tromboneHCD));
         }
       }).
       match(TimeForAxisStats.class, t -> {
@@ -109,11 +136,11 @@ public class DiagPublisher extends AbstractTimeServiceScheduler implements ILoca
       match(DiagnosticState.class, t -> {
         // If the DiagnosticMode message is received, begin collecting axis stats messages based on a timer and query to HCD
         // The cancelToken allows turning off the timer when
-        Cancellable cancelToken = scheduleOnce(localTimeNow().plusSeconds(diagnosticAxisStatsPeriod), self(), new TimeForAxisStats(diagnosticAxisStatsPeriod));
-        context().become(diagnosticReceive(stateMessageCounter, tromboneHCD, cancelToken));
+        Cancellable cancelToken = clock.scheduleOnce(Duration.ofMillis(statsPeriodMS), self(), new TimeForAxisStats(statsPeriodMS));
+        context().become(diagnosticReceive(lastPublished, tromboneHCD, cancelToken));
       }).
       match(TromboneAssembly.UpdateTromboneHCD.class, t -> {
-        context().become(operationsReceive(stateMessageCounter, t.tromboneHCD));
+        context().become(operationsReceive(lastPublished, t.tromboneHCD));
       }).
       match(Location.class, location -> {
 
@@ -122,19 +149,22 @@ public class DiagPublisher extends AbstractTimeServiceScheduler implements ILoca
             LocationService.ResolvedAkkaLocation rloc = (LocationService.ResolvedAkkaLocation) location;
             log.info("operationsReceive updated actorRef: " + rloc.getActorRef());
             Optional<ActorRef> newHcdActorRef = rloc.getActorRef();
-            newHcdActorRef.ifPresent(actorRef -> actorRef.tell(JHcdController.Subscribe, self()));
-            context().become(operationsReceive(stateMessageCounter, newHcdActorRef));
+            newHcdActorRef.ifPresent(actorRef -> {
+              actorRef.tell(JHcdController.Subscribe, self());
+              subscribeRawUpdates(actorRef);
+            });
+            context().become(operationsReceive(lastPublished, newHcdActorRef));
           }
 
         } else if (location instanceof LocationService.Unresolved) {
           if (Objects.equals(location.connection().name(), hcdName)) {
             log.info("operationsReceive got unresolve for trombone HCD");
-            context().become(operationsReceive(stateMessageCounter, Optional.empty()));
+            context().become(operationsReceive(lastPublished, Optional.empty()));
           }
         } else if (location instanceof LocationService.UnTrackedLocation) {
           if (Objects.equals(location.connection().name(), hcdName)) {
             log.info("operationsReceive got untrack for trombone HCD");
-            context().become(operationsReceive(stateMessageCounter, Optional.empty()));
+            context().become(operationsReceive(lastPublished, Optional.empty()));
           }
         }
       }).
@@ -145,30 +175,29 @@ public class DiagPublisher extends AbstractTimeServiceScheduler implements ILoca
   /**
    * The receive method in diagnostic state
    *
-   * @param stateMessageCounter the number of messages received by the diag publisher
+   * @param lastPublished       the time and transition items of the last axis state published, if any
    * @param tromboneHCD         the trombone HCD ActorRef as an Option
    * @param cancelToken         a token that allows the current timer to be cancelled
    * @return Receive partial function
    */
-  private PartialFunction<Object, BoxedUnit> diagnosticReceive(int stateMessageCounter,
+  private PartialFunction<Object, BoxedUnit> diagnosticReceive(Optional<PublishedState> lastPublished,
                                                                Optional<ActorRef> tromboneHCD, Cancellable cancelToken) {
     return ReceiveBuilder.
       match(CurrentState.class, cs -> {
         if (cs.configKey().equals(TromboneHCD.axisStateCK)) {
-          if (stateMessageCounter % diagnosticSkipCount == 0) publishStateUpdate(cs);
-          context().become(diagnosticReceive(stateMessageCounter + 1, tromboneHCD, cancelToken));
+          Optional<PublishedState> published = sampleStateUpdate(cs, lastPublished, diagnosticPeriodNanos);
+          if (published != lastPublished) context().become(diagnosticReceive(published, tromboneHCD, cancelToken));
         } else if (cs.configKey().equals(TromboneHCD.axisStatsCK)) {
           // Here when a CurrentState is received with the axisStats configKey, the axis statistics are published as an event
           publishStatsUpdate(cs);
         }
       }).
       match(TimeForAxisStats.class, t -> {
-//        case TimeForAxisStats(periodInSeconds) =>
         // Here, every period, an Axis statistics is requested, which is then pubilshed for diagnostics when the response arrives
         // This shows how to periodically query the HCD
         tromboneHCD.ifPresent(actorRef -> actorRef.tell(GetAxisStats, self()));
-        Cancellable canceltoken = scheduleOnce(localTimeNow().plusSeconds(t.periodInSeconds), self(), new TimeForAxisStats(t.periodInSeconds));
-        context().become(diagnosticReceive(stateMessageCounter, tromboneHCD, canceltoken));
+        Cancellable canceltoken = clock.scheduleOnce(Duration.ofMillis(t.periodMS), self(), new TimeForAxisStats(t.periodMS));
+        context().become(diagnosticReceive(lastPublished, tromboneHCD, canceltoken));
       }).
       match(DiagnosticState.class, t -> {
         // Do nothing, already in this mode
@@ -176,11 +205,11 @@ public class DiagPublisher extends AbstractTimeServiceScheduler implements ILoca
       match(OperationsState.class, t -> {
         // Switch to Operations State
         cancelToken.cancel();
-        context().become(operationsReceive(stateMessageCounter, tromboneHCD));
+        context().become(operationsReceive(lastPublished, tromboneHCD));
       }).
       match(TromboneAssembly.UpdateTromboneHCD.class, t -> {
         // The actor ref of the trombone HCD has changed
-        context().become(diagnosticReceive(stateMessageCounter, t.tromboneHCD, cancelToken));
+        context().become(diagnosticReceive(lastPublished, t.tromboneHCD, cancelToken));
       }).
       match(Location.class, location -> {
 
@@ -189,20 +218,23 @@ public class DiagPublisher extends AbstractTimeServiceScheduler implements ILoca
             LocationService.ResolvedAkkaLocation rloc = (LocationService.ResolvedAkkaLocation) location;
             log.info("diagnosticReceive updated actorRef: " + rloc.getActorRef());
             Optional<ActorRef> newHcdActorRef = rloc.getActorRef();
-            newHcdActorRef.ifPresent(actorRef -> actorRef.tell(JHcdController.Subscribe, self()));
-            context().become(diagnosticReceive(stateMessageCounter, newHcdActorRef, cancelToken));
+            newHcdActorRef.ifPresent(actorRef -> {
+              actorRef.tell(JHcdController.Subscribe, self());
+              subscribeRawUpdates(actorRef);
+            });
+            context().become(diagnosticReceive(lastPublished, newHcdActorRef, cancelToken));
           }
 
         } else if (location instanceof LocationService.Unresolved) {
           if (Objects.equals(location.connection().name(), hcdName)) {
             log.info("diagnosticReceive got unresolve for trombone HCD");
-            context().become(diagnosticReceive(stateMessageCounter, Optional.empty(), cancelToken));
+            context().become(diagnosticReceive(lastPublished, Optional.empty(), cancelToken));
           }
 
         } else if (location instanceof LocationService.UnTrackedLocation) {
           if (Objects.equals(location.connection().name(), hcdName)) {
             log.info("diagnosticReceive got untrack for trombone HCD");
-            context().become(diagnosticReceive(stateMessageCounter, Optional.empty(), cancelToken));
+            context().become(diagnosticReceive(lastPublished, Optional.empty(), cancelToken));
           }
         }
       }).
@@ -211,6 +243,27 @@ public class DiagPublisher extends AbstractTimeServiceScheduler implements ILoca
   }
 
 
+  /**
+   * Publishes the axis state if it is the first, if its axis state or a limit flag differs from the last one published,
+   * or if periodNanos has passed since the last one published
+   *
+   * @return the new last published state, or lastPublished itself if cs was not published
+   */
+  private Optional<PublishedState> sampleStateUpdate(CurrentState cs, Optional<PublishedState> lastPublished, long periodNanos) {
+    long now = clock.nanoTime();
+    List<Object> transitionItems = Arrays.asList(jitem(cs, stateKey), jitem(cs, inLowLimitKey), jitem(cs, inHighLimitKey), jitem(cs, inHomeKey));
+    boolean publish = lastPublished.map(last ->
+      !last.transitionItems.equals(transitionItems) || now - last.timeNanos >= periodNanos).orElse(true);
+    if (!publish) return lastPublished;
+    publishStateUpdate(cs);
+    return Optional.of(new PublishedState(now, transitionItems));
+  }
+
+  // The sampled axis state is not enough for the aggregates, so the HCD sends every axis update to the publisher
+  private void subscribeRawUpdates(ActorRef tromboneHCD) {
+    if (rawUpdatesToPublisher) eventPublisher.ifPresent(publisher -> tromboneHCD.tell(RawAxisUpdates.SubscribeRaw, publisher));
+  }
+
   private void publishStateUpdate(CurrentState cs) {
     log.debug("publish state: " + cs);
     eventPublisher.ifPresent(actorRef ->
@@ -235,18 +288,30 @@ public class DiagPublisher extends AbstractTimeServiceScheduler implements ILoca
           jitem(cs, limitCountKey),
           jitem(cs, successCountKey),
           jitem(cs, failureCountKey),
-          jitem(cs, cancelCountKey)),
+          jitem(cs, cancelCountKey),
+          jitem(cs, supersededCountKey)),
         self()));
   }
 
 
   // --- static defs ---
 
-  private static final int diagnosticSkipCount = 2;
-  private static final int operationsSkipCount = 5;
+  // The sample period for a rate limited to maxRateHz (if not 0), or Long.MAX_VALUE for a rate of 0 to publish only changes
+  static long samplePeriodNanos(double rateHz, double maxRateHz) {
+    double rate = maxRateHz > 0 ? Math.min(rateHz, maxRateHz) : rateHz;
+    return rate > 0 ? (long) (1e9 / rate) : Long.MAX_VALUE;
+  }
 
-  // Following are in units of seconds - could be in a configuration file
-  private static final int diagnosticAxisStatsPeriod = 1;
+  // The time and the items that are published at once when they change of the last axis state published
+  private static class PublishedState {
+    final long timeNanos;
+    final List<Object> transitionItems;
+
+    PublishedState(long timeNanos, List<Object> transitionItems) {
+      this.timeNanos = timeNanos;
+      this.transitionItems = transitionItems;
+    }
+  }
 
   /**
    * Internal messages used by diag publisher
@@ -257,10 +322,10 @@ public class DiagPublisher extends AbstractTimeServiceScheduler implements ILoca
 
   @SuppressWarnings("WeakerAccess")
   public static class TimeForAxisStats implements DiagPublisherMessages {
-    public final int periodInSeconds;
+    public final int periodMS;
 
-    public TimeForAxisStats(int periodInSeconds) {
-      this.periodInSeconds = periodInSeconds;
+    public TimeForAxisStats(int periodMS) {
+      this.periodMS = periodMS;
     }
   }
 
@@ -280,12 +345,25 @@ public class DiagPublisher extends AbstractTimeServiceScheduler implements ILoca
    * @param eventPublisher     initial actorRef of an instance of the TrombonePublisher as [[scala.Option]]
    */
   public static Props props(AssemblyContext assemblyContext, Optional<ActorRef> tromboneHCDIn, Optional<ActorRef> eventPublisher) {
+    return props(assemblyContext, tromboneHCDIn, eventPublisher, Optional.empty());
+  }
+
+  /**
+   * Used to create the actor with a given clock.
+   *
+   * @param assemblyContext      the assembly context provides overall assembly information and convenience functions
+   * @param tromboneHCDIn        initial actorRef of the tromboneHCD as a [[scala.Option]]
+   * @param eventPublisher     initial actorRef of an instance of the TrombonePublisher as [[scala.Option]]
+   * @param clock              the clock used for sampling and the axis stats timer, for instance a VirtualClock for tests
+   */
+  public static Props props(AssemblyContext assemblyContext, Optional<ActorRef> tromboneHCDIn, Optional<ActorRef> eventPublisher,
+                            Optional<SimulationClock> clock) {
     return Props.create(new Creator<DiagPublisher>() {
       private static final long serialVersionUID = 1L;
 
       @Override
       public DiagPublisher create() throws Exception {
-        return new DiagPublisher(assemblyContext, tromboneHCDIn, eventPublisher);
+        return new DiagPublisher(assemblyContext, tromboneHCDIn, eventPublisher, clock);
       }
     });
   }
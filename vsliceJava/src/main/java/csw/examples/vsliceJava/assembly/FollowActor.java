@@ -3,6 +3,7 @@ package csw.examples.vsliceJava.assembly;
 import akka.actor.*;
 import akka.event.Logging;
 import akka.event.LoggingAdapter;
+import csw.examples.vsliceJava.shared.FlightRecorder;
 import csw.util.config.BooleanItem;
 import csw.util.config.DoubleItem;
 import csw.util.config.Events.*;
@@ -11,16 +12,16 @@ import akka.japi.pf.ReceiveBuilder;
 import scala.PartialFunction;
 import scala.runtime.BoxedUnit;
 
-import java.time.Instant;
 import java.util.Optional;
 
 import static csw.examples.vsliceJava.assembly.Algorithms.*;
-import static javacsw.util.config.JItems.jset;
 import static javacsw.util.config.JItems.jvalue;
 import static csw.examples.vsliceJava.assembly.AssemblyContext.TromboneCalculationConfig;
-import static csw.examples.vsliceJava.assembly.AssemblyContext.TromboneControlConfig;
+import static csw.examples.vsliceJava.assembly.FollowInputSlot.FollowInputStats;
+import static csw.examples.vsliceJava.assembly.FollowPredictor.PredictionStats;
 import static csw.examples.vsliceJava.assembly.TrombonePublisher.AOESWUpdate;
 import static csw.examples.vsliceJava.assembly.TrombonePublisher.EngrUpdate;
+import static csw.examples.vsliceJava.assembly.TrombonePublisher.PredictionErrorUpdate;
 
 /**
  * FollowActor uses events from TCS and RTC to calculate the position of the trombone assembly when in follow mode, which is set
@@ -41,6 +42,10 @@ import static csw.examples.vsliceJava.assembly.TrombonePublisher.EngrUpdate;
  * of the actor to allow easier testing the publishing of the two types of events, but during operation both are set to the same
  * TrombonePublisher actor reference.
  *
+ * If predictionLeadTimeMS is set in the calculation-config, a FollowPredictor extrapolates the zenith angle and focus error
+ * to the time the stage is expected to get to its new position, and the stage position is calculated from the predicted
+ * values. The prediction errors are sent to the engPublisher at most once a second and are returned by GetPredictionStats.
+ *
  */
 @SuppressWarnings("OptionalUsedAsFieldOrParameterType")
 public class FollowActor extends AbstractActor {
@@ -54,10 +59,22 @@ public class FollowActor extends AbstractActor {
   private final Optional<ActorRef> tromboneControl;
   private final Optional<ActorRef> aoPublisher;
   private final Optional<ActorRef> engPublisher;
+  private final Optional<FollowInputSlot> input;
+  private final Optional<FollowLatency> latency;
+  private final Optional<FollowPredictor> predictor;
+  // The assembly's recorder, or one that drops everything
+  private final FlightRecorder flightRecorder;
+  private long lastPredictionPublishNanos = System.nanoTime();
 
   private final TromboneCalculationConfig calculationConfig;
   public final DoubleItem initialElevation;
 
+  // Follow state, kept as primitives so that an update does not allocate items or a new receive
+  private final boolean nssInUse;
+  private double cElevation;
+  private double cFocusError;
+  private double cZenithAngle;
+
   /**
    * Constructor
    *
@@ -66,107 +83,143 @@ public class FollowActor extends AbstractActor {
    * @param tromboneControl an actorRef as [[scala.Option]] of the actor that writes the position to the trombone HCD
    * @param aoPublisher an actorRef as [[scala.Option]] of the actor that publishes the sodiumLayer event
    * @param engPublisher an actorRef as [[scala.Option]] of the actor that publishes the eng telemetry event
+   * @param input if present, the slot where the event subscriber leaves the latest samples (see FollowInputSlot)
+   * @param latency if present, the time samples wait in the input slot is recorded here
+   * @param flightRecorder if present, the inputs and calculated elevations are recorded here
    */
   private FollowActor(AssemblyContext ac, DoubleItem initialElevation, BooleanItem inNSSMode, Optional<ActorRef> tromboneControl,
-                     Optional<ActorRef> aoPublisher, Optional<ActorRef> engPublisher) {
+                     Optional<ActorRef> aoPublisher, Optional<ActorRef> engPublisher, Optional<FollowInputSlot> input,
+                     Optional<FollowLatency> latency, Optional<FlightRecorder> flightRecorder) {
     this.ac = ac;
     this.initialElevation = initialElevation;
     this.inNSSMode = inNSSMode;
     this.tromboneControl = tromboneControl;
     this.aoPublisher = aoPublisher;
     this.engPublisher = engPublisher;
+    this.input = input;
+    this.latency = latency;
+    this.flightRecorder = flightRecorder.orElse(FlightRecorder.disabled());
 
     calculationConfig = ac.calculationConfig;
+    nssInUse = jvalue(inNSSMode);
+    predictor = calculationConfig.predictionLeadTimeMS > 0 ? Optional.of(new FollowPredictor(calculationConfig)) : Optional.empty();
 
     // In this implementation, these vars are needed to support the setElevation and setAngle commands which require an update
-    DoubleItem initialFocusError = jset(ac.focusErrorKey, 0.0).withUnits(ac.focusErrorUnits);
-    DoubleItem initialZenithAngle = jset(ac.zenithAngleKey, 0.0).withUnits(ac.zenithAngleUnits);
-
-//    DoubleItem nSSModeZenithAngle = jset(ac.zenithAngleKey, 0.0).withUnits(ac.zenithAngleUnits);
-
     // Initial receive - start with initial values
-    receive(followingReceive(initialElevation, initialFocusError, initialZenithAngle));
+    cElevation = jvalue(initialElevation);
+    cFocusError = 0.0;
+    cZenithAngle = 0.0;
+
+    receive(followingReceive());
   }
 
-  private PartialFunction<Object, BoxedUnit> followingReceive(DoubleItem cElevation, DoubleItem cFocusError, DoubleItem cZenithAngle) {
+  private PartialFunction<Object, BoxedUnit> followingReceive() {
     return ReceiveBuilder.
       match(StopFollowing.class, t -> {
         // do nothing
       }).
+      match(FollowUpdate.class, t -> follow(t.zenithAngle, t.focusError, t.timeNanos, System.nanoTime())).
+      match(FollowInputReady.class, t -> input.ifPresent(slot -> {
+        long now = System.nanoTime();
+        FollowUpdate update = slot.take(now);
+        // Null if the sample was already taken with an earlier FollowInputReady
+        if (update != null) {
+          latency.ifPresent(l -> l.subscriberToComputeHistogram.recordNanos(now - update.timeNanos));
+          follow(update.zenithAngle, update.focusError, update.timeNanos, now);
+        }
+      })).
+      match(GetPredictionStats.class, t ->
+        sender().tell(predictor.map(FollowPredictor::stats).orElse(new PredictionStats(0, 0.0, 0.0, 0.0, 0.0)), self())).
+      match(GetFollowInputStats.class, t ->
+        sender().tell(input.map(FollowInputSlot::stats).orElse(new FollowInputStats(0, 0, 0, 0, 0, 0)), self())).
       match(UpdatedEventData.class, t -> {
-        log.info("Got an Update Event: " + t);
+        log.debug("Got an Update Event: {}", t);
         // Not really using the time here
         // Units checks - should not happen, so if so, flag an error and skip calculation
         if (t.zenithAngle.units() != ac.zenithAngleUnits || t.focusError.units() != ac.focusErrorUnits) {
           log.error("Ignoring event data received with improper units: zenithAngle: " + t.zenithAngle.units() + ", focusError: " + t.focusError.units());
-        } else if (!verifyZenithAngle(t.zenithAngle) || !verifyFocusError(calculationConfig, t.focusError)) {
-          log.error("Ignoring out of range event data: zenithAngle: " + t.zenithAngle + ", focusError: " + t.focusError);
         } else {
-          // If inNSSMode is true, then we use angle 0.0
-          // Do the calculation and send updates out
-          double totalRangeDistance = focusZenithAngleToRangeDistance(calculationConfig, jvalue(cElevation), jvalue(t.focusError), jvalue(t.zenithAngle));
-
-          double newElevation = rangeDistanceToElevation(totalRangeDistance, jvalue(t.zenithAngle));
-
-          // Post a SystemEvent for AOESW if not inNSSMode according to spec
-          if (!jvalue(inNSSMode)) {
-            sendAOESWUpdate(jset(ac.naElevationKey, newElevation).withUnits(ac.naElevationUnits),
-              jset(ac.naRangeDistanceKey, totalRangeDistance).withUnits(ac.naRangeDistanceUnits));
-          }
-
-          DoubleItem newTrombonePosition = calculateNewTrombonePosition(calculationConfig, cElevation, t.focusError, t.zenithAngle);
-
-          // Send the new trombone stage position to the HCD
-          sendTrombonePosition(ac.controlConfig, newTrombonePosition);
-
-          // Post a StatusEvent for telemetry updates
-          sendEngrUpdate(t.focusError, newTrombonePosition, t.zenithAngle);
-
-          // Call again with new values - avoiding globals
-          // I should be using newElevation, but it doesn't work well without changes in other values, so I'm not updating
-          context().become(followingReceive(cElevation, t.focusError, t.zenithAngle));
+          // From here on only the values are used
+          long now = System.nanoTime();
+          follow(jvalue(t.zenithAngle), jvalue(t.focusError), now, now);
         }
       }).
       match(SetElevation.class, t -> {
         // This updates the current elevation and then causes an internal update to move things
         log.info("Got elevation: " + t.elevation);
-        // Restart the receive with the new value for elevation and the current values for others
-        context().become(followingReceive(t.elevation, cFocusError, cZenithAngle));
-        self().tell(new UpdatedEventData(cZenithAngle, cFocusError, new EventTime(Instant.now())), self());
+        cElevation = jvalue(t.elevation);
+        self().tell(new FollowUpdate(cZenithAngle, cFocusError, System.nanoTime()), self());
       }).
       match(SetZenithAngle.class, t -> {
         // This updates the current zenith angle and then causes an internal update to move things
         log.info("FollowActor setting angle to: " + t.zenithAngle);
-        // No need to call followReceive again since we are using the UpdateEventData message
-        self().tell(new UpdatedEventData(t.zenithAngle, cFocusError, new EventTime(Instant.now())), self());
+        self().tell(new FollowUpdate(jvalue(t.zenithAngle), cFocusError, System.nanoTime()), self());
       }).
       matchAny(t -> log.warning("Unexpected message in TromboneAssembly:FollowActor: " + t)).
       build();
   }
 
+  // Does the calculation for new zenith angle and focus error values and sends the updates out.
+  // sampleNanos is when the sample entered the assembly and computeNanos when the calculation started, both from System.nanoTime()
+  private void follow(double zenithAngle, double focusError, long sampleNanos, long computeNanos) {
+    if (!verifyZenithAngle(zenithAngle) || !verifyFocusError(calculationConfig, focusError)) {
+      log.error("Ignoring out of range event data: zenithAngle: " + zenithAngle + ", focusError: " + focusError);
+      return;
+    }
+    flightRecorder.recordFollowInput(zenithAngle, focusError);
+    // When predicting, the calculation uses the values expected when the stage gets to its new position
+    double za = zenithAngle;
+    double fe = focusError;
+    if (predictor.isPresent()) {
+      FollowPredictor.Prediction p = predictor.get().update(sampleNanos, computeNanos, zenithAngle, focusError);
+      za = p.zenithAngle;
+      fe = p.focusError;
+    }
+
+    // If inNSSMode is true, then we use angle 0.0
+    // Do the calculation and send updates out
+    double totalRangeDistance = focusZenithAngleToRangeDistance(calculationConfig, cElevation, fe, za);
+    log.debug("totalRange: {}", totalRangeDistance);
 
-  private DoubleItem calculateNewTrombonePosition(TromboneCalculationConfig calculationConfig, DoubleItem elevationIn,
-                                                  DoubleItem focusErrorIn, DoubleItem zenithAngleIn) {
-    double totalRangeDistance = focusZenithAngleToRangeDistance(calculationConfig, jvalue(elevationIn), jvalue(focusErrorIn), jvalue(zenithAngleIn));
-    log.debug("totalRange: " + totalRangeDistance);
+    double newElevation = rangeDistanceToElevation(totalRangeDistance, za);
+    flightRecorder.recordElevationRange(newElevation, totalRangeDistance);
+
+    // Post a SystemEvent for AOESW if not inNSSMode according to spec
+    if (!nssInUse) {
+      sendAOESWUpdate(newElevation, totalRangeDistance);
+    }
 
-    double stagePosition = rangeDistanceToStagePosition(totalRangeDistance);
-    return ac.spos(stagePosition);
+    double newTrombonePosition = rangeDistanceToStagePosition(totalRangeDistance);
+
+    // Send the new trombone stage position to the HCD
+    sendTrombonePosition(newTrombonePosition, sampleNanos, computeNanos);
+
+    // Post a StatusEvent for telemetry updates
+    sendEngrUpdate(focusError, newTrombonePosition, zenithAngle);
+    if (predictor.isPresent() && computeNanos - lastPredictionPublishNanos >= FollowPredictor.errorPublishPeriodNanos) {
+      lastPredictionPublishNanos = computeNanos;
+      engPublisher.ifPresent(actorRef -> actorRef.tell(new PredictionErrorUpdate(predictor.get().stats()), self()));
+    }
+
+    // Keep the new values
+    // I should be using newElevation, but it doesn't work well without changes in other values, so I'm not updating
+    cFocusError = focusError;
+    cZenithAngle = zenithAngle;
   }
 
-  //
-  private void sendTrombonePosition(TromboneControlConfig controlConfig, DoubleItem stagePosition) {
-    log.debug("Sending position: " + stagePosition);
-    tromboneControl.ifPresent(actorRef -> actorRef.tell(new TromboneControl.GoToStagePosition(stagePosition), self()));
+  private void sendTrombonePosition(double stagePosition, long sampleNanos, long computeNanos) {
+    log.debug("Sending position: {}", stagePosition);
+    tromboneControl.ifPresent(actorRef ->
+      actorRef.tell(new TromboneControl.GoToStagePosition(stagePosition, sampleNanos, computeNanos), self()));
   }
 
-  private void sendAOESWUpdate(DoubleItem elevationItem, DoubleItem rangeItem) {
-    log.debug("Publish aoUpdate: $aoPublisher " + elevationItem + ", " + rangeItem);
-    aoPublisher.ifPresent(actorRef -> actorRef.tell(new AOESWUpdate(elevationItem, rangeItem), self()));
+  private void sendAOESWUpdate(double elevation, double range) {
+    log.debug("Publish aoUpdate: {} {}, {}", aoPublisher, elevation, range);
+    aoPublisher.ifPresent(actorRef -> actorRef.tell(new AOESWUpdate(elevation, range), self()));
   }
 
-  private void sendEngrUpdate(DoubleItem focusError, DoubleItem trombonePosition, DoubleItem zenithAngle) {
-    log.debug("Publish engUpdate: " + engPublisher);
+  private void sendEngrUpdate(double focusError, double trombonePosition, double zenithAngle) {
+    log.debug("Publish engUpdate: {}", engPublisher);
     engPublisher.ifPresent(actorRef -> actorRef.tell(new EngrUpdate(focusError, trombonePosition, zenithAngle), self()));
   }
 
@@ -180,12 +233,43 @@ public class FollowActor extends AbstractActor {
     Optional<ActorRef> tromboneControl,
     Optional<ActorRef> aoPublisher,
     Optional<ActorRef> engPublisher) {
+    return props(assemblyContext, initialElevation, inNSSModeIn, tromboneControl, aoPublisher, engPublisher, Optional.empty(),
+      Optional.empty());
+  }
+
+  // Props for creating the follow actor that takes its input from a FollowInputSlot shared with the event subscriber
+  // and records the follow loop latency
+  public static Props props(
+    AssemblyContext assemblyContext,
+    DoubleItem initialElevation,
+    BooleanItem inNSSModeIn,
+    Optional<ActorRef> tromboneControl,
+    Optional<ActorRef> aoPublisher,
+    Optional<ActorRef> engPublisher,
+    Optional<FollowInputSlot> input,
+    Optional<FollowLatency> latency) {
+    return props(assemblyContext, initialElevation, inNSSModeIn, tromboneControl, aoPublisher, engPublisher, input, latency,
+      Optional.empty());
+  }
+
+  // Props for creating the follow actor that also writes to the assembly's flight recorder
+  public static Props props(
+    AssemblyContext assemblyContext,
+    DoubleItem initialElevation,
+    BooleanItem inNSSModeIn,
+    Optional<ActorRef> tromboneControl,
+    Optional<ActorRef> aoPublisher,
+    Optional<ActorRef> engPublisher,
+    Optional<FollowInputSlot> input,
+    Optional<FollowLatency> latency,
+    Optional<FlightRecorder> flightRecorder) {
     return Props.create(new Creator<FollowActor>() {
       private static final long serialVersionUID = 1L;
 
       @Override
       public FollowActor create() throws Exception {
-        return new FollowActor(assemblyContext, initialElevation, inNSSModeIn, tromboneControl, aoPublisher, engPublisher);
+        return new FollowActor(assemblyContext, initialElevation, inNSSModeIn, tromboneControl, aoPublisher, engPublisher, input, latency,
+          flightRecorder);
       }
     });
   }
@@ -209,6 +293,63 @@ public class FollowActor extends AbstractActor {
     }
   }
 
+  /**
+   * Internal follow update holding only the values, used inside the assembly so that each update does not need
+   * its own items. The values are in zenithAngleUnits and focusErrorUnits, timeNanos is from System.nanoTime()
+   * when the sample entered the assembly.
+   */
+  @SuppressWarnings("WeakerAccess")
+  public static class FollowUpdate implements FollowActorMessages {
+    public final double zenithAngle;
+    public final double focusError;
+    public final long timeNanos;
+
+    public FollowUpdate(double zenithAngle, double focusError, long timeNanos) {
+      this.zenithAngle = zenithAngle;
+      this.focusError = focusError;
+      this.timeNanos = timeNanos;
+    }
+
+    @Override
+    public String toString() {
+      return "FollowUpdate{" +
+        "zenithAngle=" + zenithAngle +
+        ", focusError=" + focusError +
+        ", timeNanos=" + timeNanos +
+        '}';
+    }
+  }
+
+  /**
+   * Sent by the event subscriber when it put a sample in an empty FollowInputSlot
+   */
+  public static class FollowInputReady implements FollowActorMessages {
+    public static final FollowInputReady instance = new FollowInputReady();
+
+    private FollowInputReady() {
+    }
+  }
+
+  /**
+   * Engineering message: the FollowActor replies with the FollowInputStats of its input slot
+   */
+  public static class GetFollowInputStats implements FollowActorMessages {
+    public static final GetFollowInputStats instance = new GetFollowInputStats();
+
+    private GetFollowInputStats() {
+    }
+  }
+
+  /**
+   * Engineering message: the FollowActor replies with the FollowPredictor.PredictionStats, all zero if not predicting
+   */
+  public static class GetPredictionStats implements FollowActorMessages {
+    public static final GetPredictionStats instance = new GetPredictionStats();
+
+    private GetPredictionStats() {
+    }
+  }
+
   // Messages to Follow Actor
   public static class SetElevation implements FollowActorMessages {
     public final DoubleItem elevation;
@@ -2,23 +2,31 @@ package csw.examples.vsliceJava.assembly;
 
 import akka.actor.AbstractActor;
 import akka.actor.ActorRef;
+import akka.actor.Cancellable;
 import akka.actor.Props;
 import akka.event.Logging;
 import akka.event.LoggingAdapter;
 import akka.japi.Creator;
 import akka.japi.pf.ReceiveBuilder;
+import csw.examples.vsliceJava.hcd.TromboneHCD;
+import csw.examples.vsliceJava.shared.FlightRecorder;
 import csw.util.config.BooleanItem;
 import csw.util.config.DoubleItem;
 import csw.util.config.Events.EventTime;
 import javacsw.services.events.IEventService;
 import scala.PartialFunction;
+import scala.concurrent.duration.Duration;
 import scala.runtime.BoxedUnit;
 
+import java.io.File;
+import java.io.IOException;
 import java.time.Instant;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 import static csw.examples.vsliceJava.assembly.FollowActor.SetZenithAngle;
 import static csw.examples.vsliceJava.assembly.FollowActor.UpdatedEventData;
+import static csw.examples.vsliceJava.shared.LatencyHistogram.Summary;
 
 /**
  * FollowCommand encapsulates the actors that collaborate to implement the Follow command.
@@ -53,6 +61,18 @@ import static csw.examples.vsliceJava.assembly.FollowActor.UpdatedEventData;
  * While "following" the trombone assembly can accept the SetAngle and SetElevation commands, which are forwarded to the Follow actor
  * that executes the algorithms for the trombone assembly.
  *
+ * The latency of each stage of the follow loop is recorded in a FollowLatency shared by the created actors. The percentiles
+ * are returned by the GetFollowLatency engineering message and, if latencyPublishPeriodMS is set in the control-config,
+ * published periodically by the TrombonePublisher as the followLatency StatusEvent. Before each publish the HCD is asked
+ * for its move latency, so the event covers the loop up to the axis reaching the setpoint.
+ *
+ * If fusedFollow is set in the control-config, a single FusedFollowActor takes the place of the TromboneEventSubscriber,
+ * FollowActor and TromboneControl, and FollowCommand forwards the updates to it. Likewise if closedLoopRateHz is set in the
+ * calculation-config, a ClosedLoopFollowActor commands the HCD at that fixed rate.
+ *
+ * If followRecordFile is set in the control-config, the events received by the TromboneEventSubscriber are recorded
+ * to that file with a FollowEventRecorder, so they can be replayed with the FollowEventReplayer.
+ *
  */
 @SuppressWarnings("OptionalUsedAsFieldOrParameterType")
 class FollowCommand extends AbstractActor {
@@ -66,6 +86,19 @@ class FollowCommand extends AbstractActor {
   // Create the trombone publisher for publishing SystemEvents to AOESW, etc if one is not provided
   private final ActorRef tromboneControl;
 
+  // Kept for the life of the command, so the percentiles cover the whole follow session
+  private final FollowLatency followLatency = new FollowLatency();
+  private final Cancellable latencyPublishTimer;
+  // The latest move latency reported by the HCD, asked for at each latency publish
+  private Optional<Summary> hcdMoveLatency = Optional.empty();
+  // True from asking the HCD until it replies, if it has not replied by the next publish, the last value is published
+  private boolean awaitingMoveLatency = false;
+
+  // If followRecordFile is set, records the events received by the event subscribers
+  private final Optional<FollowEventRecorder> recorder;
+  // The assembly's flight recorder, passed on to the follow actors
+  private final Optional<FlightRecorder> flightRecorder;
+
   // These are accessed by the tests
   final BooleanItem nssInUseIn;
   final Optional<ActorRef> tromboneHCDIn;
@@ -79,21 +112,72 @@ class FollowCommand extends AbstractActor {
    * @param tromboneHCDIn the actor reference to the trombone HCD as an optional value
    * @param eventPublisher the actor reference to the shared TrombonePublisher actor as an optional value
    * @param eventService  EventService for subscriptions
+   * @param flightRecorder the assembly's flight recorder, if empty nothing is recorded
    */
   private FollowCommand(AssemblyContext ac, DoubleItem initialElevation, BooleanItem nssInUseIn, Optional<ActorRef> tromboneHCDIn,
-                        Optional<ActorRef> eventPublisher, IEventService eventService) {
+                        Optional<ActorRef> eventPublisher, IEventService eventService, Optional<FlightRecorder> flightRecorder) {
     this.ac = ac;
+    this.flightRecorder = flightRecorder;
     this.nssInUseIn = nssInUseIn;
     this.tromboneHCDIn = tromboneHCDIn;
     this.initialElevation = initialElevation;
     this.eventPublisher = eventPublisher;
     this.eventService = eventService;
 
-    tromboneControl = context().actorOf(TromboneControl.props(ac, tromboneHCDIn), "trombonecontrol");
-    ActorRef initialFollowActor = createFollower(initialElevation, nssInUseIn, tromboneControl, eventPublisher, eventPublisher);
-    ActorRef initialEventSubscriber = createEventSubscriber(nssInUseIn, initialFollowActor, eventService);
+    int period = ac.controlConfig.latencyPublishPeriodMS;
+    latencyPublishTimer = (period > 0 && eventPublisher.isPresent())
+      ? context().system().scheduler().schedule(Duration.create(period, TimeUnit.MILLISECONDS), Duration.create(period, TimeUnit.MILLISECONDS),
+      self(), PublishFollowLatency.instance, context().dispatcher(), self())
+      : null;
+
+    recorder = ac.controlConfig.followRecordFile.isEmpty() ? Optional.empty() : openRecorder(ac.controlConfig.followRecordFile);
+
+    if (ac.calculationConfig.closedLoopRateHz > 0) {
+      // The closed loop also goes from the events to the HCD in one actor
+      tromboneControl = context().actorOf(ClosedLoopFollowActor.props(ac, initialElevation, nssInUseIn, tromboneHCDIn, eventPublisher,
+        eventService, Optional.of(followLatency), Optional.empty(), flightRecorder), "closedloopfollower");
+
+      receive(fusedReceive(tromboneControl, tromboneHCDIn));
+    } else if (ac.controlConfig.fusedFollow) {
+      // One actor goes from the events to the HCD, it also takes the place of the TromboneControl for HCD updates and stats
+      tromboneControl = context().actorOf(FusedFollowActor.props(ac, initialElevation, nssInUseIn, tromboneHCDIn, eventPublisher,
+        eventService, Optional.of(followLatency), flightRecorder), "fusedfollower");
+
+      receive(fusedReceive(tromboneControl, tromboneHCDIn));
+    } else {
+      tromboneControl = context().actorOf(TromboneControl.props(ac, tromboneHCDIn, Optional.of(followLatency), flightRecorder),
+        "trombonecontrol");
+      // The event subscriber hands the latest samples to the follow actor through this slot, so they are conflated
+      // rather than queued when events arrive faster than the follow actor can process them
+      FollowInputSlot initialFollowInput = new FollowInputSlot();
+      ActorRef initialFollowActor = createFollower(initialElevation, nssInUseIn, tromboneControl, eventPublisher, eventPublisher, initialFollowInput);
+      ActorRef initialEventSubscriber = createEventSubscriber(nssInUseIn, initialFollowActor, eventService, initialFollowInput);
+
+      receive(followReceive(nssInUseIn, initialFollowActor, initialEventSubscriber, tromboneHCDIn));
+    }
+  }
+
+  @Override
+  public void postStop() throws Exception {
+    if (latencyPublishTimer != null) latencyPublishTimer.cancel();
+    if (recorder.isPresent()) {
+      try {
+        recorder.get().close();
+      } catch (IOException e) {
+        log.error(e, "Failed to close the follow event recording");
+      }
+    }
+    super.postStop();
+  }
 
-    receive(followReceive(nssInUseIn, initialFollowActor, initialEventSubscriber, tromboneHCDIn));
+  private Optional<FollowEventRecorder> openRecorder(String fileName) {
+    try {
+      log.info("Recording follow events to " + fileName);
+      return Optional.of(new FollowEventRecorder(new File(fileName)));
+    } catch (IOException e) {
+      log.error(e, "Failed to open the follow event recording, not recording");
+      return Optional.empty();
+    }
   }
 
   private PartialFunction<Object, BoxedUnit> followReceive(BooleanItem nssInUse, ActorRef followActor,
@@ -113,8 +197,9 @@ class FollowCommand extends AbstractActor {
           context().stop(eventSubscriber);
           context().stop(followActor);
           // Note that follower has the option of a different publisher for events and telemetry, but this is primarily useful for testing
-          ActorRef newFollowActor = createFollower(initialElevation, t.nssInUse, tromboneControl, eventPublisher, eventPublisher);
-          ActorRef newEventSubscriber = createEventSubscriber(t.nssInUse, newFollowActor, eventService);
+          FollowInputSlot newFollowInput = new FollowInputSlot();
+          ActorRef newFollowActor = createFollower(initialElevation, t.nssInUse, tromboneControl, eventPublisher, eventPublisher, newFollowInput);
+          ActorRef newEventSubscriber = createEventSubscriber(t.nssInUse, newFollowActor, eventService, newFollowInput);
           // Set a new receive method with updated actor values, prefer this over vars or globals
           context().become(followReceive(t.nssInUse, newFollowActor, newEventSubscriber, tromboneHCD));
         }
@@ -123,7 +208,14 @@ class FollowCommand extends AbstractActor {
         log.debug("Got angle: " + t.zenithAngle);
         followActor.tell(t, sender());
 
-      }).match(TromboneAssembly.UpdateTromboneHCD.class, upd -> {
+      }).
+      match(FollowActor.GetFollowInputStats.class, t -> followActor.tell(t, sender())).
+      match(FollowActor.GetPredictionStats.class, t -> followActor.tell(t, sender())).
+      match(TromboneControl.GetSetpointStats.class, t -> tromboneControl.tell(t, sender())).
+      match(GetFollowLatency.class, t -> sender().tell(followLatency.stats(hcdMoveLatency), self())).
+      match(PublishFollowLatency.class, t -> requestMoveLatency(tromboneHCD)).
+      match(Summary.class, this::publishLatency).
+      match(TromboneAssembly.UpdateTromboneHCD.class, upd -> {
           // Note that this is an option so it can be None
           // Set a new receive method with updated actor values and new HCD, prefer this over vars or globals
         context().become(followReceive(nssInUse, followActor, eventSubscriber, upd.tromboneHCD));
@@ -137,25 +229,77 @@ class FollowCommand extends AbstractActor {
       build();
   }
 
+  // Receive used in the fused and closed loop follow modes, where one actor handles the updates itself
+  private PartialFunction<Object, BoxedUnit> fusedReceive(ActorRef fusedFollowActor, Optional<ActorRef> tromboneHCD) {
+    return ReceiveBuilder.
+      match(StopFollowing.class, t -> {
+        log.info("Receive stop following in Follow Command");
+        context().stop(fusedFollowActor);
+        context().stop(self());
+      }).
+      match(UpdateNssInUse.class, t -> fusedFollowActor.tell(t, self())).
+      match(SetZenithAngle.class, t -> fusedFollowActor.tell(t, sender())).
+      match(UpdateZAandFE.class, t -> fusedFollowActor.tell(t, self())).
+      match(TromboneAssembly.UpdateTromboneHCD.class, t -> {
+        fusedFollowActor.tell(t, self());
+        context().become(fusedReceive(fusedFollowActor, t.tromboneHCD));
+      }).
+      match(FollowActor.GetFollowInputStats.class, t -> fusedFollowActor.tell(t, sender())).
+      match(FollowActor.GetPredictionStats.class, t -> fusedFollowActor.tell(t, sender())).
+      match(TromboneControl.GetSetpointStats.class, t -> fusedFollowActor.tell(t, sender())).
+      match(GetFollowLatency.class, t -> sender().tell(followLatency.stats(hcdMoveLatency), self())).
+      match(PublishFollowLatency.class, t -> requestMoveLatency(tromboneHCD)).
+      match(Summary.class, this::publishLatency).
+      matchAny(t -> log.warning("Unexpected message received in TromboneAssembly:FollowCommand: " + t)).
+      build();
+  }
+
+
+  // The latency is published when the HCD replies with its move latency, or at once without an HCD
+  private void requestMoveLatency(Optional<ActorRef> tromboneHCD) {
+    if (awaitingMoveLatency || !tromboneHCD.isPresent()) publishLatency(followLatency.stats(hcdMoveLatency));
+    if (tromboneHCD.isPresent()) {
+      awaitingMoveLatency = true;
+      tromboneHCD.get().tell(TromboneHCD.TromboneEngineering.GetMoveLatency, self());
+    }
+  }
+
+  private void publishLatency(Summary moveLatency) {
+    awaitingMoveLatency = false;
+    hcdMoveLatency = Optional.of(moveLatency);
+    publishLatency(followLatency.stats(hcdMoveLatency));
+  }
+
+  private void publishLatency(FollowLatency.FollowLatencyStats stats) {
+    eventPublisher.ifPresent(actorRef -> actorRef.tell(new TrombonePublisher.FollowLatencyUpdate(stats), self()));
+  }
 
-  private ActorRef createFollower(DoubleItem initialElevation, BooleanItem nssInUse, ActorRef tromboneControl, Optional<ActorRef> eventPublisher, Optional<ActorRef> telemetryPublisher) {
-    return context().actorOf(FollowActor.props(ac, initialElevation, nssInUse, Optional.of(tromboneControl), eventPublisher, eventPublisher), "follower");
+  private ActorRef createFollower(DoubleItem initialElevation, BooleanItem nssInUse, ActorRef tromboneControl, Optional<ActorRef> eventPublisher,
+                                  Optional<ActorRef> telemetryPublisher, FollowInputSlot followInput) {
+    return context().actorOf(FollowActor.props(ac, initialElevation, nssInUse, Optional.of(tromboneControl), eventPublisher, eventPublisher,
+      Optional.of(followInput), Optional.of(followLatency), flightRecorder), "follower");
   }
 
-  private ActorRef createEventSubscriber(BooleanItem nssItem, ActorRef followActor, IEventService eventService) {
-    return context().actorOf(TromboneEventSubscriber.props(ac, nssItem, Optional.of(followActor), eventService), "eventsubscriber");
+  private ActorRef createEventSubscriber(BooleanItem nssItem, ActorRef followActor, IEventService eventService, FollowInputSlot followInput) {
+    return context().actorOf(TromboneEventSubscriber.props(ac, nssItem, Optional.of(followActor), Optional.of(eventService),
+      Optional.of(followInput), Optional.of(followLatency), recorder), "eventsubscriber");
   }
 
   // --- static defs ---
 
   public static Props props(AssemblyContext ac, DoubleItem initialElevation, BooleanItem nssInUseIn, Optional<ActorRef> tromboneHCDIn,
                             Optional<ActorRef> eventPublisher, IEventService eventService) {
+    return props(ac, initialElevation, nssInUseIn, tromboneHCDIn, eventPublisher, eventService, Optional.empty());
+  }
+
+  public static Props props(AssemblyContext ac, DoubleItem initialElevation, BooleanItem nssInUseIn, Optional<ActorRef> tromboneHCDIn,
+                            Optional<ActorRef> eventPublisher, IEventService eventService, Optional<FlightRecorder> flightRecorder) {
     return Props.create(new Creator<FollowCommand>() {
       private static final long serialVersionUID = 1L;
 
       @Override
       public FollowCommand create() throws Exception {
-        return new FollowCommand(ac, initialElevation, nssInUseIn, tromboneHCDIn, eventPublisher, eventService);
+        return new FollowCommand(ac, initialElevation, nssInUseIn, tromboneHCDIn, eventPublisher, eventService, flightRecorder);
       }
     });
   }
@@ -174,6 +318,24 @@ class FollowCommand extends AbstractActor {
     }
   }
 
+  /**
+   * Engineering message: FollowCommand replies with the FollowLatency.FollowLatencyStats of the follow loop
+   */
+  public static class GetFollowLatency implements FollowCommandMessages {
+    public static final GetFollowLatency instance = new GetFollowLatency();
+
+    private GetFollowLatency() {
+    }
+  }
+
+  // Sent to self every latencyPublishPeriodMS to publish the follow loop latency
+  private static class PublishFollowLatency {
+    static final PublishFollowLatency instance = new PublishFollowLatency();
+
+    private PublishFollowLatency() {
+    }
+  }
+
   /**
    * This is an engineering and test method that is used to trigger the same kind of update as a zenith angle and focus error
    * events from external to the Assembly
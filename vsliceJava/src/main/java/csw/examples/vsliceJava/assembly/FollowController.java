@@ -0,0 +1,85 @@
+package csw.examples.vsliceJava.assembly;
+
+import static csw.examples.vsliceJava.assembly.AssemblyContext.TromboneCalculationConfig;
+import static csw.examples.vsliceJava.assembly.AssemblyContext.TromboneControlConfig;
+
+/**
+ * The PID controller of the closed loop follow mode (see ClosedLoopFollowActor).
+ * <p>
+ * Each step takes the calculated stage position and the axis position reported by the HCD, both in encoder counts,
+ * and returns the position to command:
+ * <pre>
+ *   error = target - measured
+ *   output = measured + Kp * error + Ki * integral(error) + Kd * d(error)/dt
+ * </pre>
+ * With Kp = 1 and Ki = Kd = 0, the output is the target, as in the event driven follow loop. The output is limited to
+ * the encoder limits of the control-config. The error is only integrated while the output is within the limits, so
+ * the integral does not wind up while the stage is held at a limit.
+ * <p>
+ * This class is not thread safe, it is used from inside the closed loop follow actor.
+ */
+public class FollowController {
+  private final double kp;
+  private final double ki;
+  private final double kd;
+  private final int minOutput;
+  private final int maxOutput;
+
+  private double integral = 0.0;
+  private boolean hasLastError = false;
+  private double lastError;
+
+  /**
+   * @param calculationConfig gives the closed loop gains
+   * @param controlConfig     gives the encoder limits
+   */
+  public FollowController(TromboneCalculationConfig calculationConfig, TromboneControlConfig controlConfig) {
+    this(calculationConfig.closedLoopKp, calculationConfig.closedLoopKi, calculationConfig.closedLoopKd,
+      controlConfig.minEncoderLimit + 1, controlConfig.maxEncoderLimit - 1);
+  }
+
+  /**
+   * @param kp        proportional gain
+   * @param ki        integral gain, per second
+   * @param kd        derivative gain, in seconds
+   * @param minOutput the lowest position commanded
+   * @param maxOutput the highest position commanded
+   */
+  public FollowController(double kp, double ki, double kd, int minOutput, int maxOutput) {
+    this.kp = kp;
+    this.ki = ki;
+    this.kd = kd;
+    this.minOutput = minOutput;
+    this.maxOutput = maxOutput;
+  }
+
+  /**
+   * Does one step of the controller
+   *
+   * @param target    the calculated stage position in encoder counts
+   * @param measured  the axis position reported by the HCD
+   * @param dtSeconds the time since the last step
+   * @return the stage position to command
+   */
+  public int update(int target, int measured, double dtSeconds) {
+    double error = target - measured;
+    double derivative = (hasLastError && dtSeconds > 0) ? (error - lastError) / dtSeconds : 0.0;
+    hasLastError = true;
+    lastError = error;
+
+    double newIntegral = integral + error * dtSeconds;
+    double output = measured + kp * error + ki * newIntegral + kd * derivative;
+    if (output > maxOutput) return maxOutput;
+    if (output < minOutput) return minOutput;
+    integral = newIntegral;
+    return (int) Math.round(output);
+  }
+
+  /**
+   * Forgets the integral and the last error, for instance when the HCD changes
+   */
+  public void reset() {
+    integral = 0.0;
+    hasLastError = false;
+  }
+}
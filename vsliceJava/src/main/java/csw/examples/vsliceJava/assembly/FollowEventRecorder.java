@@ -0,0 +1,234 @@
+package csw.examples.vsliceJava.assembly;
+
+import csw.util.config.DoubleItem;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static csw.util.config.Events.SystemEvent;
+import static javacsw.util.config.JItems.jitem;
+import static javacsw.util.config.JItems.jvalue;
+
+/**
+ * Records the zenith angle and focus error events received by the TromboneEventSubscriber, so that a night of follow
+ * mode can be replayed with the FollowEventReplayer.
+ * <p>
+ * The file starts with a header (the int 0x54464556, "TFEV", and a version int), followed by one 17 byte record per event:
+ * a kind byte (0 for zenith angle, 1 for focus error), the event time in nanoseconds since the epoch as a long and the
+ * value as a double. Records are only appended, so a file can be recorded over several follow sessions. An incomplete
+ * record at the end, for instance after a crash, is ignored by read() and open().
+ * <p>
+ * Records are buffered, call flush() or close() to write them out. The methods are synchronized, since the subscriber
+ * that records is replaced when the NSS use changes.
+ */
+public class FollowEventRecorder implements AutoCloseable {
+  static final int magic = 0x54464556;
+  static final int version = 1;
+
+  /**
+   * The kind byte of a zenith angle record
+   */
+  public static final byte zenithAngleKind = 0;
+
+  /**
+   * The kind byte of a focus error record
+   */
+  public static final byte focusErrorKind = 1;
+
+  private final DataOutputStream out;
+  private long count = 0;
+
+  /**
+   * Opens the file for appending, writing the header if it is new or empty
+   *
+   * @param file the file to record to
+   */
+  public FollowEventRecorder(File file) throws IOException {
+    boolean empty = !file.exists() || file.length() == 0;
+    out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true), 64 * 1024));
+    if (empty) {
+      out.writeInt(magic);
+      out.writeInt(version);
+    }
+  }
+
+  /**
+   * Records the event if it is a zenith angle or focus error event, other events are ignored
+   *
+   * @param event an event received by the subscriber
+   */
+  public synchronized void record(SystemEvent event) throws IOException {
+    Instant t = event.info().eventTime().time();
+    long timeNanos = t.getEpochSecond() * 1000000000L + t.getNano();
+    if (event.info().source().equals(AssemblyContext.zaConfigKey)) {
+      DoubleItem za = jitem(event, AssemblyContext.zenithAngleKey);
+      record(zenithAngleKind, timeNanos, jvalue(za));
+    } else if (event.info().source().equals(AssemblyContext.feConfigKey)) {
+      DoubleItem fe = jitem(event, AssemblyContext.focusErrorKey);
+      record(focusErrorKind, timeNanos, jvalue(fe));
+    }
+  }
+
+  /**
+   * Appends one record
+   *
+   * @param kind      zenithAngleKind or focusErrorKind
+   * @param timeNanos the event time in nanoseconds since the epoch
+   * @param value     the zenith angle or focus error
+   */
+  public synchronized void record(byte kind, long timeNanos, double value) throws IOException {
+    out.writeByte(kind);
+    out.writeLong(timeNanos);
+    out.writeDouble(value);
+    count++;
+  }
+
+  /**
+   * @return the number of records written by this recorder
+   */
+  public synchronized long count() {
+    return count;
+  }
+
+  public synchronized void flush() throws IOException {
+    out.flush();
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    out.close();
+  }
+
+  /**
+   * Reads all the records of a file into memory. Use open() for long recordings.
+   *
+   * @param file a file written by a FollowEventRecorder
+   * @return the records in the order they were recorded
+   */
+  public static List<Record> read(File file) throws IOException {
+    List<Record> records = new ArrayList<>();
+    try (RecordReader reader = open(file)) {
+      reader.forEachRemaining(records::add);
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    return records;
+  }
+
+  /**
+   * Opens a file for reading its records one at a time
+   *
+   * @param file a file written by a FollowEventRecorder
+   * @return a reader positioned at the first record, to be closed by the caller
+   */
+  public static RecordReader open(File file) throws IOException {
+    return new RecordReader(file);
+  }
+
+  /**
+   * Iterates over the records of a file, in the order they were recorded, reading them as they are needed.
+   * Read errors are thrown as UncheckedIOException.
+   */
+  public static class RecordReader implements Iterator<Record>, AutoCloseable {
+    private final DataInputStream in;
+    private Record next;
+
+    private RecordReader(File file) throws IOException {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+      try {
+        if (in.readInt() != magic) throw new IOException("Not a follow event recording: " + file);
+        int v = in.readInt();
+        if (v != version) throw new IOException("Unsupported follow event recording version " + v + ": " + file);
+      } catch (IOException e) {
+        in.close();
+        throw e;
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (next == null) {
+        try {
+          byte kind = in.readByte();
+          long timeNanos = in.readLong();
+          double value = in.readDouble();
+          next = new Record(kind, timeNanos, value);
+        } catch (EOFException e) {
+          return false;
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public Record next() {
+      if (!hasNext()) throw new NoSuchElementException();
+      Record r = next;
+      next = null;
+      return r;
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+
+  /**
+   * One recorded event
+   */
+  @SuppressWarnings("WeakerAccess")
+  public static class Record {
+    // zenithAngleKind or focusErrorKind
+    public final byte kind;
+    // The event time in nanoseconds since the epoch
+    public final long timeNanos;
+    public final double value;
+
+    public Record(byte kind, long timeNanos, double value) {
+      this.kind = kind;
+      this.timeNanos = timeNanos;
+      this.value = value;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+      Record record = (Record) o;
+      return kind == record.kind && timeNanos == record.timeNanos && Double.compare(record.value, value) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+      int result = kind;
+      result = 31 * result + Long.hashCode(timeNanos);
+      result = 31 * result + Double.hashCode(value);
+      return result;
+    }
+
+    @Override
+    public String toString() {
+      return "Record{" +
+        "kind=" + kind +
+        ", timeNanos=" + timeNanos +
+        ", value=" + value +
+        '}';
+    }
+  }
+}
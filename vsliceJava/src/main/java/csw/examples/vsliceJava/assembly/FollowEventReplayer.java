@@ -0,0 +1,243 @@
+package csw.examples.vsliceJava.assembly;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.japi.Creator;
+import akka.japi.pf.ReceiveBuilder;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import csw.services.loc.ComponentId;
+import csw.services.loc.Connection;
+import csw.services.pkg.Component.AssemblyInfo;
+import javacsw.services.loc.JComponentType;
+import javacsw.services.pkg.JComponent;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static csw.examples.vsliceJava.assembly.AssemblyContext.TromboneCalculationConfig;
+import static csw.examples.vsliceJava.assembly.AssemblyContext.TromboneControlConfig;
+import static csw.examples.vsliceJava.assembly.FollowEventRecorder.Record;
+import static csw.examples.vsliceJava.assembly.FollowEventRecorder.RecordReader;
+import static csw.examples.vsliceJava.assembly.FollowLatency.FollowLatencyStats;
+import static csw.examples.vsliceJava.shared.LatencyHistogram.Summary;
+import static csw.services.ccs.HcdController.Submit;
+import static csw.util.config.Events.SystemEvent;
+import static javacsw.services.loc.JConnectionType.AkkaType;
+import static javacsw.services.pkg.JComponent.DoNotRegister;
+
+/**
+ * Replays a file recorded by the FollowEventRecorder through the follow loop of the assembly, as a regression benchmark
+ * for the follow pipeline.
+ * <p>
+ * The records are read from the file as they are replayed, so a long recording is not held in memory.
+ * The events are sent straight to a TromboneEventSubscriber created without an event service, or as FollowUpdates
+ * to a FollowActor, at the recorded rate, a multiple of it, or as fast as possible. The rest of the loop is the one
+ * created by the FollowCommand (FollowActor with a FollowInputSlot and TromboneControl), and the Submits that would go
+ * to the HCD are counted by a sink actor. Each replayed event gets the current time as its EventTime.
+ * <p>
+ * The replay ends once no Submit has arrived for a short time after the last event. The report gives the
+ * throughput and the follow loop latency of each stage (see FollowLatency).
+ * <p>
+ * Usage: FollowEventReplayer file [--speed factor|max] [--target subscriber|follow]
+ * <p>
+ * The calculation and control configs are read from tromboneAssembly.conf, so the setpoint filter and prediction
+ * settings there apply.
+ */
+public class FollowEventReplayer {
+  // The replay ends when nothing was submitted for this long after the last event
+  private static final long quietNanos = TimeUnit.MILLISECONDS.toNanos(250);
+
+  /**
+   * Where the replayed events are sent
+   */
+  public enum Target {
+    // SystemEvents to the TromboneEventSubscriber
+    subscriber,
+    // FollowUpdates to the FollowActor
+    follow
+  }
+
+  /**
+   * Replays the records and waits for the follow loop to finish with them
+   *
+   * @param system  the actor system the follow loop actors are created in, they are stopped at the end
+   * @param ac      gives the calculation and control configs
+   * @param records the recorded events, consumed as they are replayed
+   * @param speed   1.0 for the recorded rate, 2.0 for twice as fast, Double.POSITIVE_INFINITY for as fast as possible
+   * @param target  where the events are sent
+   * @return the replay report
+   */
+  public static ReplayReport replay(ActorSystem system, AssemblyContext ac, Iterator<Record> records, double speed, Target target) {
+    if (!(speed > 0.0)) throw new IllegalArgumentException("speed must be greater than 0: " + speed);
+
+    FollowLatency latency = new FollowLatency();
+    AtomicLong submitCount = new AtomicLong();
+    AtomicLong lastSubmitNanos = new AtomicLong();
+    FollowInputSlot slot = new FollowInputSlot();
+
+    ActorRef sink = system.actorOf(ReplaySink.props(submitCount, lastSubmitNanos));
+    ActorRef control = system.actorOf(TromboneControl.props(ac, Optional.of(sink), Optional.of(latency)));
+    ActorRef follow = system.actorOf(FollowActor.props(ac, AssemblyContext.naElevation(ac.calculationConfig.defaultInitialElevation),
+      AssemblyContext.setNssInUse(false), Optional.of(control), Optional.empty(), Optional.empty(), Optional.of(slot), Optional.of(latency)));
+    ActorRef subscriber = system.actorOf(TromboneEventSubscriber.props(ac, AssemblyContext.setNssInUse(false), Optional.of(follow),
+      Optional.empty(), Optional.of(slot), Optional.of(latency), Optional.empty()));
+
+    long start = System.nanoTime();
+    long eventCount = 0;
+    long recordedStart = 0;
+    long recordedEnd = 0;
+    double zenithAngle = 0.0;
+    double focusError = 0.0;
+    while (records.hasNext()) {
+      Record r = records.next();
+      if (eventCount++ == 0) recordedStart = r.timeNanos;
+      recordedEnd = r.timeNanos;
+      if (!Double.isInfinite(speed)) {
+        long due = start + (long) ((r.timeNanos - recordedStart) / speed);
+        long wait;
+        while ((wait = due - System.nanoTime()) > 0) LockSupport.parkNanos(wait);
+      }
+      boolean isZenithAngle = r.kind == FollowEventRecorder.zenithAngleKind;
+      if (target == Target.subscriber) {
+        SystemEvent event = isZenithAngle
+          ? new SystemEvent(AssemblyContext.zenithAnglePrefix).add(AssemblyContext.za(r.value))
+          : new SystemEvent(AssemblyContext.focusErrorPrefix).add(AssemblyContext.fe(r.value));
+        subscriber.tell(event, ActorRef.noSender());
+      } else {
+        if (isZenithAngle) zenithAngle = r.value;
+        else focusError = r.value;
+        follow.tell(new FollowActor.FollowUpdate(zenithAngle, focusError, System.nanoTime()), ActorRef.noSender());
+      }
+    }
+    long sendEnd = System.nanoTime();
+
+    // Wait for the loop to go quiet
+    while (System.nanoTime() - Math.max(sendEnd, lastSubmitNanos.get()) < quietNanos)
+      LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+    long end = Math.max(sendEnd, lastSubmitNanos.get());
+
+    for (ActorRef a : new ActorRef[]{subscriber, follow, control, sink}) system.stop(a);
+
+    return new ReplayReport(target, speed, eventCount, recordedEnd - recordedStart, end - start, submitCount.get(), latency.stats());
+  }
+
+  /**
+   * The results of a replay
+   */
+  @SuppressWarnings("WeakerAccess")
+  public static class ReplayReport {
+    public final Target target;
+    public final double speed;
+    public final long eventCount;
+    // The time from the first to the last recorded event
+    public final long recordedNanos;
+    // The time from the first replayed event to the last Submit, or to the last event if that was later
+    public final long elapsedNanos;
+    public final long submitCount;
+    public final FollowLatencyStats latency;
+
+    public ReplayReport(Target target, double speed, long eventCount, long recordedNanos, long elapsedNanos, long submitCount,
+                        FollowLatencyStats latency) {
+      this.target = target;
+      this.speed = speed;
+      this.eventCount = eventCount;
+      this.recordedNanos = recordedNanos;
+      this.elapsedNanos = elapsedNanos;
+      this.submitCount = submitCount;
+      this.latency = latency;
+    }
+
+    /**
+     * @return the replayed events per second
+     */
+    public double eventsPerSecond() {
+      return elapsedNanos == 0 ? 0.0 : eventCount * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder();
+      sb.append(String.format("Replayed %d events to the %s at speed %s in %.3f s (recorded over %.3f s)%n",
+        eventCount, target, Double.isInfinite(speed) ? "max" : String.valueOf(speed), elapsedNanos / 1e9, recordedNanos / 1e9));
+      sb.append(String.format("Throughput: %.1f events/s, %d submits%n", eventsPerSecond(), submitCount));
+      sb.append(String.format("%-20s %10s %10s %10s %10s %10s %10s%n", "stage (us)", "count", "p50", "p90", "p99", "p99.9", "max"));
+      for (Map.Entry<String, Summary> e : latency.stages.entrySet()) {
+        Summary s = e.getValue();
+        sb.append(String.format("%-20s %10d %10.1f %10.1f %10.1f %10.1f %10.1f%n", e.getKey(), s.count,
+          s.p50Nanos / 1e3, s.p90Nanos / 1e3, s.p99Nanos / 1e3, s.p999Nanos / 1e3, s.maxNanos / 1e3));
+      }
+      return sb.toString();
+    }
+  }
+
+  // Stands in for the HCD and counts the Submits
+  private static class ReplaySink extends AbstractActor {
+    private ReplaySink(AtomicLong submitCount, AtomicLong lastSubmitNanos) {
+      receive(ReceiveBuilder.
+        match(Submit.class, t -> {
+          submitCount.incrementAndGet();
+          lastSubmitNanos.set(System.nanoTime());
+        }).
+        matchAny(t -> {
+          // Ignore anything else meant for the HCD
+        }).
+        build());
+    }
+
+    static Props props(AtomicLong submitCount, AtomicLong lastSubmitNanos) {
+      return Props.create(new Creator<ReplaySink>() {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public ReplaySink create() throws Exception {
+          return new ReplaySink(submitCount, lastSubmitNanos);
+        }
+      });
+    }
+  }
+
+  private static void usage() {
+    System.err.println("Usage: FollowEventReplayer file [--speed factor|max] [--target subscriber|follow]");
+    System.exit(1);
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 1) usage();
+    File file = new File(args[0]);
+    double speed = 1.0;
+    Target target = Target.subscriber;
+    for (int i = 1; i < args.length; i++) {
+      if (args[i].equals("--speed") && i + 1 < args.length) {
+        String s = args[++i];
+        speed = s.equals("max") ? Double.POSITIVE_INFINITY : Double.parseDouble(s);
+      } else if (args[i].equals("--target") && i + 1 < args.length) {
+        target = Target.valueOf(args[++i]);
+      } else usage();
+    }
+
+    Config config = ConfigFactory.parseResources("tromboneAssembly.conf");
+    ComponentId hcdId = new ComponentId("lgsTromboneHCD", JComponentType.HCD);
+    AssemblyInfo info = JComponent.assemblyInfo("lgsTrombone", "nfiraos.ncc.trombone",
+      "csw.examples.vsliceJava.assembly.TromboneAssembly", DoNotRegister, Collections.singleton(AkkaType),
+      Collections.singleton(new Connection.AkkaConnection(hcdId)));
+    AssemblyContext ac = new AssemblyContext(info, new TromboneCalculationConfig(config), new TromboneControlConfig(config));
+
+    // The replay is in-process, so remoting is not needed
+    ActorSystem system = ActorSystem.create("FollowEventReplayer",
+      ConfigFactory.parseString("akka.actor.provider = local").withFallback(ConfigFactory.load()));
+    try (RecordReader records = FollowEventRecorder.open(file)) {
+      System.out.print(replay(system, ac, records, speed, target));
+    } finally {
+      system.terminate();
+    }
+  }
+}
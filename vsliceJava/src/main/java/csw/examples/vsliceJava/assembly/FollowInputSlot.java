@@ -0,0 +1,120 @@
+package csw.examples.vsliceJava.assembly;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static csw.examples.vsliceJava.assembly.FollowActor.FollowUpdate;
+
+/**
+ * A single slot, latest value handoff of zenith angle and focus error samples from the TromboneEventSubscriber to the
+ * FollowActor.
+ * <p>
+ * The subscriber puts each new sample in the slot, replacing any sample that the FollowActor has not taken yet, and
+ * only sends the FollowActor a FollowInputReady message when the slot was empty. The FollowActor takes the sample when
+ * it gets that message. So however fast events arrive, there is at most one wake up message waiting in the FollowActor
+ * mailbox and the FollowActor always calculates with the freshest zenith angle and focus error pair.
+ * <p>
+ * The slot counts the samples offered, the samples replaced before they were processed, and the age of each sample
+ * when it was taken.
+ */
+public class FollowInputSlot {
+  private final AtomicReference<FollowUpdate> slot = new AtomicReference<>();
+
+  // Written by the subscriber
+  private final AtomicLong offeredCount = new AtomicLong();
+  private final AtomicLong conflatedCount = new AtomicLong();
+
+  // Written by the FollowActor
+  private final AtomicLong processedCount = new AtomicLong();
+  private final AtomicLong totalAgeNanos = new AtomicLong();
+  private final AtomicLong maxAgeNanos = new AtomicLong();
+  private volatile long lastAgeNanos = 0;
+
+  /**
+   * Called by the producer with a new sample
+   *
+   * @param update the latest sample, its timeNanos is used for the age when processed
+   * @return true if the slot was empty, so the consumer must be told that there is a sample to take
+   */
+  public boolean offer(FollowUpdate update) {
+    offeredCount.incrementAndGet();
+    FollowUpdate previous = slot.getAndSet(update);
+    if (previous != null) {
+      conflatedCount.incrementAndGet();
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Called by the consumer to take the latest sample
+   *
+   * @param now the current System.nanoTime(), used to record the age of the sample
+   * @return the latest sample, or null if it was already taken
+   */
+  public FollowUpdate take(long now) {
+    FollowUpdate update = slot.getAndSet(null);
+    if (update != null) {
+      long age = now - update.timeNanos;
+      processedCount.incrementAndGet();
+      totalAgeNanos.addAndGet(age);
+      if (age > maxAgeNanos.get()) maxAgeNanos.set(age); // single consumer
+      lastAgeNanos = age;
+    }
+    return update;
+  }
+
+  /**
+   * @return the current counters
+   */
+  public FollowInputStats stats() {
+    return new FollowInputStats(offeredCount.get(), conflatedCount.get(), processedCount.get(), totalAgeNanos.get(),
+      maxAgeNanos.get(), lastAgeNanos);
+  }
+
+  /**
+   * The counters of a FollowInputSlot
+   */
+  @SuppressWarnings("WeakerAccess")
+  public static class FollowInputStats {
+    // Samples put in the slot by the subscriber
+    public final long offeredCount;
+    // Samples replaced by a newer one before the FollowActor took them
+    public final long conflatedCount;
+    // Samples taken and processed by the FollowActor
+    public final long processedCount;
+    // Sum, maximum and latest age of processed samples, from when the subscriber received them to when they were taken
+    public final long totalAgeNanos;
+    public final long maxAgeNanos;
+    public final long lastAgeNanos;
+
+    public FollowInputStats(long offeredCount, long conflatedCount, long processedCount, long totalAgeNanos,
+                            long maxAgeNanos, long lastAgeNanos) {
+      this.offeredCount = offeredCount;
+      this.conflatedCount = conflatedCount;
+      this.processedCount = processedCount;
+      this.totalAgeNanos = totalAgeNanos;
+      this.maxAgeNanos = maxAgeNanos;
+      this.lastAgeNanos = lastAgeNanos;
+    }
+
+    /**
+     * @return the mean age of the processed samples in nanoseconds
+     */
+    public long meanAgeNanos() {
+      return processedCount == 0 ? 0 : totalAgeNanos / processedCount;
+    }
+
+    @Override
+    public String toString() {
+      return "FollowInputStats{" +
+        "offeredCount=" + offeredCount +
+        ", conflatedCount=" + conflatedCount +
+        ", processedCount=" + processedCount +
+        ", meanAgeNanos=" + meanAgeNanos() +
+        ", maxAgeNanos=" + maxAgeNanos +
+        ", lastAgeNanos=" + lastAgeNanos +
+        '}';
+    }
+  }
+}
@@ -0,0 +1,91 @@
+package csw.examples.vsliceJava.assembly;
+
+import csw.examples.vsliceJava.shared.LatencyHistogram;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static csw.examples.vsliceJava.shared.LatencyHistogram.Summary;
+
+/**
+ * The latency histograms of each stage of the follow loop inside the assembly, shared by the actors created by
+ * the FollowCommand.
+ * <p>
+ * The stages are:
+ * <ul>
+ * <li>eventToSubscriber: from the EventTime of a zenith angle or focus error event to when the TromboneEventSubscriber
+ * received it. This compares clocks on different hosts, so it is only meaningful when they are synchronized.</li>
+ * <li>subscriberToCompute: from the subscriber receiving the event to the FollowActor starting the calculation</li>
+ * <li>computeToSubmit: from the FollowActor starting the calculation to TromboneControl sending the Submit to the HCD</li>
+ * <li>subscriberToSubmit: the whole time spent in the assembly</li>
+ * </ul>
+ * Positions held back by the setpoint filter are not sent, so they are not recorded in the last two stages.
+ * <p>
+ * The last stage of the loop, setpointToAxis, from the HCD receiving a setpoint to the axis reaching it, is recorded by
+ * the HCD itself (see TromboneHCD.TromboneEngineering.GetMoveLatency). The FollowCommand asks the HCD for it before
+ * publishing and adds it with stats(hcdMoveLatency).
+ * <p>
+ * Each histogram is written by one actor only.
+ */
+public class FollowLatency {
+  // Stage names, also used for the keys of the followLatency telemetry event
+  public static final String eventToSubscriber = "eventToSubscriber";
+  public static final String subscriberToCompute = "subscriberToCompute";
+  public static final String computeToSubmit = "computeToSubmit";
+  public static final String subscriberToSubmit = "subscriberToSubmit";
+  public static final String setpointToAxis = "setpointToAxis";
+
+  // Written by the TromboneEventSubscriber
+  final LatencyHistogram eventToSubscriberHistogram = new LatencyHistogram();
+  // Written by the FollowActor
+  final LatencyHistogram subscriberToComputeHistogram = new LatencyHistogram();
+  // Written by TromboneControl
+  final LatencyHistogram computeToSubmitHistogram = new LatencyHistogram();
+  final LatencyHistogram subscriberToSubmitHistogram = new LatencyHistogram();
+
+  /**
+   * @return the summary of each stage, in the order of the follow loop
+   */
+  public FollowLatencyStats stats() {
+    Map<String, Summary> stages = new LinkedHashMap<>();
+    stages.put(eventToSubscriber, eventToSubscriberHistogram.summary());
+    stages.put(subscriberToCompute, subscriberToComputeHistogram.summary());
+    stages.put(computeToSubmit, computeToSubmitHistogram.summary());
+    stages.put(subscriberToSubmit, subscriberToSubmitHistogram.summary());
+    return new FollowLatencyStats(stages);
+  }
+
+  /**
+   * @param hcdMoveLatency the move latency reported by the HCD, if known
+   * @return the summary of each stage, with the HCD move latency as the setpointToAxis stage if given
+   */
+  public FollowLatencyStats stats(Optional<Summary> hcdMoveLatency) {
+    FollowLatencyStats stats = stats();
+    if (!hcdMoveLatency.isPresent()) return stats;
+    Map<String, Summary> stages = new LinkedHashMap<>(stats.stages);
+    stages.put(setpointToAxis, hcdMoveLatency.get());
+    return new FollowLatencyStats(stages);
+  }
+
+  /**
+   * The latency summaries of the follow loop stages, the reply to FollowCommand.GetFollowLatency
+   */
+  @SuppressWarnings("WeakerAccess")
+  public static class FollowLatencyStats {
+    // Stage name to summary, in the order of the follow loop
+    public final Map<String, Summary> stages;
+
+    public FollowLatencyStats(Map<String, Summary> stages) {
+      this.stages = Collections.unmodifiableMap(stages);
+    }
+
+    @Override
+    public String toString() {
+      return "FollowLatencyStats{" +
+        "stages=" + stages +
+        '}';
+    }
+  }
+}
@@ -0,0 +1,296 @@
+package csw.examples.vsliceJava.assembly;
+
+import static csw.examples.vsliceJava.assembly.AssemblyContext.TromboneCalculationConfig;
+
+/**
+ * Predicts the zenith angle and focus error a short time ahead, so that the follow loop can command the stage position
+ * expected when the stage gets there, rather than the position for the last event.
+ * <p>
+ * A least squares polynomial (a line or a parabola, see predictionOrder in the calculation-config) is fitted to the
+ * last predictionWindow samples of each value, and evaluated at the calculation time plus predictionLeadTimeMS.
+ * The lead time should cover the time from the event to the calculation plus the HCD move latency
+ * (see TromboneHCD.TromboneEngineering.GetMoveLatency).
+ * <p>
+ * Each prediction is kept until a sample at or after its target time arrives. The prediction error is then
+ * calculated against the actual value at the target time, interpolated between the two samples around it.
+ * <p>
+ * An update does not allocate: the fits use preallocated scratch arrays, the pending predictions are kept in primitive
+ * ring buffers and the Prediction returned by update() is reused.
+ * <p>
+ * This class is not thread safe, it is used from inside the follow actor.
+ */
+public class FollowPredictor {
+  /**
+   * How often the follow actors send the prediction errors for publishing
+   */
+  public static final long errorPublishPeriodNanos = 1000000000L;
+
+  // Predictions waiting for their target time, the oldest are dropped beyond this
+  private static final int maxPending = 64;
+
+  private final TromboneCalculationConfig calculationConfig;
+  private final long leadNanos;
+  private final TrajectoryFit zenithAngleFit;
+  private final TrajectoryFit focusErrorFit;
+
+  // The pending predictions, oldest first from pendingHead
+  private final long[] pendingTargets = new long[maxPending];
+  private final double[] pendingZenithAngles = new double[maxPending];
+  private final double[] pendingFocusErrors = new double[maxPending];
+  private int pendingHead = 0;
+  private int pendingCount = 0;
+
+  // Returned by every update
+  private final Prediction prediction = new Prediction(0, 0.0, 0.0);
+
+  private boolean hasLast = false;
+  private long lastSampleNanos;
+  private double lastZenithAngle;
+  private double lastFocusError;
+
+  // Prediction error statistics
+  private long errorCount = 0;
+  private double zenithAngleSumSquares = 0.0;
+  private double zenithAngleMaxError = 0.0;
+  private double focusErrorSumSquares = 0.0;
+  private double focusErrorMaxError = 0.0;
+
+  /**
+   * @param calculationConfig gives the lead time, window and order, and the focus error limits
+   */
+  public FollowPredictor(TromboneCalculationConfig calculationConfig) {
+    this.calculationConfig = calculationConfig;
+    this.leadNanos = calculationConfig.predictionLeadTimeMS * 1000000L;
+    zenithAngleFit = new TrajectoryFit(calculationConfig.predictionWindow, calculationConfig.predictionOrder);
+    focusErrorFit = new TrajectoryFit(calculationConfig.predictionWindow, calculationConfig.predictionOrder);
+  }
+
+  /**
+   * Adds a sample and predicts the values at computeNanos plus the lead time.
+   * The predictions are limited to the valid zenith angle and focus error ranges.
+   *
+   * @param sampleNanos  the System.nanoTime() when the sample entered the assembly
+   * @param computeNanos the System.nanoTime() of the calculation
+   * @param zenithAngle  the sample zenith angle
+   * @param focusError   the sample focus error
+   * @return the predicted zenith angle and focus error, only valid until the next update
+   */
+  public Prediction update(long sampleNanos, long computeNanos, double zenithAngle, double focusError) {
+    recordErrors(sampleNanos, zenithAngle, focusError);
+    zenithAngleFit.add(sampleNanos, zenithAngle);
+    focusErrorFit.add(sampleNanos, focusError);
+    hasLast = true;
+    lastSampleNanos = sampleNanos;
+    lastZenithAngle = zenithAngle;
+    lastFocusError = focusError;
+
+    long target = computeNanos + leadNanos;
+    double za = Math.max(0.0, Math.min(Math.nextDown(90.0), zenithAngleFit.valueAt(target)));
+    double fe = Math.max(calculationConfig.lowerFocusLimit, Math.min(calculationConfig.upperFocusLimit, focusErrorFit.valueAt(target)));
+    if (pendingCount == maxPending) {
+      pendingHead = (pendingHead + 1) % maxPending;
+      pendingCount--;
+    }
+    int tail = (pendingHead + pendingCount) % maxPending;
+    pendingTargets[tail] = target;
+    pendingZenithAngles[tail] = za;
+    pendingFocusErrors[tail] = fe;
+    pendingCount++;
+
+    prediction.targetNanos = target;
+    prediction.zenithAngle = za;
+    prediction.focusError = fe;
+    return prediction;
+  }
+
+  // Compares the predictions whose target time has been reached with the actual values at that time
+  private void recordErrors(long sampleNanos, double zenithAngle, double focusError) {
+    while (pendingCount > 0 && pendingTargets[pendingHead] <= sampleNanos) {
+      long targetNanos = pendingTargets[pendingHead];
+      double predictedZenithAngle = pendingZenithAngles[pendingHead];
+      double predictedFocusError = pendingFocusErrors[pendingHead];
+      pendingHead = (pendingHead + 1) % maxPending;
+      pendingCount--;
+      double za = zenithAngle;
+      double fe = focusError;
+      if (hasLast && targetNanos > lastSampleNanos && sampleNanos > lastSampleNanos) {
+        double f = (double) (targetNanos - lastSampleNanos) / (sampleNanos - lastSampleNanos);
+        za = lastZenithAngle + f * (zenithAngle - lastZenithAngle);
+        fe = lastFocusError + f * (focusError - lastFocusError);
+      }
+      double zaError = Math.abs(za - predictedZenithAngle);
+      double feError = Math.abs(fe - predictedFocusError);
+      errorCount++;
+      zenithAngleSumSquares += zaError * zaError;
+      focusErrorSumSquares += feError * feError;
+      zenithAngleMaxError = Math.max(zenithAngleMaxError, zaError);
+      focusErrorMaxError = Math.max(focusErrorMaxError, feError);
+    }
+  }
+
+  /**
+   * Forgets the samples and pending predictions, for instance when the NSS use changes. The error statistics are kept.
+   */
+  public void reset() {
+    zenithAngleFit.clear();
+    focusErrorFit.clear();
+    pendingHead = 0;
+    pendingCount = 0;
+    hasLast = false;
+  }
+
+  /**
+   * @return the prediction error statistics so far
+   */
+  public PredictionStats stats() {
+    return new PredictionStats(errorCount,
+      errorCount == 0 ? 0.0 : Math.sqrt(zenithAngleSumSquares / errorCount), zenithAngleMaxError,
+      errorCount == 0 ? 0.0 : Math.sqrt(focusErrorSumSquares / errorCount), focusErrorMaxError);
+  }
+
+  /**
+   * A predicted zenith angle and focus error. The FollowPredictor updates the same instance on each update.
+   */
+  @SuppressWarnings("WeakerAccess")
+  public static class Prediction {
+    // The System.nanoTime() the prediction is for
+    public long targetNanos;
+    public double zenithAngle;
+    public double focusError;
+
+    public Prediction(long targetNanos, double zenithAngle, double focusError) {
+      this.targetNanos = targetNanos;
+      this.zenithAngle = zenithAngle;
+      this.focusError = focusError;
+    }
+  }
+
+  /**
+   * The RMS and maximum prediction errors, in zenithAngleUnits and focusErrorUnits
+   */
+  @SuppressWarnings("WeakerAccess")
+  public static class PredictionStats {
+    public final long count;
+    public final double zenithAngleRmsError;
+    public final double zenithAngleMaxError;
+    public final double focusErrorRmsError;
+    public final double focusErrorMaxError;
+
+    public PredictionStats(long count, double zenithAngleRmsError, double zenithAngleMaxError, double focusErrorRmsError,
+                           double focusErrorMaxError) {
+      this.count = count;
+      this.zenithAngleRmsError = zenithAngleRmsError;
+      this.zenithAngleMaxError = zenithAngleMaxError;
+      this.focusErrorRmsError = focusErrorRmsError;
+      this.focusErrorMaxError = focusErrorMaxError;
+    }
+
+    @Override
+    public String toString() {
+      return "PredictionStats{" +
+        "count=" + count +
+        ", zenithAngleRmsError=" + zenithAngleRmsError +
+        ", zenithAngleMaxError=" + zenithAngleMaxError +
+        ", focusErrorRmsError=" + focusErrorRmsError +
+        ", focusErrorMaxError=" + focusErrorMaxError +
+        '}';
+    }
+  }
+
+  /**
+   * A least squares polynomial fit of the last few samples of one value.
+   * Times are taken relative to the newest sample and scaled by the time span of the samples, so the fit is
+   * well conditioned whatever the sample rate.
+   */
+  static class TrajectoryFit {
+    private final long[] times;
+    private final double[] values;
+    private final int order;
+    private int count = 0;
+    private int next = 0;
+
+    // Scratch space for fit(), sized for the highest order: the augmented normal equations, the powers of x
+    // and the coefficients
+    private final double[][] a = new double[3][4];
+    private final double[] powers = new double[5];
+    private final double[] coefficients = new double[3];
+
+    /**
+     * @param window the number of samples to fit, at least 1
+     * @param order  the polynomial order, 0 (the last value), 1 (a line) or 2 (a parabola)
+     */
+    TrajectoryFit(int window, int order) {
+      times = new long[Math.max(1, window)];
+      values = new double[times.length];
+      this.order = Math.max(0, Math.min(2, order));
+    }
+
+    void add(long timeNanos, double value) {
+      times[next] = timeNanos;
+      values[next] = value;
+      next = (next + 1) % times.length;
+      count = Math.min(count + 1, times.length);
+    }
+
+    void clear() {
+      count = 0;
+      next = 0;
+    }
+
+    /**
+     * @return the fitted value at the given time, with the highest order the samples allow
+     */
+    double valueAt(long timeNanos) {
+      if (count == 0) return 0.0;
+      int newest = (next - 1 + times.length) % times.length;
+      long t0 = times[newest];
+      long oldest = count < times.length ? times[0] : times[next];
+      double span = t0 - oldest;
+      if (span <= 0) return values[newest];
+      // Fall back to lower orders when there are too few samples or they are too close in time
+      for (int n = Math.min(order, count - 1); n > 0; n--) {
+        if (fit(t0, span, n + 1)) {
+          double x = (timeNanos - t0) / span;
+          double v = coefficients[n];
+          for (int i = n - 1; i >= 0; i--) v = v * x + coefficients[i];
+          return v;
+        }
+      }
+      return values[newest];
+    }
+
+    // Solves the normal equations for the given number of coefficients into coefficients, or returns false if they
+    // are singular
+    private boolean fit(long t0, double span, int m) {
+      for (int i = 0; i < m; i++) for (int j = 0; j <= m; j++) a[i][j] = 0.0;
+      for (int k = 0; k < count; k++) {
+        double x = (times[k] - t0) / span;
+        powers[0] = 1.0;
+        for (int p = 1; p < 2 * m - 1; p++) powers[p] = powers[p - 1] * x;
+        for (int i = 0; i < m; i++) {
+          for (int j = 0; j < m; j++) a[i][j] += powers[i + j];
+          a[i][m] += powers[i] * values[k];
+        }
+      }
+      // Gaussian elimination with partial pivoting
+      for (int col = 0; col < m; col++) {
+        int pivot = col;
+        for (int r = col + 1; r < m; r++) if (Math.abs(a[r][col]) > Math.abs(a[pivot][col])) pivot = r;
+        if (Math.abs(a[pivot][col]) < 1e-9) return false;
+        double[] tmp = a[col];
+        a[col] = a[pivot];
+        a[pivot] = tmp;
+        for (int r = col + 1; r < m; r++) {
+          double f = a[r][col] / a[col][col];
+          for (int c = col; c <= m; c++) a[r][c] -= f * a[col][c];
+        }
+      }
+      for (int i = m - 1; i >= 0; i--) {
+        double v = a[i][m];
+        for (int j = i + 1; j < m; j++) v -= a[i][j] * coefficients[j];
+        coefficients[i] = v / a[i][i];
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,254 @@
+package csw.examples.vsliceJava.assembly;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.Cancellable;
+import akka.actor.Props;
+import akka.event.Logging;
+import akka.event.LoggingAdapter;
+import akka.japi.Creator;
+import akka.japi.pf.ReceiveBuilder;
+import csw.examples.vsliceJava.hcd.TromboneHCD;
+import csw.examples.vsliceJava.shared.FlightRecorder;
+import csw.util.config.BooleanItem;
+import csw.util.config.DoubleItem;
+import javacsw.services.events.IEventService;
+import scala.concurrent.duration.Duration;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static csw.examples.vsliceJava.assembly.Algorithms.*;
+import static csw.examples.vsliceJava.assembly.AssemblyContext.TromboneCalculationConfig;
+import static csw.examples.vsliceJava.assembly.AssemblyContext.TromboneControlConfig;
+import static csw.examples.vsliceJava.assembly.FollowInputSlot.FollowInputStats;
+import static csw.examples.vsliceJava.assembly.FollowPredictor.PredictionStats;
+import static csw.examples.vsliceJava.assembly.TromboneControl.GetSetpointStats;
+import static csw.examples.vsliceJava.assembly.TromboneControl.SetpointStats;
+import static csw.examples.vsliceJava.assembly.TrombonePublisher.AOESWUpdate;
+import static csw.examples.vsliceJava.assembly.TrombonePublisher.EngrUpdate;
+import static csw.examples.vsliceJava.assembly.TrombonePublisher.PredictionErrorUpdate;
+import static csw.services.ccs.HcdController.Submit;
+import static csw.services.events.EventService.EventMonitor;
+import static csw.util.config.Events.SystemEvent;
+import static javacsw.util.config.JItems.jitem;
+import static javacsw.util.config.JItems.jvalue;
+
+/**
+ * FusedFollowActor does the work of the TromboneEventSubscriber, FollowActor and TromboneControl in one actor, for the
+ * fused follow mode (see fusedFollow in the control-config).
+ * <p>
+ * It subscribes to the zenith angle and focus error events, and for each event calculates the new stage position,
+ * converts it to encoder units, checks it and submits it to the trombone HCD, all while processing the event message.
+ * Only then are the AOESW and engineering updates sent to the TrombonePublisher, so publishing is not on the path from
+ * the event to the HCD. Compared to the separate actors, there is no mailbox hop from the subscriber to the follow
+ * actor, from the follow actor to the control actor, or through a FollowInputSlot.
+ * <p>
+ * The calculations, prediction, NSS handling and setpoint filter are the same as in the separate actors, which remain the default
+ * because they can be tested separately.
+ */
+@SuppressWarnings("OptionalUsedAsFieldOrParameterType")
+class FusedFollowActor extends AbstractActor {
+
+  private LoggingAdapter log = Logging.getLogger(getContext().system(), this);
+
+  private final AssemblyContext ac;
+  private final TromboneCalculationConfig calculationConfig;
+  private final TromboneControlConfig controlConfig;
+  private final Optional<ActorRef> eventPublisher;
+  private final Optional<FollowLatency> latency;
+  private final Optional<FollowPredictor> predictor;
+  // The assembly's recorder, or one that drops everything
+  private final FlightRecorder flightRecorder;
+  private long lastPredictionPublishNanos = System.nanoTime();
+  private final EventMonitor subscribeMonitor;
+
+  // May be updated if the HCD goes down or up
+  private Optional<ActorRef> tromboneHCD;
+
+  // Follow state
+  private boolean nssInUse;
+  private final double cElevation;
+  private double cFocusError = 0.0;
+  private double cZenithAngle = 0.0;
+
+  // Suppresses setpoints that would not move the axis noticeably, as in TromboneControl
+  private final SetpointFilter setpointFilter;
+  private Cancellable resendTimer = null;
+
+  /**
+   * Constructor
+   *
+   * @param ac               the trombone AssemblyContext contains important shared values and useful function
+   * @param initialElevation the elevation used in the calculations
+   * @param nssInUseIn       set to true if the NFIRAOS Source Simulator is in use, then the zenith angle is always 0.0
+   * @param tromboneHCDIn    the actor reference to the trombone HCD as an optional value
+   * @param eventPublisher   the actor reference to the TrombonePublisher as an optional value
+   * @param eventService     EventService for subscriptions
+   * @param latency          if present, the follow loop latency is recorded here
+   * @param flightRecorder   if present, the inputs, calculated elevations and encoder commands are recorded here
+   */
+  private FusedFollowActor(AssemblyContext ac, DoubleItem initialElevation, BooleanItem nssInUseIn, Optional<ActorRef> tromboneHCDIn,
+                           Optional<ActorRef> eventPublisher, IEventService eventService, Optional<FollowLatency> latency,
+                           Optional<FlightRecorder> flightRecorder) {
+    this.ac = ac;
+    this.calculationConfig = ac.calculationConfig;
+    this.controlConfig = ac.controlConfig;
+    this.tromboneHCD = tromboneHCDIn;
+    this.eventPublisher = eventPublisher;
+    this.latency = latency;
+    this.flightRecorder = flightRecorder.orElse(FlightRecorder.disabled());
+
+    cElevation = jvalue(initialElevation);
+    nssInUse = jvalue(nssInUseIn);
+    setpointFilter = new SetpointFilter(controlConfig.encoderDeadband, controlConfig.minResendIntervalMS);
+    predictor = calculationConfig.predictionLeadTimeMS > 0 ? Optional.of(new FollowPredictor(calculationConfig)) : Optional.empty();
+
+    // Always subscribe to focus error, but only subscribe to ZA if nss is not in use
+    subscribeMonitor = nssInUse
+      ? eventService.subscribe(self(), false, ac.feConfigKey.prefix())
+      : eventService.subscribe(self(), false, ac.feConfigKey.prefix(), ac.zaConfigKey.prefix());
+
+    receive(ReceiveBuilder.
+      match(SystemEvent.class, event -> {
+        long now = System.nanoTime();
+        latency.ifPresent(l ->
+          l.eventToSubscriberHistogram.recordNanos(java.time.Duration.between(event.info().eventTime().time(), Instant.now()).toNanos()));
+        if (event.info().source().equals(ac.zaConfigKey)) {
+          DoubleItem za = jitem(event, ac.zenithAngleKey);
+          if (za.units() != ac.zenithAngleUnits)
+            log.error("Ignoring event data received with improper units: zenithAngle: " + za.units());
+          else follow(jvalue(za), cFocusError, now);
+        } else if (event.info().source().equals(ac.feConfigKey)) {
+          DoubleItem fe = jitem(event, ac.focusErrorKey);
+          if (fe.units() != ac.focusErrorUnits)
+            log.error("Ignoring event data received with improper units: focusError: " + fe.units());
+          else follow(cZenithAngle, jvalue(fe), now);
+        } else log.info("FusedFollowActor received an unknown SystemEvent: " + event.info().source());
+      }).
+      match(FollowActor.SetZenithAngle.class, t -> follow(jvalue(t.zenithAngle), cFocusError, System.nanoTime())).
+      match(FollowCommand.UpdateZAandFE.class, t -> follow(jvalue(t.zenithAngle), jvalue(t.focusError), System.nanoTime())).
+      match(FollowCommand.UpdateNssInUse.class, t -> {
+        boolean newNssInUse = jvalue(t.nssInUse);
+        if (newNssInUse != nssInUse) {
+          if (newNssInUse) subscribeMonitor.unsubscribeFrom(ac.zaConfigKey.prefix());
+          else subscribeMonitor.subscribeTo(ac.zaConfigKey.prefix());
+          nssInUse = newNssInUse;
+          cZenithAngle = 0.0;
+          predictor.ifPresent(FollowPredictor::reset);
+        }
+      }).
+      match(ResendSetpoint.class, t -> {
+        resendTimer = null;
+        if (setpointFilter.hasPending()) sendPosition(setpointFilter.takePending(System.nanoTime()));
+      }).
+      match(GetSetpointStats.class, t ->
+        sender().tell(new SetpointStats(setpointFilter.sentCount(), setpointFilter.suppressedCount()), self())).
+      match(FollowActor.GetPredictionStats.class, t ->
+        sender().tell(predictor.map(FollowPredictor::stats).orElse(new PredictionStats(0, 0.0, 0.0, 0.0, 0.0)), self())).
+      match(FollowActor.GetFollowInputStats.class, t ->
+        // There is no input slot in this mode
+        sender().tell(new FollowInputStats(0, 0, 0, 0, 0, 0), self())).
+      match(TromboneAssembly.UpdateTromboneHCD.class, t -> {
+        // A new HCD needs to get the next setpoint
+        setpointFilter.reset();
+        tromboneHCD = t.tromboneHCD;
+      }).
+      matchAny(t -> log.warning("Unexpected message received in FusedFollowActor: " + t)).
+      build());
+  }
+
+  // Calculates and submits the new position, then sends the updates for publishing.
+  // receivedNanos is the System.nanoTime() when the update arrived
+  private void follow(double zenithAngle, double focusError, long receivedNanos) {
+    if (!verifyZenithAngle(zenithAngle) || !verifyFocusError(calculationConfig, focusError)) {
+      log.error("Ignoring out of range event data: zenithAngle: " + zenithAngle + ", focusError: " + focusError);
+      return;
+    }
+    flightRecorder.recordFollowInput(zenithAngle, focusError);
+    // When predicting, the calculation uses the values expected when the stage gets to its new position
+    double za = zenithAngle;
+    double fe = focusError;
+    if (predictor.isPresent()) {
+      FollowPredictor.Prediction p = predictor.get().update(receivedNanos, System.nanoTime(), zenithAngle, focusError);
+      za = p.zenithAngle;
+      fe = p.focusError;
+    }
+    double totalRangeDistance = focusZenithAngleToRangeDistance(calculationConfig, cElevation, fe, za);
+    double newTrombonePosition = rangeDistanceToStagePosition(totalRangeDistance);
+    int encoderPosition = stagePositionToEncoder(controlConfig, newTrombonePosition);
+
+    // Final check before sending off to hardware
+    assert (encoderPosition > controlConfig.minEncoderLimit && encoderPosition < controlConfig.maxEncoderLimit);
+
+    long now = System.nanoTime();
+    if (setpointFilter.accept(encoderPosition, now)) {
+      sendPosition(encoderPosition);
+      latency.ifPresent(l -> l.subscriberToSubmitHistogram.recordNanos(System.nanoTime() - receivedNanos));
+    } else if (setpointFilter.hasPending() && resendTimer == null) {
+      // Make sure the latest position gets to the HCD even if no more positions arrive
+      resendTimer = context().system().scheduler().scheduleOnce(
+        Duration.create(setpointFilter.resendDelayNanos(now), TimeUnit.NANOSECONDS),
+        self(), ResendSetpoint.instance, context().dispatcher(), self());
+    }
+
+    // Publishing is done after the HCD has its position
+    double newElevation = rangeDistanceToElevation(totalRangeDistance, za);
+    flightRecorder.recordElevationRange(newElevation, totalRangeDistance);
+    eventPublisher.ifPresent(actorRef -> {
+      // The sodiumLayer event is not published when the NSS is in use, as in the FollowActor
+      if (!nssInUse) actorRef.tell(new AOESWUpdate(newElevation, totalRangeDistance), self());
+      actorRef.tell(new EngrUpdate(focusError, newTrombonePosition, zenithAngle), self());
+      if (predictor.isPresent() && now - lastPredictionPublishNanos >= FollowPredictor.errorPublishPeriodNanos) {
+        lastPredictionPublishNanos = now;
+        actorRef.tell(new PredictionErrorUpdate(predictor.get().stats()), self());
+      }
+    });
+
+    cFocusError = focusError;
+    cZenithAngle = zenithAngle;
+  }
+
+  private void sendPosition(int encoderPosition) {
+    flightRecorder.recordEncoderCommand(encoderPosition);
+    tromboneHCD.ifPresent(actorRef -> actorRef.tell(new Submit(TromboneHCD.positionSC(encoderPosition)), self()));
+  }
+
+  @Override
+  public void postStop() throws Exception {
+    if (resendTimer != null) resendTimer.cancel();
+    subscribeMonitor.stop();
+    super.postStop();
+  }
+
+  // --- static defs ---
+
+  public static Props props(AssemblyContext ac, DoubleItem initialElevation, BooleanItem nssInUseIn, Optional<ActorRef> tromboneHCDIn,
+                            Optional<ActorRef> eventPublisher, IEventService eventService, Optional<FollowLatency> latency) {
+    return props(ac, initialElevation, nssInUseIn, tromboneHCDIn, eventPublisher, eventService, latency, Optional.empty());
+  }
+
+  // Props for creating the actor that also writes to the assembly's flight recorder
+  public static Props props(AssemblyContext ac, DoubleItem initialElevation, BooleanItem nssInUseIn, Optional<ActorRef> tromboneHCDIn,
+                            Optional<ActorRef> eventPublisher, IEventService eventService, Optional<FollowLatency> latency,
+                            Optional<FlightRecorder> flightRecorder) {
+    return Props.create(new Creator<FusedFollowActor>() {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      public FusedFollowActor create() throws Exception {
+        return new FusedFollowActor(ac, initialElevation, nssInUseIn, tromboneHCDIn, eventPublisher, eventService, latency,
+          flightRecorder);
+      }
+    });
+  }
+
+  // Sent to self to send a setpoint that was held back by the setpoint filter
+  private static class ResendSetpoint {
+    static final ResendSetpoint instance = new ResendSetpoint();
+
+    private ResendSetpoint() {
+    }
+  }
+}
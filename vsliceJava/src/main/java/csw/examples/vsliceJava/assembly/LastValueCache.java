@@ -0,0 +1,138 @@
+package csw.examples.vsliceJava.assembly;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Remembers the last published payload of each event so that the TrombonePublisher only publishes events that changed.
+ * <p>
+ * The key is the event prefix, plus the axis name for the axis events, and the payload is any value with equals, such
+ * as the list of items of the event. An unchanged payload is suppressed unless the heartbeat time has passed since the
+ * key was last published, in which case it is published again so that consumers can see the assembly is alive.
+ * <p>
+ * Since a key may get no updates at all for a long time, the cache also keeps the last event published for each key.
+ * The owner calls dueHeartbeats() periodically and publishes again the events whose heartbeat is due.
+ * <p>
+ * This class is not thread safe, it is used from inside the TrombonePublisher.
+ *
+ * @param <E> the type of the events kept for the heartbeats
+ */
+public class LastValueCache<E> {
+  private final long heartbeatNanos;
+  private final Map<String, Entry<E>> entries = new HashMap<>();
+
+  private long publishedCount = 0;
+  private long suppressedCount = 0;
+  private long heartbeatCount = 0;
+
+  private static class Entry<E> {
+    final Object payload;
+    final E event;
+    long publishedNanos;
+
+    Entry(Object payload, E event, long publishedNanos) {
+      this.payload = payload;
+      this.event = event;
+      this.publishedNanos = publishedNanos;
+    }
+  }
+
+  /**
+   * @param heartbeatNanos an unchanged payload is published again after this time
+   */
+  public LastValueCache(long heartbeatNanos) {
+    this.heartbeatNanos = heartbeatNanos;
+  }
+
+  /**
+   * Decides whether to publish a payload and, if so, remembers it as the last one published for the key
+   *
+   * @param key      the event prefix, plus any name that tells apart events with the same prefix
+   * @param payload  the values of the event
+   * @param event    the event to publish again from dueHeartbeats(), or null for none
+   * @param nowNanos the current time from System.nanoTime()
+   * @return true if the payload changed or the heartbeat is due, false if the publish should be suppressed
+   */
+  public boolean shouldPublish(String key, Object payload, E event, long nowNanos) {
+    Entry<E> last = entries.get(key);
+    if (last != null && Objects.equals(last.payload, payload)) {
+      if (nowNanos - last.publishedNanos < heartbeatNanos) {
+        suppressedCount++;
+        return false;
+      }
+      heartbeatCount++;
+    }
+    entries.put(key, new Entry<>(payload, event, nowNanos));
+    publishedCount++;
+    return true;
+  }
+
+  /**
+   * Same as shouldPublish(key, payload, null, nowNanos), for a key that is not published again by dueHeartbeats()
+   */
+  public boolean shouldPublish(String key, Object payload, long nowNanos) {
+    return shouldPublish(key, payload, null, nowNanos);
+  }
+
+  /**
+   * Finds the keys that have not been published for the heartbeat time and counts them as published now
+   *
+   * @param nowNanos the current time from System.nanoTime()
+   * @return the last events of those keys, which the caller should publish again
+   */
+  public List<E> dueHeartbeats(long nowNanos) {
+    List<E> due = new ArrayList<>();
+    for (Entry<E> e : entries.values()) {
+      if (e.event != null && nowNanos - e.publishedNanos >= heartbeatNanos) {
+        e.publishedNanos = nowNanos;
+        publishedCount++;
+        heartbeatCount++;
+        due.add(e.event);
+      }
+    }
+    return due;
+  }
+
+  /**
+   * Forgets all payloads, so the next event of each key is published
+   */
+  public void clear() {
+    entries.clear();
+  }
+
+  /**
+   * @return the counters so far
+   */
+  public CacheStats stats() {
+    return new CacheStats(publishedCount, suppressedCount, heartbeatCount);
+  }
+
+  /**
+   * The number of events published, including heartbeats, the number suppressed because they had not changed
+   * and the number published only as heartbeats
+   */
+  @SuppressWarnings("WeakerAccess")
+  public static class CacheStats {
+    public final long publishedCount;
+    public final long suppressedCount;
+    public final long heartbeatCount;
+
+    public CacheStats(long publishedCount, long suppressedCount, long heartbeatCount) {
+      this.publishedCount = publishedCount;
+      this.suppressedCount = suppressedCount;
+      this.heartbeatCount = heartbeatCount;
+    }
+
+    @Override
+    public String toString() {
+      return "CacheStats{" +
+        "publishedCount=" + publishedCount +
+        ", suppressedCount=" + suppressedCount +
+        ", heartbeatCount=" + heartbeatCount +
+        '}';
+    }
+  }
+}
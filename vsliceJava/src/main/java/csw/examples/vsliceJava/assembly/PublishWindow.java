@@ -0,0 +1,216 @@
+package csw.examples.vsliceJava.assembly;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Limits the number of publishes of one class of events that are in flight, that is started but not yet completed
+ * by the event or telemetry service, so that a slow service does not cause an unbounded number of outstanding futures.
+ * <p>
+ * A publish offered while the window is full waits, and what happens to waiting publishes depends on the policy:
+ * <ul>
+ * <li>block: all publishes wait their turn and none are dropped, up to a hard limit of maxBlocked waiting publishes.
+ * For events that must not be lost, such as the AO sodiumLayer event. A service that stops completing publishes would
+ * otherwise make the waiting queue grow without bound, so beyond the limit a publish is rejected and counted as an
+ * overflow, which the caller should report as an error.</li>
+ * <li>dropOldest: up to maxQueued publishes wait, beyond that the oldest waiting publish is dropped</li>
+ * <li>conflate: only the latest publish waits, it replaces the one waiting before it, which is dropped</li>
+ * </ul>
+ * Waiting publishes are started in the order they were offered as earlier ones complete, so the events of the class
+ * are published in order.
+ * <p>
+ * This class is not thread safe, it is used from inside the TrombonePublisher, which calls completed() from its own
+ * thread when it is told that a publish has completed.
+ */
+public class PublishWindow {
+
+  /**
+   * What to do with publishes offered while the window is full
+   */
+  public enum Policy {
+    block,
+    dropOldest,
+    conflate
+  }
+
+  private final String name;
+  private final Settings settings;
+  private final ArrayDeque<Supplier<CompletableFuture<?>>> waiting = new ArrayDeque<>();
+  private int inFlight = 0;
+
+  private long startedCount = 0;
+  private long droppedCount = 0;
+  private long overflowCount = 0;
+  private int maxInFlightSeen = 0;
+  private int maxWaitingSeen = 0;
+
+  /**
+   * @param name     the event class name, used in the stats
+   * @param settings the window size and policy
+   */
+  public PublishWindow(String name, Settings settings) {
+    this.name = name;
+    this.settings = settings;
+  }
+
+  public String name() {
+    return name;
+  }
+
+  /**
+   * Offers a publish
+   *
+   * @param publish starts the publish and returns its future
+   * @return true if the publish can be started now, it then counts as in flight until completed() is called.
+   * If false, it waits or was dropped according to the policy, or it was rejected because maxBlocked publishes
+   * are already waiting (see overflowCount()).
+   */
+  public boolean offer(Supplier<CompletableFuture<?>> publish) {
+    if (inFlight < settings.maxInFlight && waiting.isEmpty()) {
+      started();
+      return true;
+    }
+    switch (settings.policy) {
+      case conflate:
+        if (!waiting.isEmpty()) {
+          waiting.clear();
+          droppedCount++;
+        }
+        break;
+      case dropOldest:
+        if (waiting.size() >= Math.max(1, settings.maxQueued)) {
+          waiting.removeFirst();
+          droppedCount++;
+        }
+        break;
+      case block:
+        if (waiting.size() >= settings.maxBlocked) {
+          overflowCount++;
+          return false;
+        }
+        break;
+    }
+    waiting.addLast(publish);
+    maxWaitingSeen = Math.max(maxWaitingSeen, waiting.size());
+    return false;
+  }
+
+  /**
+   * Called when a publish started by this window has completed, successfully or not
+   *
+   * @return the next waiting publish, which counts as in flight and should be started now, or null if none is waiting
+   */
+  public Supplier<CompletableFuture<?>> completed() {
+    inFlight = Math.max(0, inFlight - 1);
+    if (waiting.isEmpty() || inFlight >= settings.maxInFlight) return null;
+    started();
+    return waiting.removeFirst();
+  }
+
+  private void started() {
+    inFlight++;
+    startedCount++;
+    maxInFlightSeen = Math.max(maxInFlightSeen, inFlight);
+  }
+
+  /**
+   * @return the number of publishes rejected so far because maxBlocked publishes were waiting
+   */
+  public long overflowCount() {
+    return overflowCount;
+  }
+
+  /**
+   * @return the counters of this window
+   */
+  public WindowStats stats() {
+    return new WindowStats(name, settings.policy, inFlight, waiting.size(), startedCount, droppedCount, overflowCount,
+      maxInFlightSeen, maxWaitingSeen);
+  }
+
+  /**
+   * The size and policy of a window
+   */
+  @SuppressWarnings("WeakerAccess")
+  public static class Settings {
+    /**
+     * The default hard limit on the publishes waiting with the block policy
+     */
+    public static final int defaultMaxBlocked = 10000;
+
+    // The most publishes in flight at once, at least 1
+    public final int maxInFlight;
+    // The most publishes waiting with the dropOldest policy
+    public final int maxQueued;
+    public final Policy policy;
+    // The most publishes waiting with the block policy, at least 1
+    public final int maxBlocked;
+
+    public Settings(int maxInFlight, int maxQueued, Policy policy, int maxBlocked) {
+      this.maxInFlight = Math.max(1, maxInFlight);
+      this.maxQueued = maxQueued;
+      this.policy = policy;
+      this.maxBlocked = Math.max(1, maxBlocked);
+    }
+
+    public Settings(int maxInFlight, int maxQueued, Policy policy) {
+      this(maxInFlight, maxQueued, policy, defaultMaxBlocked);
+    }
+
+    @Override
+    public String toString() {
+      return "Settings{" +
+        "maxInFlight=" + maxInFlight +
+        ", maxQueued=" + maxQueued +
+        ", policy=" + policy +
+        ", maxBlocked=" + maxBlocked +
+        '}';
+    }
+  }
+
+  /**
+   * The counters of a window: the publishes in flight and waiting now, the publishes started, dropped and rejected
+   * for overflow so far, and the most in flight and waiting at once
+   */
+  @SuppressWarnings("WeakerAccess")
+  public static class WindowStats {
+    public final String name;
+    public final Policy policy;
+    public final int inFlight;
+    public final int waiting;
+    public final long startedCount;
+    public final long droppedCount;
+    public final long overflowCount;
+    public final int maxInFlight;
+    public final int maxWaiting;
+
+    public WindowStats(String name, Policy policy, int inFlight, int waiting, long startedCount, long droppedCount,
+                       long overflowCount, int maxInFlight, int maxWaiting) {
+      this.name = name;
+      this.policy = policy;
+      this.inFlight = inFlight;
+      this.waiting = waiting;
+      this.startedCount = startedCount;
+      this.droppedCount = droppedCount;
+      this.overflowCount = overflowCount;
+      this.maxInFlight = maxInFlight;
+      this.maxWaiting = maxWaiting;
+    }
+
+    @Override
+    public String toString() {
+      return "WindowStats{" +
+        "name='" + name + '\'' +
+        ", policy=" + policy +
+        ", inFlight=" + inFlight +
+        ", waiting=" + waiting +
+        ", startedCount=" + startedCount +
+        ", droppedCount=" + droppedCount +
+        ", overflowCount=" + overflowCount +
+        ", maxInFlight=" + maxInFlight +
+        ", maxWaiting=" + maxWaiting +
+        '}';
+    }
+  }
+}
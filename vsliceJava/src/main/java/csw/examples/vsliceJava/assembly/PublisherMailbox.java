@@ -0,0 +1,185 @@
+package csw.examples.vsliceJava.assembly;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.dispatch.Envelope;
+import akka.dispatch.MailboxType;
+import akka.dispatch.MessageQueue;
+import akka.dispatch.ProducesMessageQueue;
+import akka.dispatch.UnboundedMessageQueueSemantics;
+import com.typesafe.config.Config;
+import csw.examples.vsliceJava.shared.LatencyHistogram;
+import scala.Option;
+
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static csw.examples.vsliceJava.assembly.TrombonePublisher.*;
+import static csw.examples.vsliceJava.hcd.SingleAxisSimulator.AxisUpdate;
+import static csw.examples.vsliceJava.shared.LatencyHistogram.Summary;
+
+/**
+ * The mailbox of the TrombonePublisher, which splits its messages into priority lanes so that a burst of telemetry
+ * does not delay the AO sodiumLayer event.
+ * <p>
+ * There are three lanes, each first in first out, and a message is only taken from a lane when the lanes before it
+ * are empty:
+ * <ul>
+ * <li>ao: AOESWUpdate, consumed by the RTC</li>
+ * <li>control: TromboneState, publish completions, location updates and engineering queries</li>
+ * <li>telemetry: EngrUpdate, AxisStateUpdate, the raw AxisUpdates of the HCD, AxisStatsUpdate, FollowLatencyUpdate and
+ * PredictionErrorUpdate</li>
+ * </ul>
+ * Each lane counts its queue depth and records how long its messages wait in the queue.
+ * <p>
+ * The mailbox is set up in reference.conf as trombone-publisher-mailbox and used by TrombonePublisher.props().
+ * An actor finds its queue, to report the lane stats, by sending itself a QueueRequest: the queue fills it in
+ * when the request is queued.
+ */
+public class PublisherMailbox implements MailboxType, ProducesMessageQueue<PublisherMailbox.LaneQueue> {
+
+  // The lanes, in priority order
+  public static final int aoLane = 0;
+  public static final int controlLane = 1;
+  public static final int telemetryLane = 2;
+  public static final String[] laneNames = {"ao", "control", "telemetry"};
+
+  /**
+   * Called by Akka with the mailbox config
+   */
+  @SuppressWarnings("unused")
+  public PublisherMailbox(ActorSystem.Settings settings, Config config) {
+  }
+
+  @Override
+  public MessageQueue create(Option<ActorRef> owner, Option<ActorSystem> system) {
+    return new LaneQueue();
+  }
+
+  /**
+   * Sent by an actor to itself to find its LaneQueue. The queue sets itself in the request when it is queued, so the
+   * request is empty when it arrives if the actor does not use this mailbox. It goes in the control lane.
+   */
+  public static class QueueRequest {
+    private volatile LaneQueue queue;
+
+    /**
+     * @return the queue the request went through, if it used this mailbox
+     */
+    public Optional<LaneQueue> queue() {
+      return Optional.ofNullable(queue);
+    }
+  }
+
+  /**
+   * @param message a message sent to the TrombonePublisher
+   * @return the lane of the message
+   */
+  public static int laneOf(Object message) {
+    if (message instanceof AOESWUpdate) return aoLane;
+    if (message instanceof EngrUpdate || message instanceof AxisStateUpdate || message instanceof AxisUpdate
+      || message instanceof AxisStatsUpdate || message instanceof FollowLatencyUpdate || message instanceof PredictionErrorUpdate) return telemetryLane;
+    return controlLane;
+  }
+
+  // A queued message and the time it was queued
+  private static class Entry {
+    final Envelope envelope;
+    final long enqueuedNanos;
+
+    Entry(Envelope envelope, long enqueuedNanos) {
+      this.envelope = envelope;
+      this.enqueuedNanos = enqueuedNanos;
+    }
+  }
+
+  /**
+   * The message queue, with one queue per lane. Messages are queued by any thread and taken by the actor.
+   */
+  public static class LaneQueue implements MessageQueue, UnboundedMessageQueueSemantics {
+    @SuppressWarnings("unchecked")
+    private final Queue<Entry>[] lanes = new Queue[laneNames.length];
+    private final AtomicInteger[] depths = new AtomicInteger[laneNames.length];
+    private final AtomicInteger[] maxDepths = new AtomicInteger[laneNames.length];
+    // Written only by the actor, when it takes a message
+    private final LatencyHistogram[] queueWaits = new LatencyHistogram[laneNames.length];
+
+    LaneQueue() {
+      for (int i = 0; i < laneNames.length; i++) {
+        lanes[i] = new ConcurrentLinkedQueue<>();
+        depths[i] = new AtomicInteger();
+        maxDepths[i] = new AtomicInteger();
+        queueWaits[i] = new LatencyHistogram();
+      }
+    }
+
+    @Override
+    public void enqueue(ActorRef receiver, Envelope handle) {
+      if (handle.message() instanceof QueueRequest) ((QueueRequest) handle.message()).queue = this;
+      int lane = laneOf(handle.message());
+      lanes[lane].offer(new Entry(handle, System.nanoTime()));
+      int depth = depths[lane].incrementAndGet();
+      maxDepths[lane].accumulateAndGet(depth, Math::max);
+    }
+
+    @Override
+    public Envelope dequeue() {
+      for (int lane = 0; lane < lanes.length; lane++) {
+        Entry e = lanes[lane].poll();
+        if (e != null) {
+          depths[lane].decrementAndGet();
+          queueWaits[lane].recordNanos(System.nanoTime() - e.enqueuedNanos);
+          return e.envelope;
+        }
+      }
+      return null;
+    }
+
+    @Override
+    public int numberOfMessages() {
+      int n = 0;
+      for (Queue<Entry> lane : lanes) n += lane.size();
+      return n;
+    }
+
+    @Override
+    public boolean hasMessages() {
+      for (Queue<Entry> lane : lanes) if (!lane.isEmpty()) return true;
+      return false;
+    }
+
+    @Override
+    public void cleanUp(ActorRef owner, MessageQueue deadLetters) {
+      for (Queue<Entry> lane : lanes) {
+        Entry e;
+        while ((e = lane.poll()) != null) deadLetters.enqueue(owner, e.envelope);
+      }
+    }
+
+    /**
+     * @param lane one of the lanes
+     * @return the number of messages waiting in the lane
+     */
+    public int depth(int lane) {
+      return depths[lane].get();
+    }
+
+    /**
+     * @param lane one of the lanes
+     * @return the most messages that waited in the lane at once
+     */
+    public int maxDepth(int lane) {
+      return maxDepths[lane].get();
+    }
+
+    /**
+     * @param lane one of the lanes
+     * @return the time the messages of the lane waited in the queue
+     */
+    public Summary queueWait(int lane) {
+      return queueWaits[lane].summary();
+    }
+  }
+}
@@ -0,0 +1,107 @@
+package csw.examples.vsliceJava.assembly;
+
+/**
+ * Decides which trombone encoder setpoints are worth sending to the HCD.
+ * <p>
+ * Most follow updates change the encoder position by 0 or 1 count. A new setpoint is only sent when it differs from
+ * the last one sent by more than the deadband, or when at least the minimum resend interval has passed since the last
+ * one was sent, so that the HCD still gets the latest value when the position creeps by less than the deadband.
+ * With a deadband of 0, only setpoints equal to the last one are suppressed. With a resend interval of 0, nothing is
+ * suppressed.
+ * <p>
+ * A suppressed setpoint that differs from the last one sent is kept as pending, so that the caller can send it once the
+ * resend interval has passed even if no newer setpoint arrives. Otherwise the final position of a follow sequence could
+ * be lost.
+ * <p>
+ * This class is not thread safe, it is used from inside the TromboneControl actor.
+ */
+public class SetpointFilter {
+  private final int encoderDeadband;
+  private final long minResendIntervalNanos;
+
+  private boolean hasLast = false;
+  private int lastSent;
+  private long lastSentTime;
+  private boolean hasPending = false;
+  private int pending;
+
+  private long sentCount = 0;
+  private long suppressedCount = 0;
+
+  /**
+   * @param encoderDeadband      setpoints within this many encoder counts of the last one sent may be suppressed
+   * @param minResendIntervalMS  a setpoint is always sent if at least this long has passed since the last one
+   */
+  public SetpointFilter(int encoderDeadband, int minResendIntervalMS) {
+    this.encoderDeadband = encoderDeadband;
+    this.minResendIntervalNanos = minResendIntervalMS * 1000000L;
+  }
+
+  /**
+   * Called with each new setpoint
+   *
+   * @param encoderPosition the new setpoint
+   * @param now             the current System.nanoTime()
+   * @return true if the setpoint should be sent to the HCD, it is then recorded as the last one sent
+   */
+  public boolean accept(int encoderPosition, long now) {
+    if (hasLast && Math.abs(encoderPosition - lastSent) <= encoderDeadband && now - lastSentTime < minResendIntervalNanos) {
+      suppressedCount++;
+      hasPending = encoderPosition != lastSent;
+      pending = encoderPosition;
+      return false;
+    }
+    recordSent(encoderPosition, now);
+    return true;
+  }
+
+  /**
+   * @return true if a suppressed setpoint differs from the last one sent
+   */
+  public boolean hasPending() {
+    return hasPending;
+  }
+
+  /**
+   * @param now the current System.nanoTime()
+   * @return how long until a pending setpoint may be sent, in nanoseconds
+   */
+  public long resendDelayNanos(long now) {
+    return Math.max(0L, lastSentTime + minResendIntervalNanos - now);
+  }
+
+  /**
+   * Takes the pending setpoint, which is then recorded as the last one sent. Only call when hasPending() is true.
+   *
+   * @param now the current System.nanoTime()
+   * @return the setpoint to send
+   */
+  public int takePending(long now) {
+    recordSent(pending, now);
+    return pending;
+  }
+
+  /**
+   * Forgets the last setpoint, so the next one is always sent (for example, after the HCD was restarted)
+   */
+  public void reset() {
+    hasLast = false;
+    hasPending = false;
+  }
+
+  private void recordSent(int encoderPosition, long now) {
+    hasLast = true;
+    hasPending = false;
+    lastSent = encoderPosition;
+    lastSentTime = now;
+    sentCount++;
+  }
+
+  public long sentCount() {
+    return sentCount;
+  }
+
+  public long suppressedCount() {
+    return suppressedCount;
+  }
+}
@@ -0,0 +1,152 @@
+package csw.examples.vsliceJava.assembly;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the count, min, max, mean and last value of telemetry fields over windows of several lengths, for instance
+ * 1, 10 and 60 seconds, so that consumers that want trends do not need every raw sample.
+ * <p>
+ * Each sample updates the running values of every window, so the cost per sample does not depend on the window
+ * lengths. The windows follow each other without gaps. collect() returns the windows that have ended, each with
+ * the values of the fields that had samples in it, and starts the next ones.
+ * <p>
+ * This class is not thread safe, it is used from inside the TrombonePublisher.
+ */
+public class TelemetryAggregator {
+  private final Window[] windows;
+
+  /**
+   * @param periodsSeconds the window lengths in seconds
+   * @param nowNanos       the start of the first windows, from System.nanoTime()
+   */
+  public TelemetryAggregator(List<Integer> periodsSeconds, long nowNanos) {
+    windows = new Window[periodsSeconds.size()];
+    for (int i = 0; i < windows.length; i++) windows[i] = new Window(periodsSeconds.get(i), nowNanos);
+  }
+
+  /**
+   * Adds a sample to the current window of every length
+   *
+   * @param field the name of the field, for instance focusError
+   * @param value the sample value
+   */
+  public void record(String field, double value) {
+    for (Window w : windows) {
+      FieldStats stats = w.fields.get(field);
+      if (stats == null) w.fields.put(field, new FieldStats(value));
+      else stats.add(value);
+    }
+  }
+
+  /**
+   * Ends the windows whose length has passed
+   *
+   * @param nowNanos the current time from System.nanoTime()
+   * @return the ended windows that had samples, shortest first
+   */
+  public List<Aggregate> collect(long nowNanos) {
+    List<Aggregate> ended = new ArrayList<>();
+    for (Window w : windows) {
+      if (nowNanos - w.startNanos < w.periodNanos) continue;
+      if (!w.fields.isEmpty()) ended.add(new Aggregate(w.periodSeconds, new LinkedHashMap<>(w.fields)));
+      w.fields.clear();
+      // The next window follows on, unless collect() was late by a whole window
+      w.startNanos = nowNanos - w.startNanos < 2 * w.periodNanos ? w.startNanos + w.periodNanos : nowNanos;
+    }
+    return ended;
+  }
+
+  private static class Window {
+    final int periodSeconds;
+    final long periodNanos;
+    long startNanos;
+    final Map<String, FieldStats> fields = new LinkedHashMap<>();
+
+    Window(int periodSeconds, long startNanos) {
+      this.periodSeconds = periodSeconds;
+      this.periodNanos = periodSeconds * 1000000000L;
+      this.startNanos = startNanos;
+    }
+  }
+
+  /**
+   * The running values of one field in one window
+   */
+  @SuppressWarnings("WeakerAccess")
+  public static class FieldStats {
+    private long count;
+    private double min;
+    private double max;
+    private double sum;
+    private double last;
+
+    FieldStats(double value) {
+      count = 1;
+      min = max = sum = last = value;
+    }
+
+    void add(double value) {
+      count++;
+      if (value < min) min = value;
+      if (value > max) max = value;
+      sum += value;
+      last = value;
+    }
+
+    public long count() {
+      return count;
+    }
+
+    public double min() {
+      return min;
+    }
+
+    public double max() {
+      return max;
+    }
+
+    public double mean() {
+      return sum / count;
+    }
+
+    public double last() {
+      return last;
+    }
+
+    @Override
+    public String toString() {
+      return "FieldStats{" +
+        "count=" + count +
+        ", min=" + min +
+        ", max=" + max +
+        ", mean=" + mean() +
+        ", last=" + last +
+        '}';
+    }
+  }
+
+  /**
+   * The values of the fields over one ended window
+   */
+  @SuppressWarnings("WeakerAccess")
+  public static class Aggregate {
+    public final int periodSeconds;
+    public final Map<String, FieldStats> fields;
+
+    public Aggregate(int periodSeconds, Map<String, FieldStats> fields) {
+      this.periodSeconds = periodSeconds;
+      this.fields = fields;
+    }
+
+    @Override
+    public String toString() {
+      return "Aggregate{" +
+        "periodSeconds=" + periodSeconds +
+        ", fields=" + fields +
+        '}';
+    }
+  }
+}
@@ -7,7 +7,10 @@ import akka.event.LoggingAdapter;
 import akka.japi.Creator;
 import akka.japi.pf.ReceiveBuilder;
 import akka.util.Timeout;
-import com.typesafe.config.Config;
+import csw.examples.vsliceJava.shared.ConfigLoader;
+import csw.examples.vsliceJava.shared.FlightRecorder;
+import csw.examples.vsliceJava.shared.StartupStash;
+import csw.examples.vsliceJava.shared.StartupTimer;
 import csw.services.ccs.AssemblyMessages;
 import csw.services.ccs.SequentialExecutor;
 import csw.services.ccs.Validation;
@@ -17,7 +20,6 @@ import csw.services.pkg.Component;
 import csw.services.pkg.Supervisor;
 import javacsw.services.alarms.IAlarmService;
 import javacsw.services.ccs.JAssemblyMessages;
-import javacsw.services.cs.akka.JConfigServiceClient;
 import javacsw.services.events.IEventService;
 import javacsw.services.events.ITelemetryService;
 import javacsw.services.loc.JLocationSubscriberActor;
@@ -26,8 +28,10 @@ import scala.PartialFunction;
 import scala.runtime.BoxedUnit;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 import static csw.examples.vsliceJava.assembly.AssemblyContext.TromboneCalculationConfig;
@@ -40,7 +44,7 @@ import static javacsw.services.pkg.JSupervisor.*;
  *
  * TromboneAssembly starts up the component doing the following:
  * creating all needed actors,
- * handling initialization,
+ * handling initialization, without blocking: the configs are fetched while the HCD and services are located,
  * participating in lifecycle with Supervisor,
  * handles locations for distribution throughout component
  * receives comamnds and forwards them to the CommandHandler by extending the AssemblyController
@@ -51,9 +55,17 @@ public class TromboneAssembly extends JAssemblyController {
   LoggingAdapter log = Logging.getLogger(getContext().system(), this);
 
   private final ActorRef supervisor;
-  private final AssemblyContext ac;
+  private final Component.AssemblyInfo info;
+  // Set once the assembly configs have been fetched
+  private AssemblyContext ac;
   private ActorRef commandHandler;
 
+  // Times each phase of startup
+  private final StartupTimer startupTimer = new StartupTimer("TromboneAssembly");
+
+  // Messages received before Running, handled in order when running
+  private final StartupStash stash = new StartupStash(context());
+
   private Optional<ActorRef> badHCDReference = Optional.empty();
   private Optional<ActorRef> tromboneHCD = badHCDReference;
 
@@ -84,49 +96,76 @@ public class TromboneAssembly extends JAssemblyController {
 
   private ActorRef diagPublsher;
 
+  // The flight recorder opened by this assembly and passed to its actors, if the control-config has a flightRecorderFile
+  private Optional<FlightRecorder> flightRecorder = Optional.empty();
+
   public TromboneAssembly(Component.AssemblyInfo info, ActorRef supervisor) {
     super(info);
     this.supervisor = supervisor;
+    this.info = info;
+
+    // Get the assembly configuration from the config service or resource file and send it to self
+    ActorRef self = self();
+    getAssemblyConfigs().whenComplete((configs, ex) ->
+      self.tell(ex == null ? configs : new InitFailed(ex), self));
+
+    // Start tracking the components we command while the configs are fetched
+    log.info("Connections: " + info.connections());
 
-    ac = initialize(info);
+    ActorRef trackerSubscriber = context().actorOf(LocationSubscriberActor.props());
+    trackerSubscriber.tell(JLocationSubscriberActor.Subscribe, self());
+
+    // This tracks the HCD
+    LocationSubscriberActor.trackConnections(info.connections(), trackerSubscriber);
+    // This tracks required services
+    LocationSubscriberActor.trackConnection(IEventService.eventServiceConnection(), trackerSubscriber);
+    LocationSubscriberActor.trackConnection(ITelemetryService.telemetryServiceConnection(), trackerSubscriber);
+    LocationSubscriberActor.trackConnection(IAlarmService.alarmServiceConnection(), trackerSubscriber);
 
     // Initial receive - start with initial values
     receive(initializingReceive());
   }
 
-  private AssemblyContext initialize(Component.AssemblyInfo info) {
-    try {
-      // Get the assembly configuration from the config service or resource file
-      TromboneConfigs configs = getAssemblyConfigs();
-      AssemblyContext assemblyContext = new AssemblyContext(info, configs.calculationConfig, configs.controlConfig);
-
-      // Start tracking the components we command
-      log.info("Connections: " + info.connections());
+  // Creates the actors that need the assembly configs
+  private void initialize(TromboneConfigs configs) {
+    ac = new AssemblyContext(info, configs.calculationConfig, configs.controlConfig);
 
-      ActorRef trackerSubscriber = context().actorOf(LocationSubscriberActor.props());
-      trackerSubscriber.tell(JLocationSubscriberActor.Subscribe, self());
+    // The flight recorder is opened first, so that the actors record from the start
+    if (!ac.controlConfig.flightRecorderFile.isEmpty())
+      flightRecorder = openFlightRecorder(ac.controlConfig.flightRecorderFile, ac.controlConfig.flightRecorderSizeMB);
 
-      // This actor handles all telemetry and system event publishing
-      ActorRef eventPublisher = context().actorOf(TrombonePublisher.props(assemblyContext, Optional.empty(), Optional.empty()));
+    // This actor handles all telemetry and system event publishing
+    ActorRef eventPublisher = context().actorOf(TrombonePublisher.props(ac, Optional.empty(), Optional.empty()));
 
-      // Setup command handler for assembly - note that CommandHandler connects directly to tromboneHCD here, not state receiver
-      commandHandler = context().actorOf(TromboneCommandHandler.props(assemblyContext, tromboneHCD, Optional.of(eventPublisher)));
+    // Setup command handler for assembly - note that CommandHandler connects directly to tromboneHCD here, not state receiver
+    commandHandler = context().actorOf(TromboneCommandHandler.props(ac, tromboneHCD, Optional.of(eventPublisher), flightRecorder));
 
-      // This sets up the diagnostic data publisher
-      diagPublsher = context().actorOf(DiagPublisher.props(assemblyContext, tromboneHCD, Optional.of(eventPublisher)));
+    // This sets up the diagnostic data publisher
+    diagPublsher = context().actorOf(DiagPublisher.props(ac, tromboneHCD, Optional.of(eventPublisher)));
+  }
 
-      // This tracks the HCD
-      LocationSubscriberActor.trackConnections(info.connections(), trackerSubscriber);
-      // This tracks required services
-      LocationSubscriberActor.trackConnection(IEventService.eventServiceConnection(), trackerSubscriber);
-      LocationSubscriberActor.trackConnection(ITelemetryService.telemetryServiceConnection(), trackerSubscriber);
-      LocationSubscriberActor.trackConnection(IAlarmService.alarmServiceConnection(), trackerSubscriber);
+  private Optional<FlightRecorder> openFlightRecorder(String fileName, int sizeMB) {
+    try {
+      log.info("Flight recorder writing to " + fileName);
+      return Optional.of(new FlightRecorder(new File(fileName), sizeMB * 1024L * 1024L));
+    } catch (IOException | IllegalArgumentException e) {
+      log.error(e, "Failed to open the flight recorder file, not recording");
+      return Optional.empty();
+    }
+  }
 
-      return assemblyContext;
+  @Override
+  public void postStop() throws Exception {
+    flightRecorder.ifPresent(FlightRecorder::close);
+    super.postStop();
+  }
 
-    } catch(Exception ex) {
-      supervisor.tell(new Supervisor.InitializeFailure(ex.getMessage()), self());
-      return null;
+  // Initialized is sent to the Supervisor when the HCD is located and the configs are loaded
+  private void sendInitialized() {
+    supervisor.tell(Initialized, self());
+    if (!startupTimer.isMarked(StartupTimer.initialized)) {
+      startupTimer.mark(StartupTimer.initialized);
+      log.info(startupTimer.toString());
     }
   }
 
@@ -138,12 +177,20 @@ public class TromboneAssembly extends JAssemblyController {
    */
   private PartialFunction<Object, BoxedUnit> initializingReceive() {
     return locationReceive().orElse(ReceiveBuilder.
+      match(TromboneConfigs.class, configs -> {
+        initialize(configs);
+        if (isHCDAvailable()) sendInitialized();
+      }).
+      match(InitFailed.class, t -> {
+        log.error("TromboneAssembly failed to initialize: " + t.reason);
+        supervisor.tell(new Supervisor.InitializeFailure(t.reason), self());
+      }).
       matchEquals(Running, location -> {
         // When Running is received, transition to running Receive
         log.info("becoming runningReceive");
-        context().become(runningReceive());
+        stash.unstashAll(runningReceive());
       }).
-      matchAny(t -> log.warning("Unexpected message in TromboneAssembly:initializingReceive: " + t)).
+      matchAny(stash::stash).
       build());
   }
 
@@ -154,8 +201,9 @@ public class TromboneAssembly extends JAssemblyController {
             ResolvedAkkaLocation l = (ResolvedAkkaLocation) location;
             log.info("Got actorRef: " + l.getActorRef());
             tromboneHCD = l.getActorRef();
-            // When the HCD is located, Initialized is sent to Supervisor
-            supervisor.tell(Initialized, self());
+            startupTimer.mark(StartupTimer.hcdLocated);
+            // When the HCD is located, Initialized is sent to Supervisor, once the configs are also loaded
+            if (ac != null) sendInitialized();
 
           } else if (location instanceof ResolvedHttpLocation) {
             log.info("HTTP Service Damn it: " + location.connection());
@@ -188,7 +236,7 @@ public class TromboneAssembly extends JAssemblyController {
 
           } else if (location instanceof Unresolved) {
             log.info("Unresolved: " + location.connection());
-            if (location.connection().componentId().equals(ac.hcdComponentId))
+            if (ac != null && location.connection().componentId().equals(ac.hcdComponentId))
               tromboneHCD = badHCDReference;
 
           } else if (location instanceof UnTrackedLocation) {
@@ -293,17 +341,23 @@ public class TromboneAssembly extends JAssemblyController {
     }
   }
 
+  // Internal: sent to self when the configs could not be fetched or parsed
+  private static class InitFailed {
+    final String reason;
+
+    InitFailed(Throwable ex) {
+      Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+      this.reason = cause.toString();
+    }
+  }
+
   // Gets the assembly configurations from the config service, or a resource file, if not found and
-  // returns the two parsed objects.
-  private TromboneConfigs getAssemblyConfigs() throws Exception {
+  // returns the two parsed objects without blocking.
+  private CompletableFuture<TromboneConfigs> getAssemblyConfigs() {
     // Get the trombone config file from the config service, or use the given resource file if that doesn't work
     Timeout timeout = new Timeout(3, TimeUnit.SECONDS);
-    Optional<Config> configOpt = JConfigServiceClient.getConfigFromConfigService(tromboneConfigFile,
-      Optional.empty(), Optional.of(resource), context().system(), timeout).get();
-    if (configOpt.isPresent())
-      return new TromboneConfigs(new TromboneCalculationConfig(configOpt.get()),
-        new TromboneControlConfig(configOpt.get()));
-    throw new RuntimeException("Failed to get from config service: " + tromboneConfigFile);
+    return ConfigLoader.getConfig(tromboneConfigFile, resource, context().system(), timeout, startupTimer)
+      .thenApply(config -> new TromboneConfigs(new TromboneCalculationConfig(config), new TromboneControlConfig(config)));
   }
 
   // --- Static defs ---
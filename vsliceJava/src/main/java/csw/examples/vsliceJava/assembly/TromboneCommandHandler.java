@@ -7,6 +7,7 @@ import akka.japi.Creator;
 import akka.japi.pf.ReceiveBuilder;
 import akka.util.Timeout;
 import csw.examples.vsliceJava.hcd.TromboneHCD;
+import csw.examples.vsliceJava.shared.FlightRecorder;
 import csw.services.ccs.DemandMatcher;
 import csw.services.ccs.MultiStateMatcherActor;
 import csw.services.ccs.SequentialExecutor.ExecuteOne;
@@ -49,6 +50,8 @@ class TromboneCommandHandler extends AbstractActor implements TromboneStateClien
 
   private final AssemblyContext ac;
   private final Optional<ActorRef> allEventPublisher;
+  // The assembly's flight recorder, passed on to the state actor and the follow actors
+  private final Optional<FlightRecorder> flightRecorder;
 
   @SuppressWarnings("FieldCanBeLocal")
   private final ActorRef badHCDReference;
@@ -87,10 +90,16 @@ class TromboneCommandHandler extends AbstractActor implements TromboneStateClien
   }
 
   public TromboneCommandHandler(AssemblyContext ac, Optional<ActorRef> tromboneHCDIn, Optional<ActorRef> allEventPublisher) {
+    this(ac, tromboneHCDIn, allEventPublisher, Optional.empty());
+  }
+
+  public TromboneCommandHandler(AssemblyContext ac, Optional<ActorRef> tromboneHCDIn, Optional<ActorRef> allEventPublisher,
+                                Optional<FlightRecorder> flightRecorder) {
     this.ac = ac;
     badHCDReference = context().system().deadLetters();
     this.tromboneHCD = tromboneHCDIn.orElse(badHCDReference);
-    tromboneStateActor = context().actorOf(TromboneStateActor.props());
+    this.flightRecorder = flightRecorder;
+    tromboneStateActor = context().actorOf(TromboneStateActor.props(flightRecorder));
     this.allEventPublisher = allEventPublisher;
     setElevationItem = AssemblyContext.naElevation(ac.calculationConfig.defaultInitialElevation);
     int moveCnt = 0;
@@ -206,7 +215,8 @@ class TromboneCommandHandler extends AbstractActor implements TromboneStateClien
             log.info("Set elevation is: " + setElevationItem);
 
             // The event publisher may be passed in
-            Props props = FollowCommand.props(ac, setElevationItem, nssItem, Optional.of(tromboneHCD), allEventPublisher, eventService.get());
+            Props props = FollowCommand.props(ac, setElevationItem, nssItem, Optional.of(tromboneHCD), allEventPublisher, eventService.get(),
+              flightRecorder);
             // Follow command runs the trombone when following
             ActorRef followCommandActor = context().actorOf(props);
             log.info("Going to followReceive");
@@ -335,12 +345,17 @@ class TromboneCommandHandler extends AbstractActor implements TromboneStateClien
   // --- static defs ---
 
   public static Props props(AssemblyContext ac, Optional<ActorRef> tromboneHCDIn, Optional<ActorRef> allEventPublisher) {
+    return props(ac, tromboneHCDIn, allEventPublisher, Optional.empty());
+  }
+
+  public static Props props(AssemblyContext ac, Optional<ActorRef> tromboneHCDIn, Optional<ActorRef> allEventPublisher,
+                            Optional<FlightRecorder> flightRecorder) {
     return Props.create(new Creator<TromboneCommandHandler>() {
       private static final long serialVersionUID = 1L;
 
       @Override
       public TromboneCommandHandler create() throws Exception {
-        return new TromboneCommandHandler(ac, tromboneHCDIn, allEventPublisher);
+        return new TromboneCommandHandler(ac, tromboneHCDIn, allEventPublisher, flightRecorder);
       }
     });
   }
@@ -2,17 +2,21 @@ package csw.examples.vsliceJava.assembly;
 
 import akka.actor.AbstractActor;
 import akka.actor.ActorRef;
+import akka.actor.Cancellable;
 import akka.actor.Props;
 import akka.event.Logging;
 import akka.event.LoggingAdapter;
 import akka.japi.Creator;
 import akka.japi.pf.ReceiveBuilder;
 import csw.examples.vsliceJava.hcd.TromboneHCD;
+import csw.examples.vsliceJava.shared.FlightRecorder;
 import csw.util.config.DoubleItem;
 import scala.PartialFunction;
+import scala.concurrent.duration.Duration;
 import scala.runtime.BoxedUnit;
 
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 import static csw.services.ccs.HcdController.Submit;
 import static javacsw.util.config.JItems.jvalue;
@@ -25,6 +29,13 @@ import static javacsw.util.config.JItems.jvalue;
  * function in algorithms to convert this to encoder units. It then uses the Submit command of CCS to send the
  * SetupConfig to the trombone HCD.
  * <p>
+ * Encoder positions that are within the configured deadband of the last position sent are held back by a
+ * SetpointFilter, and only sent when the minimum resend interval has passed (see control-config). The
+ * GetSetpointStats engineering message returns the number of positions sent and held back.
+ * <p>
+ * If a FollowLatency is given, the time from the calculation of each position to sending it, and from the
+ * arrival of its event in the assembly to sending it, are recorded there.
+ * <p>
  * Note that the actor receive method is parameterized with an optional HCD actor ref. It is set initially when
  * the actor is created and may be updated if the actor goes down or up. The actor ref is an [[scala.Option]] so
  * that if the actor ref is set to None, no message will be sent, but the actor can operator normally.
@@ -35,15 +46,29 @@ class TromboneControl extends AbstractActor {
   private LoggingAdapter log = Logging.getLogger(getContext().system(), this);
 
   private final AssemblyContext ac;
+  private final Optional<FollowLatency> latency;
+  // The assembly's recorder, or one that drops everything
+  private final FlightRecorder flightRecorder;
+
+  // Suppresses setpoints that would not move the axis noticeably
+  private final SetpointFilter setpointFilter;
+  // Set while a timer is waiting to send a pending setpoint
+  private Cancellable resendTimer = null;
 
   /**
    * Constructor
    *
    * @param ac            the trombone AssemblyContext contains important shared values and useful function
    * @param tromboneHCDIn the actor reference to the trombone HCD as a [[scala.Option]]
+   * @param latency       if present, the submit latencies are recorded here
+   * @param flightRecorder if present, the encoder positions sent are recorded here
    */
-  private TromboneControl(AssemblyContext ac, Optional<ActorRef> tromboneHCDIn) {
+  private TromboneControl(AssemblyContext ac, Optional<ActorRef> tromboneHCDIn, Optional<FollowLatency> latency,
+                          Optional<FlightRecorder> flightRecorder) {
     this.ac = ac;
+    this.latency = latency;
+    this.flightRecorder = flightRecorder.orElse(FlightRecorder.disabled());
+    setpointFilter = new SetpointFilter(ac.controlConfig.encoderDeadband, ac.controlConfig.minResendIntervalMS);
     log.info("TromboneIn: ========> " + tromboneHCDIn);
 
     // Initial receive - start with initial values
@@ -53,47 +78,111 @@ class TromboneControl extends AbstractActor {
   private PartialFunction<Object, BoxedUnit> controlReceive(Optional<ActorRef> tromboneHCD) {
     return ReceiveBuilder.
       match(GoToStagePosition.class, t -> {
-        DoubleItem newPosition = t.stagePosition;
-        // It should be correct, but check
-        assert (newPosition.units() == ac.stagePositionUnits);
-
         // Convert to encoder units
-        int encoderPosition = Algorithms.stagePositionToEncoder(ac.controlConfig, jvalue(newPosition));
+        int encoderPosition = Algorithms.stagePositionToEncoder(ac.controlConfig, t.stagePosition);
 
         // Final check before sending off to hardware
-        log.info("epos: " + encoderPosition + ", minLimit: " + ac.controlConfig.minEncoderLimit + ", maxEnc: " + ac.controlConfig.maxEncoderLimit);
+        log.debug("epos: {}, minLimit: {}, maxEnc: {}", encoderPosition, ac.controlConfig.minEncoderLimit, ac.controlConfig.maxEncoderLimit);
         assert (encoderPosition > ac.controlConfig.minEncoderLimit && encoderPosition < ac.controlConfig.maxEncoderLimit);
 
-        log.debug("Setting trombone axis to stage position: " + jvalue(newPosition) + " and encoder: " + encoderPosition);
-
-        // Send command to HCD here
-        tromboneHCD.ifPresent(actorRef -> actorRef.tell(new Submit(TromboneHCD.positionSC(encoderPosition)), self()));
+        long now = System.nanoTime();
+        if (setpointFilter.accept(encoderPosition, now)) {
+          log.debug("Setting trombone axis to stage position: {} and encoder: {}", t.stagePosition, encoderPosition);
+          sendPosition(tromboneHCD, encoderPosition);
+          recordLatency(t, now);
+        } else if (setpointFilter.hasPending() && resendTimer == null) {
+          // Make sure the latest position gets to the HCD even if no more positions arrive
+          resendTimer = context().system().scheduler().scheduleOnce(
+            Duration.create(setpointFilter.resendDelayNanos(now), TimeUnit.NANOSECONDS),
+            self(), ResendSetpoint.instance, context().dispatcher(), self());
+        }
+      }).
+      match(ResendSetpoint.class, t -> {
+        resendTimer = null;
+        if (setpointFilter.hasPending()) sendPosition(tromboneHCD, setpointFilter.takePending(System.nanoTime()));
+      }).
+      match(GetSetpointStats.class, t ->
+        sender().tell(new SetpointStats(setpointFilter.sentCount(), setpointFilter.suppressedCount()), self())).
+      match(TromboneAssembly.UpdateTromboneHCD.class, t -> {
+        // A new HCD needs to get the next setpoint
+        setpointFilter.reset();
+        context().become(controlReceive(t.tromboneHCD));
       }).
-      match(TromboneAssembly.UpdateTromboneHCD.class, t -> context().become(controlReceive(t.tromboneHCD))).
       matchAny(t -> log.warning("Unexpected message received in TromboneControl:controlReceive: " + t)).
       build();
   }
 
+  private void sendPosition(Optional<ActorRef> tromboneHCD, int encoderPosition) {
+    // Send command to HCD here
+    flightRecorder.recordEncoderCommand(encoderPosition);
+    tromboneHCD.ifPresent(actorRef -> actorRef.tell(new Submit(TromboneHCD.positionSC(encoderPosition)), self()));
+  }
+
+  // Positions sent later by the resend timer are not recorded, their latency is mostly the resend interval
+  private void recordLatency(GoToStagePosition t, long now) {
+    latency.ifPresent(l -> {
+      if (t.computeNanos != 0) l.computeToSubmitHistogram.recordNanos(now - t.computeNanos);
+      if (t.sampleNanos != 0) l.subscriberToSubmitHistogram.recordNanos(now - t.sampleNanos);
+    });
+  }
+
+  @Override
+  public void postStop() throws Exception {
+    if (resendTimer != null) resendTimer.cancel();
+    super.postStop();
+  }
+
   // --- static defs ---
 
   // Props for creating the TromboneControl actor
   public static Props props(AssemblyContext ac, Optional<ActorRef> tromboneHCDIn) {
+    return props(ac, tromboneHCDIn, Optional.empty());
+  }
+
+  // Props for creating the TromboneControl actor that records the follow loop latency
+  public static Props props(AssemblyContext ac, Optional<ActorRef> tromboneHCDIn, Optional<FollowLatency> latency) {
+    return props(ac, tromboneHCDIn, latency, Optional.empty());
+  }
+
+  // Props for creating the TromboneControl actor that also writes to the assembly's flight recorder
+  public static Props props(AssemblyContext ac, Optional<ActorRef> tromboneHCDIn, Optional<FollowLatency> latency,
+                            Optional<FlightRecorder> flightRecorder) {
     return Props.create(new Creator<TromboneControl>() {
       private static final long serialVersionUID = 1L;
 
       @Override
       public TromboneControl create() throws Exception {
-        return new TromboneControl(ac, tromboneHCDIn);
+        return new TromboneControl(ac, tromboneHCDIn, latency, flightRecorder);
       }
     });
   }
 
   // Used to send a position that requries transformaton from
+  // The position is held as a double in stagePositionUnits, so the follow loop does not need to create an item for each update
+  // The optional System.nanoTime() timestamps are used for the latency histograms and are not part of equals
   static class GoToStagePosition {
-    final DoubleItem stagePosition;
+    final double stagePosition;
+    // When the sample the position was calculated from entered the assembly, or 0 if not known
+    final long sampleNanos;
+    // When the calculation of the position started, or 0 if not known
+    final long computeNanos;
+
+    GoToStagePosition(double stagePosition) {
+      this(stagePosition, 0L, 0L);
+    }
 
-    GoToStagePosition(DoubleItem stagePosition) {
+    GoToStagePosition(double stagePosition, long sampleNanos, long computeNanos) {
       this.stagePosition = stagePosition;
+      this.sampleNanos = sampleNanos;
+      this.computeNanos = computeNanos;
+    }
+
+    GoToStagePosition(DoubleItem stagePosition) {
+      // It should be correct, but check
+      assert (stagePosition.units() == AssemblyContext.stagePositionUnits);
+      this.stagePosition = jvalue(stagePosition);
+      this.sampleNanos = 0L;
+      this.computeNanos = 0L;
     }
 
     @Override
@@ -103,12 +192,12 @@ class TromboneControl extends AbstractActor {
 
       GoToStagePosition that = (GoToStagePosition) o;
 
-      return stagePosition != null ? stagePosition.equals(that.stagePosition) : that.stagePosition == null;
+      return Double.compare(that.stagePosition, stagePosition) == 0;
     }
 
     @Override
     public int hashCode() {
-      return stagePosition != null ? stagePosition.hashCode() : 0;
+      return Double.hashCode(stagePosition);
     }
 
     @Override
@@ -118,5 +207,44 @@ class TromboneControl extends AbstractActor {
         '}';
     }
   }
-}
 
+  // Sent to self to send a setpoint that was held back by the setpoint filter
+  private static class ResendSetpoint {
+    static final ResendSetpoint instance = new ResendSetpoint();
+
+    private ResendSetpoint() {
+    }
+  }
+
+  /**
+   * Engineering message: TromboneControl replies with its SetpointStats
+   */
+  public static class GetSetpointStats {
+    public static final GetSetpointStats instance = new GetSetpointStats();
+
+    private GetSetpointStats() {
+    }
+  }
+
+  /**
+   * Counts of stage positions sent to the HCD and of those held back by the setpoint filter
+   */
+  @SuppressWarnings("WeakerAccess")
+  public static class SetpointStats {
+    public final long sentCount;
+    public final long suppressedCount;
+
+    public SetpointStats(long sentCount, long suppressedCount) {
+      this.sentCount = sentCount;
+      this.suppressedCount = suppressedCount;
+    }
+
+    @Override
+    public String toString() {
+      return "SetpointStats{" +
+        "sentCount=" + sentCount +
+        ", suppressedCount=" + suppressedCount +
+        '}';
+    }
+  }
+}
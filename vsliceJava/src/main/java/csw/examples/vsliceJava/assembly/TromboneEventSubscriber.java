@@ -15,6 +15,9 @@ import javacsw.services.pkg.ILocationSubscriberClient;
 import scala.PartialFunction;
 import scala.runtime.BoxedUnit;
 
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Arrays;
 import java.util.Optional;
 
@@ -36,6 +39,12 @@ public class TromboneEventSubscriber extends AbstractActor implements ILocationS
   private final AssemblyContext ac;
   private final BooleanItem nssInUseIn;
   private final Optional<ActorRef> followActor;
+  // If present, samples are left here and the follow actor is only woken up when it has taken the last one
+  private final Optional<FollowInputSlot> followInput;
+  // If present, the time from each event's EventTime to its arrival here is recorded
+  private final Optional<FollowLatency> followLatency;
+  // If present, the received events are recorded for replay
+  private final Optional<FollowEventRecorder> recorder;
 
   // If state of NSS is false, then subscriber provides 0 for zenith distance with updates to subscribers
 
@@ -50,16 +59,20 @@ public class TromboneEventSubscriber extends AbstractActor implements ILocationS
   // This is used to keep track since it can be updated
   BooleanItem nssInUseGlobal;
 
-  // This var is needed to capture the Monitor used for subscriptions
-  private final EventService.EventMonitor subscribeMonitor;
+  // This var is needed to capture the Monitor used for subscriptions, empty when the events are sent here directly
+  private final Optional<EventService.EventMonitor> subscribeMonitor;
 
 
   private TromboneEventSubscriber(AssemblyContext ac, BooleanItem nssInUseIn, Optional<ActorRef> followActor,
-                                  IEventService eventService) {
+                                  Optional<IEventService> eventService, Optional<FollowInputSlot> followInput,
+                                  Optional<FollowLatency> followLatency, Optional<FollowEventRecorder> recorder) {
     subscribeToLocationUpdates();
     this.ac = ac;
     this.nssInUseIn = nssInUseIn;
     this.followActor = followActor;
+    this.followInput = followInput;
+    this.followLatency = followLatency;
+    this.recorder = recorder;
 
     nssZenithAngle = ac.za(0.0);
     initialZenithAngle = jvalue(nssInUseIn) ? nssZenithAngle : ac.za(0.0);
@@ -67,7 +80,7 @@ public class TromboneEventSubscriber extends AbstractActor implements ILocationS
     nssInUseGlobal = nssInUseIn;
 
     // This var is needed to capture the Monitor used for subscriptions
-    subscribeMonitor = startupSubscriptions(eventService);
+    subscribeMonitor = eventService.map(this::startupSubscriptions);
 
     receive(subscribeReceive(nssInUseIn, initialZenithAngle, initialFocusError));
   }
@@ -92,16 +105,23 @@ public class TromboneEventSubscriber extends AbstractActor implements ILocationS
     return ReceiveBuilder.
 
       match(SystemEvent.class, event -> {
+        recorder.ifPresent(r -> {
+          try {
+            r.record(event);
+          } catch (IOException e) {
+            log.error(e, "Failed to record follow event");
+          }
+        });
         if (event.info().source().equals(ac.zaConfigKey)) {
           DoubleItem newZenithAngle = jitem(event, ac.zenithAngleKey);
-          log.info("Received ZA: " + event);
+          log.debug("Received ZA: {}", event);
           updateFollowActor(newZenithAngle, cFocusError, event.info().eventTime());
           // Pass the new values to the next message
           context().become(subscribeReceive(cNssInUse, newZenithAngle, cFocusError));
 
         } else if (event.info().source().equals(ac.feConfigKey)) {
           // Update focusError state and then update calculator
-          log.info("Received FE: " + event);
+          log.debug("Received FE: {}", event);
           DoubleItem newFocusError = jitem(event, ac.focusErrorKey);
           updateFollowActor(cZenithAngle, newFocusError, event.info().eventTime());
           // Pass the new values to the next message
@@ -111,7 +131,7 @@ public class TromboneEventSubscriber extends AbstractActor implements ILocationS
       }).
 
       match(FollowActor.StopFollowing.class, t -> {
-        subscribeMonitor.stop();
+        subscribeMonitor.ifPresent(EventMonitor::stop);
         // Kill this subscriber
         context().stop(self());
       }).
@@ -121,10 +141,10 @@ public class TromboneEventSubscriber extends AbstractActor implements ILocationS
         BooleanItem nssInUseUpdate = t.nssInUse;
         if (!nssInUseUpdate.equals(cNssInUse)) {
           if (jvalue(nssInUseUpdate)) {
-            unsubscribeKeys(subscribeMonitor, ac.zaConfigKey);
+            subscribeMonitor.ifPresent(m -> unsubscribeKeys(m, ac.zaConfigKey));
             context().become(subscribeReceive(nssInUseUpdate, nssZenithAngle, cFocusError));
           } else {
-            subscribeKeys(subscribeMonitor, ac.zaConfigKey);
+            subscribeMonitor.ifPresent(m -> subscribeKeys(m, ac.zaConfigKey));
             context().become(subscribeReceive(nssInUseUpdate, cZenithAngle, cFocusError));
           }
           // Need to update the global for shutting down event subscriptions
@@ -168,7 +188,18 @@ public class TromboneEventSubscriber extends AbstractActor implements ILocationS
    * @param eventTime - the time of the last event update
    */
   private void updateFollowActor(DoubleItem zenithAngle, DoubleItem focusError, EventTime eventTime) {
-    followActor.ifPresent(actoRef -> actoRef.tell(new FollowActor.UpdatedEventData(zenithAngle, focusError, eventTime), self()));
+    followLatency.ifPresent(l ->
+      l.eventToSubscriberHistogram.recordNanos(Duration.between(eventTime.time(), Instant.now()).toNanos()));
+    if (followInput.isPresent()) {
+      // Units checks - should not happen, so if so, flag an error and skip the update
+      if (zenithAngle.units() != ac.zenithAngleUnits || focusError.units() != ac.focusErrorUnits) {
+        log.error("Ignoring event data received with improper units: zenithAngle: " + zenithAngle.units() + ", focusError: " + focusError.units());
+      } else if (followInput.get().offer(new FollowActor.FollowUpdate(jvalue(zenithAngle), jvalue(focusError), System.nanoTime()))) {
+        followActor.ifPresent(actorRef -> actorRef.tell(FollowActor.FollowInputReady.instance, self()));
+      }
+    } else {
+      followActor.ifPresent(actoRef -> actoRef.tell(new FollowActor.UpdatedEventData(zenithAngle, focusError, eventTime), self()));
+    }
   }
 
   // --- static defs ---
@@ -182,12 +213,46 @@ public class TromboneEventSubscriber extends AbstractActor implements ILocationS
    */
   public static Props props(AssemblyContext ac, BooleanItem nssInUseIn, Optional<ActorRef> followActor,
                             IEventService eventService) {
+    return props(ac, nssInUseIn, followActor, eventService, Optional.empty(), Optional.empty());
+  }
+
+  /**
+   * props for the TromboneEventSubscriber
+   *
+   * @param followActor  a FollowActor as an Option[ActorRef]
+   * @param eventService for testing, an event Service Settings can be provided
+   * @param followInput  if present, the latest samples are left in this slot, which must also be given to the FollowActor,
+   *                     rather than sending an UpdatedEventData message for each event
+   * @param followLatency if present, the latency from each event's time to its arrival is recorded here
+   * @return Props for TromboneEventSubscriber
+   */
+  public static Props props(AssemblyContext ac, BooleanItem nssInUseIn, Optional<ActorRef> followActor,
+                            IEventService eventService, Optional<FollowInputSlot> followInput,
+                            Optional<FollowLatency> followLatency) {
+    return props(ac, nssInUseIn, followActor, Optional.of(eventService), followInput, followLatency, Optional.empty());
+  }
+
+  /**
+   * props for the TromboneEventSubscriber
+   *
+   * @param followActor  a FollowActor as an Option[ActorRef]
+   * @param eventService the event service to subscribe to, if empty there are no subscriptions and the SystemEvents
+   *                     are sent to the subscriber directly, for instance by the FollowEventReplayer
+   * @param followInput  if present, the latest samples are left in this slot, which must also be given to the FollowActor,
+   *                     rather than sending an UpdatedEventData message for each event
+   * @param followLatency if present, the latency from each event's time to its arrival is recorded here
+   * @param recorder     if present, the received events are recorded here
+   * @return Props for TromboneEventSubscriber
+   */
+  public static Props props(AssemblyContext ac, BooleanItem nssInUseIn, Optional<ActorRef> followActor,
+                            Optional<IEventService> eventService, Optional<FollowInputSlot> followInput,
+                            Optional<FollowLatency> followLatency, Optional<FollowEventRecorder> recorder) {
     return Props.create(new Creator<TromboneEventSubscriber>() {
       private static final long serialVersionUID = 1L;
 
       @Override
       public TromboneEventSubscriber create() throws Exception {
-        return new TromboneEventSubscriber(ac, nssInUseIn, followActor, eventService);
+        return new TromboneEventSubscriber(ac, nssInUseIn, followActor, eventService, followInput, followLatency, recorder);
       }
     });
   }
@@ -1,26 +1,50 @@
 package csw.examples.vsliceJava.assembly;
 
 import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.Cancellable;
 import akka.actor.Props;
 import akka.event.Logging;
 import akka.event.LoggingAdapter;
 import akka.japi.Creator;
 import akka.japi.pf.ReceiveBuilder;
+import csw.examples.vsliceJava.shared.LatencyHistogram;
 import csw.services.loc.LocationService;
 import csw.util.config.*;
 import javacsw.services.events.IEventService;
 import javacsw.services.events.ITelemetryService;
 import javacsw.services.pkg.ILocationSubscriberClient;
 import scala.PartialFunction;
+import scala.concurrent.duration.Duration;
 import scala.runtime.BoxedUnit;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
+import static csw.examples.vsliceJava.assembly.FollowLatency.FollowLatencyStats;
+import static csw.examples.vsliceJava.assembly.FollowPredictor.PredictionStats;
+import static csw.examples.vsliceJava.assembly.LastValueCache.CacheStats;
 import static csw.examples.vsliceJava.assembly.TromboneStateActor.TromboneState;
+import static csw.examples.vsliceJava.hcd.SingleAxisSimulator.AxisUpdate;
+import static csw.examples.vsliceJava.shared.LatencyHistogram.Summary;
 import static csw.services.loc.LocationService.ResolvedTcpLocation;
 import static csw.util.config.Events.StatusEvent;
 import static csw.util.config.Events.SystemEvent;
 import static javacsw.util.config.JItems.jadd;
+import static javacsw.util.config.JItems.jset;
+import static javacsw.util.config.JItems.jvalue;
+import static csw.examples.vsliceJava.assembly.AssemblyContext.fe;
+import static csw.examples.vsliceJava.assembly.AssemblyContext.naElevation;
+import static csw.examples.vsliceJava.assembly.AssemblyContext.rd;
+import static csw.examples.vsliceJava.assembly.AssemblyContext.spos;
+import static csw.examples.vsliceJava.assembly.AssemblyContext.za;
 
 /**
  * An actor that provides the publishing interface to the TMT Event Service and Telemetry Service.
@@ -33,7 +57,32 @@ import static javacsw.util.config.JItems.jadd;
  * StatusEvent is triggered by the arrival of an EngrUpdate message, and the state StatusEvent is triggered by the
  * TromboneState message.
  *
- * The pubisher also publishes diagnostic data from the DiagPublisher as an axis state and statistics StatusEvent.
+ * The pubisher also publishes diagnostic data from the DiagPublisher as an axis state and statistics StatusEvent,
+ * the follow loop latency percentiles from the FollowCommand as the followLatency StatusEvent, and the follow
+ * prediction errors as the followPrediction StatusEvent.
+ *
+ * Each class of events (sodiumLayer, state, engr, axisState, axisStats, followStats for the latency and prediction
+ * events, and aggregate) has its own PublishWindow, which limits the publishes in flight so that a slow service does not cause
+ * an unbounded number of outstanding futures. By default the sodiumLayer and state events wait for their turn, while
+ * the diagnostic telemetry is dropped or conflated to the latest value (see publishWindows in the control-config).
+ * The GetPublishWindowStats engineering message returns the in-flight depth and drop counts of each class.
+ *
+ * If publishHeartbeatMS is set in the control-config, the state, axis state and axis stats events are only published
+ * when they differ from the last one published with the same prefix (and axis), or when publishHeartbeatMS has passed
+ * since then (see LastValueCache). A timer checks for events not published for publishHeartbeatMS, because no update
+ * arrived, and publishes them again. The GetChangeOnlyStats engineering message returns the suppressed publish counts.
+ *
+ * The messages wait in a PublisherMailbox with priority lanes, so that an AOESWUpdate is always handled before any
+ * waiting telemetry, whatever the burst of diagnostic traffic. The GetPublishLaneStats engineering message returns the
+ * queue depth, queue wait and publish latency of each lane.
+ *
+ * If telemetryAggregatePeriodsS is set in the control-config, the focus error, stage position and zenith angle of every
+ * EngrUpdate (one per follow update) and the position of every AxisUpdate of the HCD are also aggregated over windows
+ * of those lengths (see TelemetryAggregator), and the count, min, max, mean and last value over each window are
+ * published as a StatusEvent with the prefix aggregateEventPrefix followed by the length, for instance aggregate60s.
+ * The DiagPublisher subscribes this actor to the raw AxisUpdates of the HCD, since the AxisStateUpdates it sends are
+ * sampled. The raw engr and axis state events can be limited to rawTelemetryMaxRateHz, or turned off with
+ * publishRawTelemetry, independently of the aggregates.
  *
  * Values in received messages are assumed to be correct and ready for publishing.
  */
@@ -43,6 +92,31 @@ public class TrombonePublisher extends AbstractActor implements TromboneStateCli
 
   private final AssemblyContext assemblyContext;
 
+  // The in-flight window of each class of events
+  private final Map<String, PublishWindow> windows = new LinkedHashMap<>();
+
+  // If publishing only changes, the last published payloads and events, and the timer that publishes them again
+  private final Optional<LastValueCache<Heartbeat>> lastValues;
+  private final Optional<Cancellable> heartbeatTimer;
+
+  // If aggregating, the running values of the current windows, collected every second
+  private final Optional<TelemetryAggregator> aggregator;
+  private final Optional<Cancellable> aggregateTimer;
+
+  // The raw engr and axis state events are published if publishRawTelemetry, at most once per rawMinIntervalNanos
+  // (0 for every update), except for axis state and limit changes
+  private final boolean publishRaw;
+  private final long rawMinIntervalNanos;
+  private long lastEngrNanos;
+  private long lastAxisStateNanos;
+  private List<Object> lastAxisTransitionItems = Collections.emptyList();
+
+  // The mailbox queue, for its lane stats, once the QueueRequest sent at the start has arrived
+  private Optional<PublisherMailbox.LaneQueue> mailboxQueue = Optional.empty();
+
+  // The time from the start of each publish to its completion being handled here, by lane
+  private final LatencyHistogram[] publishLatency = new LatencyHistogram[PublisherMailbox.laneNames.length];
+
   @SuppressWarnings("FieldCanBeLocal")
   private TromboneStateActor.TromboneState internalState = TromboneStateActor.defaultTromboneState;
 
@@ -77,6 +151,42 @@ public class TrombonePublisher extends AbstractActor implements TromboneStateCli
     subscribeToLocationUpdates();
     this.assemblyContext = assemblyContext;
 
+    int heartbeatMS = assemblyContext.controlConfig.publishHeartbeatMS;
+    if (heartbeatMS > 0) {
+      lastValues = Optional.of(new LastValueCache<>(heartbeatMS * 1000000L));
+      // Checked four times per heartbeat, so an event is published again at most 1.25 heartbeats after the last time
+      long tickMS = Math.max(1, heartbeatMS / 4);
+      heartbeatTimer = Optional.of(context().system().scheduler().schedule(Duration.create(tickMS, TimeUnit.MILLISECONDS),
+        Duration.create(tickMS, TimeUnit.MILLISECONDS), self(), HeartbeatTick.instance, context().dispatcher(), self()));
+    } else {
+      lastValues = Optional.empty();
+      heartbeatTimer = Optional.empty();
+    }
+
+    for (int i = 0; i < publishLatency.length; i++) publishLatency[i] = new LatencyHistogram();
+
+    List<Integer> aggregatePeriods = assemblyContext.controlConfig.telemetryAggregatePeriodsS;
+    if (aggregatePeriods.isEmpty()) {
+      aggregator = Optional.empty();
+      aggregateTimer = Optional.empty();
+    } else {
+      aggregator = Optional.of(new TelemetryAggregator(aggregatePeriods, System.nanoTime()));
+      aggregateTimer = Optional.of(context().system().scheduler().schedule(Duration.create(1, TimeUnit.SECONDS),
+        Duration.create(1, TimeUnit.SECONDS), self(), AggregateTick.instance, context().dispatcher(), self()));
+    }
+
+    publishRaw = assemblyContext.controlConfig.publishRawTelemetry;
+    double rawRateHz = assemblyContext.controlConfig.rawTelemetryMaxRateHz;
+    rawMinIntervalNanos = rawRateHz > 0 ? (long) (1.0e9 / rawRateHz) : 0L;
+    lastEngrNanos = System.nanoTime() - rawMinIntervalNanos;
+    lastAxisStateNanos = lastEngrNanos;
+
+    for (Map.Entry<String, PublishWindow.Settings> e : defaultPublishWindows.entrySet()) {
+      String name = e.getKey();
+      PublishWindow.Settings settings = assemblyContext.controlConfig.publishWindows.getOrDefault(name, e.getValue());
+      windows.put(name, new PublishWindow(name, settings));
+    }
+
       // This actor subscribes to TromboneState using the EventBus
       context().system().eventStream().subscribe(self(), TromboneState.class);
 
@@ -89,19 +199,84 @@ public class TrombonePublisher extends AbstractActor implements TromboneStateCli
   private PartialFunction<Object, BoxedUnit> publishingEnabled(Optional<IEventService> eventService, Optional<ITelemetryService> telemetryService) {
     return ReceiveBuilder.
       match(AOESWUpdate.class, t ->
-          publishAOESW(eventService, t.naElevation, t.naRange)).
-
-      match(EngrUpdate.class, t ->
-          publishEngr(telemetryService, t.focusError, t.stagePosition, t.zenithAngle)).
+          publishAOESW(eventService, naElevation(t.naElevation), rd(t.naRange))).
+
+      match(EngrUpdate.class, t -> {
+        aggregator.ifPresent(a -> {
+          a.record(focusErrorField, t.focusError);
+          a.record(stagePositionField, t.stagePosition);
+          a.record(zenithAngleField, t.zenithAngle);
+        });
+        long now = System.nanoTime();
+        if (publishRaw && now - lastEngrNanos >= rawMinIntervalNanos) {
+          lastEngrNanos = now;
+          publishEngr(telemetryService, fe(t.focusError), spos(t.stagePosition), za(t.zenithAngle));
+        }
+      }).
 
       match(TromboneState.class, t ->
           publishState(telemetryService, t)).
 
-      match(AxisStateUpdate.class, t ->
-        publishAxisState(telemetryService, t.axisName, t.position, t.state, t.inLowLimit, t.inHighLimit, t.inHome)).
+      match(AxisUpdate.class, t ->
+        aggregator.ifPresent(a -> a.record(axisPositionField, t.current))).
+
+      match(AxisStateUpdate.class, t -> {
+        if (!publishRaw) return;
+        long now = System.nanoTime();
+        List<Object> transitionItems = Arrays.asList(t.state, t.inLowLimit, t.inHighLimit, t.inHome);
+        if (now - lastAxisStateNanos >= rawMinIntervalNanos || !transitionItems.equals(lastAxisTransitionItems)) {
+          lastAxisStateNanos = now;
+          lastAxisTransitionItems = transitionItems;
+          publishAxisState(telemetryService, t.axisName, t.position, t.state, t.inLowLimit, t.inHighLimit, t.inHome);
+        }
+      }).
 
       match(AxisStatsUpdate.class, t ->
-        publishAxisStats(telemetryService, t.axisName, t.initCount, t.moveCount, t.homeCount, t.limitCount, t.successCount, t.failCount, t.cancelCount)).
+        publishAxisStats(telemetryService, t.axisName, t.initCount, t.moveCount, t.homeCount, t.limitCount, t.successCount, t.failCount, t.cancelCount, t.supersededCount)).
+
+      match(FollowLatencyUpdate.class, t ->
+        publishFollowLatency(telemetryService, t.stats)).
+
+      match(PredictionErrorUpdate.class, t ->
+        publishPredictionErrors(telemetryService, t.stats)).
+
+      match(AggregateTick.class, t ->
+        aggregator.ifPresent(a -> a.collect(System.nanoTime()).forEach(agg -> publishAggregate(telemetryService, agg)))).
+
+      match(HeartbeatTick.class, t ->
+        lastValues.ifPresent(c -> c.dueHeartbeats(System.nanoTime()).forEach(hb -> publishHeartbeat(telemetryService, hb)))).
+
+      match(PublishCompleted.class, t -> {
+        publishLatency[t.lane].recordNanos(System.nanoTime() - t.startNanos);
+        Supplier<CompletableFuture<?>> next = t.window.completed();
+        if (next != null) start(t.window, next);
+      }).
+
+      match(GetPublishWindowStats.class, t -> {
+        Map<String, PublishWindow.WindowStats> stats = new LinkedHashMap<>();
+        windows.forEach((name, w) -> stats.put(name, w.stats()));
+        sender().tell(new PublishWindowStats(stats), self());
+      }).
+
+      match(PublisherMailbox.QueueRequest.class, t ->
+        mailboxQueue = t.queue()).
+
+      match(GetPublishLaneStats.class, t -> {
+        Optional<PublisherMailbox.LaneQueue> queue = mailboxQueue;
+        Map<String, LaneStats> stats = new LinkedHashMap<>();
+        for (int lane = 0; lane < publishLatency.length; lane++) {
+          int i = lane;
+          stats.put(PublisherMailbox.laneNames[lane], new LaneStats(
+            queue.map(q -> q.depth(i)).orElse(0),
+            queue.map(q -> q.maxDepth(i)).orElse(0),
+            queue.map(q -> q.queueWait(i)).orElse(new LatencyHistogram().summary()),
+            publishLatency[lane].summary()));
+        }
+        sender().tell(new PublishLaneStats(stats), self());
+      }).
+
+      match(GetChangeOnlyStats.class, t ->
+        sender().tell(lastValues.map(LastValueCache::stats).orElse(new CacheStats(0, 0, 0)), self())).
 
       match(LocationService.Location.class, location -> handleLocations(location, eventService, telemetryService)).
 
@@ -126,6 +301,8 @@ public class TrombonePublisher extends AbstractActor implements TromboneStateCli
         log.debug("TrombonePublisher received connection: " + t);
         Optional<ITelemetryService> newTelemetryService = Optional.of(ITelemetryService.getTelemetryService(t.host(), t.port(), context().system()));
         log.debug("Telemetry Service at: " + newTelemetryService);
+        // Publish the current values to the new service
+        lastValues.ifPresent(LastValueCache::clear);
         context().become(publishingEnabled(currentEventService, newTelemetryService));
       }
 
@@ -142,58 +319,227 @@ public class TrombonePublisher extends AbstractActor implements TromboneStateCli
   }
 
 
+  // True if the payload changed since the last publish with the key, or if not publishing only changes.
+  // The event is kept to be published again if the key gets no update for publishHeartbeatMS.
+  private boolean changed(String key, Object payload, String eventClass, StatusEvent event) {
+    return !lastValues.isPresent() || lastValues.get().shouldPublish(key, payload, new Heartbeat(eventClass, event), System.nanoTime());
+  }
+
+  private void publishHeartbeat(Optional<ITelemetryService> telemetryService, Heartbeat hb) {
+    log.debug("Heartbeat publish of {}: {}", hb.event.info().source(), hb.event);
+    telemetryService.ifPresent(e -> publish(hb.eventClass, () -> e.publish(hb.event).handle((x, ex) -> {
+      log.error("TrombonePublisher failed to publish heartbeat: " + hb.event, ex);
+      return null;
+    })));
+  }
+
+  // Starts the publish if its class window has room, otherwise it waits or is dropped as the window's policy says
+  private void publish(String eventClass, Supplier<CompletableFuture<?>> publish) {
+    PublishWindow window = windows.get(eventClass);
+    long overflows = window.overflowCount();
+    if (window.offer(publish)) start(window, publish);
+    else if (window.overflowCount() != overflows)
+      log.error("TrombonePublisher dropped a " + eventClass + " publish, the service is not completing them (" +
+        window.overflowCount() + " dropped so far)");
+  }
+
+  // Starts a publish counted as in flight by the window, which is told (on this actor's thread) when it completes
+  private void start(PublishWindow window, Supplier<CompletableFuture<?>> publish) {
+    ActorRef self = self();
+    int lane = laneOf(window.name());
+    long startNanos = System.nanoTime();
+    publish.get().whenComplete((x, ex) -> self.tell(new PublishCompleted(window, lane, startNanos), ActorRef.noSender()));
+  }
+
+  // The mailbox lane of the messages that cause the publishes of the event class
+  private static int laneOf(String eventClass) {
+    switch (eventClass) {
+      case sodiumLayerClass:
+        return PublisherMailbox.aoLane;
+      case stateClass:
+        return PublisherMailbox.controlLane;
+      default:
+        return PublisherMailbox.telemetryLane;
+    }
+  }
+
+  @Override
+  public void preStart() throws Exception {
+    super.preStart();
+    self().tell(new PublisherMailbox.QueueRequest(), self());
+  }
+
+  @Override
+  public void postStop() throws Exception {
+    aggregateTimer.ifPresent(Cancellable::cancel);
+    heartbeatTimer.ifPresent(Cancellable::cancel);
+    super.postStop();
+  }
+
   private void publishAOESW(Optional<IEventService> eventService, DoubleItem elevationItem, DoubleItem rangeItem) {
     SystemEvent se = jadd(new SystemEvent(assemblyContext.aoSystemEventPrefix), elevationItem, rangeItem);
-    log.info("System publish of " + assemblyContext.aoSystemEventPrefix + ": " + se);
-    eventService.ifPresent(e -> e.publish(se).handle((x, ex) -> {
+    log.debug("System publish of {}: {}", assemblyContext.aoSystemEventPrefix, se);
+    eventService.ifPresent(e -> publish(sodiumLayerClass, () -> e.publish(se).handle((x, ex) -> {
       log.error("TrombonePublisher failed to publish AO system event: " + se, ex);
       return null;
-    }));
+    })));
   }
 
   private void publishEngr(Optional<ITelemetryService> telemetryService, DoubleItem rtcFocusError, DoubleItem stagePosition, DoubleItem zenithAngle) {
     StatusEvent ste = jadd(new StatusEvent(assemblyContext.engStatusEventPrefix), rtcFocusError, stagePosition, zenithAngle);
-    log.info("Status publish of " + assemblyContext.engStatusEventPrefix + ": " + ste);
+    log.debug("Status publish of {}: {}", assemblyContext.engStatusEventPrefix, ste);
 
-    telemetryService.ifPresent(e -> e.publish(ste).handle((x, ex) -> {
+    telemetryService.ifPresent(e -> publish(engrClass, () -> e.publish(ste).handle((x, ex) -> {
       log.error("TrombonePublisher failed to publish engr: " + ste, ex);
       return null;
-    }));
+    })));
   }
 
   private void publishState(Optional<ITelemetryService> telemetryService, TromboneState ts) {
     // We can do this for convenience rather than using TromboneStateHandler's stateReceive
     StatusEvent ste = jadd(new StatusEvent(assemblyContext.tromboneStateStatusEventPrefix), ts.cmd, ts.move, ts.sodiumLayer, ts.nss);
+    // TromboneState has no equals, so its items are compared
+    if (!changed(assemblyContext.tromboneStateStatusEventPrefix, Arrays.asList(ts.cmd, ts.move, ts.sodiumLayer, ts.nss),
+      stateClass, ste)) return;
     log.debug("Status state publish of " + assemblyContext.tromboneStateStatusEventPrefix + ": " + ste);
-    telemetryService.ifPresent(e -> e.publish(ste).handle((x, ex) -> {
+    telemetryService.ifPresent(e -> publish(stateClass, () -> e.publish(ste).handle((x, ex) -> {
       log.error("TrombonePublisher failed to publish state: " + ste, ex);
       return null;
-    }));
+    })));
   }
 
   private void publishAxisState(Optional<ITelemetryService> telemetryService, StringItem axisName, IntItem position, ChoiceItem state, BooleanItem inLowLimit,
                                 BooleanItem inHighLimit, BooleanItem inHome) {
     StatusEvent ste = jadd(new StatusEvent(assemblyContext.axisStateEventPrefix), axisName, position, state, inLowLimit, inHighLimit, inHome);
+    if (!changed(assemblyContext.axisStateEventPrefix + "." + jvalue(axisName),
+      Arrays.asList(position, state, inLowLimit, inHighLimit, inHome), axisStateClass, ste)) return;
     log.debug("Axis state publish of " + assemblyContext.axisStateEventPrefix + ": " + ste);
-    telemetryService.ifPresent(e -> e.publish(ste).handle((x, ex) -> {
+    telemetryService.ifPresent(e -> publish(axisStateClass, () -> e.publish(ste).handle((x, ex) -> {
       log.error("TrombonePublisher failed to publish axis state: " + ste, ex);
       return null;
-    }));
+    })));
   }
 
   private void publishAxisStats(Optional<ITelemetryService> telemetryService, StringItem axisName, IntItem datumCount, IntItem moveCount, IntItem homeCount, IntItem limitCount,
-                                IntItem successCount, IntItem failureCount, IntItem cancelCount) {
+                                IntItem successCount, IntItem failureCount, IntItem cancelCount, IntItem supersededCount) {
     StatusEvent ste = jadd(new StatusEvent(assemblyContext.axisStatsEventPrefix), axisName, datumCount, moveCount, homeCount, limitCount,
-        successCount, failureCount, cancelCount);
+        successCount, failureCount, cancelCount, supersededCount);
+    if (!changed(assemblyContext.axisStatsEventPrefix + "." + jvalue(axisName),
+      Arrays.asList(datumCount, moveCount, homeCount, limitCount, successCount, failureCount, cancelCount, supersededCount),
+      axisStatsClass, ste)) return;
     log.debug("Axis stats publish of " + assemblyContext.axisStatsEventPrefix + ": " + ste);
-    telemetryService.ifPresent(e -> e.publish(ste).handle((x, ex) -> {
+    telemetryService.ifPresent(e -> publish(axisStatsClass, () -> e.publish(ste).handle((x, ex) -> {
       log.error("TrombonePublisher failed to publish trombone axis stats: " + ste, ex);
       return null;
-    }));
+    })));
+  }
+
+  // For each follow loop stage, the count and the percentiles in microseconds, with keys prefixed by the stage name
+  private void publishFollowLatency(Optional<ITelemetryService> telemetryService, FollowLatencyStats stats) {
+    StatusEvent ste = new StatusEvent(assemblyContext.followLatencyEventPrefix);
+    for (Map.Entry<String, Summary> e : stats.stages.entrySet()) {
+      String stage = e.getKey();
+      Summary s = e.getValue();
+      ste = jadd(ste,
+        jset(new IntKey(stage + "Count"), (int) Math.min(s.count, Integer.MAX_VALUE)),
+        jset(new DoubleKey(stage + "P50"), s.p50Nanos / 1000.0),
+        jset(new DoubleKey(stage + "P90"), s.p90Nanos / 1000.0),
+        jset(new DoubleKey(stage + "P99"), s.p99Nanos / 1000.0),
+        jset(new DoubleKey(stage + "P999"), s.p999Nanos / 1000.0),
+        jset(new DoubleKey(stage + "Max"), s.maxNanos / 1000.0));
+    }
+    StatusEvent event = ste;
+    log.debug("Follow latency publish of {}: {}", assemblyContext.followLatencyEventPrefix, event);
+    telemetryService.ifPresent(e -> publish(followStatsClass, () -> e.publish(event).handle((x, ex) -> {
+      log.error("TrombonePublisher failed to publish follow latency: " + event, ex);
+      return null;
+    })));
+  }
+
+  private void publishPredictionErrors(Optional<ITelemetryService> telemetryService, PredictionStats stats) {
+    StatusEvent ste = jadd(new StatusEvent(assemblyContext.followPredictionEventPrefix),
+      jset(predictionCountKey, (int) Math.min(stats.count, Integer.MAX_VALUE)),
+      jset(zenithAngleRmsErrorKey, stats.zenithAngleRmsError).withUnits(AssemblyContext.zenithAngleUnits),
+      jset(zenithAngleMaxErrorKey, stats.zenithAngleMaxError).withUnits(AssemblyContext.zenithAngleUnits),
+      jset(focusErrorRmsErrorKey, stats.focusErrorRmsError).withUnits(AssemblyContext.focusErrorUnits),
+      jset(focusErrorMaxErrorKey, stats.focusErrorMaxError).withUnits(AssemblyContext.focusErrorUnits));
+    log.debug("Prediction error publish of {}: {}", assemblyContext.followPredictionEventPrefix, ste);
+    telemetryService.ifPresent(e -> publish(followStatsClass, () -> e.publish(ste).handle((x, ex) -> {
+      log.error("TrombonePublisher failed to publish prediction errors: " + ste, ex);
+      return null;
+    })));
+  }
+
+  // For each field, the count, min, max, mean and last value over the window, with keys prefixed by the field name
+  private void publishAggregate(Optional<ITelemetryService> telemetryService, TelemetryAggregator.Aggregate aggregate) {
+    String prefix = assemblyContext.aggregateEventPrefix + aggregate.periodSeconds + "s";
+    StatusEvent ste = new StatusEvent(prefix);
+    for (Map.Entry<String, TelemetryAggregator.FieldStats> e : aggregate.fields.entrySet()) {
+      String field = e.getKey();
+      TelemetryAggregator.FieldStats s = e.getValue();
+      ste = jadd(ste,
+        jset(new IntKey(field + "Count"), (int) Math.min(s.count(), Integer.MAX_VALUE)),
+        jset(new DoubleKey(field + "Min"), s.min()),
+        jset(new DoubleKey(field + "Max"), s.max()),
+        jset(new DoubleKey(field + "Mean"), s.mean()),
+        jset(new DoubleKey(field + "Last"), s.last()));
+    }
+    StatusEvent event = ste;
+    log.debug("Aggregate publish of {}: {}", prefix, event);
+    telemetryService.ifPresent(e -> publish(aggregateClass, () -> e.publish(event).handle((x, ex) -> {
+      log.error("TrombonePublisher failed to publish telemetry aggregate: " + event, ex);
+      return null;
+    })));
   }
 
   // --- static defs ---
 
+  // The names of the aggregated fields, used as the key prefixes of the aggregate events
+  public static final String focusErrorField = "focusError";
+  public static final String stagePositionField = "stagePosition";
+  public static final String zenithAngleField = "zenithAngle";
+  public static final String axisPositionField = "axisPosition";
+
+  // The names of the classes of published events, each with its own PublishWindow
+  public static final String sodiumLayerClass = "sodiumLayer";
+  public static final String engrClass = "engr";
+  public static final String stateClass = "state";
+  public static final String axisStateClass = "axisState";
+  public static final String axisStatsClass = "axisStats";
+  // The followLatency and followPrediction events
+  public static final String followStatsClass = "followStats";
+  // The telemetry aggregates
+  public static final String aggregateClass = "aggregate";
+
+  /**
+   * The window of each class of events when not given in the control-config: the sodiumLayer, state and aggregate
+   * events are never dropped, the engr events drop the oldest and the rest are conflated to the latest value
+   */
+  public static final Map<String, PublishWindow.Settings> defaultPublishWindows;
+
+  static {
+    Map<String, PublishWindow.Settings> m = new LinkedHashMap<>();
+    m.put(sodiumLayerClass, new PublishWindow.Settings(64, 0, PublishWindow.Policy.block));
+    m.put(stateClass, new PublishWindow.Settings(8, 0, PublishWindow.Policy.block));
+    m.put(engrClass, new PublishWindow.Settings(4, 16, PublishWindow.Policy.dropOldest));
+    m.put(axisStateClass, new PublishWindow.Settings(2, 1, PublishWindow.Policy.conflate));
+    m.put(axisStatsClass, new PublishWindow.Settings(1, 1, PublishWindow.Policy.conflate));
+    m.put(followStatsClass, new PublishWindow.Settings(1, 1, PublishWindow.Policy.conflate));
+    // A few per second at most, and windows of different lengths must not replace each other
+    m.put(aggregateClass, new PublishWindow.Settings(4, 0, PublishWindow.Policy.block));
+    defaultPublishWindows = Collections.unmodifiableMap(m);
+  }
+
+  // Keys of the followPrediction event
+  public static final IntKey predictionCountKey = new IntKey("predictionCount");
+  public static final DoubleKey zenithAngleRmsErrorKey = new DoubleKey("zenithAngleRmsError");
+  public static final DoubleKey zenithAngleMaxErrorKey = new DoubleKey("zenithAngleMaxError");
+  public static final DoubleKey focusErrorRmsErrorKey = new DoubleKey("focusErrorRmsError");
+  public static final DoubleKey focusErrorMaxErrorKey = new DoubleKey("focusErrorMaxError");
+
+  // The name of the PublisherMailbox config in reference.conf
+  public static final String mailboxName = "trombone-publisher-mailbox";
+
   public static Props props(AssemblyContext assemblyContext, Optional<IEventService> eventServiceIn, Optional<ITelemetryService> telemetryServiceIn) {
     return Props.create(new Creator<TrombonePublisher>() {
       private static final long serialVersionUID = 1L;
@@ -202,16 +548,165 @@ public class TrombonePublisher extends AbstractActor implements TromboneStateCli
       public TrombonePublisher create() throws Exception {
         return new TrombonePublisher(assemblyContext, eventServiceIn, telemetryServiceIn);
       }
-    });
+    }).withMailbox(mailboxName);
+  }
+
+  /**
+   * Engineering message: the TrombonePublisher replies with PublishWindowStats
+   */
+  public static class GetPublishWindowStats {
+    public static final GetPublishWindowStats instance = new GetPublishWindowStats();
+
+    private GetPublishWindowStats() {
+    }
+  }
+
+  /**
+   * The reply to GetPublishWindowStats: the counters of the window of each class of events, by class name
+   */
+  @SuppressWarnings("WeakerAccess")
+  public static class PublishWindowStats {
+    public final Map<String, PublishWindow.WindowStats> windows;
+
+    public PublishWindowStats(Map<String, PublishWindow.WindowStats> windows) {
+      this.windows = windows;
+    }
+
+    @Override
+    public String toString() {
+      return "PublishWindowStats{" +
+        "windows=" + windows +
+        '}';
+    }
+  }
+
+  /**
+   * Engineering message: the TrombonePublisher replies with the LastValueCache.CacheStats, all zero if publishing
+   * every update
+   */
+  public static class GetChangeOnlyStats {
+    public static final GetChangeOnlyStats instance = new GetChangeOnlyStats();
+
+    private GetChangeOnlyStats() {
+    }
+  }
+
+  /**
+   * Engineering message: the TrombonePublisher replies with PublishLaneStats
+   */
+  public static class GetPublishLaneStats {
+    public static final GetPublishLaneStats instance = new GetPublishLaneStats();
+
+    private GetPublishLaneStats() {
+    }
+  }
+
+  /**
+   * The stats of one mailbox lane: the messages waiting now, the most that waited at once, the time they waited
+   * and the publish latency of the events they caused. The queue values are 0 if the actor does not use the PublisherMailbox.
+   */
+  @SuppressWarnings("WeakerAccess")
+  public static class LaneStats {
+    public final int depth;
+    public final int maxDepth;
+    public final Summary queueWait;
+    public final Summary publishLatency;
+
+    public LaneStats(int depth, int maxDepth, Summary queueWait, Summary publishLatency) {
+      this.depth = depth;
+      this.maxDepth = maxDepth;
+      this.queueWait = queueWait;
+      this.publishLatency = publishLatency;
+    }
+
+    @Override
+    public String toString() {
+      return "LaneStats{" +
+        "depth=" + depth +
+        ", maxDepth=" + maxDepth +
+        ", queueWait=" + queueWait +
+        ", publishLatency=" + publishLatency +
+        '}';
+    }
+  }
+
+  /**
+   * The reply to GetPublishLaneStats: the stats of each lane, by lane name (see PublisherMailbox)
+   */
+  @SuppressWarnings("WeakerAccess")
+  public static class PublishLaneStats {
+    public final Map<String, LaneStats> lanes;
+
+    public PublishLaneStats(Map<String, LaneStats> lanes) {
+      this.lanes = lanes;
+    }
+
+    @Override
+    public String toString() {
+      return "PublishLaneStats{" +
+        "lanes=" + lanes +
+        '}';
+    }
+  }
+
+  // Sent to self when a publish started through a window completes
+  private static class PublishCompleted {
+    final PublishWindow window;
+    final int lane;
+    final long startNanos;
+
+    PublishCompleted(PublishWindow window, int lane, long startNanos) {
+      this.window = window;
+      this.lane = lane;
+      this.startNanos = startNanos;
+    }
+  }
+
+  // Sent to self four times per publishHeartbeatMS while publishing only changes, to publish the events due again
+  private static class HeartbeatTick {
+    static final HeartbeatTick instance = new HeartbeatTick();
+
+    private HeartbeatTick() {
+    }
+  }
+
+  // The last event published with a change-only key, and its class, kept to be published again as a heartbeat
+  private static class Heartbeat {
+    final String eventClass;
+    final StatusEvent event;
+
+    Heartbeat(String eventClass, StatusEvent event) {
+      this.eventClass = eventClass;
+      this.event = event;
+    }
+  }
+
+  // Sent to self every second while aggregating, to publish the windows that have ended
+  private static class AggregateTick {
+    static final AggregateTick instance = new AggregateTick();
+
+    private AggregateTick() {
+    }
   }
 
   /**
-   * Used by actors wishing to cause an event for AO ESW
+   * Used by actors wishing to cause an event for AO ESW.
+   * The values are held as doubles in the units of the event keys, the items are only created when the event is published.
    */
   @SuppressWarnings("WeakerAccess")
   public static class AOESWUpdate {
-    public final DoubleItem naElevation;
-    public final DoubleItem naRange;
+    public final double naElevation;
+    public final double naRange;
+
+    /**
+     * Constructor
+     * @param naElevation elevation update in naElevationUnits
+     * @param naRange range update in naRangeDistanceUnits
+     */
+    public AOESWUpdate(double naElevation, double naRange) {
+      this.naElevation = naElevation;
+      this.naRange = naRange;
+    }
 
     /**
      * Constructor
@@ -219,8 +714,7 @@ public class TrombonePublisher extends AbstractActor implements TromboneStateCli
      * @param naRange range update
      */
     public AOESWUpdate(DoubleItem naElevation, DoubleItem naRange) {
-      this.naElevation = naElevation;
-      this.naRange = naRange;
+      this(jvalue(naElevation), jvalue(naRange));
     }
 
     @Override
@@ -230,13 +724,13 @@ public class TrombonePublisher extends AbstractActor implements TromboneStateCli
 
       AOESWUpdate that = (AOESWUpdate) o;
 
-      return naElevation.equals(that.naElevation) && naRange.equals(that.naRange);
+      return Double.compare(that.naElevation, naElevation) == 0 && Double.compare(that.naRange, naRange) == 0;
     }
 
     @Override
     public int hashCode() {
-      int result = naElevation.hashCode();
-      result = 31 * result + naRange.hashCode();
+      int result = Double.hashCode(naElevation);
+      result = 31 * result + Double.hashCode(naRange);
       return result;
     }
 
@@ -250,13 +744,26 @@ public class TrombonePublisher extends AbstractActor implements TromboneStateCli
   }
 
   /**
-   * Used by actors wishing to cause an engineering event update
+   * Used by actors wishing to cause an engineering status event.
+   * The values are held as doubles in the units of the event keys, the items are only created when the event is published.
    */
   @SuppressWarnings("WeakerAccess")
   public static class EngrUpdate {
-    public final DoubleItem focusError;
-    public final DoubleItem stagePosition;
-    public final DoubleItem zenithAngle;
+    public final double focusError;
+    public final double stagePosition;
+    public final double zenithAngle;
+
+    /**
+     * Constructor
+     * @param focusError focus error value in focusErrorUnits
+     * @param stagePosition stage position in stagePositionUnits
+     * @param zenithAngle zenith angle in zenithAngleUnits
+     */
+    public EngrUpdate(double focusError, double stagePosition, double zenithAngle) {
+      this.focusError = focusError;
+      this.stagePosition = stagePosition;
+      this.zenithAngle = zenithAngle;
+    }
 
     /**
      * Constructor
@@ -265,9 +772,7 @@ public class TrombonePublisher extends AbstractActor implements TromboneStateCli
      * @param zenithAngle zenith angle update as a DoubleItem
      */
     public EngrUpdate(DoubleItem focusError, DoubleItem stagePosition, DoubleItem zenithAngle) {
-      this.focusError = focusError;
-      this.stagePosition = stagePosition;
-      this.zenithAngle = zenithAngle;
+      this(jvalue(focusError), jvalue(stagePosition), jvalue(zenithAngle));
     }
 
     @Override
@@ -277,16 +782,50 @@ public class TrombonePublisher extends AbstractActor implements TromboneStateCli
 
       EngrUpdate that = (EngrUpdate) o;
 
-      return focusError.equals(that.focusError) && stagePosition.equals(that.stagePosition) && zenithAngle.equals(that.zenithAngle);
+      return Double.compare(that.focusError, focusError) == 0 && Double.compare(that.stagePosition, stagePosition) == 0
+        && Double.compare(that.zenithAngle, zenithAngle) == 0;
     }
 
     @Override
     public int hashCode() {
-      int result = focusError.hashCode();
-      result = 31 * result + stagePosition.hashCode();
-      result = 31 * result + zenithAngle.hashCode();
+      int result = Double.hashCode(focusError);
+      result = 31 * result + Double.hashCode(stagePosition);
+      result = 31 * result + Double.hashCode(zenithAngle);
       return result;
     }
+
+    @Override
+    public String toString() {
+      return "EngrUpdate{" +
+        "focusError=" + focusError +
+        ", stagePosition=" + stagePosition +
+        ", zenithAngle=" + zenithAngle +
+        '}';
+    }
+  }
+
+  /**
+   * Used by the FollowCommand to publish the follow loop latency percentiles
+   */
+  @SuppressWarnings("WeakerAccess")
+  public static class FollowLatencyUpdate {
+    public final FollowLatencyStats stats;
+
+    public FollowLatencyUpdate(FollowLatencyStats stats) {
+      this.stats = stats;
+    }
+  }
+
+  /**
+   * Used by the follow actor to publish its prediction errors
+   */
+  @SuppressWarnings("WeakerAccess")
+  public static class PredictionErrorUpdate {
+    public final PredictionStats stats;
+
+    public PredictionErrorUpdate(PredictionStats stats) {
+      this.stats = stats;
+    }
   }
 
   @SuppressWarnings("WeakerAccess")
@@ -319,9 +858,12 @@ public class TrombonePublisher extends AbstractActor implements TromboneStateCli
     public final IntItem successCount;
     public final IntItem failCount;
     public final IntItem cancelCount;
+    // Move setpoints the HCD replaced by a newer one before sending them to the axis
+    public final IntItem supersededCount;
 
     public AxisStatsUpdate(StringItem axisName, IntItem initCount, IntItem moveCount, IntItem homeCount,
-                           IntItem limitCount, IntItem successCount, IntItem failCount, IntItem cancelCount) {
+                           IntItem limitCount, IntItem successCount, IntItem failCount, IntItem cancelCount,
+                           IntItem supersededCount) {
       this.axisName = axisName;
       this.initCount = initCount;
       this.moveCount = moveCount;
@@ -330,6 +872,7 @@ public class TrombonePublisher extends AbstractActor implements TromboneStateCli
       this.successCount = successCount;
       this.failCount = failCount;
       this.cancelCount = cancelCount;
+      this.supersededCount = supersededCount;
     }
   }
 }
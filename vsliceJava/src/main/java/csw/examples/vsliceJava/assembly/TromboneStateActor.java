@@ -7,21 +7,28 @@ import akka.event.Logging;
 import akka.event.LoggingAdapter;
 import akka.japi.Creator;
 import akka.japi.pf.ReceiveBuilder;
+import csw.examples.vsliceJava.shared.FlightRecorder;
 import csw.util.config.*;
 import scala.PartialFunction;
 import scala.runtime.BoxedUnit;
 
+import java.util.Optional;
+
 import static javacsw.util.config.JItems.jset;
 import static javacsw.util.config.JItems.jvalue;
 
 /**
  * Note that this state actor is not a listener for events. Only the client listens.
  */
-@SuppressWarnings({"unused", "WeakerAccess"})
+@SuppressWarnings({"unused", "WeakerAccess", "OptionalUsedAsFieldOrParameterType"})
 public class TromboneStateActor extends AbstractActor {
   private LoggingAdapter log = Logging.getLogger(getContext().system(), this);
 
-  private TromboneStateActor() {
+  // If present, the state changes are recorded here
+  private final Optional<FlightRecorder> flightRecorder;
+
+  private TromboneStateActor(Optional<FlightRecorder> flightRecorder) {
+    this.flightRecorder = flightRecorder;
     receive(stateReceive(new TromboneState(cmdDefault, moveDefault, sodiumLayerDefault, nssDefault)));
   }
 
@@ -37,6 +44,7 @@ public class TromboneStateActor extends AbstractActor {
       match(SetState.class, t -> {
         TromboneState ts = t.tromboneState;
         if (!ts.equals(currentState)) {
+          flightRecorder.ifPresent(r -> r.recordCommandState(jvalue(ts.cmd), jvalue(ts.move)));
           context().system().eventStream().publish(ts);
           context().become(stateReceive(ts));
           sender().tell(new StateWasSet(true), self());
@@ -52,12 +60,17 @@ public class TromboneStateActor extends AbstractActor {
   // --- static data ---
 
   public static Props props() {
+    return props(Optional.empty());
+  }
+
+  // Props for creating the state actor that records the state changes to the assembly's flight recorder
+  public static Props props(Optional<FlightRecorder> flightRecorder) {
     return Props.create(new Creator<TromboneStateActor>() {
       private static final long serialVersionUID = 1L;
 
       @Override
       public TromboneStateActor create() throws Exception {
-        return new TromboneStateActor();
+        return new TromboneStateActor(flightRecorder);
       }
     });
   }
@@ -15,7 +15,29 @@ public class AxisConfig {
   int startPosition;
   int stepDelayMS;
 
+  // Motion profile limits in encoder units/s, /s^2 and /s^3. When maxVelocity is 0, moves are done in steps of stepDelayMS.
+  // When maxJerk is 0, the profile is trapezoidal, otherwise it is an S-curve.
+  double maxVelocity;
+  double maxAcceleration;
+  double maxJerk;
+  // Rate of the profile generator and the rate at which AxisUpdates are sent while moving
+  int servoRateHz;
+  int updateRateHz;
+  // Maximum rate at which axis updates are published to subscribers, state and limit changes are always published
+  int maxPublishRateHz = defaultMaxPublishRateHz;
+  // Period for pushing axis statistics to subscribers when they change, 0 to only publish them on request
+  int statsPublishPeriodMS = 0;
+  // If not empty, every axis update is recorded to this flight recorder file of flightRecorderSizeMB megabytes
+  String flightRecorderFile = "";
+  int flightRecorderSizeMB = defaultFlightRecorderSizeMB;
+
   public AxisConfig(String axisName, int lowLimit, int lowUser, int highUser, int highLimit, int home, int startPosition, int stepDelayMS) {
+    this(axisName, lowLimit, lowUser, highUser, highLimit, home, startPosition, stepDelayMS, 0.0, 0.0, 0.0,
+      defaultServoRateHz, defaultUpdateRateHz);
+  }
+
+  public AxisConfig(String axisName, int lowLimit, int lowUser, int highUser, int highLimit, int home, int startPosition, int stepDelayMS,
+                    double maxVelocity, double maxAcceleration, double maxJerk, int servoRateHz, int updateRateHz) {
     this.axisName = axisName;
     this.lowLimit = lowLimit;
     this.lowUser = lowUser;
@@ -24,6 +46,11 @@ public class AxisConfig {
     this.home = home;
     this.startPosition = startPosition;
     this.stepDelayMS = stepDelayMS;
+    this.maxVelocity = maxVelocity;
+    this.maxAcceleration = maxAcceleration;
+    this.maxJerk = maxJerk;
+    this.servoRateHz = servoRateHz;
+    this.updateRateHz = updateRateHz;
   }
 
   public AxisConfig(Config config) {
@@ -37,5 +64,39 @@ public class AxisConfig {
     home = config.getInt(prefix + ".axis-config.home");
     startPosition = config.getInt(prefix + ".axis-config.startPosition");
     stepDelayMS = config.getInt(prefix + ".axis-config.stepDelayMS");
+    // The motion profile is optional, without it the axis moves in steps
+    maxVelocity = getDouble(config, prefix + ".axis-config.maxVelocity", 0.0);
+    maxAcceleration = getDouble(config, prefix + ".axis-config.maxAcceleration", 0.0);
+    maxJerk = getDouble(config, prefix + ".axis-config.maxJerk", 0.0);
+    servoRateHz = getInt(config, prefix + ".axis-config.servoRateHz", defaultServoRateHz);
+    updateRateHz = getInt(config, prefix + ".axis-config.updateRateHz", defaultUpdateRateHz);
+    maxPublishRateHz = getInt(config, prefix + ".axis-config.maxPublishRateHz", defaultMaxPublishRateHz);
+    statsPublishPeriodMS = getInt(config, prefix + ".axis-config.statsPublishPeriodMS", 0);
+    flightRecorderFile = getString(config, prefix + ".axis-config.flightRecorderFile", "");
+    flightRecorderSizeMB = getInt(config, prefix + ".axis-config.flightRecorderSizeMB", defaultFlightRecorderSizeMB);
+  }
+
+  /**
+   * @return true if moves for this axis use the velocity/acceleration/jerk limited motion profile
+   */
+  public boolean isProfiled() {
+    return maxVelocity > 0.0 && maxAcceleration > 0.0;
+  }
+
+  public static final int defaultServoRateHz = 1000;
+  public static final int defaultUpdateRateHz = 20;
+  public static final int defaultMaxPublishRateHz = 50;
+  public static final int defaultFlightRecorderSizeMB = 16;
+
+  private static double getDouble(Config config, String path, double defaultValue) {
+    return config.hasPath(path) ? config.getDouble(path) : defaultValue;
+  }
+
+  private static String getString(Config config, String path, String defaultValue) {
+    return config.hasPath(path) ? config.getString(path) : defaultValue;
+  }
+
+  private static int getInt(Config config, String path, int defaultValue) {
+    return config.hasPath(path) ? config.getInt(path) : defaultValue;
   }
 }
@@ -0,0 +1,151 @@
+package csw.examples.vsliceJava.hcd;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import static csw.examples.vsliceJava.hcd.SingleAxisSimulator.AxisState;
+import static csw.examples.vsliceJava.hcd.SingleAxisSimulator.AxisStatistics;
+import static csw.examples.vsliceJava.hcd.SingleAxisSimulator.AxisUpdate;
+
+/**
+ * The latest state and the statistics of one simulated axis, readable from any thread without messaging or locks.
+ * <p>
+ * The simulation engine is the only writer. The counters are LongAdders. The position, axis state and flags are
+ * packed together with a sequence number into one volatile long, so a reader always sees a consistent set of values
+ * with a single read, and can tell from the sequence number whether anything changed since its last read.
+ * <p>
+ * Monitoring code in the same JVM can get the snapshot of an axis from TromboneHCD with
+ * TromboneEngineering.GetAxisSnapshot and then poll it as often as it likes without adding load to any mailbox.
+ */
+public class AxisSnapshot {
+  public final String axisName;
+
+  // Statistics counters
+  private final LongAdder initCount = new LongAdder();
+  private final LongAdder moveCount = new LongAdder();
+  private final LongAdder homeCount = new LongAdder();
+  private final LongAdder limitCount = new LongAdder();
+  private final LongAdder successCount = new LongAdder();
+  private final LongAdder failureCount = new LongAdder();
+  private final LongAdder cancelCount = new LongAdder();
+  // Incremented after every counter change, only written by the engine
+  private volatile long statsVersion = 0;
+
+  // Layout of the state word: position in bits 0-31, state in bits 32-33, flags in bits 34-36, sequence above
+  private static final int stateShift = 32;
+  private static final long lowLimitBit = 1L << 34;
+  private static final long highLimitBit = 1L << 35;
+  private static final long homedBit = 1L << 36;
+  private static final int sequenceShift = 37;
+  private static final AxisState[] axisStates = AxisState.values();
+
+  private volatile long stateWord = 0;
+
+  AxisSnapshot(String axisName) {
+    this.axisName = axisName;
+  }
+
+  // --- Written by the simulation engine only ---
+
+  void setState(AxisState state, int position, boolean inLowLimit, boolean inHighLimit, boolean inHomed) {
+    long sequence = (stateWord >>> sequenceShift) + 1;
+    stateWord = (sequence << sequenceShift)
+      | (inHomed ? homedBit : 0L)
+      | (inHighLimit ? highLimitBit : 0L)
+      | (inLowLimit ? lowLimitBit : 0L)
+      | ((long) state.ordinal() << stateShift)
+      | (position & 0xFFFFFFFFL);
+  }
+
+  void countInit() {
+    count(initCount);
+  }
+
+  void countMove() {
+    count(moveCount);
+  }
+
+  void countHome() {
+    count(homeCount);
+  }
+
+  void countLimit() {
+    count(limitCount);
+  }
+
+  void countSuccess() {
+    count(successCount);
+  }
+
+  void countFailure() {
+    count(failureCount);
+  }
+
+  void countCancel() {
+    count(cancelCount);
+  }
+
+  @SuppressWarnings("NonAtomicOperationOnVolatileField")
+  private void count(LongAdder counter) {
+    counter.increment();
+    statsVersion++; // single writer
+  }
+
+  // --- Read from any thread ---
+
+  /**
+   * @return the packed position, state, flags and sequence number, decode with the static methods of this class
+   */
+  public long stateWord() {
+    return stateWord;
+  }
+
+  public static int position(long stateWord) {
+    return (int) stateWord;
+  }
+
+  public static AxisState state(long stateWord) {
+    return axisStates[(int) (stateWord >>> stateShift) & 0x3];
+  }
+
+  public static boolean inLowLimit(long stateWord) {
+    return (stateWord & lowLimitBit) != 0;
+  }
+
+  public static boolean inHighLimit(long stateWord) {
+    return (stateWord & highLimitBit) != 0;
+  }
+
+  public static boolean inHomed(long stateWord) {
+    return (stateWord & homedBit) != 0;
+  }
+
+  /**
+   * @return a number that changes whenever the state is written
+   */
+  public static long sequence(long stateWord) {
+    return stateWord >>> sequenceShift;
+  }
+
+  /**
+   * @return a number that changes whenever one of the counters changes
+   */
+  public long statsVersion() {
+    return statsVersion;
+  }
+
+  /**
+   * @return the latest state as an AxisUpdate
+   */
+  public AxisUpdate latest() {
+    long w = stateWord;
+    return new AxisUpdate(axisName, state(w), position(w), inLowLimit(w), inHighLimit(w), inHomed(w));
+  }
+
+  /**
+   * @return the current counters as AxisStatistics
+   */
+  public AxisStatistics statistics() {
+    return new AxisStatistics(axisName, initCount.intValue(), moveCount.intValue(), homeCount.intValue(),
+      limitCount.intValue(), successCount.intValue(), failureCount.intValue(), cancelCount.intValue());
+  }
+}
@@ -0,0 +1,111 @@
+package csw.examples.vsliceJava.hcd;
+
+import csw.util.config.BooleanItem;
+import csw.util.config.Choice;
+import csw.util.config.ChoiceItem;
+import csw.util.config.IntItem;
+import csw.util.config.Item;
+import csw.util.config.StringItem;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import static csw.examples.vsliceJava.hcd.SingleAxisSimulator.AxisState;
+import static csw.examples.vsliceJava.hcd.SingleAxisSimulator.AxisUpdate;
+import static csw.examples.vsliceJava.hcd.TromboneHCD.*;
+import static csw.util.config.StateVariable.CurrentState;
+import static javacsw.util.config.JConfigDSL.cs;
+import static javacsw.util.config.JItems.jset;
+import static javacsw.util.config.JUnitsOfMeasure.encoder;
+
+/**
+ * Builds the axis state CurrentState for AxisUpdates while allocating as little as possible.
+ * <p>
+ * Items are immutable, so one item is built up front for every axis state and for both values of each flag, and the
+ * position item is only rebuilt when the position changes. encode() returns the previous CurrentState itself if the
+ * update changes nothing.
+ * <p>
+ * The keys that changed in the last encode() are also kept, so that delta() can return a CurrentState holding only
+ * those items for subscribers that asked for changes only.
+ * <p>
+ * This class is not thread safe, it is meant to be owned by one actor.
+ */
+public class AxisStateEncoder {
+  private final StringItem nameItem;
+  private final Map<AxisState, ChoiceItem> stateItems = new EnumMap<>(AxisState.class);
+  private final BooleanItem[] lowLimitItems;
+  private final BooleanItem[] highLimitItems;
+  private final BooleanItem[] homeItems;
+
+  // The items of the last state
+  private ChoiceItem stateItem;
+  private IntItem positionItem;
+  private int position;
+  private BooleanItem lowLimitItem;
+  private BooleanItem highLimitItem;
+  private BooleanItem homeItem;
+  private CurrentState currentState;
+
+  // The items that changed in the last encode
+  private final List<Item<?>> changed = new ArrayList<>(6);
+
+  /**
+   * @param axisName the axis name placed in every state
+   */
+  public AxisStateEncoder(String axisName) {
+    nameItem = jset(axisNameKey, axisName);
+    for (AxisState s : AxisState.values()) {
+      stateItems.put(s, jset(stateKey, new Choice(s.toString())));
+    }
+    lowLimitItems = new BooleanItem[]{jset(inLowLimitKey, false), jset(inLowLimitKey, true)};
+    highLimitItems = new BooleanItem[]{jset(inHighLimitKey, false), jset(inHighLimitKey, true)};
+    homeItems = new BooleanItem[]{jset(inHomeKey, false), jset(inHomeKey, true)};
+  }
+
+  /**
+   * @param update the latest axis update
+   * @return the full axis state, the same object as the last call if nothing changed
+   */
+  public CurrentState encode(AxisUpdate update) {
+    changed.clear();
+    boolean first = currentState == null;
+
+    ChoiceItem newState = stateItems.get(update.state);
+    if (first || newState != stateItem) changed.add(stateItem = newState);
+
+    if (first || position != update.current) {
+      position = update.current;
+      changed.add(positionItem = jset(positionKey, position).withUnits(encoder));
+    }
+
+    BooleanItem newLow = lowLimitItems[update.inLowLimit ? 1 : 0];
+    if (first || newLow != lowLimitItem) changed.add(lowLimitItem = newLow);
+
+    BooleanItem newHigh = highLimitItems[update.inHighLimit ? 1 : 0];
+    if (first || newHigh != highLimitItem) changed.add(highLimitItem = newHigh);
+
+    BooleanItem newHome = homeItems[update.inHomed ? 1 : 0];
+    if (first || newHome != homeItem) changed.add(homeItem = newHome);
+
+    if (!changed.isEmpty())
+      currentState = cs(axisStatePrefix, nameItem, stateItem, positionItem, lowLimitItem, highLimitItem, homeItem);
+    return currentState;
+  }
+
+  /**
+   * @return the last full state, or null if nothing was encoded yet
+   */
+  public CurrentState current() {
+    return currentState;
+  }
+
+  /**
+   * @return a state with only the items that changed in the last encode, or null if nothing changed
+   */
+  public CurrentState delta() {
+    if (changed.isEmpty()) return null;
+    return cs(axisStatePrefix, changed.toArray(new Item<?>[changed.size()]));
+  }
+}
@@ -0,0 +1,91 @@
+package csw.examples.vsliceJava.hcd;
+
+import static csw.examples.vsliceJava.hcd.SingleAxisSimulator.AxisUpdate;
+
+/**
+ * Limits the rate at which AxisUpdates are published as CurrentState, keeping only the latest value.
+ * <p>
+ * An update is published at once if the minimum interval has passed since the last publish, or if it is an edge:
+ * the axis state (IDLE/MOVING/ERROR) or one of the limit or home flags changed. Otherwise it is held as pending,
+ * replacing any update already pending, and is published by flush() once the interval has passed. Edges are never
+ * dropped, and the last update of a motion is always published since it changes the state to IDLE.
+ * <p>
+ * This class is not thread safe, it is meant to be owned by one actor. Times are in nanoseconds from any clock.
+ */
+public class AxisUpdateConflater {
+  private final long minIntervalNanos;
+
+  private AxisUpdate lastPublished;
+  private long lastPublishNanos;
+  private AxisUpdate pending;
+
+  // Number of updates that were replaced by a later one and never published
+  long conflatedCount = 0;
+  long publishedCount = 0;
+
+  /**
+   * @param maxPublishRateHz the maximum rate of non-edge publishes, 0 or less publishes every update
+   */
+  public AxisUpdateConflater(int maxPublishRateHz) {
+    this.minIntervalNanos = maxPublishRateHz > 0 ? 1000000000L / maxPublishRateHz : 0L;
+  }
+
+  /**
+   * Offers a new update.
+   *
+   * @param update the latest update from the axis
+   * @param now    the current time in nanoseconds
+   * @return the update to publish now, or null if it is pending and flush() must be called after delayNanos()
+   */
+  public AxisUpdate offer(AxisUpdate update, long now) {
+    if (pending != null) conflatedCount++;
+    pending = update;
+    if (lastPublished == null || isEdge(lastPublished, update) || now - lastPublishNanos >= minIntervalNanos)
+      return publish(now);
+    return null;
+  }
+
+  /**
+   * Called when the delay returned by delayNanos() has passed.
+   *
+   * @param now the current time in nanoseconds
+   * @return the pending update to publish, or null if there is none
+   */
+  public AxisUpdate flush(long now) {
+    return pending == null ? null : publish(now);
+  }
+
+  /**
+   * @param now the current time in nanoseconds
+   * @return the time until the pending update can be published, 0 if it can be published now
+   */
+  public long delayNanos(long now) {
+    return Math.max(0L, lastPublishNanos + minIntervalNanos - now);
+  }
+
+  /**
+   * @return true if an update is waiting to be published
+   */
+  public boolean hasPending() {
+    return pending != null;
+  }
+
+  private AxisUpdate publish(long now) {
+    AxisUpdate update = pending;
+    pending = null;
+    lastPublished = update;
+    lastPublishNanos = now;
+    publishedCount++;
+    return update;
+  }
+
+  /**
+   * @return true if the change from previous to next is one that consumers must always see
+   */
+  public static boolean isEdge(AxisUpdate previous, AxisUpdate next) {
+    return previous.state != next.state
+      || previous.inLowLimit != next.inLowLimit
+      || previous.inHighLimit != next.inHighLimit
+      || previous.inHomed != next.inHomed;
+  }
+}
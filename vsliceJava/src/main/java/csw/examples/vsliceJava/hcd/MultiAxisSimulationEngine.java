@@ -0,0 +1,620 @@
+package csw.examples.vsliceJava.hcd;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.Cancellable;
+import akka.actor.Props;
+import akka.event.Logging;
+import akka.event.LoggingAdapter;
+import akka.japi.Creator;
+import akka.japi.pf.ReceiveBuilder;
+import csw.examples.vsliceJava.shared.RealTimeClock;
+import csw.examples.vsliceJava.shared.SimulationClock;
+import scala.PartialFunction;
+import scala.runtime.BoxedUnit;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Optional;
+
+import static csw.examples.vsliceJava.hcd.SingleAxisSimulator.*;
+
+/**
+ * This class provides a simulator of any number of axes for the purpose of testing TMT HCDs and Assemblies.
+ * <p>
+ * It behaves like one SingleAxisSimulator per axis and sends the same AxisStarted, AxisUpdate and AxisStatistics
+ * responses, but it does not create a MotionWorker actor for each Move or Home. Instead the state of all axes is
+ * kept in primitive arrays indexed by axis number, and all moving axes are advanced together from one fixed-rate
+ * EngineTick. The tick only runs while at least one axis is active, so idle axes cost nothing.
+ * <p>
+ * Axes are added with the AddAxis message, which returns the axis index in an AxisAdded message. Requests for an
+ * axis are then sent wrapped in an AxisCommand with that index.
+ * <p>
+ * An axis whose AxisConfig has velocity and acceleration limits does not move in steps. Instead a profile generator
+ * runs at the axis' servo rate (several servo steps are integrated per engine tick) and limits velocity, acceleration
+ * and, if maxJerk is set, the rate of change of acceleration, giving an approximate S-curve. While moving, an AxisUpdate
+ * is sent at the axis' update rate, independent of the servo rate, so move times and update rates look like a real stage.
+ * <p>
+ * The tick is scheduled on a SimulationClock, so with a VirtualClock the engine runs in simulated time.
+ * <p>
+ * The statistics and latest state of each axis are kept in an AxisSnapshot, which can be read from other threads
+ * without messaging. GetAxisSnapshot returns it.
+ */
+@SuppressWarnings({"CodeBlock2Expr", "WeakerAccess", "OptionalUsedAsFieldOrParameterType"})
+public class MultiAxisSimulationEngine extends AbstractActor {
+  LoggingAdapter log = Logging.getLogger(getContext().system(), this);
+
+  // The period of the engine tick, all step delays are rounded to a whole number of ticks
+  final int tickPeriodMS;
+
+  private final SimulationClock clock;
+
+  // Axis motion modes
+  static final byte MODE_IDLE = 0;
+  static final byte MODE_DATUM = 1;
+  static final byte MODE_HOME = 2;
+  static final byte MODE_MOVE = 3;
+
+  // The time a datum takes and the time for one step of a home, the same values used by SingleAxisSimulator
+  static final int datumDelayMS = 1000;
+  static final int homeStepDelayMS = 100;
+
+  // Per axis state - the arrays are indexed by axis number and grown as axes are added
+  int axisCount = 0;
+  AxisConfig[] axisConfigs = new AxisConfig[0];
+  ActorRef[] replyTo = new ActorRef[0]; // null when there is no one to update
+  byte[] mode = new byte[0];
+  int[] current = new int[0];
+  int[] destination = new int[0];
+  int[] nextPosition = new int[0];
+  int[] stepSize = new int[0];
+  int[] stepTicks = new int[0];
+  int[] ticksToNextStep = new int[0];
+  boolean[] inLowLimit = new boolean[0];
+  boolean[] inHighLimit = new boolean[0];
+  boolean[] inHome = new boolean[0];
+  boolean[] cancelFlag = new boolean[0];
+  boolean[] diagFlag = new boolean[0];
+
+  // Per axis motion profile state, used when the axis config has a profile
+  boolean[] profiled = new boolean[0];
+  double[] position = new double[0];
+  double[] velocity = new double[0];
+  double[] acceleration = new double[0];
+  double[] servoPeriod = new double[0]; // seconds
+  int[] servoStepsPerTick = new int[0];
+  int[] servoStepsPerUpdate = new int[0];
+  int[] servoStepsToUpdate = new int[0];
+
+  // Statistics for status and the latest state, per axis
+  AxisSnapshot[] snapshots = new AxisSnapshot[0];
+
+  // Number of axes that are not idle, the ticker runs while this is > 0
+  int activeCount = 0;
+  private Cancellable ticker;
+
+  /**
+   * Constructor
+   *
+   * @param tickPeriodMS the period of the engine tick in milliseconds
+   * @param clock        the clock used for the tick, if empty real time is used
+   */
+  private MultiAxisSimulationEngine(int tickPeriodMS, Optional<SimulationClock> clock) {
+    if (tickPeriodMS <= 0)
+      throw new AssertionError("tickPeriodMS must be greater than 0: " + tickPeriodMS);
+    this.tickPeriodMS = tickPeriodMS;
+    this.clock = clock.orElseGet(() -> new RealTimeClock(context().system()));
+
+    receive(engineReceive());
+  }
+
+  @Override
+  public void postStop() {
+    stopTicker();
+  }
+
+  PartialFunction<Object, BoxedUnit> engineReceive() {
+    return ReceiveBuilder
+      .match(AddAxis.class, e -> {
+        // Check that the home position is not in a limit area - with this check it is not necessary to check for limits after homing
+        AxisConfig ac = e.axisConfig;
+        if (ac.home <= ac.lowUser)
+          sender().tell(new AxisFailure("home position must be greater than lowUser value: " + ac.lowUser), self());
+        else if (ac.home >= ac.highUser)
+          sender().tell(new AxisFailure("home position must be less than highUser value: " + ac.highUser), self());
+        else
+          sender().tell(new AxisAdded(addAxis(ac, e.replyTo)), self());
+      })
+      .match(AxisCommand.class, e -> {
+        if (e.axis < 0 || e.axis >= axisCount)
+          log.warning("AxisCommand for unknown axis: " + e.axis);
+        else {
+          axisRequest(e.axis, e.request);
+          publishSnapshot(e.axis);
+        }
+      })
+      .match(InitialAxisState.class, e -> {
+        if (e.axis < 0 || e.axis >= axisCount)
+          sender().tell(new AxisFailure("unknown axis: " + e.axis), self());
+        else
+          sender().tell(getState(e.axis), self());
+      })
+      .match(GetAxisSnapshot.class, e -> {
+        if (e.axis < 0 || e.axis >= axisCount)
+          sender().tell(new AxisFailure("unknown axis: " + e.axis), self());
+        else
+          sender().tell(snapshots[e.axis], self());
+      })
+      .matchEquals(EngineTick.instance, e -> tick())
+      .matchAny(x -> log.warning("Unexpected message in MultiAxisSimulationEngine: " + x))
+      .build();
+  }
+
+  void axisRequest(int axis, AxisRequest request) {
+    if (request instanceof Move) {
+      Move m = (Move) request;
+      if (mode[axis] == MODE_MOVE) {
+        // When this is received, we update the final position while a motion is happening
+        // A profiled axis changes its trajectory on the next servo step
+        updateDestination(axis, SingleAxisSimulator.limitMove(axisConfigs[axis], m.position));
+      } else if (mode[axis] == MODE_IDLE) {
+        log.debug("Move: " + m.position);
+        update(axis, AxisStarted.instance);
+        startMotion(axis, MODE_MOVE, SingleAxisSimulator.limitMove(axisConfigs[axis], m.position), axisConfigs[axis].stepDelayMS, m.diagFlag);
+        // Stats
+        snapshots[axis].countMove();
+      } else log.warning("Move received while axis " + axis + " is busy");
+
+    } else if (request == Home.instance) {
+      if (mode[axis] == MODE_IDLE) {
+        update(axis, AxisStarted.instance);
+        startMotion(axis, MODE_HOME, axisConfigs[axis].home, homeStepDelayMS, false);
+        // Stats
+        snapshots[axis].countMove();
+      } else log.warning("Home received while axis " + axis + " is busy");
+
+    } else if (request == Datum.instance) {
+      if (mode[axis] == MODE_IDLE) {
+        update(axis, AxisStarted.instance);
+        // Takes some time and increments the current
+        setMode(axis, MODE_DATUM);
+        ticksToNextStep[axis] = ticksFor(datumDelayMS);
+        // Stats
+        snapshots[axis].countInit();
+        snapshots[axis].countMove();
+      } else log.warning("Datum received while axis " + axis + " is busy");
+
+    } else if (request == CancelMove.instance) {
+      // Will cause the move to end on the next step, or a profiled axis to stop as quickly as possible
+      // Like the SingleAxisSimulator, a cancel is counted while moving or idle, a home or datum is not cancelled
+      if (mode[axis] == MODE_MOVE) {
+        if (profiled[axis]) destination[axis] = stoppingPosition(axis);
+        else cancelFlag[axis] = true;
+        // Stats
+        snapshots[axis].countCancel();
+      } else if (mode[axis] == MODE_IDLE) {
+        log.debug("Received Cancel Move while idle :-(");
+        // Stats
+        snapshots[axis].countCancel();
+      } else log.warning("Cancel Move received while axis " + axis + " is homing or in datum");
+
+    } else if (request == GetStatistics.instance) {
+      sender().tell(getStatistics(axis), self());
+
+    } else if (request == PublishAxisUpdate.instance) {
+      update(axis, getState(axis));
+
+    } else log.warning("Unexpected request for axis " + axis + ": " + request);
+  }
+
+  // Advances all active axes by one tick
+  void tick() {
+    for (int axis = 0; axis < axisCount; axis++) {
+      if (mode[axis] == MODE_IDLE) continue;
+      if (mode[axis] == MODE_DATUM) {
+        if (--ticksToNextStep[axis] <= 0) datumComplete(axis);
+      } else if (profiled[axis]) {
+        servoTick(axis);
+      } else if (--ticksToNextStep[axis] <= 0) {
+        step(axis);
+      }
+      publishSnapshot(axis);
+    }
+  }
+
+  // Runs the profile generator of a home or move for the servo steps in one engine tick
+  void servoTick(int axis) {
+    for (int i = 0; i < servoStepsPerTick[axis]; i++) {
+      boolean done = servoStep(axis);
+      if (done || --servoStepsToUpdate[axis] <= 0) {
+        current[axis] = (int) Math.round(position[axis]);
+        // Set limits - need to do this after every update of a move
+        if (mode[axis] == MODE_MOVE) checkLimits(axis);
+        // Send Update to caller
+        update(axis, getState(axis));
+        servoStepsToUpdate[axis] = servoStepsPerUpdate[axis];
+      }
+      if (done) {
+        if (mode[axis] == MODE_HOME) homeComplete(axis);
+        else moveComplete(axis);
+        return;
+      }
+    }
+  }
+
+  /**
+   * One servo step of the profile generator. The acceleration needed to reach the destination is limited by
+   * maxAcceleration and, if set, its rate of change by maxJerk. Velocity is limited by maxVelocity. Velocity and
+   * position are then integrated over the servo period.
+   *
+   * @return true when the axis has settled at the destination
+   */
+  boolean servoStep(int axis) {
+    AxisConfig ac = axisConfigs[axis];
+    double dt = servoPeriod[axis];
+    double p = position[axis];
+    double v = velocity[axis];
+    double a = acceleration[axis];
+    double d = destination[axis] - p;
+
+    if (Math.abs(d) < 0.5 && Math.abs(v) <= ac.maxAcceleration * dt) return settle(axis);
+
+    double dir = Math.signum(d);
+    double targetAcc;
+    if (v * dir < 0) targetAcc = dir * ac.maxAcceleration; // Moving away from the destination so turn around
+    else if (Math.abs(d) <= stoppingDistance(ac, v)) targetAcc = -Math.signum(v) * ac.maxAcceleration; // Brake
+    else if (Math.abs(v) < ac.maxVelocity) targetAcc = dir * ac.maxAcceleration;
+    else targetAcc = 0.0; // Cruise
+
+    if (ac.maxJerk > 0.0) {
+      double maxDelta = ac.maxJerk * dt;
+      a += Math.max(-maxDelta, Math.min(maxDelta, targetAcc - a));
+    } else a = targetAcc;
+
+    v = Math.max(-ac.maxVelocity, Math.min(ac.maxVelocity, v + a * dt));
+    p += v * dt;
+
+    // Passing the destination slowly enough to stop within one encoder unit ends the move
+    if ((destination[axis] - p) * dir <= 0 && v * v <= 2.0 * ac.maxAcceleration) return settle(axis);
+
+    position[axis] = p;
+    velocity[axis] = v;
+    acceleration[axis] = a;
+    return false;
+  }
+
+  private boolean settle(int axis) {
+    position[axis] = destination[axis];
+    velocity[axis] = 0.0;
+    acceleration[axis] = 0.0;
+    return true;
+  }
+
+  // The distance needed to stop from the given velocity, including the time to ramp up the deceleration
+  static double stoppingDistance(AxisConfig ac, double v) {
+    double jerkTerm = ac.maxJerk > 0.0 ? Math.abs(v) * ac.maxAcceleration / (2.0 * ac.maxJerk) : 0.0;
+    return v * v / (2.0 * ac.maxAcceleration) + jerkTerm;
+  }
+
+  // The closest position a profiled axis can stop at from its current velocity
+  int stoppingPosition(int axis) {
+    double v = velocity[axis];
+    int stop = (int) Math.round(position[axis] + Math.signum(v) * stoppingDistance(axisConfigs[axis], v));
+    return SingleAxisSimulator.limitMove(axisConfigs[axis], stop);
+  }
+
+  // One step of a home or move, equivalent to one MotionWorker Tick
+  void step(int axis) {
+    current[axis] = nextPosition[axis];
+    // Set limits - need to do this after every step of a move
+    if (mode[axis] == MODE_MOVE) checkLimits(axis);
+    // Send Update to caller
+    update(axis, getState(axis));
+
+    // If we are on the last step of a move, then distance equals 0
+    boolean done = MotionWorker.calcDistance(current[axis], destination[axis]) == 0;
+    if (done || cancelFlag[axis]) {
+      if (mode[axis] == MODE_HOME) homeComplete(axis);
+      else moveComplete(axis);
+    } else {
+      // To fix rounding errors, if last step set current to destination
+      boolean last = MotionWorker.lastStep(current[axis], destination[axis], stepSize[axis]);
+      nextPosition[axis] = last ? destination[axis] : current[axis] + stepSize[axis];
+      ticksToNextStep[axis] = stepTicks[axis];
+      if (diagFlag[axis])
+        log.info("axis: " + axis + ", current: " + current[axis] + ", stepSize: " + stepSize[axis] + ", nextPos: " + nextPosition[axis]);
+    }
+  }
+
+  void datumComplete(int axis) {
+    setMode(axis, MODE_IDLE);
+    // Power on causes motion of one unit!
+    current[axis]++;
+    checkLimits(axis);
+    // Stats
+    snapshots[axis].countSuccess();
+    // Send Update
+    update(axis, getState(axis));
+  }
+
+  void homeComplete(int axis) {
+    setMode(axis, MODE_IDLE);
+    // Set limits
+    checkLimits(axis);
+    if (inHome[axis]) snapshots[axis].countHome();
+    // Stats
+    snapshots[axis].countSuccess();
+    // Send Update
+    update(axis, getState(axis));
+  }
+
+  void moveComplete(int axis) {
+    log.debug("Move Complete");
+    setMode(axis, MODE_IDLE);
+    // Set limits
+    checkLimits(axis);
+    // Do the count of limits
+    if (inHighLimit[axis] || inLowLimit[axis]) snapshots[axis].countLimit();
+    // Stats
+    snapshots[axis].countSuccess();
+    // Send Update
+    update(axis, getState(axis));
+  }
+
+  void startMotion(int axis, byte newMode, int dest, int stepDelayMS, boolean diag) {
+    if (profiled[axis]) {
+      startProfile(axis, newMode, dest, diag);
+      return;
+    }
+    int numSteps = MotionWorker.calcNumSteps(current[axis], dest);
+    destination[axis] = dest;
+    stepSize[axis] = MotionWorker.calcStepSize(current[axis], dest, numSteps);
+    nextPosition[axis] = current[axis] + stepSize[axis];
+    stepTicks[axis] = ticksFor(stepDelayMS);
+    ticksToNextStep[axis] = stepTicks[axis];
+    cancelFlag[axis] = false;
+    diagFlag[axis] = diag;
+    setMode(axis, newMode);
+    if (diag)
+      log.info("Starting: start=" + current[axis] + ", dest=" + dest + ", totalSteps: " + numSteps);
+  }
+
+  void startProfile(int axis, byte newMode, int dest, boolean diag) {
+    destination[axis] = dest;
+    position[axis] = current[axis];
+    velocity[axis] = 0.0;
+    acceleration[axis] = 0.0;
+    servoStepsToUpdate[axis] = servoStepsPerUpdate[axis];
+    diagFlag[axis] = diag;
+    setMode(axis, newMode);
+    if (diag)
+      log.info("Starting profile: start=" + current[axis] + ", dest=" + dest + ", servoPeriod: " + servoPeriod[axis]);
+  }
+
+  void updateDestination(int axis, int dest) {
+    destination[axis] = dest;
+    if (profiled[axis]) return;
+    int numSteps = MotionWorker.calcNumSteps(current[axis], dest);
+    stepSize[axis] = MotionWorker.calcStepSize(current[axis], dest, numSteps);
+    log.debug("NEW dest: " + dest + ", numSteps: " + numSteps + ", stepSize: " + stepSize[axis]);
+  }
+
+  // Keeps activeCount up to date and runs the ticker only while some axis is active
+  void setMode(int axis, byte newMode) {
+    if (mode[axis] == MODE_IDLE && newMode != MODE_IDLE) {
+      if (activeCount++ == 0) startTicker();
+    } else if (mode[axis] != MODE_IDLE && newMode == MODE_IDLE) {
+      if (--activeCount == 0) stopTicker();
+    }
+    mode[axis] = newMode;
+  }
+
+  private void startTicker() {
+    Duration period = Duration.ofMillis(tickPeriodMS);
+    ticker = clock.schedule(period, period, self(), EngineTick.instance);
+  }
+
+  private void stopTicker() {
+    if (ticker != null) {
+      ticker.cancel();
+      ticker = null;
+    }
+  }
+
+  int ticksFor(int delayMS) {
+    return Math.max(1, Math.round((float) delayMS / tickPeriodMS));
+  }
+
+  int addAxis(AxisConfig ac, Optional<ActorRef> axisReplyTo) {
+    int axis = axisCount;
+    if (axis == axisConfigs.length) grow(Math.max(4, axis * 2));
+    axisCount++;
+    axisConfigs[axis] = ac;
+    replyTo[axis] = axisReplyTo.orElse(null);
+    mode[axis] = MODE_IDLE;
+    // When created, the current is set to the start current
+    current[axis] = ac.startPosition;
+    checkLimits(axis);
+    // The servo rate is rounded to a whole number of servo steps per engine tick
+    snapshots[axis] = new AxisSnapshot(ac.axisName);
+    publishSnapshot(axis);
+    profiled[axis] = ac.isProfiled();
+    servoStepsPerTick[axis] = Math.max(1, Math.round(ac.servoRateHz * tickPeriodMS / 1000.0f));
+    servoPeriod[axis] = tickPeriodMS / 1000.0 / servoStepsPerTick[axis];
+    double servoRate = 1.0 / servoPeriod[axis];
+    servoStepsPerUpdate[axis] = ac.updateRateHz > 0 ? Math.max(1, (int) Math.round(servoRate / ac.updateRateHz)) : servoStepsPerTick[axis];
+    log.debug("Added axis " + axis + ": " + ac.axisName);
+    return axis;
+  }
+
+  private void grow(int capacity) {
+    axisConfigs = Arrays.copyOf(axisConfigs, capacity);
+    replyTo = Arrays.copyOf(replyTo, capacity);
+    mode = Arrays.copyOf(mode, capacity);
+    current = Arrays.copyOf(current, capacity);
+    destination = Arrays.copyOf(destination, capacity);
+    nextPosition = Arrays.copyOf(nextPosition, capacity);
+    stepSize = Arrays.copyOf(stepSize, capacity);
+    stepTicks = Arrays.copyOf(stepTicks, capacity);
+    ticksToNextStep = Arrays.copyOf(ticksToNextStep, capacity);
+    inLowLimit = Arrays.copyOf(inLowLimit, capacity);
+    inHighLimit = Arrays.copyOf(inHighLimit, capacity);
+    inHome = Arrays.copyOf(inHome, capacity);
+    cancelFlag = Arrays.copyOf(cancelFlag, capacity);
+    diagFlag = Arrays.copyOf(diagFlag, capacity);
+    profiled = Arrays.copyOf(profiled, capacity);
+    position = Arrays.copyOf(position, capacity);
+    velocity = Arrays.copyOf(velocity, capacity);
+    acceleration = Arrays.copyOf(acceleration, capacity);
+    servoPeriod = Arrays.copyOf(servoPeriod, capacity);
+    servoStepsPerTick = Arrays.copyOf(servoStepsPerTick, capacity);
+    servoStepsPerUpdate = Arrays.copyOf(servoStepsPerUpdate, capacity);
+    servoStepsToUpdate = Arrays.copyOf(servoStepsToUpdate, capacity);
+    snapshots = Arrays.copyOf(snapshots, capacity);
+  }
+
+  void checkLimits(int axis) {
+    inHighLimit[axis] = SingleAxisSimulator.isHighLimit(axisConfigs[axis], current[axis]);
+    inLowLimit[axis] = SingleAxisSimulator.isLowLimit(axisConfigs[axis], current[axis]);
+    inHome[axis] = SingleAxisSimulator.isHomed(axisConfigs[axis], current[axis]);
+  }
+
+  AxisUpdate getState(int axis) {
+    AxisState state = mode[axis] == MODE_IDLE ? AxisState.AXIS_IDLE : AxisState.AXIS_MOVING;
+    return new AxisUpdate(axisConfigs[axis].axisName, state, current[axis], inLowLimit[axis], inHighLimit[axis], inHome[axis]);
+  }
+
+  AxisStatistics getStatistics(int axis) {
+    return snapshots[axis].statistics();
+  }
+
+  // Makes the latest state of the axis visible to readers of its snapshot, a moving profiled axis gives its servo position
+  void publishSnapshot(int axis) {
+    boolean servoing = profiled[axis] && (mode[axis] == MODE_MOVE || mode[axis] == MODE_HOME);
+    int pos = servoing ? (int) Math.round(position[axis]) : current[axis];
+    AxisState state = mode[axis] == MODE_IDLE ? AxisState.AXIS_IDLE : AxisState.AXIS_MOVING;
+    snapshots[axis].setState(state, pos, inLowLimit[axis], inHighLimit[axis], inHome[axis]);
+  }
+
+  // Short-cut to forward a message to the axis' replyTo actor, if there is one
+  void update(int axis, Object msg) {
+    if (replyTo[axis] != null) replyTo[axis].tell(msg, self());
+  }
+
+  // --- Static definitions ---
+
+  /**
+   * The default engine tick period in milliseconds
+   */
+  public static final int defaultTickPeriodMS = 5;
+
+  /**
+   * Used to create the actor
+   *
+   * @param tickPeriodMS the period of the engine tick in milliseconds
+   * @return the props to use to create the actor
+   */
+  public static Props props(final int tickPeriodMS) {
+    return props(tickPeriodMS, Optional.empty());
+  }
+
+  /**
+   * Used to create the actor with a given clock
+   *
+   * @param tickPeriodMS the period of the engine tick in milliseconds
+   * @param clock        the clock used for the tick, for instance a VirtualClock for tests
+   * @return the props to use to create the actor
+   */
+  public static Props props(final int tickPeriodMS, final Optional<SimulationClock> clock) {
+    return Props.create(new Creator<MultiAxisSimulationEngine>() {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      public MultiAxisSimulationEngine create() throws Exception {
+        return new MultiAxisSimulationEngine(tickPeriodMS, clock);
+      }
+    });
+  }
+
+  /**
+   * Used to create the actor with the default tick period
+   *
+   * @return the props to use to create the actor
+   */
+  public static Props props() {
+    return props(defaultTickPeriodMS);
+  }
+
+  public interface EngineMessages {
+  }
+
+  /**
+   * Adds an axis to the engine. The sender receives AxisAdded with the new axis index or AxisFailure if the
+   * configuration is not valid.
+   */
+  @SuppressWarnings("OptionalUsedAsFieldOrParameterType")
+  public static class AddAxis implements EngineMessages {
+    public final AxisConfig axisConfig;
+    public final Optional<ActorRef> replyTo;
+
+    /**
+     * @param axisConfig an AxisConfig object that contains a description of the axis
+     * @param replyTo    an actor that will be updated with information while the axis executes
+     */
+    public AddAxis(AxisConfig axisConfig, Optional<ActorRef> replyTo) {
+      this.axisConfig = axisConfig;
+      this.replyTo = replyTo;
+    }
+  }
+
+  public static class AxisAdded implements EngineMessages {
+    public final int axis;
+
+    public AxisAdded(int axis) {
+      this.axis = axis;
+    }
+  }
+
+  /**
+   * Sends one of the SingleAxisSimulator requests to the given axis
+   */
+  public static class AxisCommand implements EngineMessages {
+    public final int axis;
+    public final AxisRequest request;
+
+    public AxisCommand(int axis, AxisRequest request) {
+      this.axis = axis;
+      this.request = request;
+    }
+  }
+
+  /**
+   * Directly returns the AxisUpdate of the given axis to the sender
+   */
+  public static class InitialAxisState implements EngineMessages {
+    public final int axis;
+
+    public InitialAxisState(int axis) {
+      this.axis = axis;
+    }
+  }
+
+  /**
+   * Directly returns the AxisSnapshot of the given axis to the sender, or an AxisFailure if there is no such axis
+   */
+  public static class GetAxisSnapshot implements EngineMessages {
+    public final int axis;
+
+    public GetAxisSnapshot(int axis) {
+      this.axis = axis;
+    }
+  }
+
+  // Internal
+  static class EngineTick implements EngineMessages {
+    static final EngineTick instance = new EngineTick();
+
+    private EngineTick() {
+    }
+  }
+}
@@ -6,24 +6,29 @@ import akka.event.Logging;
 import akka.event.LoggingAdapter;
 import akka.japi.Creator;
 import akka.japi.pf.ReceiveBuilder;
-import csw.services.ts.AbstractTimeServiceScheduler;
-import csw.services.ts.TimeService;
+import csw.examples.vsliceJava.shared.RealTimeClock;
+import csw.examples.vsliceJava.shared.SimulationClock;
 import scala.PartialFunction;
 import scala.runtime.BoxedUnit;
 
+import java.time.Duration;
 import java.util.Optional;
 
 import static csw.examples.vsliceJava.hcd.SingleAxisSimulator.AxisState.*;
 
 /**
  * This class provides a simulator of a single axis device for the purpose of testing TMT HCDs and Assemblies.
+ * <p>
+ * All timing comes from a SimulationClock, which is real time by default. With a VirtualClock, moves take
+ * no wall-clock time at all.
  */
 @SuppressWarnings({"OptionalUsedAsFieldOrParameterType", "CodeBlock2Expr", "WeakerAccess"})
-public class SingleAxisSimulator extends AbstractTimeServiceScheduler {
+public class SingleAxisSimulator extends AbstractActor {
   LoggingAdapter log = Logging.getLogger(getContext().system(), this);
 
   final AxisConfig axisConfig;
   private final Optional<ActorRef> replyTo;
+  private final SimulationClock clock;
 
   // The following are state information for the axis. These values are updated while the axis runs
   // This is safe because there is no way to change the variables other than within this actor
@@ -55,10 +60,12 @@ public class SingleAxisSimulator extends AbstractTimeServiceScheduler {
    *
    * @param axisConfig an AxisConfig object that contains a description of the axis
    * @param replyTo    an actor that will be updated with information while the axis executes
+   * @param clock      the clock used for all timing, if empty real time is used
    */
-  private SingleAxisSimulator(AxisConfig axisConfig, Optional<ActorRef> replyTo) {
+  private SingleAxisSimulator(AxisConfig axisConfig, Optional<ActorRef> replyTo, Optional<SimulationClock> clock) {
     this.axisConfig = axisConfig;
     this.replyTo = replyTo;
+    this.clock = clock.orElseGet(() -> new RealTimeClock(context().system()));
     current = axisConfig.startPosition;
 
     // Check that the home position is not in a limit area - with this check it is not necessary to check for limits after homing
@@ -85,7 +92,7 @@ public class SingleAxisSimulator extends AbstractTimeServiceScheduler {
         axisState = AXIS_MOVING;
         update(replyTo, AxisStarted.instance);
         // Takes some time and increments the current
-        scheduleOnce(TimeService.localTimeNow().plusSeconds(1), self(), DatumComplete.instance);
+        clock.scheduleOnce(Duration.ofSeconds(1), self(), DatumComplete.instance);
         // Stats
         initCount++;
         moveCount++;
@@ -117,7 +124,7 @@ public class SingleAxisSimulator extends AbstractTimeServiceScheduler {
         axisState = AXIS_MOVING;
         log.debug("AxisHome: " + axisState);
         update(replyTo, AxisStarted.instance);
-        Props props = MotionWorker.props(current, axisConfig.home, 100, self(), false);
+        Props props = MotionWorker.props(current, axisConfig.home, 100, self(), false, Optional.of(clock));
         ActorRef mw = context().actorOf(props, "homeWorker");
         context().become(homeReceive(mw));
         mw.tell(MotionWorker.Start.instance, self());
@@ -141,7 +148,7 @@ public class SingleAxisSimulator extends AbstractTimeServiceScheduler {
         update(replyTo, AxisStarted.instance);
         int clampedTargetPosition = SingleAxisSimulator.limitMove(axisConfig, e.position);
         // The 200 ms here is the time for one step, so a 10 step move takes 2 seconds
-        Props props = MotionWorker.props(current, clampedTargetPosition, axisConfig.stepDelayMS, self(), e.diagFlag);
+        Props props = MotionWorker.props(current, clampedTargetPosition, axisConfig.stepDelayMS, self(), e.diagFlag, Optional.of(clock));
         ActorRef mw = context().actorOf(props, "moveWorker-" + System.currentTimeMillis());
         context().become(moveReceive(mw));
         mw.tell(MotionWorker.Start.instance, self());
@@ -239,12 +246,24 @@ public class SingleAxisSimulator extends AbstractTimeServiceScheduler {
    * @return the props to use to create the actor
    */
   public static Props props(final AxisConfig axisConfig, final Optional<ActorRef> replyTo) {
+    return props(axisConfig, replyTo, Optional.empty());
+  }
+
+  /**
+   * Used to create the actor with a given clock
+   *
+   * @param axisConfig an AxisConfig object that contains a description of the axis
+   * @param replyTo    an actor that will be updated with information while the axis executes
+   * @param clock      the clock used for all timing, for instance a VirtualClock for tests
+   * @return the props to use to create the actor
+   */
+  public static Props props(final AxisConfig axisConfig, final Optional<ActorRef> replyTo, final Optional<SimulationClock> clock) {
     return Props.create(new Creator<SingleAxisSimulator>() {
       private static final long serialVersionUID = 1L;
 
       @Override
       public SingleAxisSimulator create() throws Exception {
-        return new SingleAxisSimulator(axisConfig, replyTo);
+        return new SingleAxisSimulator(axisConfig, replyTo, clock);
       }
     });
   }
@@ -455,8 +474,8 @@ public class SingleAxisSimulator extends AbstractTimeServiceScheduler {
 
 // --- MotionWorker actor ---
 
-@SuppressWarnings("WeakerAccess")
-class MotionWorker extends AbstractTimeServiceScheduler {
+@SuppressWarnings({"WeakerAccess", "OptionalUsedAsFieldOrParameterType"})
+class MotionWorker extends AbstractActor {
   LoggingAdapter log = Logging.getLogger(getContext().system(), this);
 
   int start;
@@ -473,8 +492,10 @@ class MotionWorker extends AbstractTimeServiceScheduler {
   boolean cancelFlag = false;
   long delayInNanoSeconds;
   int current;
+  private final SimulationClock clock;
 
-  private MotionWorker(int start, int destinationIn, int delayInMS, ActorRef replyTo, boolean diagFlag) {
+  private MotionWorker(int start, int destinationIn, int delayInMS, ActorRef replyTo, boolean diagFlag, Optional<SimulationClock> clock) {
+    this.clock = clock.orElseGet(() -> new RealTimeClock(context().system()));
     this.start = start;
     current = start;
     this.destinationIn = destinationIn;
@@ -494,7 +515,7 @@ class MotionWorker extends AbstractTimeServiceScheduler {
       .match(Start.class, e -> {
         if (diagFlag) diag("Starting", start, numSteps);
         replyTo.tell(e, self());
-        scheduleOnce(TimeService.localTimeNow().plusNanos(delayInNanoSeconds), self(), new Tick(start + stepSize));
+        clock.scheduleOnce(Duration.ofNanos(delayInNanoSeconds), self(), new Tick(start + stepSize));
       })
       .match(Tick.class, e -> {
         current = e.current;
@@ -512,14 +533,14 @@ class MotionWorker extends AbstractTimeServiceScheduler {
         if (diagFlag)
           log.info("currentIn: " + current + ", distance: " + distance + ", stepSize: " + stepSize + ", done: " + done + ", nextPos: " + nextPos);
         if (!done && !cancelFlag)
-          scheduleOnce(TimeService.localTimeNow().plusNanos(delayInNanoSeconds), self(), new Tick(nextPos));
+          clock.scheduleOnce(Duration.ofNanos(delayInNanoSeconds), self(), new Tick(nextPos));
         else self().tell(new End(current), self());
       })
       .match(MoveUpdate.class, e -> {
         destination = e.destination;
         numSteps = calcNumSteps(current, destination);
         stepSize = calcStepSize(current, destination, numSteps);
-        log.info("NEW dest: " + destination + ", numSteps: " + numSteps + ", stepSize: " + stepSize);
+        log.debug("NEW dest: " + destination + ", numSteps: " + numSteps + ", stepSize: " + stepSize);
       })
       .match(Cancel.class, e -> {
         if (diagFlag) log.debug("Worker received cancel");
@@ -546,12 +567,20 @@ class MotionWorker extends AbstractTimeServiceScheduler {
    * Used to create the actor
    */
   public static Props props(final int start, final int destinationIn, final int delayInMS, final ActorRef replyTo, final boolean diagFlag) {
+    return props(start, destinationIn, delayInMS, replyTo, diagFlag, Optional.empty());
+  }
+
+  /**
+   * Used to create the actor with a given clock
+   */
+  public static Props props(final int start, final int destinationIn, final int delayInMS, final ActorRef replyTo, final boolean diagFlag,
+                            final Optional<SimulationClock> clock) {
     return Props.create(new Creator<MotionWorker>() {
       private static final long serialVersionUID = 1L;
 
       @Override
       public MotionWorker create() throws Exception {
-        return new MotionWorker(start, destinationIn, delayInMS, replyTo, diagFlag);
+        return new MotionWorker(start, destinationIn, delayInMS, replyTo, diagFlag, clock);
       }
     });
   }
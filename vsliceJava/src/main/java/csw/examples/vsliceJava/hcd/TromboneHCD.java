@@ -1,23 +1,29 @@
 package csw.examples.vsliceJava.hcd;
 
 import akka.actor.ActorRef;
+import akka.actor.Cancellable;
 import akka.actor.Props;
+import akka.actor.Terminated;
 import akka.event.Logging;
 import akka.event.LoggingAdapter;
 import akka.japi.Creator;
 import akka.japi.pf.ReceiveBuilder;
-import akka.pattern.Patterns;
 import akka.util.Timeout;
+import csw.examples.vsliceJava.shared.ConfigLoader;
+import csw.examples.vsliceJava.shared.FlightRecorder;
+import csw.examples.vsliceJava.shared.LatencyHistogram;
+import csw.examples.vsliceJava.shared.RealTimeClock;
+import csw.examples.vsliceJava.shared.SimulationClock;
+import csw.examples.vsliceJava.shared.StartupStash;
+import csw.examples.vsliceJava.shared.StartupTimer;
 import csw.services.loc.ComponentType;
 import csw.services.pkg.Component;
 import csw.services.pkg.Supervisor;
 import csw.util.config.*;
 import javacsw.services.ccs.JHcdController;
-import javacsw.services.cs.akka.JConfigServiceClient;
 import javacsw.services.loc.JComponentType;
 import javacsw.services.pkg.*;
 import scala.PartialFunction;
-import scala.concurrent.Await;
 import scala.concurrent.duration.Duration;
 import scala.runtime.BoxedUnit;
 
@@ -34,19 +40,25 @@ import static csw.examples.vsliceJava.hcd.SingleAxisSimulator.AxisState;
 import static csw.examples.vsliceJava.hcd.SingleAxisSimulator.AxisStarted;
 import static csw.examples.vsliceJava.hcd.SingleAxisSimulator.AxisStatistics;
 import static csw.examples.vsliceJava.hcd.SingleAxisSimulator.AxisUpdate;
-import static csw.examples.vsliceJava.hcd.SingleAxisSimulator.InitialState;
 import static csw.examples.vsliceJava.hcd.SingleAxisSimulator.GetStatistics;
 import static csw.examples.vsliceJava.hcd.SingleAxisSimulator.PublishAxisUpdate;
+import static csw.examples.vsliceJava.hcd.MultiAxisSimulationEngine.AddAxis;
+import static csw.examples.vsliceJava.hcd.MultiAxisSimulationEngine.AxisAdded;
+import static csw.examples.vsliceJava.hcd.MultiAxisSimulationEngine.AxisCommand;
+import static csw.examples.vsliceJava.hcd.MultiAxisSimulationEngine.GetAxisSnapshot;
+import static csw.examples.vsliceJava.hcd.MultiAxisSimulationEngine.InitialAxisState;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
 import java.util.Optional;
-import java.util.concurrent.CompletableFuture;
+import java.util.Set;
 
 /**
  * TromboneHCD -- This is the Top Level Actor for the TromboneHCD
- * It's main responsibilties are to interact with the trombone HCD axis (a simulator)
+ * It's main responsibilties are to interact with the trombone HCD axis (simulated by a MultiAxisSimulationEngine)
  * It also:
- * - initializes itself from Configiuration Service
+ * - initializes itself from Configiuration Service, without blocking, while the simulation engine starts
  * - Works with the Supervisor to implement the lifecycle
  * - Handles incoming commands
  * - Generates CurrentState for the Assembly
@@ -58,9 +70,12 @@ public class TromboneHCD extends JHcdController {
   // Initialize axis from ConfigService
   AxisConfig axisConfig;
 
-  // Create an axis for simulating trombone motion
+  // The simulation engine that simulates trombone motion
   ActorRef tromboneAxis;
 
+  // The index of the trombone axis in the simulation engine
+  int axisIndex;
+
   // Initialize values -- This causes an update to the listener
   private final Timeout timeout = new Timeout(Duration.create(2, "seconds"));
 
@@ -69,54 +84,172 @@ public class TromboneHCD extends JHcdController {
   AxisUpdate current;
   AxisStatistics stats;
 
+  // The lock-free statistics and state of the axis, written by the simulation engine
+  AxisSnapshot axisSnapshot;
+
+  // Move setpoints are coalesced: at most one Move is sent to the engine per engine tick, with the newest target
+  private boolean moveWindowOpen = false;
+  private boolean hasPendingMove = false;
+  private int pendingMoveTarget;
+  // Number of move setpoints that were replaced by a newer one before being sent to the axis
+  long supersededMoves = 0;
+
+  // Time from receiving a move setpoint to the first axis update at that position, on the simulation clock.
+  // A setpoint beyond the limits is timed to the limit the axis stops at. One replaced before the axis reaches it is
+  // not recorded.
+  private final LatencyHistogram moveLatency = new LatencyHistogram();
+  private boolean timingMove = false;
+  private int timedMoveTarget;
+  private long timedMoveStartNanos;
+
+  // Pushes the axis statistics to subscribers when they change, if statsPublishPeriodMS is set
+  private Cancellable statsTimer;
+  private long lastStatsVersion = -1;
+  private long lastSupersededMoves = -1;
+
   private final ActorRef supervisor;
 
+  // The clock used by the simulation engine and to time axis state publishing
+  private final SimulationClock clock;
 
-  // Actor constructor: use the props() method to create the actor.
-  private TromboneHCD(final Component.HcdInfo info, ActorRef supervisor) throws Exception {
+  // Limits the rate of axis state publishing, keeping the latest value and all state changes
+  private AxisUpdateConflater conflater;
+  private boolean flushScheduled = false;
 
-    this.supervisor = supervisor;
+  // Builds the axis state CurrentState, reusing unchanged items
+  private final AxisStateEncoder axisStateEncoder = new AxisStateEncoder(tromboneAxisName);
 
-    // Note: The scala version initializes the following variables in a non-blocking way using a for comprehension.
-    // It should be possible to do something similar in Java, but it would be more complicated.
+  // Subscribers that receive only the changed axis state items
+  private final Set<ActorRef> deltaSubscribers = new HashSet<>();
 
-    try {
-      // Initialize axis from ConfigService
-      axisConfig = getAxisConfig().get();
+  // Subscribers that receive every AxisUpdate of the engine, before conflation
+  private final Set<ActorRef> rawSubscribers = new HashSet<>();
 
-      // Create an axis for simulating trombone motion
-      tromboneAxis = setupAxis(axisConfig);
+  // Records every AxisUpdate of the engine, if the axis-config has a flightRecorderFile
+  private FlightRecorder flightRecorder = FlightRecorder.disabled();
 
-      // The current axis position from the hardware axis, initialize to default value
-      current = (AxisUpdate) Await.result(Patterns.ask(tromboneAxis, InitialState.instance, timeout), timeout.duration());
-      stats = (AxisStatistics) Await.result(Patterns.ask(tromboneAxis, GetStatistics.instance, timeout), timeout.duration());
+  // Times each phase of startup
+  private final StartupTimer startupTimer = new StartupTimer(componentName);
 
-      // Required setup for Lifecycle in order to get messages
-      supervisor.tell(Initialized, self());
-    } catch (Exception ex) {
-      supervisor.tell(new Supervisor.InitializeFailure(ex.getMessage()), self());
-    }
+  // Messages received before Running, handled in order when running
+  private final StartupStash stash = new StartupStash(context());
 
-    // --
+  // Actor constructor: use the props() method to create the actor.
+  private TromboneHCD(final Component.HcdInfo info, ActorRef supervisor, Optional<SimulationClock> clock) throws Exception {
+
+    this.supervisor = supervisor;
+    this.clock = clock.orElseGet(() -> new RealTimeClock(context().system()));
+
+    // Nothing here blocks: the simulation engine starts while the axis config is fetched, and the rest of
+    // the initialization is done in initializingReceive as the replies arrive.
+
+    // Create the engine for simulating trombone motion
+    tromboneAxis = setupEngine();
+
+    // Initialize axis from ConfigService, or the resource file, and send the result to self
+    ActorRef self = self();
+    ConfigLoader.getConfig(tromboneConfigFile, resource, context().system(), timeout, startupTimer)
+      .thenApply(AxisConfig::new)
+      .whenComplete((ac, ex) -> self.tell(ex == null ? new AxisConfigLoaded(ac) : new InitFailed(ex), self));
 
     // Receive actor messages
     receive(initializingReceive());
   }
 
   private PartialFunction<Object, BoxedUnit> initializingReceive() {
-    return publisherReceive().orElse(ReceiveBuilder
+    return deltaReceive().orElse(publisherReceive()).orElse(ReceiveBuilder
+      .match(AxisConfigLoaded.class, e -> {
+        axisConfig = e.axisConfig;
+        conflater = new AxisUpdateConflater(axisConfig.maxPublishRateHz);
+        if (!axisConfig.flightRecorderFile.isEmpty())
+          flightRecorder = openFlightRecorder(axisConfig.flightRecorderFile, axisConfig.flightRecorderSizeMB);
+        // Add the trombone axis to the simulation engine, the reply is AxisAdded or AxisFailure
+        tromboneAxis.tell(new AddAxis(axisConfig, Optional.of(self())), self());
+      })
+      .match(AxisAdded.class, e -> {
+        axisIndex = e.axis;
+        // The current axis position and statistics from the hardware axis
+        tromboneAxis.tell(new InitialAxisState(axisIndex), self());
+        tromboneAxis.tell(axisCommand(GetStatistics.instance), self());
+        tromboneAxis.tell(new GetAxisSnapshot(axisIndex), self());
+      })
+      .match(AxisSnapshot.class, e -> {
+        axisSnapshot = e;
+        checkInitialized();
+      })
+      .match(AxisUpdate.class, e -> current == null, e -> {
+        current = e;
+        checkInitialized();
+      })
+      .match(AxisStatistics.class, e -> stats == null, e -> {
+        stats = e;
+        checkInitialized();
+      })
+      .match(SingleAxisSimulator.AxisFailure.class, e -> {
+        supervisor.tell(new Supervisor.InitializeFailure(e.reason), self());
+      })
+      .match(InitFailed.class, e -> {
+        log.error("TromboneHCD failed to initialize: " + e.reason);
+        supervisor.tell(new Supervisor.InitializeFailure(e.reason), self());
+      })
       .matchEquals(Running, e -> {
         // When Running is received, transition to running Receive
         log.debug("received Running");
-        context().become(runningReceive());
+        startStatsTimer();
+        stash.unstashAll(runningReceive());
       })
-      .matchAny(x -> log.warning("Unexpected message in TromboneHCD (Not running yet): " + x))
+      .matchAny(stash::stash)
       .build());
   }
 
+  // Sends Initialized to the supervisor once the axis state and statistics are known
+  private void checkInitialized() {
+    if (current != null && stats != null && axisSnapshot != null) {
+      startupTimer.mark(StartupTimer.axisReady);
+      // Required setup for Lifecycle in order to get messages
+      supervisor.tell(Initialized, self());
+      startupTimer.mark(StartupTimer.initialized);
+      log.info(startupTimer.toString());
+    }
+  }
+
+  private void markFirstCurrentState() {
+    if (!startupTimer.isMarked(StartupTimer.firstCurrentState)) {
+      startupTimer.mark(StartupTimer.firstCurrentState);
+      log.info(startupTimer.toString());
+    }
+  }
+
+
+  // Handles subscribers of axis state deltas and raw axis updates in any state
+  private PartialFunction<Object, BoxedUnit> deltaReceive() {
+    return ReceiveBuilder
+      .matchEquals(AxisStateDelta.SubscribeDelta, e -> {
+        if (deltaSubscribers.add(sender())) {
+          context().watch(sender());
+          // A new delta subscriber starts from the full state
+          CurrentState full = axisStateEncoder.current();
+          if (full != null) sender().tell(full, self());
+        }
+      })
+      .matchEquals(AxisStateDelta.UnsubscribeDelta, e -> {
+        if (deltaSubscribers.remove(sender()) && !rawSubscribers.contains(sender())) context().unwatch(sender());
+      })
+      .matchEquals(RawAxisUpdates.SubscribeRaw, e -> {
+        if (rawSubscribers.add(sender())) context().watch(sender());
+      })
+      .matchEquals(RawAxisUpdates.UnsubscribeRaw, e -> {
+        if (rawSubscribers.remove(sender()) && !deltaSubscribers.contains(sender())) context().unwatch(sender());
+      })
+      .match(Terminated.class, t -> deltaSubscribers.contains(t.actor()) || rawSubscribers.contains(t.actor()), t -> {
+        deltaSubscribers.remove(t.actor());
+        rawSubscribers.remove(t.actor());
+      })
+      .build();
+  }
 
   private PartialFunction<Object, BoxedUnit> runningReceive() {
-    return controllerReceive().orElse(ReceiveBuilder
+    return deltaReceive().orElse(controllerReceive()).orElse(ReceiveBuilder
       .matchEquals(Running, e -> {
         log.info("Received Running");
       })
@@ -135,13 +268,28 @@ public class TromboneHCD extends JHcdController {
         log.error("Received failed state: " + e.state() + " for reason: " + e.reason());
       })
       .matchEquals(TromboneEngineering.GetAxisStats, e -> {
-        tromboneAxis.tell(GetStatistics.instance, self());
+        // Read directly from the snapshot, no round trip to the simulation engine
+        publishStats(axisSnapshot.statistics());
       })
       .matchEquals(TromboneEngineering.GetAxisUpdate, e -> {
-        tromboneAxis.tell(PublishAxisUpdate.instance, self());
+        tromboneAxis.tell(axisCommand(PublishAxisUpdate.instance), self());
       })
       .matchEquals(TromboneEngineering.GetAxisUpdateNow, e -> {
-        sender().tell(current, self());
+        sender().tell(axisSnapshot.latest(), self());
+      })
+      .matchEquals(TromboneEngineering.GetAxisSnapshot, e -> {
+        sender().tell(axisSnapshot, self());
+      })
+      .match(PublishStatsIfChanged.class, e -> {
+        // The superseded moves are counted here, not by the engine, so they do not change the stats version
+        if (axisSnapshot.statsVersion() != lastStatsVersion || supersededMoves != lastSupersededMoves)
+          publishStats(axisSnapshot.statistics());
+      })
+      .matchEquals(TromboneEngineering.GetStartupTimes, e -> {
+        sender().tell(startupTimer.phases(), self());
+      })
+      .matchEquals(TromboneEngineering.GetMoveLatency, e -> {
+        sender().tell(moveLatency.summary(), self());
       })
       .match(AxisStarted.class, e -> {
         // println("Axis Started")
@@ -162,30 +310,26 @@ public class TromboneHCD extends JHcdController {
         //log.info(s"Axis Update: $au")
         // Update actor state
         current = e;
-        CurrentState tromboneAxisState = jadd(defaultAxisState,
-          jset(positionKey, e.current).withUnits(encoder),
-          jset(stateKey, Choice(e.state.toString())),
-          jset(inLowLimitKey, e.inLowLimit),
-          jset(inHighLimitKey, e.inHighLimit),
-          jset(inHomeKey, e.inHomed)
-        );
-        notifySubscribers(tromboneAxisState);
+        if (timingMove && e.current == timedMoveTarget) {
+          moveLatency.recordNanos(clock.nanoTime() - timedMoveStartNanos);
+          timingMove = false;
+        }
+        flightRecorder.recordAxisUpdate(e.current, e.state, e.inLowLimit, e.inHighLimit, e.inHomed);
+        if (!rawSubscribers.isEmpty()) rawSubscribers.forEach(subscriber -> subscriber.tell(e, self()));
+        publishAxisUpdate(conflater.offer(e, clock.nanoTime()));
       })
-      .match(AxisStatistics.class, e -> {
-        log.debug("AxisStatus: " + e);
-        // Update actor statistics
-        stats = e;
-        CurrentState tromboneStats = jadd(defaultStatsState,
-          jset(datumCountKey, e.initCount),
-          jset(moveCountKey, e.moveCount),
-          jset(limitCountKey, e.limitCount),
-          jset(homeCountKey, e.homeCount),
-          jset(successCountKey, e.successCount),
-          jset(failureCountKey, e.failureCount),
-          jset(cancelCountKey, e.cancelCount)
-        );
-        notifySubscribers(tromboneStats);
+      .match(FlushMoves.class, e -> {
+        if (hasPendingMove) {
+          // Keep the window open for another tick with the newest target
+          sendMove(pendingMoveTarget);
+          scheduleMoveFlush();
+        } else moveWindowOpen = false;
       })
+      .match(PublishConflatedUpdate.class, e -> {
+        flushScheduled = false;
+        publishAxisUpdate(conflater.flush(clock.nanoTime()));
+      })
+      .match(AxisStatistics.class, this::publishStats)
       .matchAny(x -> log.warning("Unexpected message in TromboneHCD:unhandledPF: " + x))
       .build());
   }
@@ -201,28 +345,117 @@ public class TromboneHCD extends JHcdController {
 
     ConfigKey configKey = sc.configKey();
     if (configKey.equals(axisMoveCK)) {
-      tromboneAxis.tell(new SingleAxisSimulator.Move(jvalue(jitem(sc, positionKey)), true), self());
-    } else if (configKey.equals(axisDatumCK)) {
+      int target = jvalue(jitem(sc, positionKey));
+      timingMove = true;
+      // The axis moves to the target clamped to its limits, so that is the position to wait for
+      timedMoveTarget = SingleAxisSimulator.limitMove(axisConfig, target);
+      timedMoveStartNanos = clock.nanoTime();
+      if (!moveWindowOpen) {
+        // The first move in a tick goes straight to the axis, later ones in the same tick are coalesced
+        sendMove(target);
+        moveWindowOpen = true;
+        scheduleMoveFlush();
+      } else {
+        if (hasPendingMove) {
+          supersededMoves++;
+          log.debug("Superseded move setpoint: " + pendingMoveTarget + ", total superseded: " + supersededMoves);
+        }
+        pendingMoveTarget = target;
+        hasPendingMove = true;
+      }
+      return;
+    }
+    // Any other command must not overtake a move that is waiting to be sent
+    if (hasPendingMove) sendMove(pendingMoveTarget);
+
+    if (configKey.equals(axisDatumCK)) {
       log.info("Received Datum");
-      tromboneAxis.tell(SingleAxisSimulator.Datum.instance, self());
+      tromboneAxis.tell(axisCommand(SingleAxisSimulator.Datum.instance), self());
     } else if (configKey.equals(axisHomeCK)) {
-      tromboneAxis.tell(SingleAxisSimulator.Home.instance, self());
+      tromboneAxis.tell(axisCommand(SingleAxisSimulator.Home.instance), self());
     } else if (configKey.equals(axisCancelCK)) {
-      tromboneAxis.tell(SingleAxisSimulator.CancelMove.instance, self());
+      tromboneAxis.tell(axisCommand(SingleAxisSimulator.CancelMove.instance), self());
+    }
+  }
+
+  private void sendMove(int target) {
+    hasPendingMove = false;
+    tromboneAxis.tell(axisCommand(new SingleAxisSimulator.Move(target, true)), self());
+  }
+
+  // Moves received before the next engine tick are coalesced into one
+  private void scheduleMoveFlush() {
+    clock.scheduleOnce(java.time.Duration.ofMillis(MultiAxisSimulationEngine.defaultTickPeriodMS), self(), FlushMoves.instance);
+  }
+
+  // Updates the actor statistics and publishes them to subscribers
+  private void publishStats(AxisStatistics e) {
+    log.debug("AxisStatus: " + e);
+    // Update actor statistics
+    stats = e;
+    lastStatsVersion = axisSnapshot.statsVersion();
+    lastSupersededMoves = supersededMoves;
+    markFirstCurrentState();
+    CurrentState tromboneStats = jadd(defaultStatsState,
+      jset(datumCountKey, e.initCount),
+      jset(moveCountKey, e.moveCount),
+      jset(limitCountKey, e.limitCount),
+      jset(homeCountKey, e.homeCount),
+      jset(successCountKey, e.successCount),
+      jset(failureCountKey, e.failureCount),
+      jset(cancelCountKey, e.cancelCount),
+      jset(supersededCountKey, (int) supersededMoves)
+    );
+    notifySubscribers(tromboneStats);
+  }
+
+  private void startStatsTimer() {
+    if (axisConfig.statsPublishPeriodMS > 0 && statsTimer == null) {
+      java.time.Duration period = java.time.Duration.ofMillis(axisConfig.statsPublishPeriodMS);
+      statsTimer = clock.schedule(period, period, self(), PublishStatsIfChanged.instance);
     }
   }
 
-  private ActorRef setupAxis(AxisConfig ac) {
-    return context().actorOf(SingleAxisSimulator.props(ac, Optional.of(self())), "Test1");
+  private FlightRecorder openFlightRecorder(String fileName, int sizeMB) {
+    try {
+      log.info("Flight recorder writing to " + fileName);
+      return new FlightRecorder(new File(fileName), sizeMB * 1024L * 1024L);
+    } catch (IOException | IllegalArgumentException e) {
+      log.error(e, "Failed to open the flight recorder file, not recording");
+      return FlightRecorder.disabled();
+    }
   }
 
-  // -- Utility functions
+  @Override
+  public void postStop() throws Exception {
+    if (statsTimer != null) statsTimer.cancel();
+    flightRecorder.close();
+    super.postStop();
+  }
 
-  // Gets the trombone config file from the config service, or uses the trombone.conf resource file if that doesn't work
-  private CompletableFuture<AxisConfig> getAxisConfig() {
-    //noinspection OptionalGetWithoutIsPresent
-    return JConfigServiceClient.getConfigFromConfigService(tromboneConfigFile, Optional.empty(),
-      Optional.of(resource), context().system(), timeout).thenApply(config -> new AxisConfig(config.get()));
+  private ActorRef setupEngine() {
+    return context().actorOf(MultiAxisSimulationEngine.props(MultiAxisSimulationEngine.defaultTickPeriodMS, Optional.of(clock)), "Test1");
+  }
+
+  // Publishes the update, if any, to subscribers and makes sure a conflated update that is still pending is published later
+  private void publishAxisUpdate(AxisUpdate e) {
+    if (e != null) {
+      markFirstCurrentState();
+      notifySubscribers(axisStateEncoder.encode(e));
+      if (!deltaSubscribers.isEmpty()) {
+        CurrentState delta = axisStateEncoder.delta();
+        if (delta != null) deltaSubscribers.forEach(subscriber -> subscriber.tell(delta, self()));
+      }
+    }
+    if (conflater.hasPending() && !flushScheduled) {
+      flushScheduled = true;
+      clock.scheduleOnce(java.time.Duration.ofNanos(conflater.delayNanos(clock.nanoTime())), self(), PublishConflatedUpdate.instance);
+    }
+  }
+
+  // Addresses a request to the trombone axis in the simulation engine
+  private AxisCommand axisCommand(SingleAxisSimulator.AxisRequest request) {
+    return new AxisCommand(axisIndex, request);
   }
 
   // --- Static defs ---
@@ -240,12 +473,24 @@ public class TromboneHCD extends JHcdController {
    * @return the Props needed to create the actor
    */
   public static Props props(final Component.HcdInfo info, ActorRef supervisor) {
+    return props(info, supervisor, Optional.empty());
+  }
+
+  /**
+   * Used to create the TromboneHCD actor with a given simulation clock
+   *
+   * @param info       the HCD's prefix, used in configurations
+   * @param supervisor the supervisor for the HCD
+   * @param clock      the clock used to simulate axis motion, for instance a VirtualClock for tests
+   * @return the Props needed to create the actor
+   */
+  public static Props props(final Component.HcdInfo info, ActorRef supervisor, Optional<SimulationClock> clock) {
     return Props.create(new Creator<TromboneHCD>() {
       private static final long serialVersionUID = 1L;
 
       @Override
       public TromboneHCD create() throws Exception {
-        return new TromboneHCD(info, supervisor);
+        return new TromboneHCD(info, supervisor, clock);
       }
     });
   }
@@ -289,6 +534,8 @@ public class TromboneHCD extends JHcdController {
   public static final IntKey successCountKey = IntKey("successCount");
   public static final IntKey failureCountKey = IntKey("failureCount");
   public static final IntKey cancelCountKey = IntKey("cancelCount");
+  // Move setpoints replaced by a newer one before they were sent to the axis (see process())
+  public static final IntKey supersededCountKey = IntKey("supersededCount");
   public static final CurrentState defaultStatsState = cs(axisStatsCK.prefix(),
     jset(axisNameKey, tromboneAxisName),
     jset(datumCountKey, 0),
@@ -297,7 +544,8 @@ public class TromboneHCD extends JHcdController {
     jset(limitCountKey, 0),
     jset(successCountKey, 0),
     jset(failureCountKey, 0),
-    jset(cancelCountKey, 0));
+    jset(cancelCountKey, 0),
+    jset(supersededCountKey, 0));
 
   public static final String axisConfigPrefix = trombonePrefix + ".axisConfig";
   public static final ConfigKey axisConfigCK = new ConfigKey(axisConfigPrefix);
@@ -333,6 +581,68 @@ public class TromboneHCD extends JHcdController {
   public static final ConfigKey axisCancelCK = new ConfigKey(axisCancelPrefix);
   public static final SetupConfig cancelSC = SetupConfig(axisCancelCK);
 
+  // Internal: sent to self when the axis config has been fetched
+  static class AxisConfigLoaded {
+    final AxisConfig axisConfig;
+
+    AxisConfigLoaded(AxisConfig axisConfig) {
+      this.axisConfig = axisConfig;
+    }
+  }
+
+  // Internal: sent to self when the axis config could not be fetched or parsed
+  static class InitFailed {
+    final String reason;
+
+    InitFailed(Throwable ex) {
+      Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+      this.reason = cause.toString();
+    }
+  }
+
+  // Internal: sent to self once per engine tick while moves are arriving, to send the newest pending move
+  static class FlushMoves {
+    static final FlushMoves instance = new FlushMoves();
+
+    private FlushMoves() {
+    }
+  }
+
+  // Internal: sent to self periodically to push the axis statistics when they changed
+  static class PublishStatsIfChanged {
+    static final PublishStatsIfChanged instance = new PublishStatsIfChanged();
+
+    private PublishStatsIfChanged() {
+    }
+  }
+
+  // Internal: sent to self when a conflated axis update can be published
+  static class PublishConflatedUpdate {
+    static final PublishConflatedUpdate instance = new PublishConflatedUpdate();
+
+    private PublishConflatedUpdate() {
+    }
+  }
+
+  /**
+   * Sent by a subscriber that wants axis state CurrentStates holding only the items that changed since the last one.
+   * The first message after SubscribeDelta is the full state. A delta subscriber should not also send Subscribe.
+   */
+  public enum AxisStateDelta {
+    SubscribeDelta,
+    UnsubscribeDelta
+  }
+
+  /**
+   * Sent by a subscriber that wants every AxisUpdate of the simulation engine, before the updates are conflated for
+   * publishing, for instance to aggregate the raw axis positions. The sender of SubscribeRaw gets the updates.
+   * Only useful within the same JVM.
+   */
+  public enum RawAxisUpdates {
+    SubscribeRaw,
+    UnsubscribeRaw
+  }
+
   // Testing messages for TromboneHCD
   public enum TromboneEngineering {
     /**
@@ -350,7 +660,22 @@ public class TromboneHCD extends JHcdController {
      */
     GetAxisUpdateNow,
 
-    GetAxisConfig
+    GetAxisConfig,
+
+    /**
+     * Directly returns the AxisSnapshot of the trombone axis to sender, only useful within the same JVM
+     */
+    GetAxisSnapshot,
+
+    /**
+     * Directly returns the startup phase times in ms, as a Map from phase name to time since the HCD was created
+     */
+    GetStartupTimes,
+
+    /**
+     * Directly returns a LatencyHistogram.Summary of the time from receiving a move to the axis reaching its position
+     */
+    GetMoveLatency
   }
 }
 
@@ -0,0 +1,41 @@
+package csw.examples.vsliceJava.shared;
+
+import akka.actor.ActorSystem;
+import akka.util.Timeout;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import javacsw.services.cs.akka.JConfigServiceClient;
+
+import java.io.File;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Gets a component configuration without blocking.
+ * <p>
+ * The config is read from the config service and, if that fails or the file is not found there, parsed from the
+ * given resource file. The time taken by each step is recorded in a StartupTimer, so a slow or missing config
+ * service shows up in the startup metrics.
+ */
+public class ConfigLoader {
+
+  /**
+   * @param configFile the path of the config in the config service
+   * @param resource   the resource file to use when the config service does not have the file
+   * @param system     used to talk to the config service
+   * @param timeout    the config service timeout
+   * @param timer      records the configFetch phase, and configFallbackToResource if the resource was used
+   * @return a future holding the config
+   */
+  public static CompletableFuture<Config> getConfig(File configFile, File resource, ActorSystem system, Timeout timeout,
+                                                    StartupTimer timer) {
+    return JConfigServiceClient.getConfigFromConfigService(configFile, Optional.empty(), Optional.empty(), system, timeout)
+      .handle((configOpt, ex) -> {
+        timer.mark(StartupTimer.configFetch);
+        if (ex == null && configOpt.isPresent()) return configOpt.get();
+        Config config = ConfigFactory.parseResources(resource.getPath());
+        timer.mark(StartupTimer.configFallback);
+        return config;
+      });
+  }
+}
@@ -0,0 +1,75 @@
+package csw.examples.vsliceJava.shared;
+
+import akka.actor.ActorRef;
+import akka.actor.Cancellable;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A SimulationClock that uses wall-clock time and its own scheduler thread.
+ * <p>
+ * The actor system scheduler is shared by every timer in the system and fires on its tick boundaries, so a periodic
+ * message can be late or bunched up when the scheduler is busy. This clock runs its timers at a fixed rate on a thread
+ * of its own, for control loops that need a steady cadence. Call close() when done to stop the thread.
+ */
+public class ExecutorClock implements SimulationClock, AutoCloseable {
+  private final ScheduledExecutorService executor;
+
+  /**
+   * @param threadName the name of the scheduler thread, which is a daemon thread
+   */
+  public ExecutorClock(String threadName) {
+    executor = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, threadName);
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  @Override
+  public long nanoTime() {
+    return System.nanoTime();
+  }
+
+  @Override
+  public Cancellable scheduleOnce(Duration delay, ActorRef receiver, Object message) {
+    return new FutureCancellable(executor.schedule(() -> receiver.tell(message, ActorRef.noSender()),
+      delay.toNanos(), TimeUnit.NANOSECONDS));
+  }
+
+  @Override
+  public Cancellable schedule(Duration initialDelay, Duration period, ActorRef receiver, Object message) {
+    return new FutureCancellable(executor.scheduleAtFixedRate(() -> receiver.tell(message, ActorRef.noSender()),
+      initialDelay.toNanos(), period.toNanos(), TimeUnit.NANOSECONDS));
+  }
+
+  /**
+   * Cancels all timers and stops the scheduler thread
+   */
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+
+  private static class FutureCancellable implements Cancellable {
+    private final ScheduledFuture<?> future;
+
+    FutureCancellable(ScheduledFuture<?> future) {
+      this.future = future;
+    }
+
+    @Override
+    public boolean cancel() {
+      return future.cancel(false);
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return future.isCancelled();
+    }
+  }
+}
@@ -0,0 +1,410 @@
+package csw.examples.vsliceJava.shared;
+
+import csw.util.config.Choice;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static csw.examples.vsliceJava.assembly.TromboneStateActor.*;
+import static csw.examples.vsliceJava.hcd.SingleAxisSimulator.AxisState;
+
+/**
+ * A recorder of the follow loop and axis values at full rate, for post-mortems of follow glitches that
+ * cannot be seen in the logs or in the (sampled and conflated) telemetry.
+ * <p>
+ * Records are written into a file of fixed size that is memory-mapped as a ring buffer, so the file holds the
+ * most recent records, and what was written is kept by the OS even if the assembly crashes. Recording a value claims
+ * a slot with one atomic increment and writes the record in place, there is no lock, no allocation and no system call.
+ * <p>
+ * The file starts with a 64 byte header (the int 0x54464c52, "TFLR", a version int, the record size int, a spare int
+ * and the number of record slots as a long), followed by the slots. Each 40 byte record has a sequence number (from 1,
+ * 0 for an empty slot or one being written), the time in nanoseconds since the epoch, a type short, a flags short, an
+ * int value and two double values. Record n is in slot (n - 1) % capacity. When an existing file of the same size is
+ * opened again, the sequence numbers continue from its last record. Otherwise a new file replaces it: the file is
+ * never truncated in place, since that would crash (SIGBUS) a recorder or reader that still has it mapped.
+ * <p>
+ * The record types:
+ * <ul>
+ * <li>followInput: a is the zenith angle and b the focus error received by the follow loop</li>
+ * <li>elevationRange: a is the elevation and b the range distance computed by the follow loop</li>
+ * <li>encoderCommand: intValue is the encoder position sent to the HCD</li>
+ * <li>axisUpdate: intValue is the axis position, flags the axis state ordinal, with the low limit, high limit and
+ * home flags in bits 4, 5 and 6</li>
+ * <li>commandState: flags has the index of the cmd choice in the low byte and of the move choice in the high byte</li>
+ * </ul>
+ * Each TromboneAssembly opens its own recorder for the flightRecorderFile of its control-config and passes it through
+ * the props of the actors that record. Actors created without one record to disabled(), which drops everything.
+ * The axis updates are recorded by the TromboneHCD, in the file set in its axis-config, as they come from the engine
+ * and before they are conflated for publishing. The two files can be merged on their time column.
+ * <p>
+ * Usage: FlightRecorder file [--out file.csv] writes the records of a file as CSV, oldest first, to the output file
+ * or standard output.
+ */
+public class FlightRecorder implements AutoCloseable {
+  static final int magic = 0x54464c52;
+  static final int version = 1;
+  static final int headerSize = 64;
+  static final int recordSize = 40;
+
+  // Offsets in a record
+  private static final int seqOffset = 0;
+  private static final int timeOffset = 8;
+  private static final int typeOffset = 16;
+  private static final int flagsOffset = 18;
+  private static final int intOffset = 20;
+  private static final int aOffset = 24;
+  private static final int bOffset = 32;
+
+  // The record types
+  public static final short followInputType = 1;
+  public static final short elevationRangeType = 2;
+  public static final short encoderCommandType = 3;
+  public static final short axisUpdateType = 4;
+  public static final short commandStateType = 5;
+
+  static final String[] typeNames = {"", "followInput", "elevationRange", "encoderCommand", "axisUpdate", "commandState"};
+
+  // The choices in the order of their index in a commandState record
+  static final Choice[] cmdChoices = {cmdUninitialized, cmdReady, cmdBusy, cmdContinuous, cmdError};
+  static final Choice[] moveChoices = {moveUnindexed, moveIndexing, moveIndexed, moveMoving};
+
+  // The axis states by ordinal, values() copies the array on every call
+  private static final AxisState[] axisStates = AxisState.values();
+
+  // Drops everything
+  private static final FlightRecorder disabled = new FlightRecorder();
+
+  // null for the disabled recorder
+  private final MappedByteBuffer buffer;
+  private final long capacity;
+  private final AtomicLong seq;
+  // The epoch time in nanoseconds is baseEpochNanos plus the System.nanoTime() since baseNanos
+  private final long baseEpochNanos;
+  private final long baseNanos;
+
+  private FlightRecorder() {
+    buffer = null;
+    capacity = 0;
+    seq = new AtomicLong();
+    baseEpochNanos = 0;
+    baseNanos = 0;
+  }
+
+  /**
+   * Maps the file, creating it or starting it again if it is not a recording of this size
+   *
+   * @param file      the file to record to
+   * @param sizeBytes the size of the file, which sets how many records are kept
+   */
+  public FlightRecorder(File file, long sizeBytes) throws IOException {
+    if (sizeBytes < headerSize + recordSize || sizeBytes > Integer.MAX_VALUE)
+      throw new IllegalArgumentException("Flight recorder size must be between " + (headerSize + recordSize) + " and " + Integer.MAX_VALUE + " bytes: " + sizeBytes);
+    capacity = (sizeBytes - headerSize) / recordSize;
+    long length = headerSize + capacity * recordSize;
+    if (!isRecording(file, length, capacity)) create(file, length, capacity);
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      // The mapping stays valid after the file is closed
+      buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+    }
+    seq = new AtomicLong(lastSeq(buffer, capacity));
+    Instant now = Instant.now();
+    baseNanos = System.nanoTime();
+    baseEpochNanos = now.getEpochSecond() * 1000000000L + now.getNano();
+  }
+
+  // True if the file is a recording with the given length and capacity
+  private static boolean isRecording(File file, long length, long capacity) throws IOException {
+    if (!file.isFile() || file.length() != length) return false;
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      return raf.readInt() == magic && raf.readInt() == version && raf.readInt() == recordSize
+        && raf.readInt() == 0 && raf.readLong() == capacity;
+    }
+  }
+
+  // Writes an empty recording to a new file in the same directory and renames it over the file. A mapping of the old
+  // file stays valid, on the old contents, until it is released.
+  private static void create(File file, long length, long capacity) throws IOException {
+    Path path = file.getAbsoluteFile().toPath();
+    Path fresh = Files.createTempFile(path.getParent(), file.getName(), ".new");
+    try {
+      try (RandomAccessFile raf = new RandomAccessFile(fresh.toFile(), "rw")) {
+        raf.setLength(length);
+        raf.writeInt(magic);
+        raf.writeInt(version);
+        raf.writeInt(recordSize);
+        raf.writeInt(0);
+        raf.writeLong(capacity);
+      }
+      Files.move(fresh, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(fresh);
+    }
+  }
+
+  private static long lastSeq(ByteBuffer buffer, long capacity) {
+    long last = 0;
+    for (long slot = 0; slot < capacity; slot++) last = Math.max(last, buffer.getLong(headerSize + (int) (slot * recordSize)));
+    return last;
+  }
+
+  /**
+   * @return a recorder that drops everything, for actors created without a recorder
+   */
+  public static FlightRecorder disabled() {
+    return disabled;
+  }
+
+  /**
+   * @return true if this recorder writes to a file
+   */
+  public boolean isEnabled() {
+    return buffer != null;
+  }
+
+  /**
+   * @return the number of records the file holds
+   */
+  public long capacity() {
+    return capacity;
+  }
+
+  /**
+   * @return the number of records written to the file, including those of earlier recorders and those overwritten
+   */
+  public long count() {
+    return seq.get();
+  }
+
+  private void record(short type, short flags, int intValue, double a, double b) {
+    if (buffer == null) return;
+    long n = seq.incrementAndGet();
+    int offset = headerSize + (int) (((n - 1) % capacity) * recordSize);
+    long time = baseEpochNanos + (System.nanoTime() - baseNanos);
+    // The sequence number goes in last, so that a slot being written is not read as a complete record
+    buffer.putLong(offset + seqOffset, 0L);
+    buffer.putLong(offset + timeOffset, time);
+    buffer.putShort(offset + typeOffset, type);
+    buffer.putShort(offset + flagsOffset, flags);
+    buffer.putInt(offset + intOffset, intValue);
+    buffer.putDouble(offset + aOffset, a);
+    buffer.putDouble(offset + bOffset, b);
+    buffer.putLong(offset + seqOffset, n);
+  }
+
+  /**
+   * Records the zenith angle and focus error received by the follow loop
+   */
+  public void recordFollowInput(double zenithAngle, double focusError) {
+    record(followInputType, (short) 0, 0, zenithAngle, focusError);
+  }
+
+  /**
+   * Records the elevation and range distance computed by the follow loop
+   */
+  public void recordElevationRange(double elevation, double rangeDistance) {
+    record(elevationRangeType, (short) 0, 0, elevation, rangeDistance);
+  }
+
+  /**
+   * Records an encoder position sent to the HCD
+   */
+  public void recordEncoderCommand(int encoderPosition) {
+    record(encoderCommandType, (short) 0, encoderPosition, 0.0, 0.0);
+  }
+
+  /**
+   * Records an axis update of the simulation engine
+   *
+   * @param position  the axis position in encoder counts
+   * @param state     the axis state
+   * @param lowLimit  true if the axis is in its low limit
+   * @param highLimit true if the axis is in its high limit
+   * @param home      true if the axis is at home
+   */
+  public void recordAxisUpdate(int position, AxisState state, boolean lowLimit, boolean highLimit, boolean home) {
+    if (buffer == null) return;
+    int flags = state.ordinal() | (lowLimit ? 1 << 4 : 0) | (highLimit ? 1 << 5 : 0) | (home ? 1 << 6 : 0);
+    record(axisUpdateType, (short) flags, position, 0.0, 0.0);
+  }
+
+  /**
+   * Records a change of the assembly command state
+   *
+   * @param cmd  one of the cmd choices
+   * @param move one of the move choices
+   */
+  public void recordCommandState(Choice cmd, Choice move) {
+    if (buffer == null) return;
+    record(commandStateType, (short) (indexOf(cmdChoices, cmd) | indexOf(moveChoices, move) << 8), 0, 0.0, 0.0);
+  }
+
+  private static int indexOf(Choice[] choices, Choice choice) {
+    for (int i = 0; i < choices.length; i++) if (choices[i].equals(choice)) return i;
+    return 0xff;
+  }
+
+  /**
+   * Writes the records to the file
+   */
+  @Override
+  public void close() {
+    if (buffer != null) buffer.force();
+  }
+
+  /**
+   * Reads the complete records of a file
+   *
+   * @param file a file written by a FlightRecorder
+   * @return the records, oldest first
+   */
+  public static List<Record> read(File file) throws IOException {
+    List<Record> records = new ArrayList<>();
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      if (raf.length() < headerSize || raf.readInt() != magic) throw new IOException("Not a flight recording: " + file);
+      int v = raf.readInt();
+      if (v != version) throw new IOException("Unsupported flight recording version " + v + ": " + file);
+      int size = raf.readInt();
+      raf.readInt();
+      long capacity = raf.readLong();
+      if (size != recordSize || raf.length() < headerSize + capacity * recordSize)
+        throw new IOException("Truncated or corrupt flight recording: " + file);
+      ByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, headerSize + capacity * recordSize);
+      for (long slot = 0; slot < capacity; slot++) {
+        int offset = headerSize + (int) (slot * recordSize);
+        long n = buffer.getLong(offset + seqOffset);
+        if (n == 0) continue;
+        records.add(new Record(n, buffer.getLong(offset + timeOffset), buffer.getShort(offset + typeOffset),
+          buffer.getShort(offset + flagsOffset), buffer.getInt(offset + intOffset),
+          buffer.getDouble(offset + aOffset), buffer.getDouble(offset + bOffset)));
+      }
+    }
+    records.sort(Comparator.comparingLong(r -> r.seq));
+    return records;
+  }
+
+  /**
+   * Writes records as CSV with a header line, with the columns that do not apply to a record type left empty
+   *
+   * @param records the records to write
+   * @param out     where to write them, it is flushed but not closed
+   */
+  public static void writeCsv(List<Record> records, Writer out) {
+    PrintWriter w = new PrintWriter(out);
+    w.println("seq,time,type,zenithAngle,focusError,elevation,range,encoder,axisPosition,axisState,lowLimit,highLimit,home,cmd,move");
+    for (Record r : records) {
+      StringBuilder sb = new StringBuilder();
+      sb.append(r.seq).append(',').append(Instant.ofEpochSecond(0, r.timeNanos)).append(',');
+      sb.append(r.type > 0 && r.type < typeNames.length ? typeNames[r.type] : Short.toString(r.type)).append(',');
+      switch (r.type) {
+        case followInputType:
+          sb.append(r.a).append(',').append(r.b).append(",,,,,,,,,,");
+          break;
+        case elevationRangeType:
+          sb.append(",,").append(r.a).append(',').append(r.b).append(",,,,,,,,");
+          break;
+        case encoderCommandType:
+          sb.append(",,,,").append(r.intValue).append(",,,,,,,");
+          break;
+        case axisUpdateType:
+          int state = r.flags & 0xf;
+          sb.append(",,,,,").append(r.intValue).append(',')
+            .append(state < axisStates.length ? axisStates[state].toString() : Integer.toString(state)).append(',')
+            .append((r.flags & 1 << 4) != 0).append(',')
+            .append((r.flags & 1 << 5) != 0).append(',')
+            .append((r.flags & 1 << 6) != 0).append(",,");
+          break;
+        case commandStateType:
+          sb.append(",,,,,,,,,,").append(choiceName(cmdChoices, r.flags & 0xff)).append(',')
+            .append(choiceName(moveChoices, (r.flags >> 8) & 0xff));
+          break;
+        default:
+          sb.append(",,,,,,,,,,,");
+      }
+      w.println(sb);
+    }
+    w.flush();
+  }
+
+  private static String choiceName(Choice[] choices, int index) {
+    return index < choices.length ? choices[index].name() : Integer.toString(index);
+  }
+
+  /**
+   * One record read from a file
+   */
+  @SuppressWarnings("WeakerAccess")
+  public static class Record {
+    public final long seq;
+    // The time in nanoseconds since the epoch
+    public final long timeNanos;
+    public final short type;
+    public final short flags;
+    public final int intValue;
+    public final double a;
+    public final double b;
+
+    public Record(long seq, long timeNanos, short type, short flags, int intValue, double a, double b) {
+      this.seq = seq;
+      this.timeNanos = timeNanos;
+      this.type = type;
+      this.flags = flags;
+      this.intValue = intValue;
+      this.a = a;
+      this.b = b;
+    }
+
+    @Override
+    public String toString() {
+      return "Record{" +
+        "seq=" + seq +
+        ", timeNanos=" + timeNanos +
+        ", type=" + type +
+        ", flags=" + flags +
+        ", intValue=" + intValue +
+        ", a=" + a +
+        ", b=" + b +
+        '}';
+    }
+  }
+
+  private static void usage() {
+    System.err.println("Usage: FlightRecorder file [--out file.csv]");
+    System.exit(1);
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 1) usage();
+    File file = new File(args[0]);
+    File outFile = null;
+    for (int i = 1; i < args.length; i++) {
+      if (args[i].equals("--out") && i + 1 < args.length) outFile = new File(args[++i]);
+      else usage();
+    }
+
+    List<Record> records = read(file);
+    if (outFile == null) {
+      writeCsv(records, new BufferedWriter(new OutputStreamWriter(System.out)));
+    } else {
+      try (Writer out = new BufferedWriter(new FileWriter(outFile))) {
+        writeCsv(records, out);
+      }
+    }
+  }
+}
@@ -0,0 +1,148 @@
+package csw.examples.vsliceJava.shared;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed size latency histogram in the style of HdrHistogram, with log-linear buckets.
+ * <p>
+ * Values below 64 ns get their own bucket. Above that, each power of two is split into 32 buckets, so a percentile
+ * is reported within about 3% of the recorded value, from nanoseconds up to hours, in about 15 KB.
+ * <p>
+ * Meant for one writer, usually an actor, while others read the summary: recording does not allocate or lock,
+ * and the counters may be read at any time. A summary taken while values are being recorded may be off by the
+ * values recorded during the read.
+ */
+public class LatencyHistogram {
+  private static final int subBucketBits = 6;
+  private static final int subBucketCount = 1 << subBucketBits;
+  private static final int subBucketHalfCount = subBucketCount / 2;
+  // Values up to Long.MAX_VALUE have a highest bit of at most 62, which is a shift of 62 - subBucketBits + 1
+  private static final int maxShift = 63 - subBucketBits;
+
+  private final AtomicLongArray counts = new AtomicLongArray(subBucketCount + maxShift * subBucketHalfCount);
+  private final AtomicLong totalCount = new AtomicLong();
+  private final AtomicLong totalNanos = new AtomicLong();
+  private final AtomicLong maxNanos = new AtomicLong();
+
+  /**
+   * Records one latency
+   *
+   * @param nanos the latency in nanoseconds, negative values (for instance from clocks on different hosts) count as 0
+   */
+  public void recordNanos(long nanos) {
+    long value = Math.max(0L, nanos);
+    counts.incrementAndGet(indexOf(value));
+    totalCount.incrementAndGet();
+    totalNanos.addAndGet(value);
+    if (value > maxNanos.get()) maxNanos.set(value); // single writer
+  }
+
+  /**
+   * @return the number of latencies recorded
+   */
+  public long count() {
+    return totalCount.get();
+  }
+
+  /**
+   * @return the largest latency recorded, in nanoseconds
+   */
+  public long maxNanos() {
+    return maxNanos.get();
+  }
+
+  /**
+   * @return the mean latency in nanoseconds
+   */
+  public long meanNanos() {
+    long n = totalCount.get();
+    return n == 0 ? 0 : totalNanos.get() / n;
+  }
+
+  /**
+   * @param percentile a percentile from 0.0 to 100.0
+   * @return the latency at or below which the given percentage of the recorded latencies fall, in nanoseconds,
+   * or 0 if nothing was recorded
+   */
+  public long percentileNanos(double percentile) {
+    long n = totalCount.get();
+    if (n == 0) return 0;
+    long rank = Math.max(1L, (long) Math.ceil(Math.min(100.0, percentile) / 100.0 * n));
+    long seen = 0;
+    for (int i = 0; i < counts.length(); i++) {
+      seen += counts.get(i);
+      if (seen >= rank) return Math.min(highestValueAt(i), maxNanos.get());
+    }
+    return maxNanos.get();
+  }
+
+  /**
+   * Clears the histogram. Values recorded while clearing may be lost.
+   */
+  public void reset() {
+    for (int i = 0; i < counts.length(); i++) counts.set(i, 0);
+    totalCount.set(0);
+    totalNanos.set(0);
+    maxNanos.set(0);
+  }
+
+  /**
+   * @return the count and the usual percentiles of the latencies recorded so far
+   */
+  public Summary summary() {
+    return new Summary(count(), meanNanos(), percentileNanos(50.0), percentileNanos(90.0), percentileNanos(99.0),
+      percentileNanos(99.9), maxNanos());
+  }
+
+  private static int indexOf(long value) {
+    if (value < subBucketCount) return (int) value;
+    int shift = 64 - Long.numberOfLeadingZeros(value) - subBucketBits;
+    int subBucket = (int) (value >>> shift); // from subBucketHalfCount to subBucketCount - 1
+    return subBucketCount + (shift - 1) * subBucketHalfCount + (subBucket - subBucketHalfCount);
+  }
+
+  private static long highestValueAt(int index) {
+    if (index < subBucketCount) return index;
+    int shift = (index - subBucketCount) / subBucketHalfCount + 1;
+    long subBucket = (index - subBucketCount) % subBucketHalfCount + subBucketHalfCount;
+    return ((subBucket + 1) << shift) - 1;
+  }
+
+  /**
+   * The count and percentiles of a LatencyHistogram, all times in nanoseconds
+   */
+  @SuppressWarnings("WeakerAccess")
+  public static class Summary {
+    public final long count;
+    public final long meanNanos;
+    public final long p50Nanos;
+    public final long p90Nanos;
+    public final long p99Nanos;
+    public final long p999Nanos;
+    public final long maxNanos;
+
+    public Summary(long count, long meanNanos, long p50Nanos, long p90Nanos, long p99Nanos, long p999Nanos, long maxNanos) {
+      this.count = count;
+      this.meanNanos = meanNanos;
+      this.p50Nanos = p50Nanos;
+      this.p90Nanos = p90Nanos;
+      this.p99Nanos = p99Nanos;
+      this.p999Nanos = p999Nanos;
+      this.maxNanos = maxNanos;
+    }
+
+    @Override
+    public String toString() {
+      return "Summary{" +
+        "count=" + count +
+        ", meanNanos=" + meanNanos +
+        ", p50Nanos=" + p50Nanos +
+        ", p90Nanos=" + p90Nanos +
+        ", p99Nanos=" + p99Nanos +
+        ", p999Nanos=" + p999Nanos +
+        ", maxNanos=" + maxNanos +
+        '}';
+    }
+  }
+}
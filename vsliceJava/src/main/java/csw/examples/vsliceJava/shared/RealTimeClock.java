@@ -0,0 +1,40 @@
+package csw.examples.vsliceJava.shared;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Cancellable;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A SimulationClock that uses wall-clock time and the actor system scheduler, which is what the
+ * TimeService scheduler does.
+ */
+public class RealTimeClock implements SimulationClock {
+  private final ActorSystem system;
+
+  public RealTimeClock(ActorSystem system) {
+    this.system = system;
+  }
+
+  @Override
+  public long nanoTime() {
+    return System.nanoTime();
+  }
+
+  @Override
+  public Cancellable scheduleOnce(Duration delay, ActorRef receiver, Object message) {
+    return system.scheduler().scheduleOnce(toFinite(delay), receiver, message, system.dispatcher(), ActorRef.noSender());
+  }
+
+  @Override
+  public Cancellable schedule(Duration initialDelay, Duration period, ActorRef receiver, Object message) {
+    return system.scheduler().schedule(toFinite(initialDelay), toFinite(period), receiver, message, system.dispatcher(), ActorRef.noSender());
+  }
+
+  private static FiniteDuration toFinite(Duration d) {
+    return FiniteDuration.create(d.toNanos(), TimeUnit.NANOSECONDS);
+  }
+}
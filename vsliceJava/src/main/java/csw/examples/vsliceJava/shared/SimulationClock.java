@@ -0,0 +1,41 @@
+package csw.examples.vsliceJava.shared;
+
+import akka.actor.ActorRef;
+import akka.actor.Cancellable;
+
+import java.time.Duration;
+
+/**
+ * The source of time and timers for the simulated hardware and the actors that poll it.
+ * <p>
+ * Actors that would otherwise use the TimeService scheduler take a SimulationClock so that tests and soak runs can
+ * replace real time with a VirtualClock. The default is a RealTimeClock.
+ */
+public interface SimulationClock {
+
+  /**
+   * @return the current time of this clock in nanoseconds, only useful for measuring intervals
+   */
+  long nanoTime();
+
+  /**
+   * Sends a message to the receiver once, after the given delay in the time of this clock
+   *
+   * @param delay    the delay before sending the message
+   * @param receiver the actor that receives the message
+   * @param message  the message to send
+   * @return a Cancellable that can be used to cancel the timer
+   */
+  Cancellable scheduleOnce(Duration delay, ActorRef receiver, Object message);
+
+  /**
+   * Sends a message to the receiver at a fixed rate in the time of this clock
+   *
+   * @param initialDelay the delay before sending the first message
+   * @param period       the period between messages
+   * @param receiver     the actor that receives the messages
+   * @param message      the message to send
+   * @return a Cancellable that can be used to cancel the timer
+   */
+  Cancellable schedule(Duration initialDelay, Duration period, ActorRef receiver, Object message);
+}
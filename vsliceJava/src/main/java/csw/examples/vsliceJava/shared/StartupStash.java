@@ -0,0 +1,87 @@
+package csw.examples.vsliceJava.shared;
+
+import akka.actor.ActorContext;
+import akka.actor.ActorRef;
+import akka.japi.Pair;
+import akka.japi.pf.ReceiveBuilder;
+import scala.PartialFunction;
+import scala.runtime.BoxedUnit;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the messages a component receives before it is running, and hands them to its running receive in the order
+ * they arrived, with their original senders.
+ * <p>
+ * The CSW controller base classes extend AbstractActor, so they cannot use the Akka stash, which puts the messages
+ * back at the front of the mailbox. Instead, unstashAll() sends each message back to the actor, wrapped and with its
+ * original sender, and the actor handles them before becoming its running receive. Messages that arrive in the
+ * meantime are newer than the replayed ones, so they are stashed and replayed after them. Like the Akka stash, this
+ * one is not bounded: it only holds what a component receives while it starts.
+ */
+public class StartupStash {
+  private final ActorContext context;
+  private final List<Pair<Object, ActorRef>> stashed = new ArrayList<>();
+
+  /**
+   * @param context the context of the actor that stashes
+   */
+  public StartupStash(ActorContext context) {
+    this.context = context;
+  }
+
+  /**
+   * Stashes the message being received, with its sender
+   */
+  public void stash(Object message) {
+    stashed.add(new Pair<>(message, context.sender()));
+  }
+
+  /**
+   * Hands the stashed messages to the running receive, then becomes it
+   *
+   * @param running the receive of the running actor
+   */
+  public void unstashAll(PartialFunction<Object, BoxedUnit> running) {
+    context.become(replayingReceive(running));
+    replay();
+  }
+
+  private void replay() {
+    ActorRef self = context.self();
+    stashed.forEach(p -> self.tell(new Replayed(p.first()), p.second()));
+    stashed.clear();
+    self.tell(ReplayDone.instance, self);
+  }
+
+  private PartialFunction<Object, BoxedUnit> replayingReceive(PartialFunction<Object, BoxedUnit> running) {
+    return ReceiveBuilder
+      .match(Replayed.class, r -> {
+        if (running.isDefinedAt(r.message)) running.apply(r.message);
+      })
+      .matchEquals(ReplayDone.instance, e -> {
+        if (stashed.isEmpty()) context.become(running);
+        else replay();
+      })
+      .matchAny(this::stash)
+      .build();
+  }
+
+  // A stashed message sent back to the actor
+  private static class Replayed {
+    final Object message;
+
+    Replayed(Object message) {
+      this.message = message;
+    }
+  }
+
+  // Sent after the replayed messages
+  private static class ReplayDone {
+    static final ReplayDone instance = new ReplayDone();
+
+    private ReplayDone() {
+    }
+  }
+}
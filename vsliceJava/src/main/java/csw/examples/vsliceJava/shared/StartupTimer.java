@@ -0,0 +1,64 @@
+package csw.examples.vsliceJava.shared;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Records how long each phase of a component's startup takes, measured from when the timer was created.
+ * <p>
+ * Phases may be marked from future callbacks as well as from the actor, so the methods are synchronized.
+ */
+public class StartupTimer {
+  private final String name;
+  private final long startNanos = System.nanoTime();
+  private final Map<String, Long> phases = new LinkedHashMap<>();
+
+  /**
+   * @param name the name of the component, used in toString()
+   */
+  public StartupTimer(String name) {
+    this.name = name;
+  }
+
+  /**
+   * Records the time since startup for the given phase. Only the first mark of a phase is kept.
+   *
+   * @param phase the name of the phase that just completed
+   * @return the time since startup in milliseconds
+   */
+  public synchronized long mark(String phase) {
+    long ms = (System.nanoTime() - startNanos) / 1000000L;
+    phases.putIfAbsent(phase, ms);
+    return ms;
+  }
+
+  /**
+   * @return true if the phase has been marked
+   */
+  public synchronized boolean isMarked(String phase) {
+    return phases.containsKey(phase);
+  }
+
+  /**
+   * @return the phases marked so far with their times since startup in milliseconds, in the order marked
+   */
+  public synchronized Map<String, Long> phases() {
+    return Collections.unmodifiableMap(new LinkedHashMap<>(phases));
+  }
+
+  @Override
+  public synchronized String toString() {
+    StringBuilder sb = new StringBuilder(name).append(" startup:");
+    phases.forEach((phase, ms) -> sb.append(' ').append(phase).append('=').append(ms).append("ms"));
+    return sb.toString();
+  }
+
+  // Phase names used by the trombone components
+  public static final String configFetch = "configFetch";
+  public static final String configFallback = "configFallbackToResource";
+  public static final String axisReady = "axisReady";
+  public static final String initialized = "initialized";
+  public static final String firstCurrentState = "firstCurrentState";
+  public static final String hcdLocated = "hcdLocated";
+}
@@ -0,0 +1,160 @@
+package csw.examples.vsliceJava.shared;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Cancellable;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A SimulationClock whose time only moves when it is advanced.
+ * <p>
+ * Timers are kept in a queue ordered by their virtual due time. advance() moves the clock forward and sends the
+ * messages of all timers that become due, in order, so a long simulated motion runs as fast as the actors can
+ * process it. When the actors run on the calling thread (TestActorRef), timers they start while handling a message
+ * are also fired during the same advance() and the results are completely deterministic.
+ * <p>
+ * The clock can be stepped manually with advance(), or driven from real time at a speedup factor with
+ * runFaster(), for example 1000 times faster than real time for soak runs.
+ */
+public class VirtualClock implements SimulationClock {
+  // Virtual time in nanoseconds
+  private long now = 0;
+  // Used to keep timers due at the same time in the order they were started
+  private long sequence = 0;
+  private final PriorityQueue<Timer> timers = new PriorityQueue<>();
+  // Only one advance runs at a time, so timers always fire in order
+  private final Object advanceLock = new Object();
+
+  @Override
+  public synchronized long nanoTime() {
+    return now;
+  }
+
+  @Override
+  public Cancellable scheduleOnce(Duration delay, ActorRef receiver, Object message) {
+    return addTimer(delay.toNanos(), 0L, receiver, message);
+  }
+
+  @Override
+  public Cancellable schedule(Duration initialDelay, Duration period, ActorRef receiver, Object message) {
+    if (period.isZero() || period.isNegative())
+      throw new IllegalArgumentException("period must be greater than 0: " + period);
+    return addTimer(initialDelay.toNanos(), period.toNanos(), receiver, message);
+  }
+
+  private synchronized Timer addTimer(long delayNanos, long periodNanos, ActorRef receiver, Object message) {
+    Timer timer = new Timer(now + Math.max(0L, delayNanos), sequence++, periodNanos, receiver, message);
+    timers.add(timer);
+    return timer;
+  }
+
+  /**
+   * Moves the clock forward and sends the messages of all timers that are due, in time order
+   *
+   * @param duration the amount of virtual time to advance
+   * @return the number of messages sent
+   */
+  public int advance(Duration duration) {
+    synchronized (advanceLock) {
+      long target;
+      synchronized (this) {
+        target = now + duration.toNanos();
+      }
+      int sent = 0;
+      while (true) {
+        Timer timer;
+        synchronized (this) {
+          timer = timers.peek();
+          if (timer == null || timer.due > target) {
+            now = target;
+            return sent;
+          }
+          timers.poll();
+          now = timer.due;
+          if (timer.period > 0 && !timer.isCancelled())
+            timers.add(new Timer(timer, timer.due + timer.period, sequence++));
+        }
+        // Send outside the lock since the receiver may start new timers on this thread
+        if (!timer.isCancelled()) {
+          timer.receiver.tell(timer.message, ActorRef.noSender());
+          sent++;
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the number of timers that have not fired or been cancelled yet
+   */
+  public synchronized int pendingTimers() {
+    List<Timer> live = new ArrayList<>(timers);
+    live.removeIf(Timer::isCancelled);
+    return live.size();
+  }
+
+  /**
+   * Drives this clock from real time so that it runs speedup times faster than real time.
+   *
+   * @param system  the actor system whose scheduler provides the real time steps
+   * @param speedup the ratio of virtual to real time, for example 1000.0
+   * @param step    the real time between advances of the clock
+   * @return a Cancellable that stops driving the clock
+   */
+  public Cancellable runFaster(ActorSystem system, double speedup, Duration step) {
+    Duration virtualStep = Duration.ofNanos((long) (step.toNanos() * speedup));
+    FiniteDuration realStep = FiniteDuration.create(step.toNanos(), TimeUnit.NANOSECONDS);
+    return system.scheduler().schedule(realStep, realStep, () -> advance(virtualStep), system.dispatcher());
+  }
+
+  // A pending timer, also the Cancellable returned to the caller. Periodic timers share the cancelled flag.
+  private static class Timer implements Cancellable, Comparable<Timer> {
+    final long due;
+    final long order;
+    final long period;
+    final ActorRef receiver;
+    final Object message;
+    private final AtomicBoolean cancelled;
+
+    Timer(long due, long order, long period, ActorRef receiver, Object message) {
+      this.due = due;
+      this.order = order;
+      this.period = period;
+      this.receiver = receiver;
+      this.message = message;
+      this.cancelled = new AtomicBoolean(false);
+    }
+
+    // The next firing of a periodic timer
+    Timer(Timer previous, long due, long order) {
+      this.due = due;
+      this.order = order;
+      this.period = previous.period;
+      this.receiver = previous.receiver;
+      this.message = previous.message;
+      this.cancelled = previous.cancelled;
+    }
+
+    @Override
+    public boolean cancel() {
+      return cancelled.compareAndSet(false, true);
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return cancelled.get();
+    }
+
+    @Override
+    public int compareTo(Timer o) {
+      if (due != o.due) return Long.compare(due, o.due);
+      return Long.compare(order, o.order);
+    }
+  }
+}
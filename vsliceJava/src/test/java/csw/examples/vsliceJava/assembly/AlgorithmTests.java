@@ -164,5 +164,44 @@ public class AlgorithmTests {
     System.out.println("Test4: " + calculatedTestData(calculationConfig, controlConfig, -20.0));
   }
 
-}
+  // --- Batch versions ---
+
+  @Test
+  public void batchVersionsShouldMatchTheSingleValueVersions() {
+    // Use enough samples to take the parallel path as well
+    for (int n : new int[]{testZenithAngles.size(), parallelThreshold + 7}) {
+      double[] fe = new double[n];
+      double[] za = new double[n];
+      for (int i = 0; i < n; i++) {
+        fe[i] = -20.0 + 40.0 * i / n;
+        za[i] = testZenithAngles.get(i % testZenithAngles.size());
+      }
+
+      double[] rd = focusZenithAngleToRangeDistance(calculationConfig, initialElevation, fe, za, new double[n]);
+      double[] el = rangeDistanceToElevation(rd, za, new double[n]);
+      double[] rd2 = new double[n];
+      double[] el2 = new double[n];
+      focusZenithAngleToElevationAndRangeDistance(calculationConfig, initialElevation, fe, za, rd2, el2);
+      int[] enc = stagePositionToEncoder(controlConfig, rd, new int[n]);
+      int[] enc2 = focusZenithAngleToEncoder(calculationConfig, controlConfig, initialElevation, fe, za, new int[n]);
+      double[] rd3 = focusZenithAngleToRangeDistanceStream(calculationConfig, initialElevation, fe, za).toArray();
+
+      for (int i = 0; i < n; i++) {
+        Pair<Double, Double> p = focusZenithAngleToElevationAndRangeDistance(calculationConfig, initialElevation, fe[i], za[i]);
+        assertEquals(rd[i], p.first(), delta);
+        assertEquals(el[i], p.second(), delta);
+        assertEquals(rd2[i], p.first(), delta);
+        assertEquals(el2[i], p.second(), delta);
+        assertEquals(rd3[i], p.first(), delta);
+        int expectedEnc = stagePositionToEncoder(controlConfig, rangeDistanceToStagePosition(p.first()));
+        assertEquals(enc[i], expectedEnc);
+        assertEquals(enc2[i], expectedEnc);
+      }
+    }
+  }
 
+  @Test(expected = IllegalArgumentException.class)
+  public void batchVersionsShouldRejectArraysOfDifferentLengths() {
+    focusZenithAngleToRangeDistance(calculationConfig, initialElevation, new double[3], new double[3], new double[2]);
+  }
+}
@@ -10,7 +10,9 @@ import akka.testkit.TestActorRef;
 import akka.testkit.TestProbe;
 import akka.util.Timeout;
 import csw.examples.vsliceJava.TestEnv;
+import csw.examples.vsliceJava.hcd.AxisStateEncoder;
 import csw.examples.vsliceJava.hcd.TromboneHCD;
+import csw.examples.vsliceJava.shared.VirtualClock;
 import csw.services.loc.Connection;
 import csw.services.loc.LocationService;
 import csw.services.pkg.Component;
@@ -18,11 +20,13 @@ import csw.services.pkg.Supervisor;
 import csw.util.config.Events;
 import javacsw.services.events.ITelemetryService;
 import javacsw.services.pkg.JComponent;
+import javacsw.util.config.JPublisherActor;
 import org.junit.*;
 import scala.concurrent.duration.FiniteDuration;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.time.Duration;
 import java.util.Collections;
 import java.util.Optional;
 import java.util.Vector;
@@ -32,6 +36,9 @@ import static csw.examples.vsliceJava.assembly.DiagPublisher.DiagnosticState;
 import static csw.examples.vsliceJava.assembly.DiagPublisher.OperationsState;
 import static csw.examples.vsliceJava.assembly.TrombonePublisher.AxisStateUpdate;
 import static csw.examples.vsliceJava.assembly.TrombonePublisher.AxisStatsUpdate;
+import static csw.examples.vsliceJava.hcd.SingleAxisSimulator.AxisState.AXIS_IDLE;
+import static csw.examples.vsliceJava.hcd.SingleAxisSimulator.AxisState.AXIS_MOVING;
+import static csw.examples.vsliceJava.hcd.SingleAxisSimulator.AxisUpdate;
 import static csw.examples.vsliceJava.hcd.TromboneHCD.TromboneEngineering.GetAxisStats;
 import static csw.examples.vsliceJava.hcd.TromboneHCD.TromboneEngineering.GetAxisUpdate;
 import static csw.services.loc.Connection.AkkaConnection;
@@ -46,6 +53,7 @@ import static javacsw.services.pkg.JSupervisor.HaltComponent;
 import static javacsw.services.pkg.JSupervisor.LifecycleRunning;
 import static junit.framework.TestCase.assertEquals;
 import static junit.framework.TestCase.assertTrue;
+import static javacsw.util.config.JItems.jvalue;
 
 /**
  * Diag Pubisher Tests
@@ -190,6 +198,20 @@ public class DiagPublisherTests extends JavaTestKit {
     return a;
   }
 
+  // A DiagPublisher that samples the axis state in the time of the given clock
+  TestActorRef<DiagPublisher> newDiagPublisher(Optional<ActorRef> tromboneHCD, Optional<ActorRef> eventPublisher, VirtualClock clock) {
+    Props props = DiagPublisher.props(assemblyContext, tromboneHCD, eventPublisher, Optional.of(clock));
+    TestActorRef<DiagPublisher> a = TestActorRef.create(system, props);
+    expectNoMsg(duration("200 millis"));
+    return a;
+  }
+
+  // The sample periods of the test assembly context
+  private static final Duration operationsPeriod = Duration.ofNanos(
+    DiagPublisher.samplePeriodNanos(assemblyContext.controlConfig.diagOperationsRateHz, assemblyContext.controlConfig.diagMaxRateHz));
+  private static final Duration diagnosticPeriod = Duration.ofNanos(
+    DiagPublisher.samplePeriodNanos(assemblyContext.controlConfig.diagDiagnosticRateHz, assemblyContext.controlConfig.diagMaxRateHz));
+
   // --- basic diag tests ---
 
   /**
@@ -218,7 +240,7 @@ public class DiagPublisherTests extends JavaTestKit {
     // Check that nothing is happening here
     fakePublisher.expectNoMsg(FiniteDuration.apply(20, TimeUnit.MILLISECONDS));
 
-    // Skip count is 5 so should get one message right away and then none for 4 more - just check for one
+    // The first update is always published - just check for one
     tromboneHCD.tell(GetAxisUpdate, self());
     fakePublisher.expectMsgClass(AxisStateUpdate.class);
 
@@ -227,11 +249,11 @@ public class DiagPublisherTests extends JavaTestKit {
 
   /**
    * Test Description: Stimulate DiagPublisher with CurrentState events to demonstrate diag publishing in operations mode.
-   * This test shows that in operations state the skip count is 5
+   * This test shows that in operations state the axis state is published at most once per operations sample period
    */
   @Test
   public void test2() {
-    // should see one state message sent to publisher in operations mode for every skipCount messages
+    // should see one state message sent to publisher in operations mode for every sample period
     ActorRef tromboneHCD = startHCD();
 
     TestProbe fakeAssembly = new TestProbe(system);
@@ -243,33 +265,36 @@ public class DiagPublisherTests extends JavaTestKit {
 
     TestProbe fakePublisher = new TestProbe(system);
 
-    // Use HCD as currentStateReceiver
-    ActorRef dp = newDiagPublisher(tromboneHCD, Optional.of(tromboneHCD), Optional.of(fakePublisher.ref()));
+    // Sample in virtual time
+    VirtualClock clock = new VirtualClock();
+    ActorRef dp = newDiagPublisher(Optional.of(tromboneHCD), Optional.of(fakePublisher.ref()), clock);
 
-    // Skip count is 5 so should get one message right away and then none for 4 more
+    // Should get one message right away and then none until the sample period has passed
     tromboneHCD.tell(GetAxisUpdate, self());
     AxisStateUpdate msg = fakePublisher.expectMsgClass(AxisStateUpdate.class);
     tromboneHCD.tell(GetAxisUpdate, self());
     fakePublisher.expectNoMsg(FiniteDuration.apply(20, TimeUnit.MILLISECONDS));
+    clock.advance(operationsPeriod.dividedBy(2));
     tromboneHCD.tell(GetAxisUpdate, self());
     fakePublisher.expectNoMsg(FiniteDuration.apply(20, TimeUnit.MILLISECONDS));
     tromboneHCD.tell(GetAxisUpdate, self());
     fakePublisher.expectNoMsg(FiniteDuration.apply(20, TimeUnit.MILLISECONDS));
-    tromboneHCD.tell(GetAxisUpdate, self());
-    fakePublisher.expectNoMsg(FiniteDuration.apply(20, TimeUnit.MILLISECONDS));
+    clock.advance(operationsPeriod.dividedBy(2));
     tromboneHCD.tell(GetAxisUpdate, self());
     fakePublisher.expectMsgClass(AxisStateUpdate.class);
+    tromboneHCD.tell(GetAxisUpdate, self());
+    fakePublisher.expectNoMsg(FiniteDuration.apply(20, TimeUnit.MILLISECONDS));
 
     cleanup(tromboneHCD, dp);
   }
 
   /**
    * Test Description: Stimulate DiagPublisher with CurrentState events to demonstrate diag publishing in diagnostic mode.
-   * This test shows that in diagnostic state the skip count is 2
+   * This test shows that in diagnostic state the axis state is published once per diagnostic sample period, which is shorter
    */
   @Test
   public void test3() {
-    // should see one state message sent to publisher in diagnostics mode for every update message
+    // should see one state message sent to publisher in diagnostics mode for every sample period
     ActorRef tromboneHCD = startHCD();
 
     TestProbe fakeAssembly = new TestProbe(system);
@@ -281,20 +306,25 @@ public class DiagPublisherTests extends JavaTestKit {
 
     TestProbe fakePublisher = new TestProbe(system);
 
-    // Use HCD as currentStateReceiver
-    ActorRef dp = newDiagPublisher(tromboneHCD, Optional.of(tromboneHCD), Optional.of(fakePublisher.ref()));
+    // Sample in virtual time
+    VirtualClock clock = new VirtualClock();
+    ActorRef dp = newDiagPublisher(Optional.of(tromboneHCD), Optional.of(fakePublisher.ref()), clock);
 
     dp.tell(new DiagnosticState(), self());
+    assertTrue(diagnosticPeriod.compareTo(operationsPeriod) < 0);
 
-    // Skip count is 2 so should get a message for every other event
+    // Should get a message for the first event of every sample period
+    // (3 periods are less than the 1 second stats period, so no stats are requested)
     tromboneHCD.tell(GetAxisUpdate, self());
     fakePublisher.expectMsgClass(AxisStateUpdate.class);
     tromboneHCD.tell(GetAxisUpdate, self());
     fakePublisher.expectNoMsg(FiniteDuration.apply(20, TimeUnit.MILLISECONDS));
+    clock.advance(diagnosticPeriod);
     tromboneHCD.tell(GetAxisUpdate, self());
     fakePublisher.expectMsgClass(AxisStateUpdate.class);
     tromboneHCD.tell(GetAxisUpdate, self());
     fakePublisher.expectNoMsg(FiniteDuration.apply(20, TimeUnit.MILLISECONDS));
+    clock.advance(diagnosticPeriod);
     tromboneHCD.tell(GetAxisUpdate, self());
     fakePublisher.expectMsgClass(AxisStateUpdate.class);
     tromboneHCD.tell(GetAxisUpdate, self());
@@ -433,7 +463,7 @@ public class DiagPublisherTests extends JavaTestKit {
 
   /**
    * Test Description: This test creates an HCD and uses TestSubscribers to listen for diag publisher events.
-   * The diag publisher is in operations state so it requires 6 updates to produce one event
+   * The diag publisher is in operations state so it publishes one event per operations sample period
    */
   @Test
   public void test7() {
@@ -455,14 +485,17 @@ public class DiagPublisherTests extends JavaTestKit {
     tromboneHCD.tell(new SubscribeLifecycleCallback(fakeAssembly.ref()), self());
     fakeAssembly.expectMsg(new LifecycleStateChanged(LifecycleRunning));
 
-    // Use HCD as currentStateReceiver
-    ActorRef dp = newDiagPublisher(tromboneHCD, Optional.of(tromboneHCD), Optional.of(publisherActorRef));
+    // Sample in virtual time
+    VirtualClock clock = new VirtualClock();
+    ActorRef dp = newDiagPublisher(Optional.of(tromboneHCD), Optional.of(publisherActorRef), clock);
 
     // This should cause an event to be generated and received
-    // This should cause two published events since skip count is 5
+    // This should cause two published events, one in each sample period
     tromboneHCD.tell(GetAxisUpdate, self());
     tromboneHCD.tell(GetAxisUpdate, self());
     tromboneHCD.tell(GetAxisUpdate, self());
+    expectNoMsg(FiniteDuration.apply(50, TimeUnit.MILLISECONDS));
+    clock.advance(operationsPeriod);
     tromboneHCD.tell(GetAxisUpdate, self());
     tromboneHCD.tell(GetAxisUpdate, self());
     tromboneHCD.tell(GetAxisUpdate, self());
@@ -578,10 +611,12 @@ public class DiagPublisherTests extends JavaTestKit {
     dp.tell(new DiagnosticState(), self());
 
     // This should cause an event to be generated and received
-    // This should cause 4 published events since skip count is 2 in diag state
+    // This should cause 2 published events, the first of each pair, since the pairs are more than a diagnostic
+    // sample period apart
     tromboneHCD.tell(GetAxisUpdate, self());
     tromboneHCD.tell(GetAxisUpdate, self());
 
+    expectNoMsg(duration(diagnosticPeriod.toMillis() + 100 + " milliseconds"));
     tromboneHCD.tell(GetAxisUpdate, self());
     tromboneHCD.tell(GetAxisUpdate, self());
 
@@ -593,7 +628,7 @@ public class DiagPublisherTests extends JavaTestKit {
     resultSubscriber.tell(new TestSubscriber.GetStatusResults(), self());
     // Check the events received through the Event Service
     TestSubscriber.StatusResults result = expectMsgClass(TestSubscriber.StatusResults.class);
-    assertEquals(result.msgs.size(), 2); // because of 4 messages
+    assertEquals(result.msgs.size(), 2); // because of 2 sample periods
     //info("result: " + result)
 
     // Now check for stats events
@@ -611,4 +646,71 @@ public class DiagPublisherTests extends JavaTestKit {
 
     cleanup(tromboneHCD, dp);
   }
+
+  /**
+   * Test Description: This test sends axis states to the DiagPublisher directly, to show that a change of the axis state or a limit
+   * is published at once, whatever the sample rate, while position changes alone are sampled
+   */
+  @Test
+  public void test10() {
+    // should publish state and limit transitions immediately
+    TestProbe fakePublisher = new TestProbe(system);
+    VirtualClock clock = new VirtualClock();
+    ActorRef dp = newDiagPublisher(Optional.empty(), Optional.of(fakePublisher.ref()), clock);
+    AxisStateEncoder encoder = new AxisStateEncoder(TromboneHCD.tromboneAxisName);
+
+    dp.tell(encoder.encode(new AxisUpdate(TromboneHCD.tromboneAxisName, AXIS_IDLE, 300, false, false, false)), self());
+    fakePublisher.expectMsgClass(AxisStateUpdate.class);
+    // Position only, sampled
+    dp.tell(encoder.encode(new AxisUpdate(TromboneHCD.tromboneAxisName, AXIS_IDLE, 310, false, false, false)), self());
+    fakePublisher.expectNoMsg(FiniteDuration.apply(20, TimeUnit.MILLISECONDS));
+    // State changes
+    dp.tell(encoder.encode(new AxisUpdate(TromboneHCD.tromboneAxisName, AXIS_MOVING, 320, false, false, false)), self());
+    assertEquals(jvalue(fakePublisher.expectMsgClass(AxisStateUpdate.class).position).intValue(), 320);
+    dp.tell(encoder.encode(new AxisUpdate(TromboneHCD.tromboneAxisName, AXIS_MOVING, 330, false, false, false)), self());
+    fakePublisher.expectNoMsg(FiniteDuration.apply(20, TimeUnit.MILLISECONDS));
+    // Limit changes
+    dp.tell(encoder.encode(new AxisUpdate(TromboneHCD.tromboneAxisName, AXIS_MOVING, 100, true, false, false)), self());
+    fakePublisher.expectMsgClass(AxisStateUpdate.class);
+    dp.tell(encoder.encode(new AxisUpdate(TromboneHCD.tromboneAxisName, AXIS_IDLE, 100, true, false, false)), self());
+    fakePublisher.expectMsgClass(AxisStateUpdate.class);
+    // Unchanged until the sample period has passed
+    dp.tell(encoder.encode(new AxisUpdate(TromboneHCD.tromboneAxisName, AXIS_IDLE, 100, true, false, false)), self());
+    fakePublisher.expectNoMsg(FiniteDuration.apply(20, TimeUnit.MILLISECONDS));
+    clock.advance(operationsPeriod);
+    dp.tell(encoder.encode(new AxisUpdate(TromboneHCD.tromboneAxisName, AXIS_IDLE, 100, true, false, false)), self());
+    fakePublisher.expectMsgClass(AxisStateUpdate.class);
+
+    system.stop(dp);
+  }
+
+  /**
+   * Test Description: The sample period follows the configured rate, limited to the maximum rate, and a rate of 0 only publishes changes
+   */
+  @Test
+  public void test11() {
+    assertEquals(DiagPublisher.samplePeriodNanos(2.0, 20.0), 500000000L);
+    assertEquals(DiagPublisher.samplePeriodNanos(100.0, 20.0), 50000000L);
+    assertEquals(DiagPublisher.samplePeriodNanos(100.0, 0.0), 10000000L);
+    assertEquals(DiagPublisher.samplePeriodNanos(0.0, 20.0), Long.MAX_VALUE);
+  }
+
+  /**
+   * Test Description: When the publisher aggregates the telemetry, the DiagPublisher has the HCD send it every raw axis update
+   */
+  @Test
+  public void test12() {
+    TestProbe fakeHCD = new TestProbe(system);
+    TestProbe fakePublisher = new TestProbe(system);
+    AssemblyContext aggregateContext = new AssemblyContext(assemblyContext.info, assemblyContext.calculationConfig,
+      new AssemblyContext.TromboneControlConfig.Builder(8.0, 225, 90.0, 200, 1200)
+        .telemetryAggregatePeriodsS(Collections.singletonList(1)).build());
+    ActorRef dp = system.actorOf(DiagPublisher.props(aggregateContext, Optional.of(fakeHCD.ref()), Optional.of(fakePublisher.ref())));
+
+    fakeHCD.expectMsgEquals(JPublisherActor.Subscribe);
+    fakeHCD.expectMsgEquals(TromboneHCD.RawAxisUpdates.SubscribeRaw);
+    assertEquals(fakeHCD.lastSender(), fakePublisher.ref());
+
+    system.stop(dp);
+  }
 }
@@ -35,6 +35,7 @@ import static csw.util.config.Events.*;
 import static javacsw.util.config.JItems.jadd;
 import static javacsw.util.config.JItems.jset;
 import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
 
 @SuppressWarnings({"OptionalUsedAsFieldOrParameterType", "unused", "FieldCanBeLocal", "WeakerAccess"})
 public class EventPublishTests extends JavaTestKit {
@@ -381,5 +382,68 @@ public class EventPublishTests extends JavaTestKit {
     assertEquals(result.msgs, Arrays.stream(new TromboneState[]{s1, s2, s3, s4}).map(EventPublishTests::makeStatusEvent).collect(Collectors.toList()));
     cleanup(tp, resultSubscriber);
   }
+
+  /**
+   * Test Description: with change-only publishing, a TromboneState equal to the last one is not published again,
+   * even when it is a different instance.
+   */
+  @Test
+  public void test5() {
+    AssemblyContext ac = new AssemblyContext(AssemblyTestData.TestAssemblyInfo, AssemblyTestData.TestCalculationConfig,
+      new TromboneControlConfig.Builder(8.0, 225, 90.0, 200, 1200).publishHeartbeatMS(60000).build());
+    TromboneState s1 = new TromboneState(cmdItem(cmdReady), moveItem(moveIndexed), sodiumItem(false), nssItem(false));
+    TromboneState s1Again = new TromboneState(cmdItem(cmdReady), moveItem(moveIndexed), sodiumItem(false), nssItem(false));
+    TromboneState s2 = new TromboneState(cmdItem(cmdContinuous), moveItem(moveIndexed), sodiumItem(false), nssItem(false));
+
+    ActorRef tp = system.actorOf(TrombonePublisher.props(ac, Optional.empty(), Optional.of(telemetryService)));
+    ActorRef resultSubscriber = system.actorOf(TestSubscriber.props());
+    telemetryService.subscribe(resultSubscriber, false, assemblyContext.tromboneStateStatusEventPrefix);
+    expectNoMsg(duration("1 second")); // Wait for the connection
+
+    TestProbe fakeStateProducer = new TestProbe(system);
+    fakeStateProducer.send(tp, s1);
+    fakeStateProducer.send(tp, s1Again);
+    fakeStateProducer.send(tp, s2);
+    expectNoMsg(duration("1 second"));
+
+    resultSubscriber.tell(new TestSubscriber.GetResults(), self());
+    TestSubscriber.Results result = expectMsgClass(TestSubscriber.Results.class);
+    assertEquals(result.msgs, Arrays.asList(makeStatusEvent(s1), makeStatusEvent(s2)));
+
+    tp.tell(TrombonePublisher.GetChangeOnlyStats.instance, self());
+    LastValueCache.CacheStats stats = expectMsgClass(LastValueCache.CacheStats.class);
+    assertEquals(stats.suppressedCount, 1);
+    cleanup(tp, resultSubscriber);
+  }
+
+  /**
+   * Test Description: with change-only publishing, the last state is published again every heartbeat even when
+   * no update arrives.
+   */
+  @Test
+  public void test6() {
+    AssemblyContext ac = new AssemblyContext(AssemblyTestData.TestAssemblyInfo, AssemblyTestData.TestCalculationConfig,
+      new TromboneControlConfig.Builder(8.0, 225, 90.0, 200, 1200).publishHeartbeatMS(400).build());
+    TromboneState s1 = new TromboneState(cmdItem(cmdReady), moveItem(moveIndexed), sodiumItem(false), nssItem(false));
+
+    ActorRef tp = system.actorOf(TrombonePublisher.props(ac, Optional.empty(), Optional.of(telemetryService)));
+    ActorRef resultSubscriber = system.actorOf(TestSubscriber.props());
+    telemetryService.subscribe(resultSubscriber, false, assemblyContext.tromboneStateStatusEventPrefix);
+    expectNoMsg(duration("1 second")); // Wait for the connection
+
+    new TestProbe(system).send(tp, s1);
+    // The heartbeats are due at about 400 and 800 ms, checked every 100 ms
+    expectNoMsg(duration("1200 millis"));
+
+    resultSubscriber.tell(new TestSubscriber.GetResults(), self());
+    TestSubscriber.Results result = expectMsgClass(TestSubscriber.Results.class);
+    assertTrue(result.msgs.size() >= 2);
+    for (EventServiceEvent e : result.msgs) assertEquals(e, makeStatusEvent(s1));
+
+    tp.tell(TrombonePublisher.GetChangeOnlyStats.instance, self());
+    LastValueCache.CacheStats stats = expectMsgClass(LastValueCache.CacheStats.class);
+    assertTrue(stats.heartbeatCount >= result.msgs.size() - 1);
+    cleanup(tp, resultSubscriber);
+  }
 }
 
@@ -51,6 +51,8 @@ import static javacsw.util.config.JItems.jset;
 import static javacsw.util.config.JPublisherActor.Subscribe;
 import static javacsw.util.config.JUnitsOfMeasure.*;
 import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertTrue;
 
 @SuppressWarnings({"OptionalUsedAsFieldOrParameterType", "unused", "FieldCanBeLocal", "WeakerAccess"})
 public class FollowActorTests extends JavaTestKit {
@@ -266,6 +268,63 @@ public class FollowActorTests extends JavaTestKit {
     cleanup(Optional.empty(), cal);
   }
 
+  @Test
+  public void test5a() {
+    // should give the same results for the internal FollowUpdate as for UpdatedEventData
+    TestActorRef<FollowActor> cal = newFollower(setNssInUse(false), fakeTC.ref(), fakePub.ref(), fakeEng.ref());
+
+    cal.tell(new UpdatedEventData(za(20.0), fe(8.0), Events.getEventTime()), self());
+    GoToStagePosition pos1 = fakeTC.expectMsgClass(GoToStagePosition.class);
+    AOESWUpdate ao1 = fakePub.expectMsgClass(AOESWUpdate.class);
+    EngrUpdate eng1 = fakeEng.expectMsgClass(EngrUpdate.class);
+
+    cal.tell(new FollowActor.FollowUpdate(20.0, 8.0, System.nanoTime()), self());
+    assertEquals(fakeTC.expectMsgClass(GoToStagePosition.class), pos1);
+    assertEquals(fakePub.expectMsgClass(AOESWUpdate.class), ao1);
+    assertEquals(fakeEng.expectMsgClass(EngrUpdate.class), eng1);
+
+    // Out of range values are ignored in the same way
+    cal.tell(new FollowActor.FollowUpdate(-10.0, 0.0, System.nanoTime()), self());
+    fakeTC.expectNoMsg(duration("100 milli"));
+    cleanup(Optional.empty(), cal);
+  }
+
+  @Test
+  public void test5b() {
+    // should only process the latest sample left in its input slot
+    FollowInputSlot input = new FollowInputSlot();
+    FollowLatency latency = new FollowLatency();
+    DoubleItem initialElevation = iElevation(assemblyContext.calculationConfig.defaultInitialElevation);
+    TestActorRef<FollowActor> cal = TestActorRef.create(system, FollowActor.props(assemblyContext, initialElevation,
+      setNssInUse(false), Optional.of(fakeTC.ref()), Optional.of(fakePub.ref()), Optional.of(fakeEng.ref()), Optional.of(input),
+      Optional.of(latency)));
+
+    // Three samples arrive before the follow actor gets to run, only the first one needs a wake up message
+    long now = System.nanoTime();
+    assertTrue(input.offer(new FollowActor.FollowUpdate(10.0, 0.0, now)));
+    assertFalse(input.offer(new FollowActor.FollowUpdate(20.0, 0.0, now)));
+    assertFalse(input.offer(new FollowActor.FollowUpdate(30.0, 4.0, now)));
+    cal.tell(FollowActor.FollowInputReady.instance, self());
+
+    EngrUpdate eng = fakeEng.expectMsgClass(EngrUpdate.class);
+    assertEquals(eng.zenithAngle, 30.0);
+    assertEquals(eng.focusError, 4.0);
+    // The position carries the sample time along for the latency histograms
+    GoToStagePosition position = fakeTC.expectMsgClass(GoToStagePosition.class);
+    assertEquals(position.sampleNanos, now);
+    assertTrue(position.computeNanos >= now);
+    fakeTC.expectNoMsg(duration("100 milli"));
+    assertEquals(latency.stats().stages.get(FollowLatency.subscriberToCompute).count, 1);
+
+    cal.tell(FollowActor.GetFollowInputStats.instance, self());
+    FollowInputSlot.FollowInputStats stats = expectMsgClass(FollowInputSlot.FollowInputStats.class);
+    assertEquals(stats.offeredCount, 3);
+    assertEquals(stats.conflatedCount, 2);
+    assertEquals(stats.processedCount, 1);
+    assertTrue(stats.maxAgeNanos >= 0);
+    cleanup(Optional.empty(), cal);
+  }
+
   /*
    * Test Description: This test provides simulated UpdatedEventData events to the FollowActor and then tests that the
    * FollowActor sends the expected messages out including:
@@ -12,6 +12,9 @@ import akka.testkit.TestProbe;
 import akka.util.Timeout;
 import csw.examples.vsliceJava.TestEnv;
 import csw.examples.vsliceJava.hcd.TromboneHCD;
+import csw.examples.vsliceJava.shared.LatencyHistogram;
+import csw.examples.vsliceJava.shared.VirtualClock;
+import csw.services.ccs.HcdController.Submit;
 import csw.services.loc.LocationService;
 import csw.services.pkg.Component;
 import csw.services.pkg.Supervisor;
@@ -19,6 +22,7 @@ import csw.util.config.BooleanItem;
 import csw.util.config.DoubleItem;
 import csw.util.config.Events;
 import csw.util.config.JavaHelpers;
+import javacsw.services.ccs.JHcdController;
 import javacsw.services.events.IEventService;
 import javacsw.services.events.ITelemetryService;
 import javacsw.services.pkg.JComponent;
@@ -41,6 +45,7 @@ import static javacsw.services.loc.JConnectionType.AkkaType;
 import static javacsw.services.pkg.JComponent.DoNotRegister;
 import static javacsw.services.pkg.JSupervisor.HaltComponent;
 import static javacsw.services.pkg.JSupervisor.LifecycleRunning;
+import static javacsw.util.config.JConfigDSL.cs;
 import static javacsw.util.config.JItems.jadd;
 import static javacsw.util.config.JItems.jset;
 import static javacsw.util.config.JPublisherActor.Subscribe;
@@ -609,4 +614,103 @@ public class FollowCommandTests extends JavaTestKit {
     cleanup(Optional.of(tromboneHCD), fc, eventPublisher);
   }
 
+  /**
+   * Test Description: In the fused follow mode, one actor takes the focus error event to a Submit to the HCD.
+   */
+  @Test
+  public void test4() {
+    // should submit positions to the HCD in the fused follow mode
+    AssemblyContext fusedContext = new AssemblyContext(TestAssemblyInfo, TestCalculationConfig,
+      new TromboneControlConfig.Builder(8.0, 225, 90.0, 200, 1200).fusedFollow(true).build());
+    TestProbe fakeTromboneHCD = new TestProbe(system);
+    ActorRef fc = system.actorOf(FollowCommand.props(fusedContext, initialElevation, setNssInUse(false),
+      Optional.of(fakeTromboneHCD.ref()), Optional.empty(), eventService));
+    expectNoMsg(duration("200 milli")); // give the new actor time to subscribe before any test publishing...
+
+    // The zenith angle starts at 0.0
+    double testFE = 10.0;
+    eventService.publish(new SystemEvent(focusErrorPrefix).add(fe(testFE)));
+    double totalRD = Algorithms.focusZenithAngleToRangeDistance(calculationConfig, calculationConfig.defaultInitialElevation, testFE, 0.0);
+    int expectedEnc = Algorithms.stagePositionToEncoder(controlConfig, rangeDistanceToStagePosition(totalRD));
+    fakeTromboneHCD.expectMsgEquals(new Submit(positionSC(expectedEnc)));
+
+    // Engineering updates go to the same actor
+    fc.tell(new FollowCommand.UpdateZAandFE(za(30.0), fe(testFE)), self());
+    totalRD = Algorithms.focusZenithAngleToRangeDistance(calculationConfig, calculationConfig.defaultInitialElevation, testFE, 30.0);
+    expectedEnc = Algorithms.stagePositionToEncoder(controlConfig, rangeDistanceToStagePosition(totalRD));
+    fakeTromboneHCD.expectMsgEquals(new Submit(positionSC(expectedEnc)));
+
+    fc.tell(FollowCommand.GetFollowLatency.instance, self());
+    FollowLatency.FollowLatencyStats stats = expectMsgClass(FollowLatency.FollowLatencyStats.class);
+    assertEquals(stats.stages.get(FollowLatency.subscriberToSubmit).count, 2);
+    assertEquals(stats.stages.get(FollowLatency.eventToSubscriber).count, 1);
+
+    cleanup(Optional.empty(), fc);
+  }
+
+  @Test
+  public void test5() {
+    // should command the HCD at a fixed rate in the closed loop follow mode
+    AssemblyContext closedLoopContext = new AssemblyContext(TestAssemblyInfo,
+      new TromboneCalculationConfig(95.0, .75, 20.0, -20.0, 4, 0, 8, 2, 20.0, 0.5, 0.0, 0.0), TestControlConfig);
+    VirtualClock clock = new VirtualClock();
+    TestProbe fakeTromboneHCD = new TestProbe(system);
+    TestActorRef<ClosedLoopFollowActor> cl = TestActorRef.create(system, ClosedLoopFollowActor.props(closedLoopContext, initialElevation,
+      setNssInUse(false), Optional.of(fakeTromboneHCD.ref()), Optional.empty(), eventService, Optional.empty(), Optional.of(clock)));
+    // Subscribes to the HCD for the axis position
+    fakeTromboneHCD.expectMsgEquals(JHcdController.Subscribe);
+
+    // Nothing is commanded before the first values arrive
+    clock.advance(java.time.Duration.ofMillis(50));
+    fakeTromboneHCD.expectNoMsg(duration("100 milli"));
+
+    // Until the HCD reports the axis position, the calculated position is commanded every period
+    cl.tell(new FollowCommand.UpdateZAandFE(za(30.0), fe(10.0)), self());
+    double totalRD = Algorithms.focusZenithAngleToRangeDistance(calculationConfig, calculationConfig.defaultInitialElevation, 10.0, 30.0);
+    int expectedEnc = Algorithms.stagePositionToEncoder(controlConfig, rangeDistanceToStagePosition(totalRD));
+    clock.advance(java.time.Duration.ofMillis(50));
+    fakeTromboneHCD.expectMsgEquals(new Submit(positionSC(expectedEnc)));
+    clock.advance(java.time.Duration.ofMillis(50));
+    fakeTromboneHCD.expectMsgEquals(new Submit(positionSC(expectedEnc)));
+
+    // With Kp = 0.5, the stage is commanded half way from the reported position to the calculated one
+    cl.tell(cs(axisStatePrefix, jset(positionKey, expectedEnc - 100)), self());
+    clock.advance(java.time.Duration.ofMillis(50));
+    fakeTromboneHCD.expectMsgEquals(new Submit(positionSC(expectedEnc - 50)));
+
+    cl.tell(TromboneControl.GetSetpointStats.instance, self());
+    TromboneControl.SetpointStats stats = expectMsgClass(TromboneControl.SetpointStats.class);
+    assertEquals(stats.sentCount, 3);
+
+    cleanup(Optional.empty(), cl);
+  }
+
+  /**
+   * Test Description: The published follow loop latency includes the move latency reported by the HCD.
+   */
+  @Test
+  public void test6() {
+    // should ask the HCD for its move latency before publishing the follow loop latency
+    AssemblyContext latencyContext = new AssemblyContext(TestAssemblyInfo, TestCalculationConfig,
+      new TromboneControlConfig.Builder(8.0, 225, 90.0, 200, 1200).fusedFollow(true).latencyPublishPeriodMS(200).build());
+    TestProbe fakeTromboneHCD = new TestProbe(system);
+    TestProbe fakePublisher = new TestProbe(system);
+    ActorRef fc = system.actorOf(FollowCommand.props(latencyContext, initialElevation, setNssInUse(false),
+      Optional.of(fakeTromboneHCD.ref()), Optional.of(fakePublisher.ref()), eventService));
+
+    fakeTromboneHCD.expectMsgEquals(duration("1 second"), TromboneEngineering.GetMoveLatency);
+    LatencyHistogram.Summary moveLatency = new LatencyHistogram.Summary(1, 2000000, 2000000, 2000000, 2000000, 2000000, 2000000);
+    fakeTromboneHCD.reply(moveLatency);
+
+    TrombonePublisher.FollowLatencyUpdate update = fakePublisher.expectMsgClass(TrombonePublisher.FollowLatencyUpdate.class);
+    assertEquals(update.stats.stages.get(FollowLatency.setpointToAxis), moveLatency);
+    assertEquals(update.stats.stages.get(FollowLatency.subscriberToSubmit).count, 0);
+
+    // The last HCD value is also in the engineering reply
+    fc.tell(FollowCommand.GetFollowLatency.instance, self());
+    FollowLatency.FollowLatencyStats stats = expectMsgClass(FollowLatency.FollowLatencyStats.class);
+    assertEquals(stats.stages.get(FollowLatency.setpointToAxis), moveLatency);
+
+    cleanup(Optional.empty(), fc);
+  }
 }
@@ -0,0 +1,51 @@
+package csw.examples.vsliceJava.assembly;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the closed loop follow controller without actors
+ */
+public class FollowControllerTests {
+
+  @Test
+  public void shouldCommandTheTargetWithUnitProportionalGain() {
+    FollowController controller = new FollowController(1.0, 0.0, 0.0, 201, 1199);
+    assertEquals(controller.update(500, 300, 0.01), 500);
+    assertEquals(controller.update(500, 450, 0.01), 500);
+    // Limited to the encoder limits
+    assertEquals(controller.update(1500, 450, 0.01), 1199);
+    assertEquals(controller.update(100, 450, 0.01), 201);
+  }
+
+  @Test
+  public void shouldIntegrateASteadyError() {
+    // The stage stops 10 counts short, the integral term makes up for it
+    FollowController controller = new FollowController(0.5, 10.0, 0.0, 201, 1199);
+    assertEquals(controller.update(500, 490, 0.1), 505);
+    assertEquals(controller.update(500, 490, 0.1), 515);
+    assertEquals(controller.update(500, 490, 0.1), 525);
+
+    controller.reset();
+    assertEquals(controller.update(500, 490, 0.1), 505);
+  }
+
+  @Test
+  public void shouldNotWindUpAtALimit() {
+    FollowController controller = new FollowController(1.0, 10.0, 0.0, 201, 1199);
+    // While the output is held at the limit, the error is not integrated
+    for (int i = 0; i < 10; i++) assertEquals(controller.update(1300, 1199, 0.1), 1199);
+    // So the output follows the target as soon as it is within the limits again
+    assertEquals(controller.update(1000, 1000, 0.1), 1000);
+  }
+
+  @Test
+  public void shouldDampWithTheDerivative() {
+    FollowController controller = new FollowController(1.0, 0.0, 0.1, 201, 1199);
+    // No derivative on the first step
+    assertEquals(controller.update(500, 400, 0.1), 500);
+    // The error went from 100 to 50 in 0.1 s, so the derivative term is 0.1 * -500
+    assertEquals(controller.update(500, 450, 0.1), 450);
+  }
+}
@@ -0,0 +1,122 @@
+package csw.examples.vsliceJava.assembly;
+
+import akka.actor.ActorSystem;
+import akka.testkit.JavaTestKit;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static csw.examples.vsliceJava.assembly.AssemblyContext.*;
+import static csw.examples.vsliceJava.assembly.AssemblyTestData.TestAssemblyContext;
+import static csw.examples.vsliceJava.assembly.FollowEventRecorder.Record;
+import static csw.examples.vsliceJava.assembly.FollowEventReplayer.ReplayReport;
+import static csw.util.config.Events.SystemEvent;
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertTrue;
+
+/**
+ * Tests of the follow event recording and replay
+ */
+public class FollowEventReplayTests extends JavaTestKit {
+  private static ActorSystem system;
+
+  public FollowEventReplayTests() {
+    super(system);
+  }
+
+  @BeforeClass
+  public static void setup() {
+    system = ActorSystem.create("FollowEventReplayTests");
+  }
+
+  @AfterClass
+  public static void teardown() {
+    JavaTestKit.shutdownActorSystem(system);
+    system = null;
+  }
+
+  @Test
+  public void shouldRecordAndReadEvents() throws Exception {
+    File file = File.createTempFile("followEvents", ".bin");
+    file.deleteOnExit();
+    // An empty file gets the header
+    try (FollowEventRecorder recorder = new FollowEventRecorder(file)) {
+      recorder.record(new SystemEvent(zenithAnglePrefix).add(za(30.0)));
+      recorder.record(new SystemEvent(focusErrorPrefix).add(fe(-5.0)));
+      // Other events are not recorded
+      recorder.record(new SystemEvent("TCS.other").add(za(1.0)));
+      assertEquals(recorder.count(), 2);
+    }
+    // Records are appended to an existing file
+    try (FollowEventRecorder recorder = new FollowEventRecorder(file)) {
+      recorder.record(FollowEventRecorder.focusErrorKind, 123456789L, 2.5);
+    }
+    // A partial record at the end is ignored
+    try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file, true))) {
+      out.writeByte(FollowEventRecorder.zenithAngleKind);
+      out.writeInt(42);
+    }
+
+    List<Record> records = FollowEventRecorder.read(file);
+    assertEquals(records.size(), 3);
+    assertEquals(records.get(0).kind, FollowEventRecorder.zenithAngleKind);
+    assertEquals(records.get(0).value, 30.0);
+    // The event time is kept
+    assertTrue(records.get(0).timeNanos > 0);
+    assertEquals(records.get(1).kind, FollowEventRecorder.focusErrorKind);
+    assertEquals(records.get(1).value, -5.0);
+    assertEquals(records.get(2), new Record(FollowEventRecorder.focusErrorKind, 123456789L, 2.5));
+
+    // The streaming reader gives the same records
+    List<Record> streamed = new ArrayList<>();
+    try (FollowEventRecorder.RecordReader reader = FollowEventRecorder.open(file)) {
+      while (reader.hasNext()) streamed.add(reader.next());
+      assertFalse(reader.hasNext());
+    }
+    assertEquals(streamed, records);
+  }
+
+  // A zenith angle then 20 focus errors, 10 ms apart
+  private List<Record> testRecords() {
+    List<Record> records = new ArrayList<>();
+    long t = 1000000000L;
+    records.add(new Record(FollowEventRecorder.zenithAngleKind, t, 30.0));
+    for (int i = 0; i < 20; i++) {
+      t += 10000000L;
+      records.add(new Record(FollowEventRecorder.focusErrorKind, t, i - 10.0));
+    }
+    return records;
+  }
+
+  @Test
+  public void shouldReplayThroughTheSubscriber() {
+    ReplayReport report = FollowEventReplayer.replay(system, TestAssemblyContext, testRecords().iterator(), Double.POSITIVE_INFINITY,
+      FollowEventReplayer.Target.subscriber);
+    assertEquals(report.eventCount, 21);
+    // Samples may be conflated in the FollowInputSlot, but the last one always gets through
+    assertTrue(report.submitCount >= 1 && report.submitCount <= 21);
+    assertEquals(report.latency.stages.get(FollowLatency.eventToSubscriber).count, 21);
+    assertEquals(report.latency.stages.get(FollowLatency.subscriberToSubmit).count, report.submitCount);
+    assertTrue(report.eventsPerSecond() > 0.0);
+  }
+
+  @Test
+  public void shouldReplayToTheFollowActorAtScaledSpeed() {
+    // The 200 ms recording takes at least 20 ms at 10 times the speed
+    ReplayReport report = FollowEventReplayer.replay(system, TestAssemblyContext, testRecords().iterator(), 10.0,
+      FollowEventReplayer.Target.follow);
+    assertEquals(report.eventCount, 21);
+    assertEquals(report.recordedNanos, 200000000L);
+    assertTrue(report.elapsedNanos >= 20000000L);
+    // Every update is calculated and, with the setpoint filter off, submitted
+    assertEquals(report.submitCount, 21);
+    assertEquals(report.latency.stages.get(FollowLatency.computeToSubmit).count, 21);
+  }
+}
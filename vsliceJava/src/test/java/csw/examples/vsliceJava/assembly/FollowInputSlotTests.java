@@ -0,0 +1,42 @@
+package csw.examples.vsliceJava.assembly;
+
+import org.junit.Test;
+
+import static csw.examples.vsliceJava.assembly.FollowActor.FollowUpdate;
+import static csw.examples.vsliceJava.assembly.FollowInputSlot.FollowInputStats;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the follow input handoff without actors
+ */
+public class FollowInputSlotTests {
+
+  @Test
+  public void shouldKeepOnlyTheLatestSample() {
+    FollowInputSlot slot = new FollowInputSlot();
+    assertNull(slot.take(0));
+
+    // Only the first offer into an empty slot needs a wake up
+    assertTrue(slot.offer(new FollowUpdate(1.0, 0.0, 100)));
+    assertFalse(slot.offer(new FollowUpdate(2.0, 0.0, 200)));
+    assertFalse(slot.offer(new FollowUpdate(3.0, 1.0, 300)));
+
+    FollowUpdate u = slot.take(1000);
+    assertEquals(u.zenithAngle, 3.0, 0.0);
+    assertEquals(u.focusError, 1.0, 0.0);
+    // A second wake up finds nothing to do
+    assertNull(slot.take(1100));
+
+    // Empty again, so the next offer needs a wake up
+    assertTrue(slot.offer(new FollowUpdate(4.0, 0.0, 2000)));
+    assertEquals(slot.take(2100).zenithAngle, 4.0, 0.0);
+
+    FollowInputStats stats = slot.stats();
+    assertEquals(stats.offeredCount, 4);
+    assertEquals(stats.conflatedCount, 2);
+    assertEquals(stats.processedCount, 2);
+    assertEquals(stats.maxAgeNanos, 700);
+    assertEquals(stats.lastAgeNanos, 100);
+    assertEquals(stats.meanAgeNanos(), 400);
+  }
+}
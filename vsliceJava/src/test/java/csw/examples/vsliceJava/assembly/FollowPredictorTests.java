@@ -0,0 +1,70 @@
+package csw.examples.vsliceJava.assembly;
+
+import org.junit.Test;
+
+import static csw.examples.vsliceJava.assembly.AssemblyContext.TromboneCalculationConfig;
+import static csw.examples.vsliceJava.assembly.FollowPredictor.Prediction;
+import static csw.examples.vsliceJava.assembly.FollowPredictor.PredictionStats;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the zenith angle and focus error prediction without actors
+ */
+public class FollowPredictorTests {
+  private static final long ms = 1000000L;
+
+  // Same as the test calculation config, predicting 200 ms ahead from the last 8 samples with a parabola
+  private final TromboneCalculationConfig calculationConfig = new TromboneCalculationConfig(95.0, .75, 20.0, -20.0, 4, 200, 8, 2);
+
+  @Test
+  public void shouldExtrapolateATrajectory() {
+    FollowPredictor predictor = new FollowPredictor(calculationConfig);
+
+    // With one sample, the prediction is the sample
+    Prediction p = predictor.update(0, 0, 10.0, 1.0);
+    assertEquals(p.zenithAngle, 10.0, 1e-9);
+    assertEquals(p.focusError, 1.0, 1e-9);
+    assertEquals(p.targetNanos, 200 * ms);
+
+    // The zenith angle increases by 1 degree a second, the focus error follows a parabola, a sample every 50 ms
+    for (int i = 1; i <= 20; i++) {
+      double t = i * 0.05;
+      p = predictor.update(i * 50 * ms, i * 50 * ms, 10.0 + t, 1.0 + t * t);
+    }
+    assertEquals(p.zenithAngle, 10.0 + 1.2, 1e-6);
+    assertEquals(p.focusError, 1.0 + 1.2 * 1.2, 1e-6);
+
+    // Only the first prediction, from a single sample, missed the zenith angle ramp (by 200 ms at 1 degree a second)
+    PredictionStats stats = predictor.stats();
+    assertTrue(stats.count > 0);
+    assertEquals(stats.zenithAngleMaxError, 0.2, 1e-6);
+    assertEquals(stats.zenithAngleRmsError, 0.2 / Math.sqrt(stats.count), 1e-6);
+  }
+
+  @Test
+  public void shouldLimitAndTrackErrors() {
+    FollowPredictor predictor = new FollowPredictor(calculationConfig);
+
+    // A steep focus error ramp is not extrapolated beyond the focus limit
+    Prediction p = null;
+    for (int i = 0; i < 8; i++) p = predictor.update(i * 100 * ms, i * 100 * ms, 45.0, 5.0 * i - 20.0);
+    assertEquals(p.focusError, calculationConfig.upperFocusLimit, 1e-9);
+
+    // The ramp stops, so the predictions made while it was rising were wrong
+    for (int i = 8; i < 12; i++) predictor.update(i * 100 * ms, i * 100 * ms, 45.0, 15.0);
+    PredictionStats stats = predictor.stats();
+    assertTrue(stats.count > 0);
+    assertTrue(stats.focusErrorMaxError > 1.0);
+    assertTrue(stats.focusErrorRmsError <= stats.focusErrorMaxError);
+    assertEquals(stats.zenithAngleMaxError, 0.0, 1e-9);
+  }
+
+  @Test
+  public void shouldReuseThePrediction() {
+    FollowPredictor predictor = new FollowPredictor(calculationConfig);
+    Prediction first = predictor.update(0, 0, 10.0, 1.0);
+    Prediction second = predictor.update(100 * ms, 100 * ms, 11.0, 1.0);
+    assertSame(first, second);
+    assertEquals(second.targetNanos, 100 * ms + calculationConfig.predictionLeadTimeMS * ms);
+  }
+}
@@ -0,0 +1,71 @@
+package csw.examples.vsliceJava.assembly;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static csw.examples.vsliceJava.assembly.LastValueCache.CacheStats;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the change-only publishing cache
+ */
+public class LastValueCacheTests {
+  private static final long second = 1000000000L;
+
+  @Test
+  public void shouldSuppressUnchangedPayloads() {
+    LastValueCache<String> cache = new LastValueCache<>(10 * second);
+    assertTrue(cache.shouldPublish("stats.tromboneAxis", Arrays.asList(1, 2, 3), 0));
+    assertFalse(cache.shouldPublish("stats.tromboneAxis", Arrays.asList(1, 2, 3), second));
+    // Another key has its own last value
+    assertTrue(cache.shouldPublish("stats.otherAxis", Arrays.asList(1, 2, 3), second));
+    // A change is published at once
+    assertTrue(cache.shouldPublish("stats.tromboneAxis", Arrays.asList(1, 2, 4), 2 * second));
+    assertFalse(cache.shouldPublish("stats.tromboneAxis", Arrays.asList(1, 2, 4), 3 * second));
+
+    CacheStats stats = cache.stats();
+    assertEquals(stats.publishedCount, 3);
+    assertEquals(stats.suppressedCount, 2);
+    assertEquals(stats.heartbeatCount, 0);
+  }
+
+  @Test
+  public void shouldPublishHeartbeats() {
+    LastValueCache<String> cache = new LastValueCache<>(10 * second);
+    assertTrue(cache.shouldPublish("state", "idle", 0));
+    assertFalse(cache.shouldPublish("state", "idle", 9 * second));
+    assertTrue(cache.shouldPublish("state", "idle", 10 * second));
+    // The heartbeat is counted from the last publish
+    assertFalse(cache.shouldPublish("state", "idle", 19 * second));
+    assertTrue(cache.shouldPublish("state", "idle", 20 * second));
+    assertEquals(cache.stats().heartbeatCount, 2);
+
+    // After clear() the next payload is published
+    cache.clear();
+    assertTrue(cache.shouldPublish("state", "idle", 21 * second));
+    assertEquals(cache.stats().publishedCount, 4);
+  }
+
+  @Test
+  public void shouldFindDueHeartbeatsWithoutUpdates() {
+    LastValueCache<String> cache = new LastValueCache<>(10 * second);
+    assertTrue(cache.shouldPublish("state", "idle", "state event", 0));
+    assertTrue(cache.shouldPublish("axisState.tromboneAxis", 100, "axis event", 5 * second));
+    // Keys without an event are never due
+    assertTrue(cache.shouldPublish("axisStats.tromboneAxis", 1, 0));
+
+    assertTrue(cache.dueHeartbeats(9 * second).isEmpty());
+    assertEquals(cache.dueHeartbeats(10 * second), Collections.singletonList("state event"));
+    // The heartbeat counts as a publish, so the next one is due a heartbeat later
+    assertTrue(cache.dueHeartbeats(14 * second).isEmpty());
+    assertEquals(cache.dueHeartbeats(15 * second), Collections.singletonList("axis event"));
+    assertFalse(cache.shouldPublish("state", "idle", "state event", 19 * second));
+    assertEquals(cache.dueHeartbeats(20 * second), Collections.singletonList("state event"));
+
+    CacheStats stats = cache.stats();
+    assertEquals(stats.heartbeatCount, 3);
+    assertEquals(stats.publishedCount, 6);
+  }
+}
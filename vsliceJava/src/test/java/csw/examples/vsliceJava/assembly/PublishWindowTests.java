@@ -0,0 +1,114 @@
+package csw.examples.vsliceJava.assembly;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import static csw.examples.vsliceJava.assembly.PublishWindow.Policy;
+import static csw.examples.vsliceJava.assembly.PublishWindow.Settings;
+import static csw.examples.vsliceJava.assembly.PublishWindow.WindowStats;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the publish in-flight windows without the event service
+ */
+public class PublishWindowTests {
+
+  // Offers the publishes 1 to n, returning those that could start at once
+  private List<Integer> offer(PublishWindow window, List<Supplier<CompletableFuture<?>>> publishes, int n) {
+    List<Integer> started = new ArrayList<>();
+    for (int i = 1; i <= n; i++) {
+      int id = i;
+      Supplier<CompletableFuture<?>> publish = () -> CompletableFuture.completedFuture(id);
+      publishes.add(publish);
+      if (window.offer(publish)) started.add(id);
+    }
+    return started;
+  }
+
+  // Completes publishes until none are waiting, returning the ids of those started
+  private List<Object> drain(PublishWindow window) {
+    List<Object> started = new ArrayList<>();
+    Supplier<CompletableFuture<?>> next;
+    while ((next = window.completed()) != null) started.add(next.get().join());
+    return started;
+  }
+
+  @Test
+  public void shouldKeepAllWithBlock() {
+    PublishWindow window = new PublishWindow("sodiumLayer", new Settings(2, 0, Policy.block));
+    List<Supplier<CompletableFuture<?>>> publishes = new ArrayList<>();
+    assertEquals(offer(window, publishes, 10).size(), 2);
+    WindowStats stats = window.stats();
+    assertEquals(stats.inFlight, 2);
+    assertEquals(stats.waiting, 8);
+    assertEquals(stats.droppedCount, 0);
+
+    // The waiting publishes start in order as earlier ones complete, never more than 2 at once
+    List<Object> started = drain(window);
+    assertEquals(started.size(), 8);
+    for (int i = 0; i < 8; i++) assertEquals(started.get(i), i + 3);
+    assertEquals(window.completed(), null);
+
+    stats = window.stats();
+    assertEquals(stats.inFlight, 0);
+    assertEquals(stats.startedCount, 10);
+    assertEquals(stats.maxInFlight, 2);
+    assertEquals(stats.maxWaiting, 8);
+  }
+
+  @Test
+  public void shouldLimitBlockedPublishesWhenTheServiceNeverCompletes() {
+    PublishWindow window = new PublishWindow("sodiumLayer", new Settings(2, 0, Policy.block, 5));
+    // The service never completes a publish, so completed() is never called
+    int started = 0;
+    for (int i = 0; i < 100; i++) {
+      if (window.offer(CompletableFuture::new)) started++;
+    }
+    assertEquals(started, 2);
+    assertEquals(window.overflowCount(), 93);
+
+    // The waiting queue stops at the hard limit and nothing waiting is dropped
+    WindowStats stats = window.stats();
+    assertEquals(stats.inFlight, 2);
+    assertEquals(stats.waiting, 5);
+    assertEquals(stats.maxWaiting, 5);
+    assertEquals(stats.droppedCount, 0);
+    assertEquals(stats.overflowCount, 93);
+  }
+
+  @Test
+  public void shouldDropOldest() {
+    PublishWindow window = new PublishWindow("engr", new Settings(1, 3, Policy.dropOldest));
+    List<Supplier<CompletableFuture<?>>> publishes = new ArrayList<>();
+    assertEquals(offer(window, publishes, 6).size(), 1);
+    // 2 and 3 were dropped for 5 and 6
+    List<Object> started = drain(window);
+    assertEquals(started.size(), 3);
+    assertEquals(started.get(0), 4);
+    assertEquals(started.get(2), 6);
+
+    WindowStats stats = window.stats();
+    assertEquals(stats.droppedCount, 2);
+    assertEquals(stats.startedCount, 4);
+    assertEquals(stats.maxWaiting, 3);
+  }
+
+  @Test
+  public void shouldConflateToLatest() {
+    PublishWindow window = new PublishWindow("axisState", new Settings(1, 0, Policy.conflate));
+    List<Supplier<CompletableFuture<?>>> publishes = new ArrayList<>();
+    assertEquals(offer(window, publishes, 5).size(), 1);
+    List<Object> started = drain(window);
+    assertEquals(started.size(), 1);
+    assertEquals(started.get(0), 5);
+    assertEquals(window.stats().droppedCount, 3);
+
+    // With room in the window, a publish starts at once
+    assertTrue(window.offer(() -> CompletableFuture.completedFuture(6)));
+    assertEquals(window.stats().inFlight, 1);
+  }
+}
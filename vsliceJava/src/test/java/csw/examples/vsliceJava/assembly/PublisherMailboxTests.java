@@ -0,0 +1,112 @@
+package csw.examples.vsliceJava.assembly;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.japi.Creator;
+import akka.japi.pf.ReceiveBuilder;
+import akka.testkit.JavaTestKit;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static csw.examples.vsliceJava.assembly.AssemblyTestData.TestAssemblyContext;
+import static csw.examples.vsliceJava.assembly.TrombonePublisher.*;
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
+
+/**
+ * Tests of the TrombonePublisher priority lanes
+ */
+public class PublisherMailboxTests extends JavaTestKit {
+  private static ActorSystem system;
+
+  public PublisherMailboxTests() {
+    super(system);
+  }
+
+  @BeforeClass
+  public static void setup() {
+    system = ActorSystem.create("PublisherMailboxTests");
+  }
+
+  @AfterClass
+  public static void teardown() {
+    JavaTestKit.shutdownActorSystem(system);
+    system = null;
+  }
+
+  // Waits on a latch sent to it, then forwards every message to the replyTo actor in the order taken
+  private static class BlockingActor extends AbstractActor {
+    BlockingActor(ActorRef replyTo) {
+      receive(ReceiveBuilder.
+        match(CountDownLatch.class, t -> t.await(10, TimeUnit.SECONDS)).
+        matchAny(t -> replyTo.tell(t, self())).
+        build());
+    }
+
+    static Props props(ActorRef replyTo) {
+      return Props.create(new Creator<BlockingActor>() {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public BlockingActor create() throws Exception {
+          return new BlockingActor(replyTo);
+        }
+      }).withMailbox(TrombonePublisher.mailboxName);
+    }
+  }
+
+  @Test
+  public void shouldTakeAOUpdatesFirst() {
+    CountDownLatch latch = new CountDownLatch(1);
+    ActorRef a = system.actorOf(BlockingActor.props(getRef()));
+    // The queue fills in the request as it is queued
+    PublisherMailbox.QueueRequest request = new PublisherMailbox.QueueRequest();
+    a.tell(request, getRef());
+    expectMsgEquals(request);
+    PublisherMailbox.LaneQueue queue = request.queue().orElseThrow(AssertionError::new);
+    a.tell(latch, getRef());
+    // Wait for the actor to be blocked on the latch, then queue a burst of telemetry before the AO update
+    expectNoMsg(duration("100 millis"));
+    for (int i = 0; i < 5; i++) a.tell(new EngrUpdate(i, 0.0, 0.0), getRef());
+    a.tell(GetPublishWindowStats.instance, getRef());
+    a.tell(new AOESWUpdate(95.0, 100.0), getRef());
+
+    assertEquals(queue.depth(PublisherMailbox.aoLane), 1);
+    assertEquals(queue.depth(PublisherMailbox.controlLane), 1);
+    assertEquals(queue.depth(PublisherMailbox.telemetryLane), 5);
+
+    latch.countDown();
+    // The AO update first, then the control message, then the telemetry in the order sent
+    expectMsgEquals(new AOESWUpdate(95.0, 100.0));
+    expectMsgEquals(GetPublishWindowStats.instance);
+    for (int i = 0; i < 5; i++) expectMsgEquals(new EngrUpdate(i, 0.0, 0.0));
+
+    assertEquals(queue.depth(PublisherMailbox.telemetryLane), 0);
+    assertEquals(queue.maxDepth(PublisherMailbox.telemetryLane), 5);
+    assertEquals(queue.queueWait(PublisherMailbox.telemetryLane).count, 5);
+    system.stop(a);
+  }
+
+  @Test
+  public void shouldReportLaneStats() {
+    ActorRef publisher = system.actorOf(TrombonePublisher.props(TestAssemblyContext, Optional.empty(), Optional.empty()));
+    publisher.tell(new AOESWUpdate(95.0, 100.0), getRef());
+    publisher.tell(GetPublishLaneStats.instance, getRef());
+    PublishLaneStats stats = expectMsgClass(PublishLaneStats.class);
+    assertEquals(stats.lanes.size(), 3);
+    assertTrue(stats.lanes.containsKey("ao"));
+    // Both messages went through the mailbox
+    assertEquals(stats.lanes.get("ao").queueWait.count, 1);
+    assertEquals(stats.lanes.get("ao").depth, 0);
+    // Nothing was published without the event service
+    assertEquals(stats.lanes.get("ao").publishLatency.count, 0);
+    system.stop(publisher);
+  }
+}
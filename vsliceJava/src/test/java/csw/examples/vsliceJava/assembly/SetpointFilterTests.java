@@ -0,0 +1,62 @@
+package csw.examples.vsliceJava.assembly;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the stage setpoint filter without actors
+ */
+public class SetpointFilterTests {
+
+  private static final long ms = 1000000L;
+
+  @Test
+  public void shouldSuppressSetpointsWithinTheDeadband() {
+    SetpointFilter filter = new SetpointFilter(1, 500);
+    assertTrue(filter.accept(500, 0));
+    // Same value and a one count change are suppressed
+    assertFalse(filter.accept(500, 10 * ms));
+    assertFalse(filter.hasPending());
+    assertFalse(filter.accept(501, 20 * ms));
+    assertTrue(filter.hasPending());
+    // A bigger change is sent
+    assertTrue(filter.accept(503, 30 * ms));
+    assertFalse(filter.hasPending());
+    assertEquals(filter.sentCount(), 2);
+    assertEquals(filter.suppressedCount(), 2);
+  }
+
+  @Test
+  public void shouldResendAfterTheInterval() {
+    SetpointFilter filter = new SetpointFilter(1, 500);
+    assertTrue(filter.accept(500, 0));
+    assertFalse(filter.accept(501, 100 * ms));
+    assertEquals(filter.resendDelayNanos(100 * ms), 400 * ms);
+
+    // The pending value is sent when the timer fires
+    assertTrue(filter.hasPending());
+    assertEquals(filter.takePending(500 * ms), 501);
+    assertFalse(filter.hasPending());
+
+    // Or a new value within the deadband is sent once the interval has passed
+    assertTrue(filter.accept(502, 1000 * ms));
+    assertEquals(filter.sentCount(), 3);
+  }
+
+  @Test
+  public void shouldSendEverythingWhenOff() {
+    SetpointFilter filter = new SetpointFilter(0, 0);
+    assertTrue(filter.accept(500, 0));
+    assertTrue(filter.accept(500, 0));
+    assertEquals(filter.suppressedCount(), 0);
+  }
+
+  @Test
+  public void shouldSendAfterReset() {
+    SetpointFilter filter = new SetpointFilter(5, 500);
+    assertTrue(filter.accept(500, 0));
+    filter.reset();
+    assertTrue(filter.accept(500, ms));
+  }
+}
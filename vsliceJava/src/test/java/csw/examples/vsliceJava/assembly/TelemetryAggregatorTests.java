@@ -0,0 +1,67 @@
+package csw.examples.vsliceJava.assembly;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static csw.examples.vsliceJava.assembly.TelemetryAggregator.Aggregate;
+import static csw.examples.vsliceJava.assembly.TelemetryAggregator.FieldStats;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the multi-resolution telemetry aggregates
+ */
+public class TelemetryAggregatorTests {
+  private static final long second = 1000000000L;
+
+  @Test
+  public void shouldAggregateOverEachWindow() {
+    TelemetryAggregator aggregator = new TelemetryAggregator(Arrays.asList(1, 10), 0);
+    // 10 seconds of samples, two per second
+    for (int s = 0; s < 10; s++) {
+      aggregator.record("focusError", s);
+      aggregator.record("focusError", s + 0.5);
+      List<Aggregate> ended = aggregator.collect((s + 1) * second);
+      assertEquals(ended.get(0).periodSeconds, 1);
+      FieldStats fe = ended.get(0).fields.get("focusError");
+      assertEquals(fe.count(), 2);
+      assertEquals(fe.min(), s, 1e-9);
+      assertEquals(fe.max(), s + 0.5, 1e-9);
+      assertEquals(fe.mean(), s + 0.25, 1e-9);
+      assertEquals(fe.last(), s + 0.5, 1e-9);
+      // The 10 s window ends with the last second
+      assertEquals(ended.size(), s == 9 ? 2 : 1);
+    }
+
+    // The 10 s window has every sample
+    aggregator.record("axisPosition", 1.0);
+    aggregator.record("focusError", 100.0);
+    List<Aggregate> ended = aggregator.collect(20 * second);
+    assertEquals(ended.size(), 2);
+    Aggregate tenSeconds = ended.get(1);
+    assertEquals(tenSeconds.periodSeconds, 10);
+    assertEquals(tenSeconds.fields.get("focusError").count(), 1);
+    assertEquals(tenSeconds.fields.get("axisPosition").last(), 1.0, 1e-9);
+  }
+
+  @Test
+  public void shouldSkipEmptyAndLateWindows() {
+    TelemetryAggregator aggregator = new TelemetryAggregator(Arrays.asList(1, 60), 0);
+    // Not ended yet
+    aggregator.record("zenithAngle", 30.0);
+    assertTrue(aggregator.collect(second / 2).isEmpty());
+    assertEquals(aggregator.collect(second).size(), 1);
+    // A window without samples is not returned
+    assertTrue(aggregator.collect(2 * second).isEmpty());
+
+    // After a long stall the windows start again from now, rather than catching up one at a time
+    aggregator.record("zenithAngle", 31.0);
+    assertEquals(aggregator.collect(10 * second).size(), 1);
+    aggregator.record("zenithAngle", 32.0);
+    assertTrue(aggregator.collect(10 * second + second / 2).isEmpty());
+    List<Aggregate> ended = aggregator.collect(11 * second);
+    assertEquals(ended.size(), 1);
+    assertEquals(ended.get(0).fields.get("zenithAngle").last(), 32.0, 1e-9);
+  }
+}
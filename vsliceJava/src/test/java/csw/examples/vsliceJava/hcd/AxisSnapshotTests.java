@@ -0,0 +1,53 @@
+package csw.examples.vsliceJava.hcd;
+
+import org.junit.Test;
+
+import static csw.examples.vsliceJava.hcd.SingleAxisSimulator.AxisState.AXIS_ERROR;
+import static csw.examples.vsliceJava.hcd.SingleAxisSimulator.AxisState.AXIS_MOVING;
+import static csw.examples.vsliceJava.hcd.SingleAxisSimulator.AxisUpdate;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the packed axis state without actors
+ */
+public class AxisSnapshotTests {
+
+  @Test
+  public void shouldPackAndUnpackTheState() {
+    AxisSnapshot snapshot = new AxisSnapshot("test");
+    snapshot.setState(AXIS_MOVING, 1240, false, true, false);
+    long w = snapshot.stateWord();
+    assertEquals(AxisSnapshot.position(w), 1240);
+    assertEquals(AxisSnapshot.state(w), AXIS_MOVING);
+    assertFalse(AxisSnapshot.inLowLimit(w));
+    assertTrue(AxisSnapshot.inHighLimit(w));
+    assertFalse(AxisSnapshot.inHomed(w));
+    assertEquals(AxisSnapshot.sequence(w), 1);
+
+    // Negative positions and every flag
+    snapshot.setState(AXIS_ERROR, -110, true, false, true);
+    AxisUpdate upd = snapshot.latest();
+    assertEquals(upd.axisName, "test");
+    assertEquals(upd.current, -110);
+    assertEquals(upd.state, AXIS_ERROR);
+    assertTrue(upd.inLowLimit);
+    assertFalse(upd.inHighLimit);
+    assertTrue(upd.inHomed);
+    assertEquals(AxisSnapshot.sequence(snapshot.stateWord()), 2);
+  }
+
+  @Test
+  public void shouldCountStatistics() {
+    AxisSnapshot snapshot = new AxisSnapshot("test");
+    snapshot.countInit();
+    snapshot.countMove();
+    snapshot.countMove();
+    snapshot.countCancel();
+    SingleAxisSimulator.AxisStatistics stats = snapshot.statistics();
+    assertEquals(stats.initCount, 1);
+    assertEquals(stats.moveCount, 2);
+    assertEquals(stats.cancelCount, 1);
+    assertEquals(stats.successCount, 0);
+    assertEquals(snapshot.statsVersion(), 4);
+  }
+}
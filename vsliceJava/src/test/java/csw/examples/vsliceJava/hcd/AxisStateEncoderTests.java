@@ -0,0 +1,73 @@
+package csw.examples.vsliceJava.hcd;
+
+import org.junit.Test;
+
+import static csw.examples.vsliceJava.hcd.SingleAxisSimulator.AxisState.AXIS_IDLE;
+import static csw.examples.vsliceJava.hcd.SingleAxisSimulator.AxisState.AXIS_MOVING;
+import static csw.examples.vsliceJava.hcd.SingleAxisSimulator.AxisUpdate;
+import static csw.examples.vsliceJava.hcd.TromboneHCD.*;
+import static csw.util.config.StateVariable.CurrentState;
+import static javacsw.util.config.JItems.jitem;
+import static javacsw.util.config.JItems.jvalue;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of building axis state CurrentStates without actors
+ */
+@SuppressWarnings("WeakerAccess")
+public class AxisStateEncoderTests {
+
+  @Test
+  public void shouldEncodeTheFullState() {
+    AxisStateEncoder enc = new AxisStateEncoder(tromboneAxisName);
+    assertNull(enc.current());
+
+    CurrentState state = enc.encode(new AxisUpdate(tromboneAxisName, AXIS_MOVING, 500, false, true, false));
+    assertEquals(state.configKey(), axisStateCK);
+    assertEquals(jvalue(jitem(state, axisNameKey)), tromboneAxisName);
+    assertEquals(jvalue(jitem(state, stateKey)), TromboneHCD.AXIS_MOVING);
+    assertEquals((int) jvalue(jitem(state, positionKey)), 500);
+    assertEquals(jitem(state, positionKey).units(), positionUnits);
+    assertFalse(jvalue(jitem(state, inLowLimitKey)));
+    assertTrue(jvalue(jitem(state, inHighLimitKey)));
+    assertFalse(jvalue(jitem(state, inHomeKey)));
+    assertSame(enc.current(), state);
+  }
+
+  @Test
+  public void shouldReuseUnchangedItems() {
+    AxisStateEncoder enc = new AxisStateEncoder(tromboneAxisName);
+    CurrentState s1 = enc.encode(new AxisUpdate(tromboneAxisName, AXIS_MOVING, 500, false, false, false));
+
+    // Nothing changed, the same state comes back and there is no delta
+    assertSame(enc.encode(new AxisUpdate(tromboneAxisName, AXIS_MOVING, 500, false, false, false)), s1);
+    assertNull(enc.delta());
+
+    // Only the position changed
+    CurrentState s2 = enc.encode(new AxisUpdate(tromboneAxisName, AXIS_MOVING, 510, false, false, false));
+    assertNotSame(s2, s1);
+    assertSame(jitem(s2, stateKey), jitem(s1, stateKey));
+    assertSame(jitem(s2, inHomeKey), jitem(s1, inHomeKey));
+    assertNotSame(jitem(s2, positionKey), jitem(s1, positionKey));
+  }
+
+  @Test
+  public void shouldProduceDeltasWithOnlyChangedKeys() {
+    AxisStateEncoder enc = new AxisStateEncoder(tromboneAxisName);
+    enc.encode(new AxisUpdate(tromboneAxisName, AXIS_MOVING, 500, false, false, false));
+    // The first delta is the full state, apart from the name
+    CurrentState d1 = enc.delta();
+    assertTrue(d1.exists(stateKey));
+    assertTrue(d1.exists(positionKey));
+    assertTrue(d1.exists(inHomeKey));
+
+    enc.encode(new AxisUpdate(tromboneAxisName, AXIS_IDLE, 500, false, false, true));
+    CurrentState d2 = enc.delta();
+    assertEquals(d2.configKey(), axisStateCK);
+    assertTrue(d2.exists(stateKey));
+    assertTrue(d2.exists(inHomeKey));
+    assertFalse(d2.exists(positionKey));
+    assertFalse(d2.exists(inLowLimitKey));
+    assertEquals(jvalue(jitem(d2, stateKey)), TromboneHCD.AXIS_IDLE);
+  }
+}
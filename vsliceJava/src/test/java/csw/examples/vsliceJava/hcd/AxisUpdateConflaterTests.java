@@ -0,0 +1,67 @@
+package csw.examples.vsliceJava.hcd;
+
+import org.junit.Test;
+
+import static csw.examples.vsliceJava.hcd.SingleAxisSimulator.AxisState.AXIS_IDLE;
+import static csw.examples.vsliceJava.hcd.SingleAxisSimulator.AxisState.AXIS_MOVING;
+import static csw.examples.vsliceJava.hcd.SingleAxisSimulator.AxisUpdate;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the conflation of axis updates without actors
+ */
+@SuppressWarnings("WeakerAccess")
+public class AxisUpdateConflaterTests {
+
+  static final long ms = 1000000L;
+
+  AxisUpdate moving(int pos) {
+    return new AxisUpdate("test", AXIS_MOVING, pos, false, false, false);
+  }
+
+  @Test
+  public void shouldPublishEveryUpdateWithNoRateLimit() {
+    AxisUpdateConflater c = new AxisUpdateConflater(0);
+    for (int i = 0; i < 10; i++)
+      assertNotNull(c.offer(moving(i), 0));
+    assertEquals(c.conflatedCount, 0);
+    assertFalse(c.hasPending());
+  }
+
+  @Test
+  public void shouldKeepOnlyTheLatestValue() {
+    // 10 Hz, so one publish every 100 ms
+    AxisUpdateConflater c = new AxisUpdateConflater(10);
+    assertEquals(c.offer(moving(1), 0).current, 1);
+    assertNull(c.offer(moving(2), 10 * ms));
+    assertNull(c.offer(moving(3), 20 * ms));
+    assertTrue(c.hasPending());
+    assertEquals(c.delayNanos(20 * ms), 80 * ms);
+
+    AxisUpdate upd = c.flush(100 * ms);
+    assertEquals(upd.current, 3);
+    assertEquals(c.conflatedCount, 1);
+    assertNull(c.flush(110 * ms));
+
+    // Once the interval has passed an update goes straight out
+    assertEquals(c.offer(moving(4), 200 * ms).current, 4);
+  }
+
+  @Test
+  public void shouldNeverDropEdges() {
+    AxisUpdateConflater c = new AxisUpdateConflater(10);
+    assertNotNull(c.offer(new AxisUpdate("test", AXIS_IDLE, 350, false, false, false), 0));
+    // State change
+    assertNotNull(c.offer(moving(351), 1 * ms));
+    assertNull(c.offer(moving(352), 2 * ms));
+    // Limit flag change, published at once and replaces the pending update
+    AxisUpdate limit = c.offer(new AxisUpdate("test", AXIS_MOVING, 1200, false, true, false), 3 * ms);
+    assertNotNull(limit);
+    assertFalse(c.hasPending());
+    // The end of a move is always published
+    AxisUpdate end = c.offer(new AxisUpdate("test", AXIS_IDLE, 1240, false, true, false), 4 * ms);
+    assertNotNull(end);
+    assertEquals(end.state, AXIS_IDLE);
+    assertEquals(c.publishedCount, 4);
+  }
+}
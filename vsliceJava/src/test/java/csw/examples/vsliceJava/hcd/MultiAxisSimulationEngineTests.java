@@ -0,0 +1,309 @@
+package csw.examples.vsliceJava.hcd;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.PoisonPill;
+import akka.actor.Props;
+import akka.testkit.JavaTestKit;
+import akka.testkit.TestActorRef;
+import akka.testkit.TestProbe;
+import csw.examples.vsliceJava.shared.SimulationClock;
+import csw.examples.vsliceJava.shared.VirtualClock;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Optional;
+import java.util.Vector;
+
+import static csw.examples.vsliceJava.hcd.MultiAxisSimulationEngine.*;
+import static csw.examples.vsliceJava.hcd.SingleAxisSimulator.*;
+import static csw.examples.vsliceJava.hcd.SingleAxisSimulator.AxisState.AXIS_IDLE;
+import static csw.examples.vsliceJava.hcd.SingleAxisSimulator.AxisState.AXIS_MOVING;
+import static org.junit.Assert.*;
+
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class MultiAxisSimulationEngineTests extends JavaTestKit {
+  private static ActorSystem system;
+
+  // This def helps to make the test code look more like normal production code, where self() is defined in an actor class
+  private ActorRef self() {
+    return getTestActor();
+  }
+
+  // For compatibility with Scala tests
+  private void it(String s) {
+    System.out.println(s);
+  }
+
+  public MultiAxisSimulationEngineTests() {
+    super(system);
+  }
+
+  @BeforeClass
+  public static void setup() {
+    system = ActorSystem.create();
+  }
+
+  @AfterClass
+  public static void teardown() {
+    JavaTestKit.shutdownActorSystem(system);
+    system = null;
+  }
+
+  AxisConfig defaultAxisConfig = new AxisConfig("test", 100, 200, 1200, 1300, 300, 350, 5);
+
+  TestActorRef<MultiAxisSimulationEngine> defaultEngine() {
+    Props props = MultiAxisSimulationEngine.props(1);
+    return TestActorRef.create(system, props); // No name here since can't create actors with the same name
+  }
+
+  // Adds an axis that reports to the given probe and returns its index
+  int addAxis(ActorRef engine, AxisConfig ac, ActorRef replyTo) {
+    engine.tell(new AddAxis(ac, Optional.of(replyTo)), self());
+    return expectMsgClass(AxisAdded.class).axis;
+  }
+
+  Vector<AxisUpdate> expectMoveMsgs(TestProbe probe) {
+    Vector<AxisUpdate> allMsgs = new Vector<>();
+    // Get AxisStarted
+    probe.expectMsg(AxisStarted.instance);
+    // Receive updates until axis idle then get the last one
+    AxisUpdate msg = probe.expectMsgClass(duration("5 seconds"), AxisUpdate.class);
+    while (msg.state == AXIS_MOVING) {
+      allMsgs.add(msg);
+      msg = probe.expectMsgClass(duration("5 seconds"), AxisUpdate.class);
+    }
+    allMsgs.add(msg);
+    return allMsgs;
+  }
+
+  @Test
+  public void shouldAddAxes() throws Exception {
+    TestActorRef<MultiAxisSimulationEngine> engine = defaultEngine();
+
+    assertEquals(addAxis(engine, defaultAxisConfig, self()), 0);
+    assertEquals(addAxis(engine, defaultAxisConfig, self()), 1);
+    assertEquals(engine.underlyingActor().axisCount, 2);
+    assertEquals(engine.underlyingActor().current[1], defaultAxisConfig.startPosition);
+
+    // A home position in the limit area is rejected
+    AxisConfig bad = new AxisConfig("bad", 100, 200, 1200, 1300, 150, 350, 5);
+    engine.tell(new AddAxis(bad, Optional.empty()), self());
+    expectMsgClass(AxisFailure.class);
+    assertEquals(engine.underlyingActor().axisCount, 2);
+
+    engine.tell(new InitialAxisState(1), self());
+    AxisUpdate upd = expectMsgClass(AxisUpdate.class);
+    assertEquals(upd.state, AXIS_IDLE);
+    assertEquals(upd.current, defaultAxisConfig.startPosition);
+
+    // An unknown axis gets a failure and the engine keeps its axes
+    engine.tell(new InitialAxisState(2), self());
+    expectMsgClass(AxisFailure.class);
+    engine.tell(new InitialAxisState(-1), self());
+    expectMsgClass(AxisFailure.class);
+    assertEquals(engine.underlyingActor().axisCount, 2);
+
+    engine.tell(PoisonPill.getInstance(), self());
+  }
+
+  @Test
+  public void shouldDatumHomeAndMove() throws Exception {
+    TestActorRef<MultiAxisSimulationEngine> engine = defaultEngine();
+    TestProbe probe = new TestProbe(system);
+    int axis = addAxis(engine, defaultAxisConfig, probe.ref());
+
+    it("Should init properly");
+    engine.tell(new AxisCommand(axis, Datum.instance), self());
+    probe.expectMsg(AxisStarted.instance);
+    AxisUpdate upd = probe.expectMsgClass(duration("3 seconds"), AxisUpdate.class);
+    assertEquals(upd.state, AXIS_IDLE);
+    assertEquals(upd.current, defaultAxisConfig.startPosition + 1);
+
+    it("Should home properly");
+    engine.tell(new AxisCommand(axis, Home.instance), self());
+    Vector<AxisUpdate> msgs = expectMoveMsgs(probe);
+    assertEquals(msgs.lastElement().state, AXIS_IDLE);
+    assertTrue(msgs.lastElement().inHomed);
+    assertEquals(msgs.lastElement().current, defaultAxisConfig.home);
+
+    it("Should move into the high limit");
+    engine.tell(new AxisCommand(axis, new Move(1240)), self());
+    msgs = expectMoveMsgs(probe);
+    assertEquals(msgs.lastElement().state, AXIS_IDLE);
+    assertTrue(msgs.lastElement().inHighLimit);
+    assertEquals(msgs.lastElement().current, 1240);
+
+    engine.tell(new AxisCommand(axis, GetStatistics.instance), self());
+    AxisStatistics stats = expectMsgClass(AxisStatistics.class);
+    assertEquals(stats.initCount, 1);
+    assertEquals(stats.moveCount, 3);
+    assertEquals(stats.homeCount, 1);
+    assertEquals(stats.limitCount, 1);
+    assertEquals(stats.successCount, 3);
+    assertEquals(stats.cancelCount, 0);
+
+    // The ticker is stopped when no axis is active
+    assertEquals(engine.underlyingActor().activeCount, 0);
+
+    engine.tell(PoisonPill.getInstance(), self());
+  }
+
+  @Test
+  public void shouldKeepASnapshotOfEachAxis() throws Exception {
+    TestActorRef<MultiAxisSimulationEngine> engine = defaultEngine();
+    TestProbe probe = new TestProbe(system);
+    int axis = addAxis(engine, defaultAxisConfig, probe.ref());
+
+    engine.tell(new GetAxisSnapshot(axis), self());
+    AxisSnapshot snapshot = expectMsgClass(AxisSnapshot.class);
+    long w = snapshot.stateWord();
+    assertEquals(AxisSnapshot.position(w), defaultAxisConfig.startPosition);
+    assertEquals(AxisSnapshot.state(w), AXIS_IDLE);
+
+    engine.tell(new AxisCommand(axis, new Move(1240)), self());
+    // The snapshot shows the motion without asking the engine
+    assertEquals(snapshot.latest().state, AXIS_MOVING);
+    expectMoveMsgs(probe);
+
+    AxisUpdate latest = snapshot.latest();
+    assertEquals(latest.state, AXIS_IDLE);
+    assertEquals(latest.current, 1240);
+    assertTrue(latest.inHighLimit);
+    assertTrue(AxisSnapshot.sequence(snapshot.stateWord()) > AxisSnapshot.sequence(w));
+
+    AxisStatistics stats = snapshot.statistics();
+    assertEquals(stats.moveCount, 1);
+    assertEquals(stats.limitCount, 1);
+    assertEquals(stats.successCount, 1);
+    assertEquals(snapshot.statsVersion(), 3);
+
+    // An unknown axis gets a failure, the engine still has its axis
+    engine.tell(new GetAxisSnapshot(axis + 1), self());
+    expectMsgClass(AxisFailure.class);
+    engine.tell(new GetAxisSnapshot(axis), self());
+    assertSame(expectMsgClass(AxisSnapshot.class), snapshot);
+
+    engine.tell(PoisonPill.getInstance(), self());
+  }
+
+  @Test
+  public void shouldMoveManyAxesTogether() throws Exception {
+    TestActorRef<MultiAxisSimulationEngine> engine = defaultEngine();
+    int numAxes = 24;
+    TestProbe[] probes = new TestProbe[numAxes];
+    for (int i = 0; i < numAxes; i++) {
+      probes[i] = new TestProbe(system);
+      assertEquals(addAxis(engine, defaultAxisConfig, probes[i].ref()), i);
+    }
+
+    for (int i = 0; i < numAxes; i++)
+      engine.tell(new AxisCommand(i, new Move(400 + i * 10)), self());
+    assertEquals(engine.underlyingActor().activeCount, numAxes);
+
+    for (int i = 0; i < numAxes; i++) {
+      Vector<AxisUpdate> msgs = expectMoveMsgs(probes[i]);
+      assertEquals(msgs.lastElement().state, AXIS_IDLE);
+      assertEquals(msgs.lastElement().current, 400 + i * 10);
+    }
+    assertEquals(engine.underlyingActor().activeCount, 0);
+
+    engine.tell(PoisonPill.getInstance(), self());
+  }
+
+  @Test
+  public void shouldAllowCancel() throws Exception {
+    TestActorRef<MultiAxisSimulationEngine> engine = defaultEngine();
+    TestProbe probe = new TestProbe(system);
+    int axis = addAxis(engine, defaultAxisConfig, probe.ref());
+
+    engine.tell(new AxisCommand(axis, new Move(850)), self());
+    probe.expectMsg(AxisStarted.instance);
+    // Wait 2 updates
+    probe.receiveN(2);
+    engine.tell(new AxisCommand(axis, CancelMove.instance), self());
+    // One more update due to algo
+    probe.receiveN(1);
+    AxisUpdate end = probe.expectMsgClass(AxisUpdate.class);
+    assertEquals(end.state, AXIS_IDLE);
+    assertEquals(end.current, 650);
+
+    it("Should not count a cancel during a datum");
+    engine.tell(new AxisCommand(axis, Datum.instance), self());
+    engine.tell(new AxisCommand(axis, CancelMove.instance), self());
+    expectMoveMsgs(probe);
+
+    engine.tell(new AxisCommand(axis, GetStatistics.instance), self());
+    AxisStatistics stats = expectMsgClass(AxisStatistics.class);
+    assertEquals(stats.cancelCount, 1);
+    assertEquals(stats.initCount, 1);
+
+    engine.tell(PoisonPill.getInstance(), self());
+  }
+
+  @Test
+  public void shouldMoveWithMotionProfile() throws Exception {
+    TestActorRef<MultiAxisSimulationEngine> engine = defaultEngine();
+    TestProbe probe = new TestProbe(system);
+    // 1 kHz servo with updates at 20 Hz
+    AxisConfig profiled = new AxisConfig("profiled", 100, 200, 1200, 1300, 300, 350, 5,
+      1000.0, 4000.0, 40000.0, 1000, 20);
+    int axis = addAxis(engine, profiled, probe.ref());
+
+    long start = System.currentTimeMillis();
+    engine.tell(new AxisCommand(axis, new Move(850)), self());
+    Vector<AxisUpdate> msgs = expectMoveMsgs(probe);
+    long moveTime = System.currentTimeMillis() - start;
+
+    assertEquals(msgs.lastElement().state, AXIS_IDLE);
+    assertEquals(msgs.lastElement().current, 850);
+    // A 500 unit move takes at least the time at maximum velocity
+    assertTrue(moveTime >= 500);
+    // Updates arrive at the update rate, not the servo rate
+    assertTrue(msgs.size() > 5 && msgs.size() < 40);
+    // The position never goes backwards or past the destination
+    for (int i = 1; i < msgs.size(); i++) {
+      assertTrue(msgs.get(i).current >= msgs.get(i - 1).current);
+      assertTrue(msgs.get(i).current <= 850);
+    }
+
+    it("Should stop quickly when cancelled");
+    engine.tell(new AxisCommand(axis, new Move(200)), self());
+    probe.expectMsg(AxisStarted.instance);
+    probe.receiveN(5);
+    engine.tell(new AxisCommand(axis, CancelMove.instance), self());
+    AxisUpdate upd = probe.expectMsgClass(duration("5 seconds"), AxisUpdate.class);
+    while (upd.state == AXIS_MOVING) upd = probe.expectMsgClass(duration("5 seconds"), AxisUpdate.class);
+    assertTrue(upd.current > 200 && upd.current < 850);
+
+    engine.tell(PoisonPill.getInstance(), self());
+  }
+
+  @Test
+  public void shouldMoveInVirtualTime() throws Exception {
+    VirtualClock clock = new VirtualClock();
+    Props props = MultiAxisSimulationEngine.props(defaultTickPeriodMS, Optional.<SimulationClock>of(clock));
+    TestActorRef<MultiAxisSimulationEngine> engine = TestActorRef.create(system, props);
+    TestProbe probe = new TestProbe(system);
+    AxisConfig profiled = new AxisConfig("profiled", 100, 200, 1200, 1300, 300, 350, 5,
+      1000.0, 4000.0, 40000.0, 1000, 20);
+    int axis = addAxis(engine, profiled, probe.ref());
+
+    engine.tell(new AxisCommand(axis, new Move(850)), self());
+    // The ticker only runs in virtual time, so the axis has not moved yet
+    assertEquals(clock.pendingTimers(), 1);
+    assertEquals(engine.underlyingActor().current[axis], profiled.startPosition);
+
+    // Far more simulated time than the move needs, all ticks are processed during the advance
+    clock.advance(java.time.Duration.ofSeconds(5));
+    Vector<AxisUpdate> msgs = expectMoveMsgs(probe);
+    assertEquals(msgs.lastElement().state, AXIS_IDLE);
+    assertEquals(msgs.lastElement().current, 850);
+    // The ticker is cancelled once the axis is idle
+    assertEquals(engine.underlyingActor().activeCount, 0);
+    assertEquals(clock.pendingTimers(), 0);
+
+    engine.tell(PoisonPill.getInstance(), self());
+  }
+}
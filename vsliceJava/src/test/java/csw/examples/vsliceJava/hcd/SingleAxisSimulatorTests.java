@@ -4,6 +4,8 @@ import akka.actor.*;
 import akka.testkit.JavaTestKit;
 import akka.testkit.TestActorRef;
 import akka.util.Timeout;
+import csw.examples.vsliceJava.shared.SimulationClock;
+import csw.examples.vsliceJava.shared.VirtualClock;
 import csw.services.loc.LocationService;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -213,6 +215,31 @@ public class SingleAxisSimulatorTests extends JavaTestKit {
     assertEquals(msgs.lastElement(), new End(testDestination));
   }
 
+  @Test
+  public void motionWorkerInVirtualTime() throws Exception {
+    int testStart = 0;
+    int testDestination = 1000;
+    int testDelay = 1000;
+
+    it("should run a 10 second move without waiting when the clock is virtual");
+    {
+      VirtualClock clock = new VirtualClock();
+      Props props = props(testStart, testDestination, testDelay, self(), false, Optional.<SimulationClock>of(clock));
+      final TestActorRef<MotionWorker> ms = TestActorRef.create(system, props);
+      long startTime = System.currentTimeMillis();
+      ms.tell(Start.instance, self());
+      // Nothing moves until the clock is advanced
+      assertEquals(clock.pendingTimers(), 1);
+      clock.advance(java.time.Duration.ofSeconds(11));
+      Vector<MotionWorkerMsgs> msgs = expectLLMoveMsgs(testStart, testDestination, testDelay, false);
+      assertEquals(msgs.lastElement(), new End(testDestination));
+      // Start, 10 steps and End
+      assertEquals(msgs.size(), 12);
+      assertTrue(System.currentTimeMillis() - startTime < 5000);
+      assertEquals(clock.pendingTimers(), 0);
+    }
+  }
+
   @Test
   public void motionWorkerCancel() throws Exception {
     int testStart = 0;
@@ -260,6 +287,27 @@ public class SingleAxisSimulatorTests extends JavaTestKit {
     return TestActorRef.create(system, props); // No name here since can't create actors with the same name
   }
 
+  @Test
+  public void testSingleAxisInVirtualTime() throws Exception {
+    it("Should only complete a datum when the virtual clock passes one second");
+    {
+      VirtualClock clock = new VirtualClock();
+      Props props = SingleAxisSimulator.props(defaultAxisConfig, Optional.of(self()), Optional.<SimulationClock>of(clock));
+      TestActorRef<SingleAxisSimulator> sa = TestActorRef.create(system, props);
+
+      sa.tell(Datum.instance, self());
+      expectMsgEquals(AxisStarted.instance);
+      clock.advance(java.time.Duration.ofMillis(999));
+      expectNoMsg(duration("100 milli"));
+      clock.advance(java.time.Duration.ofMillis(1));
+      AxisUpdate upd = expectMsgClass(AxisUpdate.class);
+      assertEquals(upd.state, AXIS_IDLE);
+      assertEquals(upd.current, defaultAxisConfig.startPosition + 1);
+
+      sa.tell(PoisonPill.getInstance(), self());
+    }
+  }
+
   @Test
   public void testSingleAxis() throws Exception {
     it("should be creatable and initialize");
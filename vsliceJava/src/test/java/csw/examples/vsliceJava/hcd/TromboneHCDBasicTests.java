@@ -8,6 +8,10 @@ import akka.testkit.JavaTestKit;
 import akka.testkit.TestProbe;
 import akka.util.Timeout;
 import csw.examples.vsliceJava.TestEnv;
+import csw.examples.vsliceJava.shared.LatencyHistogram;
+import csw.examples.vsliceJava.shared.SimulationClock;
+import csw.examples.vsliceJava.shared.StartupTimer;
+import csw.examples.vsliceJava.shared.VirtualClock;
 import csw.services.loc.LocationService;
 import csw.services.pkg.Component.HcdInfo;
 import csw.util.config.Configurations.SetupConfig;
@@ -190,11 +194,15 @@ public class TromboneHCDBasicTests extends JavaTestKit {
   @Test
   public void shouldInitializeTheTromboneAxisSimulator() throws Exception {
     it("should initialize the trombone axis simulator");
-    TestActorRef<TromboneHCD> tla = newTestTrombone().testActorRef;
+    TestProbeTestActorRefPair t = newTestTrombone();
+    TestActorRef<TromboneHCD> tla = t.testActorRef;
     TromboneHCD ua = tla.underlyingActor();
 
     assertNotNull(ua.tromboneAxis);
 
+    // Initialization is asynchronous, the values are set when Initialized is sent
+    t.testProbe.expectMsg(Initialized);
+
     // Should have initialized the current values in HCD from Axis
     assertEquals(ua.current.current, ua.axisConfig.startPosition);
     assertEquals(ua.current.state, SingleAxisSimulator.AxisState.AXIS_IDLE); // This is simulator value
@@ -231,6 +239,25 @@ public class TromboneHCDBasicTests extends JavaTestKit {
     cleanup(tla);
   }
 
+  @Test
+  public void shouldReportStartupTimes() throws Exception {
+    it("should report the time of each startup phase");
+    TestProbeTestActorRefPair t = newTestTrombone();
+    TestProbe supervisor = t.testProbe;
+    TestActorRef<TromboneHCD> tla = t.testActorRef;
+
+    lifecycleStart(supervisor, tla);
+
+    tla.tell(TromboneEngineering.GetStartupTimes, self());
+    Map<?, ?> phases = expectMsgClass(Map.class);
+    assertTrue(phases.containsKey(StartupTimer.configFetch));
+    assertTrue(phases.containsKey(StartupTimer.axisReady));
+    assertTrue(phases.containsKey(StartupTimer.initialized));
+    assertTrue((Long) phases.get(StartupTimer.configFetch) <= (Long) phases.get(StartupTimer.initialized));
+
+    cleanup(tla);
+  }
+
   @Test
   public void shouldAllowFetchingConfig() throws Exception {
     it("should allow fetching config");
@@ -279,6 +306,7 @@ public class TromboneHCDBasicTests extends JavaTestKit {
     assertEquals(jvalue(jitem(stats, successCountKey)).intValue(), 0);
     assertEquals(jvalue(jitem(stats, failureCountKey)).intValue(), 0);
     assertEquals(jvalue(jitem(stats, cancelCountKey)).intValue(), 0);
+    assertEquals(jvalue(jitem(stats, supersededCountKey)).intValue(), 0);
 
     tla.tell(JHcdController.Unsubscribe, self());
 
@@ -373,6 +401,74 @@ public class TromboneHCDBasicTests extends JavaTestKit {
     cleanup(tla);
   }
 
+  @Test
+  public void shouldRecordMoveLatency() throws Exception {
+    it("should record the time from a move to reaching its position");
+    TestProbeTestActorRefPair t = newTestTrombone();
+    TestProbe supervisor = t.testProbe;
+    TestActorRef<TromboneHCD> tla = t.testActorRef;
+
+    lifecycleStart(supervisor, tla);
+
+    tla.tell(JHcdController.Subscribe, self());
+    tla.tell(new Submit(positionSC(500)), self());
+    waitForMoveMsgs();
+
+    tla.tell(TromboneEngineering.GetMoveLatency, self());
+    LatencyHistogram.Summary latency = expectMsgClass(LatencyHistogram.Summary.class);
+    assertEquals(latency.count, 1);
+    assertTrue(latency.maxNanos > 0);
+
+    tla.tell(JHcdController.Unsubscribe, self());
+    cleanup(tla);
+  }
+
+  @Test
+  public void shouldRecordMoveLatencyBeyondTheLimits() throws Exception {
+    it("should record the time from a move beyond the limits to reaching the limit");
+    TestProbeTestActorRefPair t = newTestTrombone();
+    TestProbe supervisor = t.testProbe;
+    TestActorRef<TromboneHCD> tla = t.testActorRef;
+
+    lifecycleStart(supervisor, tla);
+
+    tla.tell(JHcdController.Subscribe, self());
+    tla.tell(new Submit(positionSC(tla.underlyingActor().axisConfig.highLimit + 100)), self());
+    waitForMoveMsgs();
+
+    tla.tell(TromboneEngineering.GetMoveLatency, self());
+    LatencyHistogram.Summary latency = expectMsgClass(LatencyHistogram.Summary.class);
+    assertEquals(latency.count, 1);
+
+    tla.tell(JHcdController.Unsubscribe, self());
+    cleanup(tla);
+  }
+
+  @Test
+  public void shouldSendEveryAxisUpdateToRawSubscribers() throws Exception {
+    it("should send every axis update of the engine to raw subscribers");
+    TestProbeTestActorRefPair t = newTestTrombone();
+    TestProbe supervisor = t.testProbe;
+    TestActorRef<TromboneHCD> tla = t.testActorRef;
+
+    lifecycleStart(supervisor, tla);
+
+    tla.tell(RawAxisUpdates.SubscribeRaw, self());
+    tla.tell(new Submit(positionSC(500)), self());
+
+    // One update per engine step, until the axis is idle at the target
+    int count = 0;
+    SingleAxisSimulator.AxisUpdate update;
+    do {
+      update = expectMsgClass(duration("5 seconds"), SingleAxisSimulator.AxisUpdate.class);
+      count++;
+    } while (update.state != SingleAxisSimulator.AxisState.AXIS_IDLE || update.current != 500);
+    assertTrue(count > 1);
+
+    tla.tell(RawAxisUpdates.UnsubscribeRaw, self());
+    cleanup(tla);
+  }
+
 
   @Test
   public void shouldAllowContinuousShortValues() throws Exception {
@@ -401,6 +497,68 @@ public class TromboneHCDBasicTests extends JavaTestKit {
     cleanup(tla);
   }
 
+  @Test
+  public void shouldCoalesceMoveSetpoints() throws Exception {
+    it("should send only the newest of the moves received within one engine tick");
+    // With a virtual clock the coalescing window only closes when the clock is advanced
+    VirtualClock clock = new VirtualClock();
+    TestProbe supervisor = new TestProbe(system);
+    Props props = TromboneHCD.props(testInfo, supervisor.ref(), Optional.<SimulationClock>of(clock));
+    TestActorRef<TromboneHCD> tla = TestActorRef.create(system, props);
+    lifecycleStart(supervisor, tla);
+
+    int[] encoderTestValues = new int[]{460, 465, 470, 475, 480, 485, 490, 400};
+    for (int testPos : encoderTestValues) {
+      tla.tell(new Submit(positionSC(testPos)), self());
+    }
+    // The first move is sent at once, 465 to 490 are superseded and 400 is waiting
+    assertEquals(tla.underlyingActor().supersededMoves, 6);
+
+    // At the next tick the newest target is sent
+    clock.advance(java.time.Duration.ofMillis(MultiAxisSimulationEngine.defaultTickPeriodMS));
+    assertEquals(tla.underlyingActor().supersededMoves, 6);
+    tla.tell(new Submit(positionSC(420)), self());
+    assertEquals(tla.underlyingActor().supersededMoves, 6);
+
+    // The count is part of the axis stats
+    tla.tell(JHcdController.Subscribe, self());
+    tla.tell(GetAxisStats, self());
+    CurrentState stats;
+    do {
+      stats = expectMsgClass(CurrentState.class);
+    } while (!stats.configKey().equals(axisStatsCK));
+    assertEquals(jvalue(jitem(stats, supersededCountKey)).intValue(), 6);
+    tla.tell(JHcdController.Unsubscribe, self());
+
+    cleanup(tla);
+  }
+
+  @Test
+  public void shouldPushStatsWhenOnlySupersededMovesChange() throws Exception {
+    it("should push the axis stats when only the superseded move count changed");
+    VirtualClock clock = new VirtualClock();
+    TestProbe supervisor = new TestProbe(system);
+    Props props = TromboneHCD.props(testInfo, supervisor.ref(), Optional.<SimulationClock>of(clock));
+    TestActorRef<TromboneHCD> tla = TestActorRef.create(system, props);
+    lifecycleStart(supervisor, tla);
+
+    // Publishes the current stats, so that nothing has changed since
+    tla.tell(PublishStatsIfChanged.instance, self());
+    tla.tell(JHcdController.Subscribe, self());
+
+    // The engine stats version stays the same
+    tla.underlyingActor().supersededMoves = 3;
+    tla.tell(PublishStatsIfChanged.instance, self());
+    CurrentState stats;
+    do {
+      stats = expectMsgClass(CurrentState.class);
+    } while (!stats.configKey().equals(axisStatsCK));
+    assertEquals(jvalue(jitem(stats, supersededCountKey)).intValue(), 3);
+    tla.tell(JHcdController.Unsubscribe, self());
+
+    cleanup(tla);
+  }
+
   @Test
   public void shouldShowEnteringALowLimit() throws Exception {
     it("should show entering a low limit");
@@ -0,0 +1,126 @@
+package csw.examples.vsliceJava.shared;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.util.List;
+
+import static csw.examples.vsliceJava.shared.FlightRecorder.Record;
+import static csw.examples.vsliceJava.assembly.TromboneStateActor.*;
+import static csw.examples.vsliceJava.hcd.SingleAxisSimulator.AxisState.AXIS_MOVING;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the flight recorder ring file
+ */
+public class FlightRecorderTests {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static long sizeFor(int records) {
+    return FlightRecorder.headerSize + records * FlightRecorder.recordSize;
+  }
+
+  @Test
+  public void shouldReadBackRecords() throws Exception {
+    File file = folder.newFile("recorder.bin");
+    try (FlightRecorder recorder = new FlightRecorder(file, sizeFor(10))) {
+      assertTrue(recorder.isEnabled());
+      assertEquals(recorder.capacity(), 10);
+      recorder.recordFollowInput(10.0, 2.5);
+      recorder.recordElevationRange(95.0, 100.0);
+      recorder.recordEncoderCommand(450);
+      recorder.recordAxisUpdate(448, AXIS_MOVING, false, true, false);
+      recorder.recordCommandState(cmdContinuous, moveIndexed);
+    }
+
+    List<Record> records = FlightRecorder.read(file);
+    assertEquals(records.size(), 5);
+    assertEquals(records.get(0).seq, 1);
+    assertEquals(records.get(0).type, FlightRecorder.followInputType);
+    assertEquals(records.get(0).a, 10.0, 0.0);
+    assertEquals(records.get(0).b, 2.5, 0.0);
+    assertEquals(records.get(2).intValue, 450);
+    assertTrue(records.get(4).timeNanos >= records.get(0).timeNanos);
+
+    StringWriter csv = new StringWriter();
+    FlightRecorder.writeCsv(records, csv);
+    String[] lines = csv.toString().split("\\R");
+    assertEquals(lines.length, 6);
+    assertTrue(lines[0].startsWith("seq,time,type,"));
+    // Every line has all the columns
+    for (String line : lines) assertEquals(line.split(",", -1).length, 15);
+    assertTrue(lines[4].contains(",axisUpdate,,,,,,448,AXIS_MOVING,false,true,false,,"));
+    assertTrue(lines[5].endsWith(",commandState,,,,,,,,,,,continuous,indexed"));
+  }
+
+  @Test
+  public void shouldKeepTheLatestRecords() throws Exception {
+    File file = folder.newFile("ring.bin");
+    try (FlightRecorder recorder = new FlightRecorder(file, sizeFor(4))) {
+      for (int i = 1; i <= 10; i++) recorder.recordEncoderCommand(i);
+      assertEquals(recorder.count(), 10);
+    }
+    List<Record> records = FlightRecorder.read(file);
+    assertEquals(records.size(), 4);
+    for (int i = 0; i < 4; i++) {
+      assertEquals(records.get(i).seq, 7 + i);
+      assertEquals(records.get(i).intValue, 7 + i);
+    }
+
+    // Opening the file again continues after the last record
+    try (FlightRecorder recorder = new FlightRecorder(file, sizeFor(4))) {
+      assertEquals(recorder.count(), 10);
+      recorder.recordEncoderCommand(11);
+    }
+    records = FlightRecorder.read(file);
+    assertEquals(records.get(3).seq, 11);
+    assertEquals(records.get(0).intValue, 8);
+
+    // A different size starts again
+    try (FlightRecorder recorder = new FlightRecorder(file, sizeFor(8))) {
+      assertEquals(recorder.count(), 0);
+    }
+    assertTrue(FlightRecorder.read(file).isEmpty());
+  }
+
+  @Test
+  public void shouldNotTruncateAMappedFile() throws Exception {
+    File file = folder.newFile("replaced.bin");
+    try (FlightRecorder large = new FlightRecorder(file, sizeFor(8))) {
+      // A smaller recorder on the same file replaces it rather than truncating it under the large one's mapping
+      try (FlightRecorder small = new FlightRecorder(file, sizeFor(2))) {
+        assertEquals(small.count(), 0);
+        for (int i = 1; i <= 8; i++) large.recordEncoderCommand(i);
+        small.recordEncoderCommand(100);
+      }
+      assertEquals(large.count(), 8);
+    }
+    List<Record> records = FlightRecorder.read(file);
+    assertEquals(records.size(), 1);
+    assertEquals(records.get(0).intValue, 100);
+    // No temporary file is left behind
+    assertEquals(folder.getRoot().list().length, 1);
+  }
+
+  @Test
+  public void shouldDropRecordsWhenDisabled() throws Exception {
+    FlightRecorder disabled = FlightRecorder.disabled();
+    assertFalse(disabled.isEnabled());
+    disabled.recordEncoderCommand(1);
+    assertEquals(disabled.count(), 0);
+    // Closing it does nothing, so it can be shared by all the actors created without a recorder
+    disabled.close();
+
+    // Each recorder only sees its own records
+    try (FlightRecorder first = new FlightRecorder(folder.newFile("first.bin"), sizeFor(4));
+         FlightRecorder second = new FlightRecorder(folder.newFile("second.bin"), sizeFor(4))) {
+      first.recordEncoderCommand(1);
+      assertEquals(first.count(), 1);
+      assertEquals(second.count(), 0);
+    }
+  }
+}
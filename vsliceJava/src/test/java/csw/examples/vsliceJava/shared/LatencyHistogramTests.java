@@ -0,0 +1,46 @@
+package csw.examples.vsliceJava.shared;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the latency histogram percentiles
+ */
+public class LatencyHistogramTests {
+
+  @Test
+  public void shouldBeExactForSmallValues() {
+    LatencyHistogram h = new LatencyHistogram();
+    assertEquals(h.percentileNanos(99.0), 0);
+    for (int i = 0; i < 64; i++) h.recordNanos(i);
+    assertEquals(h.count(), 64);
+    assertEquals(h.percentileNanos(50.0), 31);
+    assertEquals(h.percentileNanos(100.0), 63);
+    assertEquals(h.maxNanos(), 63);
+  }
+
+  @Test
+  public void shouldReportPercentilesWithinResolution() {
+    LatencyHistogram h = new LatencyHistogram();
+    // 1 to 10 ms in 1 us steps
+    for (long i = 1; i <= 10000; i++) h.recordNanos(i * 1000);
+    LatencyHistogram.Summary s = h.summary();
+    assertEquals(s.count, 10000);
+    assertEquals(s.meanNanos, 5000500);
+    assertEquals(s.p50Nanos, 5000000, 5000000 * 0.04);
+    assertEquals(s.p99Nanos, 9900000, 9900000 * 0.04);
+    assertEquals(s.maxNanos, 10000000);
+    assertTrue(s.p50Nanos <= s.p90Nanos && s.p90Nanos <= s.p99Nanos && s.p99Nanos <= s.p999Nanos && s.p999Nanos <= s.maxNanos);
+
+    // Negative latencies count as 0 and the largest value does not overflow
+    h.recordNanos(-5);
+    h.recordNanos(Long.MAX_VALUE);
+    assertEquals(h.percentileNanos(0.0), 0);
+    assertEquals(h.percentileNanos(100.0), Long.MAX_VALUE);
+
+    h.reset();
+    assertEquals(h.count(), 0);
+    assertEquals(h.summary().maxNanos, 0);
+  }
+}
@@ -0,0 +1,80 @@
+package csw.examples.vsliceJava.shared;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.japi.Creator;
+import akka.japi.pf.ReceiveBuilder;
+import akka.testkit.JavaTestKit;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests of the stash used by the components before they are running
+ */
+public class StartupStashTests extends JavaTestKit {
+  private static ActorSystem system;
+
+  public StartupStashTests() {
+    super(system);
+  }
+
+  @BeforeClass
+  public static void setup() {
+    system = ActorSystem.create();
+  }
+
+  @AfterClass
+  public static void teardown() {
+    JavaTestKit.shutdownActorSystem(system);
+    system = null;
+  }
+
+  // Stashes until it gets "run", then replies to every message with the message
+  private static class TestComponent extends AbstractActor {
+    private final StartupStash stash = new StartupStash(context());
+
+    public static Props props() {
+      return Props.create(new Creator<TestComponent>() {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public TestComponent create() throws Exception {
+          return new TestComponent();
+        }
+      });
+    }
+
+    private TestComponent() {
+      receive(ReceiveBuilder
+        .matchEquals("run", e -> stash.unstashAll(ReceiveBuilder.matchAny(m -> sender().tell(m, self())).build()))
+        .matchAny(stash::stash)
+        .build());
+    }
+  }
+
+  @Test
+  public void shouldHandleStashedMessagesInOrder() {
+    ActorRef component = system.actorOf(TestComponent.props());
+    component.tell("a", getRef());
+    component.tell("b", getRef());
+    component.tell("run", getRef());
+    // Already in the mailbox when run is received, so it must not overtake a and b
+    component.tell("c", getRef());
+    expectMsgEquals("a");
+    expectMsgEquals("b");
+    expectMsgEquals("c");
+    component.tell("d", getRef());
+    expectMsgEquals("d");
+  }
+
+  @Test
+  public void shouldKeepEveryMessage() {
+    ActorRef component = system.actorOf(TestComponent.props());
+    for (int i = 0; i < 2000; i++) component.tell(i, getRef());
+    component.tell("run", getRef());
+    for (int i = 0; i < 2000; i++) expectMsgEquals(i);
+  }
+}
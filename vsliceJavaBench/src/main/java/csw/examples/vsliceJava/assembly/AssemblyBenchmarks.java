@@ -0,0 +1,119 @@
+package csw.examples.vsliceJava.assembly;
+
+import csw.examples.vsliceJava.assembly.AssemblyContext.TromboneCalculationConfig;
+import csw.examples.vsliceJava.assembly.AssemblyContext.TromboneControlConfig;
+import csw.services.loc.ComponentId;
+import csw.services.loc.Connection;
+import csw.services.pkg.Component.AssemblyInfo;
+import csw.util.config.Configurations;
+import javacsw.services.loc.JComponentType;
+import javacsw.services.pkg.JComponent;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static csw.services.ccs.Validation.Validation;
+import static csw.util.config.Configurations.SetupConfigArg;
+import static javacsw.services.loc.JConnectionType.AkkaType;
+import static javacsw.services.pkg.JComponent.RegisterAndTrackServices;
+
+/**
+ * Micro benchmarks of the per event calculations done while following and of command validation.
+ * <p>
+ * Uses the same calculation and control values as the assembly tests.
+ * Run with: sbt "vsliceJavaBench/jmh:run -rf json -rff results.json .*AssemblyBenchmarks.*"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@SuppressWarnings("unused")
+public class AssemblyBenchmarks {
+
+  private final TromboneCalculationConfig calculationConfig = new TromboneCalculationConfig(95.0, .75, 20.0, -20.0, 4);
+  private final TromboneControlConfig controlConfig = new TromboneControlConfig(8.0, 225, 90.0, 200, 1200);
+
+  private final double[] zenithAngles = {0.0, 5.0, 10.0, 15.0, 20.0, 25.0, 30.0, 35.0, 40.0, 45.0, 50.0, 55.0, 60.0};
+  private final double[] focusErrors = {-20.0, -16.0, -12.0, -8.0, -4.0, 0.0, 4.0, 8.0, 12.0, 16.0, 20.0};
+  private int index = 0;
+
+  // Recorded data sized batch for the batch versions of the algorithms
+  private static final int batchSize = 100000;
+  private final double[] batchZenithAngles = new double[batchSize];
+  private final double[] batchFocusErrors = new double[batchSize];
+  private final int[] batchEncoderValues = new int[batchSize];
+
+  private SetupConfigArg moveSca;
+  private SetupConfigArg followSca;
+  private AssemblyContext ac;
+
+  @Setup
+  public void setup() {
+    ComponentId hcdId = new ComponentId("lgsTromboneHCD", JComponentType.HCD);
+    AssemblyInfo info = JComponent.assemblyInfo(
+      "lgsTrombone",
+      "nfiraos.ncc.trombone",
+      "csw.examples.vsliceJava.assembly.TromboneAssembly",
+      RegisterAndTrackServices, Collections.singleton(AkkaType), Collections.singleton(new Connection.AkkaConnection(hcdId)));
+    ac = new AssemblyContext(info, calculationConfig, controlConfig);
+    moveSca = Configurations.createSetupConfigArg("benchObsId", ac.moveSC(120.0), ac.positionSC(150.0));
+    followSca = Configurations.createSetupConfigArg("benchObsId", ac.setElevationSC(95.0), ac.followSC(false));
+
+    for (int i = 0; i < batchSize; i++) {
+      batchZenithAngles[i] = zenithAngles[i % zenithAngles.length];
+      batchFocusErrors[i] = focusErrors[i % focusErrors.length];
+    }
+  }
+
+  /**
+   * The calculation done by the FollowActor for each zenith angle or focus error event
+   */
+  @Benchmark
+  public int followChain(Blackhole bh) {
+    index = (index + 1) % zenithAngles.length;
+    double za = zenithAngles[index];
+    double fe = focusErrors[index % focusErrors.length];
+    double totalRangeDistance = Algorithms.focusZenithAngleToRangeDistance(calculationConfig,
+      calculationConfig.defaultInitialElevation, fe, za);
+    bh.consume(Algorithms.rangeDistanceToElevation(totalRangeDistance, za));
+    double stagePosition = Algorithms.rangeDistanceToStagePosition(totalRangeDistance);
+    return Algorithms.stagePositionToEncoder(controlConfig, stagePosition);
+  }
+
+  @Benchmark
+  public List<Validation> validateMoveAndPosition() {
+    return ConfigValidation.validateTromboneSetupConfigArg(moveSca, ac);
+  }
+
+  @Benchmark
+  public List<Validation> validateSetElevationAndFollow() {
+    return ConfigValidation.validateTromboneSetupConfigArg(followSca, ac);
+  }
+
+  /**
+   * The follow calculation for a batch of samples, one call per sample
+   */
+  @Benchmark
+  public int[] followChainBatchScalar() {
+    for (int i = 0; i < batchSize; i++) {
+      double totalRangeDistance = Algorithms.focusZenithAngleToRangeDistance(calculationConfig,
+        calculationConfig.defaultInitialElevation, batchFocusErrors[i], batchZenithAngles[i]);
+      batchEncoderValues[i] = Algorithms.stagePositionToEncoder(controlConfig, Algorithms.rangeDistanceToStagePosition(totalRangeDistance));
+    }
+    return batchEncoderValues;
+  }
+
+  /**
+   * The follow calculation for a batch of samples with the batch version, which runs in parallel for this size
+   */
+  @Benchmark
+  public int[] followChainBatch() {
+    return Algorithms.focusZenithAngleToEncoder(calculationConfig, controlConfig, calculationConfig.defaultInitialElevation,
+      batchFocusErrors, batchZenithAngles, batchEncoderValues);
+  }
+}
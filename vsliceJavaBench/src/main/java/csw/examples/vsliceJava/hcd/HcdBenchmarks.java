@@ -0,0 +1,104 @@
+package csw.examples.vsliceJava.hcd;
+
+import csw.util.config.Choice;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static csw.examples.vsliceJava.hcd.SingleAxisSimulator.AxisState.AXIS_IDLE;
+import static csw.examples.vsliceJava.hcd.SingleAxisSimulator.AxisState.AXIS_MOVING;
+import static csw.examples.vsliceJava.hcd.SingleAxisSimulator.AxisUpdate;
+import static csw.examples.vsliceJava.hcd.TromboneHCD.*;
+import static csw.util.config.StateVariable.CurrentState;
+import static javacsw.util.config.JConfigDSL.jadd;
+import static javacsw.util.config.JItems.jset;
+import static javacsw.util.config.JUnitsOfMeasure.encoder;
+
+/**
+ * Micro benchmarks of the code run for every step of a simulated axis move.
+ * <p>
+ * The benchmark is in the hcd package so that it can use the package private MotionWorker.
+ * Run with: sbt "vsliceJavaBench/jmh:run -rf json -rff results.json .*HcdBenchmarks.*"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@SuppressWarnings("unused")
+public class HcdBenchmarks {
+
+  // Same values as tromboneHCD.conf
+  private final AxisConfig axisConfig = new AxisConfig(tromboneAxisName, 100, 200, 1200, 1300, 300, 350, 100);
+
+  // Positions covering the low limit, the normal range and the high limit
+  private final int[] positions = {50, 150, 250, 700, 1150, 1250, 1400};
+  private int index = 0;
+
+  // Alternates between a moving and an idle update, as at the start and end of a move
+  private final AxisUpdate[] updates = {
+    new AxisUpdate(tromboneAxisName, AXIS_MOVING, 500, false, false, false),
+    new AxisUpdate(tromboneAxisName, AXIS_MOVING, 510, false, false, false),
+    new AxisUpdate(tromboneAxisName, AXIS_IDLE, 510, false, false, false),
+    new AxisUpdate(tromboneAxisName, AXIS_IDLE, 1250, false, true, false)
+  };
+
+  private AxisStateEncoder axisStateEncoder;
+
+  @Setup
+  public void setup() {
+    axisStateEncoder = new AxisStateEncoder(tromboneAxisName);
+  }
+
+  private int nextPosition() {
+    index = (index + 1) % positions.length;
+    return positions[index];
+  }
+
+  private AxisUpdate nextUpdate() {
+    index = (index + 1) % updates.length;
+    return updates[index];
+  }
+
+  @Benchmark
+  public int limitMove() {
+    return SingleAxisSimulator.limitMove(axisConfig, nextPosition());
+  }
+
+  @Benchmark
+  public boolean isHighLimit() {
+    return SingleAxisSimulator.isHighLimit(axisConfig, nextPosition());
+  }
+
+  @Benchmark
+  public int calcNumSteps() {
+    return MotionWorker.calcNumSteps(350, nextPosition());
+  }
+
+  @Benchmark
+  public int calcStepSize() {
+    int destination = nextPosition();
+    return MotionWorker.calcStepSize(350, destination, MotionWorker.calcNumSteps(350, destination));
+  }
+
+  /**
+   * Builds the axis state the way TromboneHCD did before AxisStateEncoder, for comparison
+   */
+  @Benchmark
+  public CurrentState currentStateWithJadd() {
+    AxisUpdate e = nextUpdate();
+    return jadd(defaultAxisState,
+      jset(positionKey, e.current).withUnits(encoder),
+      jset(stateKey, new Choice(e.state.toString())),
+      jset(inLowLimitKey, e.inLowLimit),
+      jset(inHighLimitKey, e.inHighLimit),
+      jset(inHomeKey, e.inHomed)
+    );
+  }
+
+  @Benchmark
+  public CurrentState currentStateWithEncoder() {
+    return axisStateEncoder.encode(nextUpdate());
+  }
+}